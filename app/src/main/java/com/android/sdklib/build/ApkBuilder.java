@@ -21,6 +21,7 @@ import com.android.sdklib.internal.build.DebugKeyProvider;
 import com.android.sdklib.internal.build.SignedJarBuilder;
 import com.android.sdklib.internal.build.DebugKeyProvider.IKeyGenOutput;
 import com.android.sdklib.internal.build.DebugKeyProvider.KeytoolException;
+import com.android.sdklib.internal.build.SignedJarBuilder.ISignatureBlockGenerator;
 import com.android.sdklib.internal.build.SignedJarBuilder.IZipEntryFilter;
 
 import java.io.File;
@@ -473,6 +474,16 @@ public final class ApkBuilder implements IArchiveBuilder {
         mDebugMode = debugMode;
     }
 
+    /**
+     * Sets the generator of the signature block, see
+     * {@link SignedJarBuilder#setSignatureBlockGenerator(ISignatureBlockGenerator)}
+     *
+     * @param generator the generator or <code>null</code>
+     */
+    public void setSignatureBlockGenerator(ISignatureBlockGenerator generator) {
+        mBuilder.setSignatureBlockGenerator(generator);
+    }
+
     /**
      * Adds a file to the APK at a given path
      * @param file the file to add
@@ -26,6 +26,7 @@ import java.io.FileInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.security.DigestOutputStream;
@@ -34,16 +35,23 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Signature;
-import java.security.SignatureException;
 import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import sun.security.pkcs.ContentInfo;
 import sun.security.pkcs.PKCS7;
@@ -53,18 +61,63 @@ import sun.security.x509.X500Name;
 
 /**
  * A Jar file builder with signature support.
+ * <p/>The data of stored entries is aligned as it is written, to 4 bytes and the data of native
+ * libraries to 4 KiB so they can be mmapped, so the archive does not need a zipalign pass.
+ * <p/>The digests of the entries are computed on a pool of threads while the next entries are
+ * compressed, they are added to the manifest when the archive is closed.
  */
 public class SignedJarBuilder {
     private static final String DIGEST_ALGORITHM = "SHA1";
+    private static final int ALIGNMENT = 4;
+    private static final int LIBRARY_ALIGNMENT = 4096;
+    /**
+     * Id of the extra field which pads the local header, the same as apksigner writes
+     */
+    private static final int ALIGNMENT_EXTRA_ID = 0xD935;
+    /**
+     * Size of the local file header without name and extra field
+     */
+    private static final int LOCAL_HEADER_SIZE = 30;
     private static final String DIGEST_ATTR = "SHA1-Digest";
     private static final String DIGEST_MANIFEST_ATTR = "SHA1-Digest-Manifest";
-    private JarOutputStream mOutputJar;
+    private static final int MAX_DIGEST_THREADS = 4;
+    private static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance(DIGEST_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+    private static final ThreadLocal<byte[]> DIGEST_BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[64 * 1024];
+        }
+    };
+    private CountingOutputStream mCountingOutput;
+    /**
+     * A plain zip stream, a jar stream adds an extra field to the first entry which would move
+     * its data
+     */
+    private ZipOutputStream mOutputJar;
     private PrivateKey mKey;
     private X509Certificate mCertificate;
     private Manifest mManifest;
     private Base64 mBase64Encoder;
-    private MessageDigest mMessageDigest;
+    /**
+     * The digest threads time out when they are idle, so they also end when the archive is not
+     * closed after an error
+     */
+    private ThreadPoolExecutor mDigestExecutor;
+    /**
+     * Entry name -> digest of its data, in the order of the entries
+     */
+    private Map<String, Future<byte[]>> mDigests = new LinkedHashMap<String, Future<byte[]>>();
     private byte[] mBuffer = new byte[4096];
+    private ISignatureBlockGenerator mSignatureBlockGenerator;
 
     /**
      * Creates a {@link SignedJarBuilder} with a given output stream, and signing information.
@@ -80,7 +133,8 @@ public class SignedJarBuilder {
      */
     public SignedJarBuilder(OutputStream out, PrivateKey key, X509Certificate certificate)
             throws IOException, NoSuchAlgorithmException {
-        mOutputJar = new JarOutputStream(out);
+        mCountingOutput = new CountingOutputStream(out);
+        mOutputJar = new ZipOutputStream(mCountingOutput);
         mOutputJar.setLevel(9);
         mKey = key;
         mCertificate = certificate;
@@ -92,10 +146,52 @@ public class SignedJarBuilder {
             main.putValue("Created-By", "1.0 (Android)");
 
             mBase64Encoder = new Base64();
-            mMessageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            //fail here if the algorithm is missing, not in a digest thread
+            MessageDigest.getInstance(DIGEST_ALGORITHM);
+            int threads = Math.max(1,
+                    Math.min(MAX_DIGEST_THREADS, Runtime.getRuntime().availableProcessors()));
+            mDigestExecutor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "jar-digest");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            mDigestExecutor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * Sets the number of threads which compute the digests of the entries, the archive does not
+     * depend on it.
+     *
+     * @param count the number of threads, at least 1
+     */
+    public void setDigestThreadCount(int count) {
+        if (mDigestExecutor != null) {
+            count = Math.max(1, count);
+            if (count > mDigestExecutor.getCorePoolSize()) {
+                mDigestExecutor.setMaximumPoolSize(count);
+                mDigestExecutor.setCorePoolSize(count);
+            } else {
+                mDigestExecutor.setCorePoolSize(count);
+                mDigestExecutor.setMaximumPoolSize(count);
+            }
         }
     }
 
+    /**
+     * Sets the generator of the signature block, when it is not set the block is created with
+     * the sun.security classes which are not available on Android.
+     *
+     * @param generator the generator or <code>null</code>
+     */
+    public void setSignatureBlockGenerator(ISignatureBlockGenerator generator) {
+        mSignatureBlockGenerator = generator;
+    }
+
     /**
      * Writes a new {@link File} into the archive.
      *
@@ -112,7 +208,7 @@ public class SignedJarBuilder {
             JarEntry entry = new JarEntry(jarPath);
             entry.setTime(inputFile.lastModified());
 
-            writeEntry(fis, entry);
+            writeEntry(fis, entry, inputFile);
         } finally {
             // close the file stream used to read the file
             fis.close();
@@ -152,15 +248,21 @@ public class SignedJarBuilder {
 
                 JarEntry newEntry;
 
-                // Preserve the STORED method of the input entry.
+                // Preserve the STORED method of the input entry. The extra field of the input
+                // is not copied, it is replaced by the alignment.
                 if (entry.getMethod() == JarEntry.STORED) {
-                    newEntry = new JarEntry(entry);
+                    newEntry = new JarEntry(name);
+                    newEntry.setMethod(JarEntry.STORED);
+                    newEntry.setSize(entry.getSize());
+                    newEntry.setCompressedSize(entry.getCompressedSize());
+                    newEntry.setCrc(entry.getCrc());
+                    newEntry.setTime(entry.getTime());
                 } else {
                     // Create a new entry so that the compressed len is recomputed.
                     newEntry = new JarEntry(name);
                 }
 
-                writeEntry(zis, newEntry);
+                writeEntry(zis, newEntry, null);
 
                 zis.closeEntry();
             }
@@ -177,19 +279,42 @@ public class SignedJarBuilder {
      */
     public void close() throws IOException, GeneralSecurityException {
         if (mManifest != null) {
+            try {
+                for (Map.Entry<String, Future<byte[]>> digest : mDigests.entrySet()) {
+                    // update the manifest for this entry.
+                    Attributes attr = mManifest.getAttributes(digest.getKey());
+                    if (attr == null) {
+                        attr = new Attributes();
+                        mManifest.getEntries().put(digest.getKey(), attr);
+                    }
+                    attr.putValue(DIGEST_ATTR,
+                            new String(mBase64Encoder.encode(getDigest(digest.getValue()))));
+                }
+            } finally {
+                mDigestExecutor.shutdownNow();
+            }
+
             // write the manifest to the jar file
             mOutputJar.putNextEntry(new JarEntry(JarFile.MANIFEST_NAME));
             mManifest.write(mOutputJar);
 
             // CERT.SF
-            Signature signature = Signature.getInstance("SHA1with" + mKey.getAlgorithm());
-            signature.initSign(mKey);
+            ByteArrayOutputStream signatureFile = new ByteArrayOutputStream();
+            writeSignatureFile(signatureFile);
+            byte[] signatureFileBytes = signatureFile.toByteArray();
             mOutputJar.putNextEntry(new JarEntry("META-INF/CERT.SF"));
-            writeSignatureFile(new SignatureOutputStream(mOutputJar, signature));
+            mOutputJar.write(signatureFileBytes);
 
             // CERT.*
             mOutputJar.putNextEntry(new JarEntry("META-INF/CERT." + mKey.getAlgorithm()));
-            writeSignatureBlock(signature, mCertificate, mKey);
+            if (mSignatureBlockGenerator != null) {
+                mOutputJar.write(mSignatureBlockGenerator.generate(signatureFileBytes));
+            } else {
+                Signature signature = Signature.getInstance("SHA1with" + mKey.getAlgorithm());
+                signature.initSign(mKey);
+                signature.update(signatureFileBytes);
+                writeSignatureBlock(signature, mCertificate, mKey);
+            }
         }
 
         mOutputJar.close();
@@ -200,20 +325,29 @@ public class SignedJarBuilder {
      *
      * @param input The input stream from where to write the entry content.
      * @param entry the entry to write in the jar.
+     * @param file  the file which is read by the input, the digest thread reads it again, or
+     *              <code>null</code> if the data is kept in memory for the digest thread.
      * @throws IOException
      */
-    private void writeEntry(InputStream input, JarEntry entry) throws IOException {
+    private void writeEntry(InputStream input, JarEntry entry, File file) throws IOException {
+        if (entry.getMethod() == JarEntry.STORED) {
+            entry.setExtra(createAlignmentExtra(entry.getName()));
+        }
         // add the entry to the jar archive
         mOutputJar.putNextEntry(entry);
 
+        ByteArrayOutputStream data = null;
+        if (mManifest != null && file == null) {
+            data = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : 8192);
+        }
+
         // read the content of the entry from the input stream, and write it into the archive.
         int count;
         while ((count = input.read(mBuffer)) != -1) {
             mOutputJar.write(mBuffer, 0, count);
 
-            // update the digest
-            if (mMessageDigest != null) {
-                mMessageDigest.update(mBuffer, 0, count);
+            if (data != null) {
+                data.write(mBuffer, 0, count);
             }
         }
 
@@ -221,20 +355,50 @@ public class SignedJarBuilder {
         mOutputJar.closeEntry();
 
         if (mManifest != null) {
-            // update the manifest for this entry.
-            Attributes attr = mManifest.getAttributes(entry.getName());
-            if (attr == null) {
-                attr = new Attributes();
-                mManifest.getEntries().put(entry.getName(), attr);
-            }
-            attr.putValue(DIGEST_ATTR, new String(mBase64Encoder.encode(mMessageDigest.digest())));
+            mDigests.put(entry.getName(), mDigestExecutor.submit(
+                    new DigestTask(file, data != null ? data.toByteArray() : null)));
         }
     }
 
+    private static byte[] getDigest(Future<byte[]> digest) throws IOException {
+        try {
+            return digest.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * The local header of the next entry starts at the current position, every entry before
+     * was written to the end.
+     *
+     * @return the extra field which makes the data of the entry start at an aligned position
+     */
+    private byte[] createAlignmentExtra(String name) throws IOException {
+        int alignment = name.endsWith(".so") ? LIBRARY_ALIGNMENT : ALIGNMENT;
+        // the extra field has at least its id, its size and the alignment
+        long dataPosition = mCountingOutput.getCount() + LOCAL_HEADER_SIZE
+                + name.getBytes("UTF-8").length + 6;
+        int padding = (int) ((alignment - dataPosition % alignment) % alignment);
+        byte[] extra = new byte[6 + padding];
+        extra[0] = (byte) ALIGNMENT_EXTRA_ID;
+        extra[1] = (byte) (ALIGNMENT_EXTRA_ID >> 8);
+        extra[2] = (byte) (2 + padding);
+        extra[3] = (byte) ((2 + padding) >> 8);
+        extra[4] = (byte) alignment;
+        extra[5] = (byte) (alignment >> 8);
+        return extra;
+    }
+
     /**
      * Writes a .SF file with a digest to the manifest.
      */
-    private void writeSignatureFile(SignatureOutputStream out)
+    private void writeSignatureFile(ByteArrayOutputStream out)
             throws IOException, GeneralSecurityException {
         Manifest sf = new Manifest();
         Attributes main = sf.getMainAttributes();
@@ -343,40 +507,75 @@ public class SignedJarBuilder {
     }
 
     /**
-     * Write to another stream and also feed it to the Signature object.
+     * Creates the signature block (the PKCS#7 signed data of the .SF file) of a signed archive.
      */
-    private static class SignatureOutputStream extends FilterOutputStream {
-        private Signature mSignature;
-        private int mCount = 0;
+    public interface ISignatureBlockGenerator {
 
-        public SignatureOutputStream(OutputStream out, Signature sig) {
-            super(out);
-            mSignature = sig;
+        /**
+         * @param signatureFile the content of the .SF file
+         * @return the content of the signature block file
+         */
+        public byte[] generate(byte[] signatureFile) throws IOException, GeneralSecurityException;
+    }
+
+    /**
+     * Computes the digest of the data of one entry, each digest thread has its own
+     * {@link MessageDigest} and buffer.
+     */
+    private static class DigestTask implements Callable<byte[]> {
+        private final File mFile;
+        private final byte[] mData;
+
+        DigestTask(File file, byte[] data) {
+            mFile = file;
+            mData = data;
         }
 
         @Override
-        public void write(int b) throws IOException {
+        public byte[] call() throws IOException {
+            MessageDigest md = DIGESTS.get();
+            md.reset();
+            if (mData != null) {
+                md.update(mData);
+                return md.digest();
+            }
+            byte[] buffer = DIGEST_BUFFERS.get();
+            FileInputStream input = new FileInputStream(mFile);
             try {
-                mSignature.update((byte) b);
-            } catch (SignatureException e) {
-                throw new IOException("SignatureException: " + e);
+                int count;
+                while ((count = input.read(buffer)) != -1) {
+                    md.update(buffer, 0, count);
+                }
+            } finally {
+                input.close();
             }
-            super.write(b);
+            return md.digest();
+        }
+    }
+
+    /**
+     * Counts the bytes written to the archive
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long mCount = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
             mCount++;
         }
 
         @Override
         public void write(byte[] b, int off, int len) throws IOException {
-            try {
-                mSignature.update(b, off, len);
-            } catch (SignatureException e) {
-                throw new IOException("SignatureException: " + e);
-            }
-            super.write(b, off, len);
+            out.write(b, off, len);
             mCount += len;
         }
 
-        public int size() {
+        long getCount() {
             return mCount;
         }
     }
@@ -2,9 +2,13 @@ package com.duy;
 
 import android.support.multidex.MultiDexApplication;
 
+import com.duy.compile.external.dex.PreDexCache;
+import com.duy.compile.external.java.JavacService;
 import com.duy.ide.BuildConfig;
 import com.google.firebase.crash.FirebaseCrash;
 
+import java.io.File;
+
 /**
  * Created by Duy on 17-Jul-17.
  */
@@ -16,5 +20,14 @@ public class JavaApplication extends MultiDexApplication {
         if (BuildConfig.DEBUG) {
             FirebaseCrash.setCrashCollectionEnabled(false);
         }
+        PreDexCache.init(new File(getCacheDir(), "predex"));
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            JavacService.trimMemory();
+        }
     }
 }
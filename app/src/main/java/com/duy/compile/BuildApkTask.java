@@ -53,8 +53,6 @@ public class BuildApkTask extends AsyncTask<AndroidProjectFolder, Object, File>
 
             }
         };
-        //clean
-        projectFile.clean();
         try {
             return CommandManager.buildApk(projectFile, outputStream, mDiagnosticCollector);
         } catch (Exception e) {
@@ -62,8 +62,7 @@ public class CompileJavaTask extends AsyncTask<JavaProjectFolder, Object, Intege
                 mDiagnostics.add(diagnostic);
             }
         };
-        //clean task
-        projectFile.clean();
+        //the build dir is kept, only changed sources are compiled
         projectFile.createBuildDir();
 
         int status = CommandManager.compileJava(projectFile, printWriter, listener);
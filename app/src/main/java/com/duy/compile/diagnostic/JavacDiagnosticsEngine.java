@@ -0,0 +1,251 @@
+package com.duy.compile.diagnostic;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.duy.compile.external.java.JavacService;
+import com.duy.project.file.java.JavaProjectFolder;
+import com.sun.tools.javac.comp.AttrContext;
+import com.sun.tools.javac.comp.Env;
+import com.sun.tools.javac.comp.Todo;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.Context;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * Errors of the edited file while the user types.
+ * <p>
+ * A check starts when no edit came for {@link #DELAY_MILLIS}. Only the edited compilation unit
+ * is parsed, entered and attributed, javac stops after the attribution (shouldStopPolicy=ATTR),
+ * so there is no flow analysis, no code generation and no dex. The other classes of the project
+ * are entered from the source path when they are referenced. The checks run in the warm context
+ * of the editor, see {@link JavacService#runInEditorContext}.
+ * <p>
+ * A new edit cancels the waiting or running check, a running check stops before the next class.
+ * The diagnostics are published after the parse and after each attributed class.
+ */
+public class JavacDiagnosticsEngine {
+    public static final int DELAY_MILLIS = 300;
+    private static final String TAG = "JavacDiagnostics";
+
+    private static final ScheduledExecutorService sExecutor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "javac-diagnostics");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+
+    private final JavaProjectFolder projectFolder;
+    /**
+     * Diagnostics of the running check, filled by the listener
+     */
+    private final ArrayList<Diagnostic> diagnostics = new ArrayList<>();
+    private final DiagnosticListener<JavaFileObject> listener = new DiagnosticListener<JavaFileObject>() {
+        @Override
+        public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+            diagnostics.add(diagnostic);
+        }
+    };
+    /**
+     * Guards the current request, the checks run under the lock of the engine
+     */
+    private final Object requestLock = new Object();
+    @Nullable
+    private Request current;
+
+    public JavacDiagnosticsEngine(@NonNull JavaProjectFolder projectFolder) {
+        this.projectFolder = projectFolder;
+    }
+
+    public JavaProjectFolder getProjectFolder() {
+        return projectFolder;
+    }
+
+    /**
+     * Check the text of a file after {@link #DELAY_MILLIS}, the previous check is cancelled
+     *
+     * @param text the text of the editor, it is copied in the background
+     */
+    public Request schedule(@NonNull File file, @NonNull CharSequence text, @NonNull Callback callback) {
+        Request request = new Request(file, text, callback);
+        synchronized (requestLock) {
+            if (current != null) current.cancel();
+            current = request;
+            request.future = sExecutor.schedule(request, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return request;
+    }
+
+    /**
+     * Cancel the waiting or running check
+     */
+    public void cancel() {
+        synchronized (requestLock) {
+            if (current != null) current.cancel();
+            current = null;
+        }
+    }
+
+    public void dispose() {
+        cancel();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                JavacService.releaseEditorContext();
+            }
+        });
+    }
+
+    /**
+     * Check the text now, the diagnostics are also given to the callback of the request
+     *
+     * @return the diagnostics of the file, null if the check is cancelled or javac crashed
+     */
+    @Nullable
+    public synchronized List<Diagnostic> check(@NonNull final Request request) {
+        if (request.isCancelled()) return null;
+        long start = System.currentTimeMillis();
+        try {
+            return JavacService.runInEditorContext(projectFolder.getBootClasspath(),
+                    projectFolder.getLibraryJars(), projectFolder.getDirSrcJava(), listener,
+                    new JavacService.EditorTask<List<Diagnostic>>() {
+                        @Nullable
+                        @Override
+                        public List<Diagnostic> run(@NonNull Context context, boolean sourcesKept) {
+                            return checkLocked(context, request);
+                        }
+                    });
+        } finally {
+            diagnostics.clear();
+            Log.d(TAG, "check: took " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    @Nullable
+    private List<Diagnostic> checkLocked(Context context, Request request) {
+        diagnostics.clear();
+        JavaCompiler compiler = JavaCompiler.instance(context);
+        SourceFileObject source = new SourceFileObject(request.file, request.text.toString());
+        request.source = source;
+        JCCompilationUnit unit = compiler.parse(source);
+        if (!publish(request, false)) return null;
+
+        compiler.enterTrees(com.sun.tools.javac.util.List.of(unit));
+        //the classes of the source path are entered, only the classes of the edited file are checked
+        ArrayList<Env<AttrContext>> envs = new ArrayList<>();
+        Todo todo = compiler.todo;
+        for (Env<AttrContext> env = todo.poll(); env != null; env = todo.poll()) {
+            if (env.toplevel == unit) envs.add(env);
+        }
+        for (Env<AttrContext> env : envs) {
+            if (request.isCancelled()) return null;
+            compiler.attribute(env);
+            if (!publish(request, false)) return null;
+        }
+        if (!publish(request, true)) return null;
+        return getDiagnostics(request);
+    }
+
+    /**
+     * @return false if the request is cancelled
+     */
+    private boolean publish(Request request, boolean finished) {
+        if (request.isCancelled()) return false;
+        List<Diagnostic> result = getDiagnostics(request);
+        if (finished || result.size() > request.published) {
+            request.published = result.size();
+            request.callback.onDiagnostics(request, result, finished);
+        }
+        return true;
+    }
+
+    /**
+     * The diagnostics of the edited file, the ones of the other sources are ignored
+     */
+    private List<Diagnostic> getDiagnostics(Request request) {
+        ArrayList<Diagnostic> result = new ArrayList<>();
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.getSource() == request.source) result.add(diagnostic);
+        }
+        return result;
+    }
+
+    public interface Callback {
+        /**
+         * Called in the background thread with all diagnostics found so far, not called after
+         * the request is cancelled
+         *
+         * @param finished true for the last call of the request
+         */
+        void onDiagnostics(@NonNull Request request, @NonNull List<Diagnostic> diagnostics,
+                           boolean finished);
+    }
+
+    public final class Request implements Runnable {
+        public final File file;
+        private final CharSequence text;
+        private final Callback callback;
+        private volatile boolean cancelled;
+        @Nullable
+        private ScheduledFuture<?> future;
+        @Nullable
+        private JavaFileObject source;
+        private int published;
+
+        Request(File file, CharSequence text, Callback callback) {
+            this.file = file;
+            this.text = text;
+            this.callback = callback;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            if (future != null) future.cancel(false);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void run() {
+            check(this);
+        }
+    }
+
+    /**
+     * The text of the editor with the path of the file, the diagnostics point to the file
+     */
+    private static class SourceFileObject extends SimpleJavaFileObject {
+        private final String content;
+
+        SourceFileObject(File file, String content) {
+            super(file.toURI(), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.duy.compile.external;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs build tasks in parallel, each task starts as soon as the tasks it depends on are done.
+ * <p>
+ * A task depends on the tasks given to {@link Task#dependsOn(Task...)} and on every task which
+ * has an output that is one of its inputs, or a file inside or a parent of one of its inputs.
+ * The output of a task goes to its own stream, each line is written to the build output as soon
+ * as it is complete with the name of the task in front of it, so the lines of parallel tasks are
+ * never mixed and a long task shows its progress while it runs.
+ */
+public class BuildGraph {
+    /**
+     * javac and dx need a lot of memory, more threads do not pay off on a phone
+     */
+    private static final int MAX_THREADS = 4;
+
+    private final List<Task> tasks = new ArrayList<>();
+    private final int threadCount;
+    @Nullable
+    private BuildProfiler profiler;
+
+    public BuildGraph() {
+        this(Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())));
+    }
+
+    public BuildGraph(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    private static boolean isSameOrParent(File parent, File file) {
+        String parentPath = parent.getAbsolutePath();
+        String path = file.getAbsolutePath();
+        return path.equals(parentPath) || path.startsWith(parentPath + File.separator);
+    }
+
+    /**
+     * @param profiler records every task as a build stage
+     */
+    public void setProfiler(@Nullable BuildProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public <T extends Task> T add(@NonNull T task) {
+        tasks.add(task);
+        return task;
+    }
+
+    /**
+     * Run all tasks, stops starting new tasks after the first failure
+     *
+     * @param out the build output
+     * @throws Exception the exception of the first failed task
+     */
+    public void run(@NonNull final OutputStream out) throws Exception {
+        Map<Task, Set<Task>> dependencies = resolveDependencies();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CompletionService<Task> completionService = new ExecutorCompletionService<>(executor);
+        Set<Task> started = new HashSet<>();
+        Set<Task> done = new HashSet<>();
+        Exception failure = null;
+        int running = 0;
+        try {
+            while (true) {
+                if (failure == null) {
+                    for (final Task task : tasks) {
+                        if (!started.contains(task) && done.containsAll(dependencies.get(task))) {
+                            started.add(task);
+                            running++;
+                            completionService.submit(new Callable<Task>() {
+                                @Override
+                                public Task call() throws Exception {
+                                    task.execute(out, profiler);
+                                    return task;
+                                }
+                            });
+                        }
+                    }
+                }
+                if (running == 0) break;
+
+                try {
+                    done.add(completionService.take().get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception
+                                ? (Exception) e.getCause() : new Exception(e.getCause());
+                    }
+                }
+                running--;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return task -> tasks which must be done before it
+     */
+    private Map<Task, Set<Task>> resolveDependencies() {
+        Map<Task, Set<Task>> result = new HashMap<>();
+        for (Task task : tasks) {
+            Set<Task> dependencies = new LinkedHashSet<>(task.dependencies);
+            for (Task producer : tasks) {
+                if (producer == task) continue;
+                for (File output : producer.outputs) {
+                    for (File input : task.inputs) {
+                        if (isSameOrParent(output, input) || isSameOrParent(input, output)) {
+                            dependencies.add(producer);
+                        }
+                    }
+                }
+            }
+            result.put(task, dependencies);
+        }
+        Set<Task> checked = new HashSet<>();
+        for (Task task : tasks) {
+            checkCycle(task, result, checked, new HashSet<Task>());
+        }
+        return result;
+    }
+
+    private void checkCycle(Task task, Map<Task, Set<Task>> dependencies, Set<Task> checked,
+                            Set<Task> path) {
+        if (checked.contains(task)) return;
+        if (!path.add(task)) {
+            throw new IllegalStateException("Build tasks depend on each other: " + path);
+        }
+        for (Task dependency : dependencies.get(task)) {
+            if (!dependencies.containsKey(dependency)) {
+                throw new IllegalStateException(dependency + " is not added to the build");
+            }
+            checkCycle(dependency, dependencies, checked, path);
+        }
+        path.remove(task);
+        checked.add(task);
+    }
+
+    public abstract static class Task {
+        private final String name;
+        private final List<Task> dependencies = new ArrayList<>();
+        private final List<File> inputs = new ArrayList<>();
+        private final List<File> outputs = new ArrayList<>();
+
+        public Task(@NonNull String name) {
+            this.name = name;
+        }
+
+        public Task dependsOn(Task... tasks) {
+            dependencies.addAll(Arrays.asList(tasks));
+            return this;
+        }
+
+        /**
+         * Files or directories which are read by this task
+         */
+        public Task inputs(File... files) {
+            inputs.addAll(Arrays.asList(files));
+            return this;
+        }
+
+        /**
+         * Files or directories which are written by this task
+         */
+        public Task outputs(File... files) {
+            outputs.addAll(Arrays.asList(files));
+            return this;
+        }
+
+        private void execute(OutputStream buildOutput, @Nullable BuildProfiler profiler)
+                throws Exception {
+            PrintStream out = new PrintStream(new TaskOutputStream(buildOutput, name), true);
+            BuildProfiler.Stage stage = profiler != null ? profiler.startStage(name) : null;
+            try {
+                run(out);
+            } catch (Exception e) {
+                e.printStackTrace(out);
+                throw e;
+            } finally {
+                if (stage != null) stage.end();
+                out.close();
+            }
+        }
+
+        /**
+         * @param out output of this task
+         */
+        protected abstract void run(@NonNull PrintStream out) throws Exception;
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Writes each complete line to the build output with the name of the task in front of it
+     */
+    private static class TaskOutputStream extends OutputStream {
+        private final OutputStream buildOutput;
+        private final byte[] prefix;
+        private byte[] line = new byte[256];
+        private int length = 0;
+
+        TaskOutputStream(OutputStream buildOutput, String name) {
+            this.buildOutput = buildOutput;
+            this.prefix = ("[" + name + "] ").getBytes();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[length++] = (byte) b;
+            if (b == '\n') {
+                writeLine();
+            }
+        }
+
+        /**
+         * A line is only written when it is complete, a partial line stays in the buffer
+         */
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (length > 0) {
+                write('\n');
+            }
+        }
+
+        private void writeLine() throws IOException {
+            //the build output is shared by the tasks which run in parallel
+            synchronized (buildOutput) {
+                buildOutput.write(prefix);
+                buildOutput.write(line, 0, length);
+                buildOutput.flush();
+            }
+            length = 0;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.duy.compile.external;
+
+import android.os.Debug;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Records the wall time and the allocated bytes of each build stage and the time of the javac
+ * phases.
+ * <p>
+ * The allocated bytes are read from the per thread counter of the runtime. The counting of the
+ * runtime is global, it is enabled while at least one profiler is running, so two builds do not
+ * switch off the counting of each other.
+ * <p>
+ * The result is written as Chrome trace JSON, open it with chrome://tracing, and a summary is
+ * printed to the build output. The javac phases are reported through a {@link TaskListener},
+ * "analyze" is not recorded, it spans the "attribute" and "flow" events of the same class.
+ */
+public class BuildProfiler {
+    private static final String CATEGORY_STAGE = "stage";
+    private static final String CATEGORY_JAVAC = "javac";
+
+    private static final AllocationCounter RUNTIME_COUNTER = new RuntimeAllocationCounter();
+
+    private final long startNanos = System.nanoTime();
+    private final List<Event> events = new ArrayList<>();
+    private final AllocationCounter allocationCounter;
+    private boolean finished = false;
+
+    public BuildProfiler() {
+        this(RUNTIME_COUNTER);
+    }
+
+    BuildProfiler(@NonNull AllocationCounter allocationCounter) {
+        this.allocationCounter = allocationCounter;
+        allocationCounter.start();
+    }
+
+    private static String escape(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Start a build stage in the current thread
+     */
+    public Stage startStage(@NonNull String name) {
+        return new Stage(name);
+    }
+
+    /**
+     * @return listener of the javac phases, must only be used by one compilation at a time
+     */
+    public TaskListener createJavacListener() {
+        return new JavacListener();
+    }
+
+    private void addEvent(Event event) {
+        synchronized (events) {
+            events.add(event);
+        }
+    }
+
+    /**
+     * Stop recording, write the trace file and print the summary
+     *
+     * @param traceFile the Chrome trace JSON
+     * @param out       build output
+     */
+    public void finish(@NonNull File traceFile, @NonNull PrintStream out) {
+        List<Event> events;
+        synchronized (this.events) {
+            if (!finished) {
+                finished = true;
+                allocationCounter.stop();
+            }
+            events = new ArrayList<>(this.events);
+        }
+        try {
+            writeTrace(traceFile, events);
+        } catch (IOException e) {
+            out.println("Can not write build trace: " + e.getMessage());
+        }
+        printSummary(out, events);
+        out.println("Build trace: " + traceFile.getPath());
+    }
+
+    private void writeTrace(File file, List<Event> events) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("{\"traceEvents\":[");
+            for (int i = 0; i < events.size(); i++) {
+                Event event = events.get(i);
+                if (i > 0) writer.write(',');
+                writer.write("\n{\"name\":\"" + escape(event.name) + "\""
+                        + ",\"cat\":\"" + event.category + "\""
+                        + ",\"ph\":\"X\",\"pid\":1"
+                        + ",\"tid\":" + event.threadId
+                        + ",\"ts\":" + (event.startNanos - startNanos) / 1000
+                        + ",\"dur\":" + event.durationNanos / 1000);
+                writer.write(",\"args\":{");
+                if (event.allocatedBytes >= 0) {
+                    writer.write("\"allocatedBytes\":" + event.allocatedBytes);
+                }
+                if (event.detail != null) {
+                    if (event.allocatedBytes >= 0) writer.write(',');
+                    writer.write("\"detail\":\"" + escape(event.detail) + "\"");
+                }
+                writer.write("}}");
+            }
+            writer.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void printSummary(PrintStream out, List<Event> events) {
+        Map<String, long[]> stages = new LinkedHashMap<>();
+        Map<String, long[]> phases = new LinkedHashMap<>();
+        boolean allocations = false;
+        for (Event event : events) {
+            Map<String, long[]> group = CATEGORY_STAGE.equals(event.category) ? stages : phases;
+            long[] total = group.get(event.name);
+            if (total == null) {
+                total = new long[2];
+                group.put(event.name, total);
+            }
+            total[0] += event.durationNanos;
+            total[1] += Math.max(0, event.allocatedBytes);
+            allocations |= event.allocatedBytes >= 0;
+        }
+        out.println("Build profile, total " + (System.nanoTime() - startNanos) / 1000000 + " ms");
+        for (Map.Entry<String, long[]> entry : stages.entrySet()) {
+            if (allocations) {
+                out.println(String.format(Locale.US, "  %-12s %7d ms %9.1f MB allocated",
+                        entry.getKey(), entry.getValue()[0] / 1000000,
+                        entry.getValue()[1] / (1024f * 1024f)));
+            } else {
+                out.println(String.format(Locale.US, "  %-12s %7d ms", entry.getKey(),
+                        entry.getValue()[0] / 1000000));
+            }
+        }
+        if (!phases.isEmpty()) {
+            out.println("javac phases");
+            for (Map.Entry<String, long[]> entry : phases.entrySet()) {
+                out.println(String.format(Locale.US, "  %-12s %7d ms", entry.getKey(),
+                        entry.getValue()[0] / 1000000));
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes allocated by each thread
+     */
+    interface AllocationCounter {
+        void start();
+
+        void stop();
+
+        /**
+         * @return the bytes allocated by the current thread, -1 if they are not counted
+         */
+        long getThreadAllocatedBytes();
+    }
+
+    /**
+     * The allocation counting of the runtime, it is started by the first running profiler and
+     * stopped by the last one
+     */
+    @SuppressWarnings("deprecation")
+    private static class RuntimeAllocationCounter implements AllocationCounter {
+        private int users = 0;
+
+        @Override
+        public synchronized void start() {
+            if (users++ == 0) {
+                Debug.startAllocCounting();
+            }
+        }
+
+        @Override
+        public synchronized void stop() {
+            if (--users == 0) {
+                Debug.stopAllocCounting();
+            }
+        }
+
+        @Override
+        public long getThreadAllocatedBytes() {
+            return Debug.getThreadAllocSize();
+        }
+    }
+
+    private static class Event {
+        final String name;
+        final String category;
+        final long threadId;
+        final long startNanos;
+        final long durationNanos;
+        final long allocatedBytes;
+        @Nullable
+        final String detail;
+
+        Event(String name, String category, long startNanos, long durationNanos,
+              long allocatedBytes, @Nullable String detail) {
+            this.name = name;
+            this.category = category;
+            this.threadId = Thread.currentThread().getId();
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.detail = detail;
+        }
+    }
+
+    public class Stage {
+        private final String name;
+        private final long start = System.nanoTime();
+        private final long startAllocated = allocationCounter.getThreadAllocatedBytes();
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Must be called by the thread which started the stage
+         */
+        public void end() {
+            long allocated = allocationCounter.getThreadAllocatedBytes();
+            //-1 if the bytes are not counted or the counter was reset during the stage
+            long delta = startAllocated >= 0 && allocated >= startAllocated
+                    ? allocated - startAllocated : -1;
+            addEvent(new Event(name, CATEGORY_STAGE, start, System.nanoTime() - start, delta, null));
+        }
+    }
+
+    private class JavacListener implements TaskListener {
+        private final Map<TaskEvent.Kind, Deque<Long>> started = new EnumMap<>(TaskEvent.Kind.class);
+
+        @Override
+        public void started(TaskEvent e) {
+            if (e.getKind() == TaskEvent.Kind.ANALYZE) return;
+            long now = System.nanoTime();
+            Deque<Long> times = started.get(e.getKind());
+            if (times == null) {
+                times = new ArrayDeque<>();
+                started.put(e.getKind(), times);
+            }
+            times.push(now);
+        }
+
+        @Override
+        public void finished(TaskEvent e) {
+            long now = System.nanoTime();
+            Deque<Long> times = started.get(e.getKind());
+            if (times == null || times.isEmpty()) return;
+            long start = times.pop();
+            addEvent(new Event(e.getKind().name().toLowerCase(Locale.US), CATEGORY_JAVAC, start,
+                    now - start, -1, getDetail(e)));
+        }
+
+        @Nullable
+        private String getDetail(TaskEvent e) {
+            if (e.getTypeElement() != null) {
+                return e.getTypeElement().getQualifiedName().toString();
+            }
+            return e.getSourceFile() != null ? e.getSourceFile().getName() : null;
+        }
+    }
+}
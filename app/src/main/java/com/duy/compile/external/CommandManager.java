@@ -5,16 +5,18 @@ import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.android.dex.Dex;
-import com.android.dx.merge.CollisionPolicy;
-import com.android.dx.merge.DexMerger;
 import com.duy.compile.external.android.AndroidBuilder;
+import com.duy.compile.external.dex.DexMergeHelper;
 import com.duy.compile.external.dex.DexTool;
+import com.duy.compile.external.dex.IncrementalDexer;
+import com.duy.compile.external.dex.PreDexCache;
+import com.duy.compile.external.java.IncrementalJavaCompiler;
 import com.duy.compile.external.java.Jar;
 import com.duy.compile.external.java.Java;
-import com.duy.compile.external.java.Javac;
 import com.duy.ide.file.FileManager;
 import com.duy.project.file.android.AndroidProjectFolder;
 import com.duy.project.file.java.JavaProjectFolder;
+import com.sun.source.util.TaskListener;
 import com.sun.tools.javac.main.Main;
 
 import java.io.File;
@@ -24,7 +26,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import javax.tools.DiagnosticCollector;
 import javax.tools.DiagnosticListener;
@@ -52,7 +57,7 @@ public class CommandManager {
             if (status != Main.EXIT_OK) {
                 throw new RuntimeException("Compile time error... Exit code(" + status + ")");
             }
-            //now create normal jar file
+            //now create normal jar file, the classes are only written into it
             Jar.createJarArchive(projectFile);
             jarFile = projectFile.getOutJarArchive();
         } catch (Exception e) {
@@ -69,26 +74,31 @@ public class CommandManager {
         return compileJava(pf, out, null);
     }
 
+    /**
+     * Compile the sources of the project which changed since the last build, see
+     * {@link IncrementalJavaCompiler}. Call {@link JavaProjectFolder#clean()} before to force a
+     * full build.
+     */
     public static int compileJava(JavaProjectFolder projectFile, @Nullable PrintWriter out,
                                   @Nullable DiagnosticListener listener) {
+        return compileJava(projectFile, out, listener, null);
+    }
+
+    /**
+     * @param taskListener receives the javac phases, see {@link BuildProfiler}
+     */
+    public static int compileJava(JavaProjectFolder projectFile, @Nullable PrintWriter out,
+                                  @Nullable DiagnosticListener listener,
+                                  @Nullable TaskListener taskListener) {
         Log.d(TAG, "compileJava() called with: projectFile = [" + projectFile + "], out = [" + out + "], listener = [" + listener + "]");
 
         try {
-            String[] args = new String[]{
-                    "-verbose",
-                    "-bootclasspath", projectFile.getJavaBootClassPath(),
-                    "-cp", projectFile.getJavaClassPath(),
-                    "-sourcepath", projectFile.getDirSrcJava().getPath(), //sourcepath
-                    "-d", projectFile.getDirBuildClasses().getPath(), //output dir
-                    projectFile.getMainClass().getPath(projectFile) //main class
-            };
-            Log.d(TAG, "compileJava args = " + Arrays.toString(args));
-            int compileStatus;
-            compileStatus = out != null ? Javac.compile(args, out, listener) : Javac.compile(args);
-            return compileStatus;
+            IncrementalJavaCompiler compiler = new IncrementalJavaCompiler(projectFile, out, listener);
+            compiler.setTaskListener(taskListener);
+            return compiler.compile();
         } catch (Throwable e) {
             e.printStackTrace();
-            e.printStackTrace(out);
+            if (out != null) e.printStackTrace(out);
         }
         return Main.EXIT_ERROR;
     }
@@ -103,56 +113,76 @@ public class CommandManager {
         executeDex(out, in, err, projectFile.getDexedClassesFile(), tempDir, projectFile.getMainClass().getName());
     }
 
-    public static void dexLibs(@NonNull JavaProjectFolder projectFile, boolean ignoreExist) throws IOException {
-        Log.d(TAG, "dexLibs() called with: projectFile = [" + projectFile + "], ignoreExist = [" + ignoreExist + "]");
-
-        File dirLibs = projectFile.dirLibs;
-        if (dirLibs.exists()) {
-            File[] files = dirLibs.listFiles();
-            if (files != null && files.length > 0) {
-                for (File lib : files) {
-                    File outLib = new File(projectFile.getDirDexedLibs(), lib.getName().replace(".jar", ".dex"));
-                    Log.d(TAG, "dexLibs outLib = " + lib);
-                    if (lib.exists() && ignoreExist) {
-                        continue;
-                    }
-                    if (!outLib.exists()) outLib.createNewFile();
-                    String[] args = new String[]{"--dex", "--verbose", /*"--no-strict",*/
-                            "--output=" + outLib.getPath(), lib.getPath()};
-                    DexTool.main(args);
+    /**
+     * Dex all jar files in the libs dir, see {@link PreDexCache}
+     *
+     * @return the dexed libraries
+     */
+    public static List<File> dexLibs(@NonNull JavaProjectFolder projectFile) throws IOException {
+        return dexLibs(projectFile, null);
+    }
+
+    /**
+     * @param out receives the verbose output of dx, e.g. the build log
+     */
+    public static List<File> dexLibs(@NonNull JavaProjectFolder projectFile, @Nullable PrintStream out)
+            throws IOException {
+        Log.d(TAG, "dexLibs() called with: projectFile = [" + projectFile + "]");
+
+        List<File> dexedLibs = new ArrayList<>();
+        File dirLibs = projectFile.getDirLibs();
+        File[] files = dirLibs.listFiles();
+        if (files != null) {
+            //keep a stable order, the merged libraries are cached by this list
+            Arrays.sort(files);
+            for (File lib : files) {
+                if (lib.isFile() && lib.getName().endsWith(".jar")) {
+                    File dexedLib = PreDexCache.dex(lib, projectFile.getDirDexedLibs(), out);
+                    Log.d(TAG, "dexLibs " + lib + " -> " + dexedLib);
+                    dexedLibs.add(dexedLib);
                 }
             }
         }
+        return dexedLibs;
     }
 
-    public static File dexBuildClasses(@NonNull JavaProjectFolder projectFile) throws IOException {
-        Log.d(TAG, "dexBuildClasses() called with: projectFile = [" + projectFile + "]");
-        String input = projectFile.dirBuildClasses.getPath();
-        FileManager.ensureFileExist(new File(input));
-        String[] args = new String[]{"--dex", "--verbose", /*"--no-strict",*/
-                "--output=" + projectFile.getDexedClassesFile().getPath(), //output dex file
-                input}; //input file
-        DexTool.main(args);
-        return projectFile.getDexedClassesFile();
+    /**
+     * Dex the changed classes of the project, see {@link IncrementalDexer}. The classes of the
+     * last compilation are taken from memory, see {@link IncrementalJavaCompiler#getClasses}
+     *
+     * @return dex of the project classes, without libraries
+     */
+    public static Dex dexBuildClasses(@NonNull JavaProjectFolder projectFile) throws IOException {
+        return dexBuildClasses(projectFile, null);
     }
 
-    public static File dexMerge(@NonNull JavaProjectFolder projectFile) throws IOException {
-        Log.d(TAG, "dexMerge() called with: projectFile = [" + projectFile + "]");
-        FileManager.ensureFileExist(projectFile.getDexedClassesFile());
-
-        if (projectFile.getDirDexedLibs().exists()) {
-            File[] files = projectFile.getDirDexedLibs().listFiles();
-            if (files != null && files.length > 0) {
-                for (File dexedLib : files) {
-                    Dex merged = new DexMerger(
-                            new Dex(projectFile.getDexedClassesFile()),
-                            new Dex(dexedLib),
-                            CollisionPolicy.FAIL).merge();
-                    merged.writeTo(projectFile.getDexedClassesFile());
-                }
-            }
+    /**
+     * @param out receives the translated classes, e.g. the build log
+     */
+    public static Dex dexBuildClasses(@NonNull JavaProjectFolder projectFile, @Nullable PrintStream out)
+            throws IOException {
+        Log.d(TAG, "dexBuildClasses() called with: projectFile = [" + projectFile + "]");
+        File dirCache = new File(projectFile.getDirDexedClass(), "incremental");
+        Map<String, byte[]> classes = IncrementalJavaCompiler.getClasses(projectFile);
+        IncrementalDexer dexer;
+        if (classes != null) {
+            dexer = new IncrementalDexer(classes, dirCache);
+        } else {
+            File input = projectFile.getDirBuildClasses();
+            FileManager.ensureFileExist(input);
+            dexer = new IncrementalDexer(input, dirCache);
         }
-        return projectFile.getDexedClassesFile();
+        dexer.setOutput(out);
+        return dexer.dex();
+    }
+
+    public static File dexMerge(@NonNull JavaProjectFolder projectFile, @NonNull Dex dexedClasses,
+                                @NonNull List<File> dexedLibs) throws IOException {
+        Log.d(TAG, "dexMerge() called with: projectFile = [" + projectFile + "], dexedClasses = ["
+                + dexedClasses + "], dexedLibs = [" + dexedLibs + "]");
+        File output = projectFile.getDexedClassesFile();
+        DexMergeHelper.mergeAll(dexedClasses, dexedLibs, projectFile.getDirDexedLibs(), output);
+        return output;
     }
 
     public static void executeDex(@NonNull PrintStream out, InputStream in, PrintStream err,
@@ -169,16 +199,16 @@ public class CommandManager {
 
     public static void convertToDexFormat(@NonNull JavaProjectFolder projectFile) throws IOException {
         Log.d(TAG, "convertToDexFormat() called with: projectFile = [" + projectFile + "]");
-        dexLibs(projectFile, false);
-        dexBuildClasses(projectFile);
-        dexMerge(projectFile);
+        List<File> dexedLibs = dexLibs(projectFile);
+        Dex dexedClasses = dexBuildClasses(projectFile);
+        dexMerge(projectFile, dexedClasses, dexedLibs);
     }
 
     public static File buildApk(AndroidProjectFolder projectFile,
                                 OutputStream out,
                                 DiagnosticCollector diagnosticCollector) throws Exception {
         AndroidBuilder.build(projectFile, out, diagnosticCollector);
-        return projectFile.getApkUnaligned();
+        return projectFile.getApkAligned();
     }
 
     public class Action {
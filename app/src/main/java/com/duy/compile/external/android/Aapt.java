@@ -3,6 +3,7 @@ package com.duy.compile.external.android;
 import java.io.File;
 import java.io.FileReader;
 import java.io.LineNumberReader;
+import java.io.PrintStream;
 
 public class Aapt {
 
@@ -38,16 +39,23 @@ public class Aapt {
         return bInitialized;
     }
 
-    public synchronized int fnExecute(String args) {
+    public int fnExecute(String args) {
+        return fnExecute(args, System.out);
+    }
+
+    /**
+     * @param out receives the output of aapt
+     */
+    public synchronized int fnExecute(String args, PrintStream out) {
         int rc = 99;
-        System.out.println("Calling JNImain...");
+        out.println("Calling JNImain...");
         rc = JNImain(args.replace(' ', '\t'));
-        System.out.println("Result from native lib=" + rc);
-        fnGetNativeOutput();
+        out.println("Result from native lib=" + rc);
+        fnGetNativeOutput(out);
         return rc;
     }
 
-    private void fnGetNativeOutput() {
+    private void fnGetNativeOutput(PrintStream out) {
         LineNumberReader lnr;
         String st = "";
         try {
@@ -56,7 +64,7 @@ public class Aapt {
             while (st != null) {
                 st = lnr.readLine();
                 if (st != null)
-                    System.out.println(st);
+                    out.println(st);
             }
             lnr.close();
             lnr = new LineNumberReader(new FileReader(txtErr));
@@ -64,12 +72,11 @@ public class Aapt {
             while (st != null) {
                 st = lnr.readLine();
                 if (st != null)
-                    System.err.println(st);
+                    out.println(st);
             }
             lnr.close();
         } catch (Exception e) {
-            System.err.println(e.getMessage());
+            out.println(e.getMessage());
         }
     }
-
 }
\ No newline at end of file
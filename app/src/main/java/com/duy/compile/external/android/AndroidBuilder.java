@@ -3,89 +3,151 @@ package com.duy.compile.external.android;
 import android.util.Log;
 
 import com.android.annotations.NonNull;
+import com.android.dex.Dex;
+import com.android.sdklib.build.ApkBuilder;
+import com.android.sdklib.internal.build.SignedJarBuilder;
+import com.duy.compile.external.BuildGraph;
+import com.duy.compile.external.BuildProfiler;
 import com.duy.compile.external.CommandManager;
 import com.duy.project.file.android.AndroidProjectFolder;
 import com.duy.project.file.android.KeyStore;
-import com.spartacusrex.spartacuside.external.apkbuilder;
 import com.sun.tools.javac.main.Main;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
-import java.util.Arrays;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.tools.DiagnosticCollector;
 
-import kellinwood.security.zipsigner.ProgressEvent;
-import kellinwood.security.zipsigner.ZipSigner;
-import kellinwood.security.zipsigner.optional.CustomKeySigner;
+import kellinwood.security.zipsigner.KeySet;
+import kellinwood.security.zipsigner.optional.KeyStoreFileManager;
+import kellinwood.security.zipsigner.optional.SignatureBlockGenerator;
 
 
 public class AndroidBuilder {
     private static final String TAG = "BuildTask";
 
-    private static void buildApk(AndroidProjectFolder projectFile) throws Exception {
-        String[] args = {
-                projectFile.getApkUnsigned().getPath(),
-                "-v", "-u", "-z", projectFile.getResourceFile().getPath(),
-                "-f", projectFile.getDexedClassesFile().getPath()
-        };
-        Log.d(TAG, "buildApk args = " + Arrays.toString(args));
-        apkbuilder.main(args);
+    private static void buildApk(AndroidProjectFolder projectFile, PrintStream out) throws Exception {
+        Log.d(TAG, "buildApk() called with: projectFile = [" + projectFile + "]");
+
+        // use embedded private key
+        KeyStore keyStore = projectFile.getKeyStore();
+        java.security.KeyStore keystore = KeyStoreFileManager.loadKeyStore(
+                keyStore.getFile().getPath(), keyStore.getPassword());
+        String certAlias = keyStore.getCertAlias();
+        X509Certificate certificate = (X509Certificate) keystore.getCertificate(certAlias);
+        PrivateKey privateKey = (PrivateKey) keystore.getKey(certAlias, keyStore.getCertPassword());
+        KeySet keySet = new KeySet("custom", certificate, privateKey, "SHA1withRSA", null);
+        buildApk(projectFile.getApkAligned(), projectFile.getResourceFile(),
+                projectFile.getDexedClassesFile(), keySet, out);
     }
 
-    public static void build(AndroidProjectFolder projectFile, @NonNull OutputStream out,
-                             @NonNull DiagnosticCollector diagnosticCollector) throws Exception {
-        projectFile.clean();
-        PrintStream systemOut = System.out;
-        PrintStream systemErr = System.err;
-        try {
-            System.setOut(new PrintStream(out));
-            System.setErr(new PrintStream(out));
-
-            //create R.java
-            System.out.println("Run aidl");
-            AndroidBuilder.runAidl(projectFile);
-            System.out.println("Run aapt");
-            AndroidBuilder.runAapt(projectFile);
-
-            //compile java
-            System.out.println("Compile Java file");
-            int status = CommandManager.compileJava(projectFile, new PrintWriter(out), diagnosticCollector);
-            System.gc();
-            if (status != Main.EXIT_OK) {
-                System.out.println("Compile error");
-                throw new RuntimeException("Compile time error!");
+    /**
+     * Package, sign and align the apk in one pass, the digests of the entries are computed while
+     * they are written and the signature files are added at the end, so the apk is never read
+     * again. The data of stored entries is aligned by {@link SignedJarBuilder}.
+     */
+    static void buildApk(File apk, File resources, File dex, final KeySet keySet,
+                         PrintStream out) throws Exception {
+        ApkBuilder builder = new ApkBuilder(apk, resources, dex, keySet.getPrivateKey(),
+                keySet.getPublicKey(), out);
+        //the sun.security classes used by default are not available on Android
+        builder.setSignatureBlockGenerator(new SignedJarBuilder.ISignatureBlockGenerator() {
+            @Override
+            public byte[] generate(byte[] signatureFile) {
+                return SignatureBlockGenerator.generate(keySet, signatureFile);
             }
+        });
+        builder.sealApk();
+    }
 
-            //classes to dex
-            System.out.println("Convert classes to dex");
-            CommandManager.convertToDexFormat(projectFile);
-
-            //zip apk
-            System.out.println("Build apk");
-            AndroidBuilder.buildApk(projectFile);
-
-            System.out.println("Zip sign");
-            AndroidBuilder.zipSign(projectFile);
-
-            System.out.println("Zip align");
-            AndroidBuilder.zipAlign();
-
-            System.out.println("Publish apk");
-            AndroidBuilder.publishApk();
-        } catch (Exception ex) {
-            ex.printStackTrace();
-
-            System.setErr(systemErr);
-            System.setOut(systemOut);
+    /**
+     * Build the apk, independent steps run in parallel, see {@link BuildGraph}
+     */
+    public static void build(final AndroidProjectFolder projectFile, @NonNull OutputStream out,
+                             @NonNull final DiagnosticCollector diagnosticCollector) throws Exception {
+        final BuildProfiler profiler = new BuildProfiler();
+        BuildGraph graph = new BuildGraph();
+        graph.setProfiler(profiler);
+        final AtomicReference<List<File>> dexedLibs = new AtomicReference<>();
+        final AtomicReference<Dex> dexedClasses = new AtomicReference<>();
+
+        BuildGraph.Task aidl = graph.add(new BuildGraph.Task("aidl") {
+            @Override
+            protected void run(@NonNull PrintStream out) throws Exception {
+                AndroidBuilder.runAidl(projectFile);
+            }
+        });
+        //create R.java
+        BuildGraph.Task aapt = graph.add(new BuildGraph.Task("aapt") {
+            @Override
+            protected void run(@NonNull PrintStream out) throws Exception {
+                AndroidBuilder.runAapt(projectFile, out);
+            }
+        }.inputs(projectFile.getXmlManifest(), projectFile.getDirRes(), projectFile.getDirAssets())
+                .outputs(projectFile.getResourceFile(), projectFile.getClassR().getParentFile()));
+        //the classes are kept in memory, the build dir of the classes only orders the tasks
+        graph.add(new BuildGraph.Task("javac") {
+            @Override
+            protected void run(@NonNull PrintStream out) throws Exception {
+                int status = CommandManager.compileJava(projectFile, new PrintWriter(out),
+                        diagnosticCollector, profiler.createJavacListener());
+                if (status != Main.EXIT_OK) {
+                    out.println("Compile error");
+                    throw new RuntimeException("Compile time error!");
+                }
+            }
+        }.dependsOn(aidl, aapt)
+                .inputs(projectFile.getDirSrcJava(), projectFile.getDirLibs())
+                .outputs(projectFile.getDirBuildClasses()));
+        //libraries do not depend on the sources, dex them while aapt and javac run
+        BuildGraph.Task dexLibs = graph.add(new BuildGraph.Task("dexLibs") {
+            @Override
+            protected void run(@NonNull PrintStream out) throws Exception {
+                dexedLibs.set(CommandManager.dexLibs(projectFile, out));
+            }
+        }.inputs(projectFile.getDirLibs()));
+        graph.add(new BuildGraph.Task("dexClasses") {
+            @Override
+            protected void run(@NonNull PrintStream out) throws Exception {
+                dexedClasses.set(CommandManager.dexBuildClasses(projectFile, out));
+            }
+        }.inputs(projectFile.getDirBuildClasses())
+                .outputs(new File(projectFile.getDirDexedClass(), "incremental")));
+        graph.add(new BuildGraph.Task("dexMerge") {
+            @Override
+            protected void run(@NonNull PrintStream out) throws Exception {
+                CommandManager.dexMerge(projectFile, dexedClasses.get(), dexedLibs.get());
+            }
+        }.dependsOn(dexLibs)
+                .inputs(new File(projectFile.getDirDexedClass(), "incremental"))
+                .outputs(projectFile.getDexedClassesFile()));
+        //zip, sign and align apk
+        BuildGraph.Task apk = graph.add(new BuildGraph.Task("package") {
+            @Override
+            protected void run(@NonNull PrintStream out) throws Exception {
+                AndroidBuilder.buildApk(projectFile, out);
+            }
+        }.inputs(projectFile.getResourceFile(), projectFile.getDexedClassesFile())
+                .outputs(projectFile.getApkAligned()));
+        graph.add(new BuildGraph.Task("publish") {
+            @Override
+            protected void run(@NonNull PrintStream out) throws Exception {
+                AndroidBuilder.publishApk();
+            }
+        }.dependsOn(apk));
 
-            throw ex;
+        try {
+            graph.run(out);
+        } finally {
+            profiler.finish(projectFile.getBuildTraceFile(), new PrintStream(out, true));
         }
-
-        System.setErr(systemErr);
-        System.setOut(systemOut);
     }
 
     private static void runAidl(AndroidProjectFolder projectFile) throws Exception {
@@ -94,7 +156,7 @@ public class AndroidBuilder {
         // TODO make aidl.so
     }
 
-    private static void runAapt(AndroidProjectFolder projectFile) throws Exception {
+    private static void runAapt(AndroidProjectFolder projectFile, PrintStream out) throws Exception {
         Log.d(TAG, "runAapt() called");
 
         Aapt aapt = new Aapt();
@@ -119,45 +181,13 @@ public class AndroidBuilder {
             }
         }
         Log.d(TAG, "runAapt command = " + command);
-        int exitCode = aapt.fnExecute(command);
+        int exitCode = aapt.fnExecute(command, out);
         if (exitCode != 0) {
             throw new Exception("AAPT exit(" + exitCode + ")");
         }
 
     }
 
-    private static void zipSign(AndroidProjectFolder projectFile) throws Exception {
-//        if (!appContext.getString(R.string.keystore).contentEquals(projectFile.jksEmbedded.getName())) {
-//             TODO use user defined certificate
-//        }
-
-        // use embedded private key
-        KeyStore keyStore = projectFile.getKeyStore();
-        String keystorePath = keyStore.getFile().getPath();
-        char[] keystorePw = keyStore.getPassword();
-        String certAlias = keyStore.getCertAlias();
-        char[] certPw = keyStore.getCertPassword();
-        String signatureAlgorithm = "SHA1withRSA";
-
-        ZipSigner zipsigner = new ZipSigner();
-        zipsigner.addProgressListener(new SignProgress() {
-            @Override
-            public void onProgress(ProgressEvent event) {
-                super.onProgress(event);
-                System.out.println("Sign progress: " + event.getPercentDone());
-            }
-        });
-        CustomKeySigner.signZip(zipsigner, keystorePath, keystorePw, certAlias,
-                certPw, signatureAlgorithm,
-                projectFile.getApkUnsigned().getPath(),
-                projectFile.getApkUnaligned().getPath());
-    }
-
-
-    private static void zipAlign() throws Exception {
-//         TODO make zipalign.so
-    }
-
     private static void publishApk() throws Exception {
 //        if (projectFile.apkRedistributable.exists()) {
 //            projectFile.apkRedistributable.delete();
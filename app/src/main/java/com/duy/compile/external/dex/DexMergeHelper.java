@@ -0,0 +1,114 @@
+package com.duy.compile.external.dex;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.android.dex.Dex;
+import com.android.dx.merge.CollisionPolicy;
+import com.android.dx.merge.DexMerger;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges many dex files in memory and writes the result once.
+ * <p>
+ * The dx {@link DexMerger} only takes two inputs, so the inputs are merged pairwise as a
+ * balanced tree: every byte is copied log2(n) times instead of n times and nothing is written
+ * to disk until the end. The merged libraries are cached because they only change when a
+ * library changes, a normal build then only merges the app classes into them.
+ */
+public class DexMergeHelper {
+    private static final String TAG = "DexMergeHelper";
+
+    /**
+     * Merge the dexed app classes with all dexed libraries and write the result to output
+     *
+     * @param appDex      dex of the project classes, see {@link IncrementalDexer}
+     * @param dexedLibs   content addressed library dex files from {@link PreDexCache}
+     * @param fallbackDir cache dir used when no app wide cache dir was set
+     * @param output      the final dex file
+     */
+    public static void mergeAll(@NonNull Dex appDex, @NonNull List<File> dexedLibs,
+                                @NonNull File fallbackDir, @NonNull File output) throws IOException {
+        Log.d(TAG, "mergeAll() called with: appDex = [" + appDex + "], dexedLibs = [" + dexedLibs + "]");
+        if (dexedLibs.isEmpty()) {
+            appDex.writeTo(output);
+            return;
+        }
+        Dex libs = mergeLibraries(dexedLibs, PreDexCache.getCacheDir(fallbackDir));
+        Dex merged = new DexMerger(appDex, libs, CollisionPolicy.FAIL).merge();
+        merged.writeTo(output);
+    }
+
+    /**
+     * @return all libraries merged into one dex, taken from the cache if possible
+     */
+    @NonNull
+    private static Dex mergeLibraries(List<File> dexedLibs, File cacheDir) throws IOException {
+        if (dexedLibs.size() == 1) {
+            return new Dex(dexedLibs.get(0));
+        }
+        //the names of the dexed libraries are content hashes, so they identify the merged result
+        StringBuilder key = new StringBuilder();
+        for (File dexedLib : dexedLibs) {
+            key.append(dexedLib.getName()).append(';');
+        }
+        File cached = new File(cacheDir, "merged-" + md5(key.toString().getBytes("UTF-8")) + ".dex");
+        if (cached.exists() && cached.length() > 0) {
+            Log.d(TAG, "mergeLibraries: use cached " + cached);
+            return new Dex(cached);
+        }
+
+        List<Dex> inputs = new ArrayList<>();
+        for (File dexedLib : dexedLibs) {
+            inputs.add(new Dex(dexedLib));
+        }
+        Dex merged = merge(inputs);
+        //the cache is shared by the builds of all projects, each build writes its own file
+        File temp = File.createTempFile(cached.getName(), ".tmp", cacheDir);
+        merged.writeTo(temp);
+        if (!temp.renameTo(cached)) {
+            temp.delete();
+        }
+        return merged;
+    }
+
+    static String md5(byte[] bytes) throws IOException {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(bytes);
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest) {
+                result.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Merge all inputs in memory
+     */
+    @Nullable
+    public static Dex merge(@NonNull List<Dex> inputs) throws IOException {
+        if (inputs.isEmpty()) return null;
+        List<Dex> current = inputs;
+        while (current.size() > 1) {
+            List<Dex> next = new ArrayList<>((current.size() + 1) / 2);
+            for (int i = 0; i + 1 < current.size(); i += 2) {
+                next.add(new DexMerger(current.get(i), current.get(i + 1), CollisionPolicy.FAIL).merge());
+            }
+            if (current.size() % 2 == 1) {
+                next.add(current.get(current.size() - 1));
+            }
+            current = next;
+        }
+        return current.get(0);
+    }
+}
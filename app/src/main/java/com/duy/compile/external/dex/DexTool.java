@@ -1,7 +1,13 @@
 package com.duy.compile.external.dex;
 
+import android.support.annotation.Nullable;
+
+import com.android.dx.command.DxConsole;
 import com.android.dx.command.Main;
 
+import java.io.IOException;
+import java.io.PrintStream;
+
 /**
  * Created by duy on 19/07/2017.
  */
@@ -10,4 +16,36 @@ public class DexTool {
     public static void main(String[] zArgs) {
         Main.main(zArgs);
     }
+
+    /**
+     * Run dx in this process without calling {@link System#exit(int)} on failure.
+     * dx keeps its state in static fields, so only one dx runs at a time.
+     *
+     * @param args arguments of "dx --dex", without "--dex"
+     * @return exit code of dx, 0 if success
+     */
+    public static int run(String[] args) throws IOException {
+        return run(args, null);
+    }
+
+    /**
+     * @param out receives the messages of dx, e.g. with "--verbose", instead of System.out
+     */
+    public static synchronized int run(String[] args, @Nullable PrintStream out) throws IOException {
+        com.android.dx.command.dexer.Main.Arguments arguments
+                = new com.android.dx.command.dexer.Main.Arguments();
+        arguments.parse(args);
+        PrintStream consoleOut = DxConsole.out;
+        PrintStream consoleErr = DxConsole.err;
+        if (out != null) {
+            DxConsole.out = out;
+            DxConsole.err = out;
+        }
+        try {
+            return com.android.dx.command.dexer.Main.run(arguments);
+        } finally {
+            DxConsole.out = consoleOut;
+            DxConsole.err = consoleErr;
+        }
+    }
 }
@@ -0,0 +1,347 @@
+package com.duy.compile.external.dex;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.android.dex.Dex;
+import com.android.dx.cf.direct.DirectClassFile;
+import com.android.dx.cf.direct.StdAttributeFactory;
+import com.android.dx.dex.DexOptions;
+import com.android.dx.dex.cf.CfOptions;
+import com.android.dx.dex.cf.CfTranslator;
+import com.android.dx.dex.cf.OptimizerOptions;
+import com.android.dx.dex.code.PositionList;
+import com.android.dx.dex.file.ClassDefItem;
+import com.android.dx.dex.file.DexFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Dexes only the class files which changed since the last build.
+ * <p>
+ * Every class file is translated to its own dex fragment, stored as "[md5 of class].dex".
+ * Fragments are grouped into {@link #BUCKET_COUNT} buckets by class name and each bucket is
+ * kept merged, so a change only merges the fragments of its bucket again and then the buckets
+ * into the final dex.
+ * <p>
+ * The class files are read from a directory or taken from memory, the classes in memory are
+ * hashed again in each build instead of comparing the size and the modified time.
+ */
+public class IncrementalDexer {
+    private static final String TAG = "IncrementalDexer";
+    private static final int VERSION = 1;
+    private static final int BUCKET_COUNT = 16;
+
+    @Nullable
+    private final File dirClasses;
+    @Nullable
+    private final Map<String, byte[]> classes;
+    private final File dirFragments;
+    private final File dirBuckets;
+    private final File indexFile;
+    private final File outputFile;
+    @Nullable
+    private PrintStream out;
+
+    /**
+     * class name -> entry of the last build, sorted so that buckets are merged in a stable order
+     */
+    private final Map<String, Entry> index = new TreeMap<>();
+
+    /**
+     * @param dirClasses input directory with the class files
+     * @param dirCache   directory where fragments and the output are kept between builds
+     */
+    public IncrementalDexer(@NonNull File dirClasses, @NonNull File dirCache) {
+        this(dirClasses, null, dirCache);
+    }
+
+    /**
+     * @param classes  internal class name -> class file
+     * @param dirCache directory where fragments and the output are kept between builds
+     */
+    public IncrementalDexer(@NonNull Map<String, byte[]> classes, @NonNull File dirCache) {
+        this(null, classes, dirCache);
+    }
+
+    private IncrementalDexer(@Nullable File dirClasses, @Nullable Map<String, byte[]> classes,
+                             @NonNull File dirCache) {
+        this.dirClasses = dirClasses;
+        this.classes = classes;
+        this.dirFragments = new File(dirCache, "fragments");
+        this.dirBuckets = new File(dirCache, "buckets");
+        this.indexFile = new File(dirCache, "index");
+        this.outputFile = new File(dirCache, "classes.dex");
+    }
+
+    /**
+     * @param out receives the translated classes like "dx --verbose", null to dex quietly
+     */
+    public void setOutput(@Nullable PrintStream out) {
+        this.out = out;
+    }
+
+    private static int getBucket(String className) {
+        return (className.hashCode() & 0x7fffffff) % BUCKET_COUNT;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int count = in.read(bytes, offset, bytes.length - offset);
+                if (count < 0) throw new IOException("Unexpected end of " + file);
+                offset += count;
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * Translate one class file to a dex file, same options as "dx --dex"
+     */
+    public static byte[] translate(String className, byte[] classBytes) throws IOException {
+        return translate(className, classBytes, System.err);
+    }
+
+    private static byte[] translate(String className, byte[] classBytes, PrintStream warn)
+            throws IOException {
+        DexOptions dexOptions = new DexOptions();
+        CfOptions cfOptions = new CfOptions();
+        cfOptions.positionInfo = PositionList.LINES;
+        cfOptions.localInfo = true;
+        cfOptions.optimize = true;
+        cfOptions.warn = warn;
+        OptimizerOptions.loadOptimizeLists(null, null);
+
+        DirectClassFile classFile = new DirectClassFile(classBytes, className + ".class",
+                cfOptions.strictNameCheck);
+        classFile.setAttributeFactory(StdAttributeFactory.THE_ONE);
+        DexFile dexFile = new DexFile(dexOptions);
+        try {
+            ClassDefItem classDef = CfTranslator.translate(classFile, classBytes, cfOptions,
+                    dexOptions, dexFile);
+            dexFile.add(classDef);
+            return dexFile.toDex(null, false);
+        } catch (RuntimeException e) {
+            throw new IOException("Can not dex " + className, e);
+        }
+    }
+
+    /**
+     * @return the dex which contains all classes of the input, it is also kept in the cache dir
+     * but not read from there again when it changed
+     */
+    @NonNull
+    public Dex dex() throws IOException {
+        boolean indexLoaded = loadIndex();
+        dirFragments.mkdirs();
+        dirBuckets.mkdirs();
+
+        Map<String, File> classFiles = new HashMap<>();
+        if (classes == null) listClasses(dirClasses, classFiles);
+        Set<String> classNames = classes != null ? classes.keySet() : classFiles.keySet();
+        if (classNames.isEmpty()) {
+            throw new IOException("No class file in " + (classes != null ? "memory" : dirClasses));
+        }
+
+        Set<Integer> dirtyBuckets = new HashSet<>();
+        Set<String> oldHashes = new HashSet<>();
+        for (String className : new ArrayList<>(index.keySet())) {
+            if (!classNames.contains(className)) {
+                oldHashes.add(index.remove(className).hash);
+                dirtyBuckets.add(getBucket(className));
+            }
+        }
+
+        int translated = 0;
+        for (String className : classNames) {
+            Entry old = index.get(className);
+            byte[] classBytes;
+            long length;
+            long lastModified;
+            if (classes != null) {
+                //hashing is cheap in memory, the fragments are found by the hash
+                classBytes = classes.get(className);
+                length = classBytes.length;
+                lastModified = 0;
+            } else {
+                File file = classFiles.get(className);
+                if (old != null && old.length == file.length() && old.lastModified == file.lastModified()
+                        && new File(dirFragments, old.hash + ".dex").exists()) {
+                    continue;
+                }
+                classBytes = readFully(file);
+                length = file.length();
+                lastModified = file.lastModified();
+            }
+            String hash = DexMergeHelper.md5(classBytes);
+            File fragment = new File(dirFragments, hash + ".dex");
+            if (!fragment.exists()) {
+                if (out != null) out.println("processing " + className + ".class...");
+                writeAtomic(fragment, translate(className, classBytes, out != null ? out : System.err));
+                translated++;
+            }
+            if (old == null || !old.hash.equals(hash)) {
+                if (old != null) oldHashes.add(old.hash);
+                dirtyBuckets.add(getBucket(className));
+            }
+            index.put(className, new Entry(hash, length, lastModified));
+        }
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            //without the index the buckets may hold classes which were removed
+            if (!indexLoaded || !getBucketFile(i).exists()) dirtyBuckets.add(i);
+        }
+        Log.d(TAG, "dex: " + translated + " classes translated, " + dirtyBuckets.size() + " buckets dirty");
+
+        Dex result;
+        if (!dirtyBuckets.isEmpty() || !outputFile.exists()) {
+            for (int bucket : dirtyBuckets) {
+                mergeBucket(bucket);
+            }
+            List<Dex> buckets = new ArrayList<>();
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                File bucketFile = getBucketFile(i);
+                if (bucketFile.length() > 0) buckets.add(new Dex(bucketFile));
+            }
+            result = DexMergeHelper.merge(buckets);
+            writeAtomic(outputFile, result.getBytes());
+        } else {
+            result = new Dex(outputFile);
+        }
+        saveIndex();
+
+        //remove fragments which are not used anymore
+        for (Entry entry : index.values()) {
+            oldHashes.remove(entry.hash);
+        }
+        for (String hash : oldHashes) {
+            new File(dirFragments, hash + ".dex").delete();
+        }
+        return result;
+    }
+
+    private void mergeBucket(int bucket) throws IOException {
+        List<Dex> fragments = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : index.entrySet()) {
+            if (getBucket(entry.getKey()) == bucket) {
+                fragments.add(new Dex(new File(dirFragments, entry.getValue().hash + ".dex")));
+            }
+        }
+        Dex merged = DexMergeHelper.merge(fragments);
+        //an empty file marks an empty bucket
+        writeAtomic(getBucketFile(bucket), merged == null ? new byte[0] : merged.getBytes());
+    }
+
+    private File getBucketFile(int bucket) {
+        return new File(dirBuckets, bucket + ".dex");
+    }
+
+    private void listClasses(File dir, Map<String, File> out) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        String root = dirClasses.getPath();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listClasses(file, out);
+            } else if (file.getName().endsWith(".class")) {
+                String path = file.getPath();
+                String className = path.substring(root.length() + 1, path.length() - ".class".length())
+                        .replace(File.separatorChar, '/');
+                out.put(className, file);
+            }
+        }
+    }
+
+    private void writeAtomic(File file, byte[] bytes) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Can not write " + file);
+        }
+    }
+
+    /**
+     * @return false if there is no index of the last build or it can not be read
+     */
+    private boolean loadIndex() {
+        index.clear();
+        if (!indexFile.exists()) return false;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != VERSION) return false;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                index.put(in.readUTF(), new Entry(in.readUTF(), in.readLong(), in.readLong()));
+            }
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "loadIndex: can not read " + indexFile, e);
+            index.clear();
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            out.writeInt(VERSION);
+            out.writeInt(index.size());
+            for (Map.Entry<String, Entry> entry : index.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().hash);
+                out.writeLong(entry.getValue().length);
+                out.writeLong(entry.getValue().lastModified);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static class Entry {
+        final String hash;
+        final long length;
+        final long lastModified;
+
+        Entry(String hash, long length, long lastModified) {
+            this.hash = hash;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+}
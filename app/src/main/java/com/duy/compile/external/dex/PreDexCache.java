@@ -0,0 +1,127 @@
+package com.duy.compile.external.dex;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.android.dx.Version;
+import com.duy.compile.external.android.util.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of dexed library jars shared by all projects.
+ * <p>
+ * A dexed jar is stored as "[md5 of jar content and dx options].dex" so the same library is
+ * dexed only once, no matter which project or path it comes from. The md5 of a jar is
+ * remembered while its size and modified time do not change.
+ */
+public class PreDexCache {
+    private static final String TAG = "PreDexCache";
+    /**
+     * Options which change the dx output, part of the cache key
+     */
+    private static final String[] DEX_OPTIONS = new String[]{};
+
+    private static final Map<String, String> sJarHashes = new HashMap<>();
+    @Nullable
+    private static File sCacheDir;
+
+    /**
+     * Set the app wide cache directory, should be called when the application is created.
+     * Without it each project caches its libraries in its own build dir.
+     */
+    public static void init(@NonNull File cacheDir) {
+        sCacheDir = cacheDir;
+    }
+
+    /**
+     * Dex the library or take it from the cache
+     *
+     * @param lib         the jar file
+     * @param fallbackDir used when no app wide cache dir was set
+     * @return the dexed library
+     */
+    @NonNull
+    public static File dex(@NonNull File lib, @NonNull File fallbackDir) throws IOException {
+        return dex(lib, fallbackDir, null);
+    }
+
+    /**
+     * @param out receives the verbose output of dx, null to dex quietly
+     */
+    @NonNull
+    public static File dex(@NonNull File lib, @NonNull File fallbackDir, @Nullable PrintStream out)
+            throws IOException {
+        File cacheDir = getCacheDir(fallbackDir);
+        String key = getKey(lib);
+        File cached = new File(cacheDir, key + ".dex");
+        if (cached.exists() && cached.length() > 0) {
+            Log.d(TAG, "dex: use cached " + cached + " for " + lib);
+            return cached;
+        }
+
+        //dex to a temporary file so that a failed or killed build never leaves a broken entry,
+        //each build has its own file because the cache is shared by the builds of all projects,
+        //dx only writes to a file with the extension ".dex"
+        File temp = File.createTempFile(key + "-", ".dex", cacheDir);
+        List<String> args = new ArrayList<>(Arrays.asList(DEX_OPTIONS));
+        //only prints, it does not change the output
+        if (out != null) args.add("--verbose");
+        args.add("--output=" + temp.getPath());
+        args.add(lib.getPath());
+        int status = DexTool.run(args.toArray(new String[args.size()]), out);
+        if (status != 0) {
+            temp.delete();
+            throw new IOException("Can not dex " + lib + ", dx exit(" + status + ")");
+        }
+        //another build may have stored the same library in the meantime
+        if (!temp.renameTo(cached)) {
+            temp.delete();
+            if (!cached.exists()) {
+                throw new IOException("Can not store the dexed " + lib + " in " + cached);
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * @param fallbackDir used when no app wide cache dir was set
+     */
+    @NonNull
+    public static File getCacheDir(@NonNull File fallbackDir) {
+        File cacheDir = sCacheDir != null ? sCacheDir : fallbackDir;
+        if (!cacheDir.exists()) cacheDir.mkdirs();
+        return cacheDir;
+    }
+
+    private static String getKey(File lib) throws IOException {
+        String fileKey = lib.getPath() + '@' + lib.length() + '@' + lib.lastModified();
+        String hash;
+        synchronized (sJarHashes) {
+            hash = sJarHashes.get(fileKey);
+        }
+        if (hash == null) {
+            try {
+                hash = Util.getMD5Checksum(lib);
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            synchronized (sJarHashes) {
+                sJarHashes.put(fileKey, hash);
+            }
+        }
+        StringBuilder options = new StringBuilder(Version.VERSION);
+        for (String option : DEX_OPTIONS) {
+            options.append(' ').append(option);
+        }
+        return hash + "-" + Integer.toHexString(options.toString().hashCode());
+    }
+}
@@ -0,0 +1,291 @@
+package com.duy.compile.external.java;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads the header of a class file and collects every class it refers to. Only the constant
+ * pool, the field table and the class attributes are decoded, method bodies are skipped.
+ * <p>
+ * Referenced names come from CONSTANT_Class entries and from every "Lname;" pattern of the
+ * utf8 entries, so types used only in descriptors, generic signatures or annotations are
+ * found too. The result may contain a few false positives, which only cost an extra recompile.
+ * <p>
+ * The ABI hash covers what other classes compile against: the header, the generic signatures
+ * and the non-private fields and methods with their constant values and exceptions. Method
+ * bodies and private members are left out.
+ */
+public class ClassDependencies {
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+    private static final int ACC_PRIVATE = 0x0002;
+
+    /**
+     * Internal name of this class, e.g. "com/duy/Main$1"
+     */
+    private final String className;
+    /**
+     * Value of the SourceFile attribute, null if the class was compiled with -g:none
+     */
+    @Nullable
+    private final String sourceFile;
+    /**
+     * Internal names of all referenced classes, without this class
+     */
+    private final Set<String> references;
+    /**
+     * Hash of the part of the class other classes compile against, the users of the class are
+     * only compiled again when it changes. Compile time constants are part of it.
+     */
+    private final long abiHash;
+
+    private ClassDependencies(String className, @Nullable String sourceFile,
+                              Set<String> references, long abiHash) {
+        this.className = className;
+        this.sourceFile = sourceFile;
+        this.references = references;
+        this.abiHash = abiHash;
+    }
+
+    @NonNull
+    public static ClassDependencies read(File classFile) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(classFile)));
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @NonNull
+    public static ClassDependencies read(DataInputStream in) throws IOException {
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); //minor version
+        in.readUnsignedShort(); //major version
+
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classes = new int[count];
+        int[] strings = new int[count];
+        long[] numbers = new long[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classes[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                    strings[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                    numbers[i] = in.readInt();
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    numbers[i] = in.readLong();
+                    i++; //takes two slots
+                    break;
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    skip(in, 2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    skip(in, 3);
+                    break;
+                case CONSTANT_FIELD_REF:
+                case CONSTANT_METHOD_REF:
+                case CONSTANT_INTERFACE_METHOD_REF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    skip(in, 4);
+                    break;
+                default:
+                    throw new IOException("Invalid constant pool tag " + tag);
+            }
+        }
+
+        long header = in.readUnsignedShort(); //access flags
+        String className = utf8[classes[in.readUnsignedShort()]];
+        int superClass = in.readUnsignedShort();
+        header = header * 31 + (superClass != 0 ? utf8[classes[superClass]].hashCode() : 0);
+        int interfaceCount = in.readUnsignedShort();
+        for (int i = 0; i < interfaceCount; i++) {
+            header = header * 31 + utf8[classes[in.readUnsignedShort()]].hashCode();
+        }
+
+        //the members are summed up, a changed order of the members does not change the hash
+        long members = 0;
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            members += readMember(in, utf8, classes, strings, numbers);
+        }
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            members += readMember(in, utf8, classes, strings, numbers);
+        }
+
+        String sourceFile = null;
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String name = utf8[in.readUnsignedShort()];
+            int length = in.readInt();
+            if ("SourceFile".equals(name)) {
+                sourceFile = utf8[in.readUnsignedShort()];
+                skip(in, length - 2);
+            } else if ("Signature".equals(name)) {
+                header = header * 31 + utf8[in.readUnsignedShort()].hashCode();
+                skip(in, length - 2);
+            } else {
+                skip(in, length);
+            }
+        }
+
+        Set<String> references = new HashSet<>();
+        for (int i = 1; i < count; i++) {
+            if (classes[i] == 0) continue;
+            String name = utf8[classes[i]];
+            if (name.startsWith("[")) {
+                addDescriptorTypes(name, references);
+            } else {
+                references.add(name);
+            }
+        }
+        for (String value : utf8) {
+            if (value != null) addDescriptorTypes(value, references);
+        }
+        references.remove(className);
+        return new ClassDependencies(className, sourceFile, references, header * 31 + members);
+    }
+
+    /**
+     * @return hash of the access flags, name, descriptor, generic signature, constant value and
+     * exceptions of a field or method, 0 for a private member
+     */
+    private static long readMember(DataInputStream in, String[] utf8, int[] classes, int[] strings,
+                                   long[] numbers) throws IOException {
+        int accessFlags = in.readUnsignedShort();
+        String name = utf8[in.readUnsignedShort()];
+        String descriptor = utf8[in.readUnsignedShort()];
+        if ((accessFlags & ACC_PRIVATE) != 0) {
+            skipAttributes(in);
+            return 0;
+        }
+        long hash = accessFlags;
+        hash = hash * 31 + name.hashCode();
+        hash = hash * 31 + descriptor.hashCode();
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String attribute = utf8[in.readUnsignedShort()];
+            int length = in.readInt();
+            if ("ConstantValue".equals(attribute)) {
+                int index = in.readUnsignedShort();
+                hash = hash * 31 + (strings[index] != 0 ? utf8[strings[index]].hashCode() : numbers[index]);
+                skip(in, length - 2);
+            } else if ("Signature".equals(attribute)) {
+                hash = hash * 31 + utf8[in.readUnsignedShort()].hashCode();
+                skip(in, length - 2);
+            } else if ("Exceptions".equals(attribute)) {
+                int count = in.readUnsignedShort();
+                for (int j = 0; j < count; j++) {
+                    hash = hash * 31 + utf8[classes[in.readUnsignedShort()]].hashCode();
+                }
+                skip(in, length - 2 - count * 2);
+            } else {
+                skip(in, length);
+            }
+        }
+        //spread the bits, the hashes of the members are summed up
+        hash *= 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static void skip(DataInputStream in, int count) throws IOException {
+        while (count > 0) {
+            int skipped = in.skipBytes(count);
+            if (skipped <= 0) {
+                in.readByte(); //throws EOFException at the end of stream
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            skip(in, 2);
+            skip(in, in.readInt());
+        }
+    }
+
+    /**
+     * Collect all "Lname;" types of a descriptor or a generic signature
+     */
+    private static void addDescriptorTypes(String value, Set<String> out) {
+        int start = value.indexOf('L');
+        while (start >= 0) {
+            int end = start + 1;
+            while (end < value.length()) {
+                char c = value.charAt(end);
+                if (c == ';' || c == '<') break;
+                if (c == '(' || c == ')' || c == '[' || c == ' ') {
+                    end = -1;
+                    break;
+                }
+                end++;
+            }
+            if (end > start + 1 && end < value.length()) {
+                out.add(value.substring(start + 1, end));
+            }
+            start = value.indexOf('L', Math.max(end, start + 1));
+        }
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    @Nullable
+    public String getSourceFile() {
+        return sourceFile;
+    }
+
+    public Set<String> getReferences() {
+        return references;
+    }
+
+    public long getAbiHash() {
+        return abiHash;
+    }
+}
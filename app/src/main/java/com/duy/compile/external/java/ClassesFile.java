@@ -0,0 +1,83 @@
+package com.duy.compile.external.java;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The classes of the last compilation in a single file, so that the first build after the app
+ * restarted does not compile all sources.
+ * <p>
+ * The file is written after the {@link CompileState} of the same compilation and deleted
+ * before the state is written again, if it exists it belongs to the saved state.
+ */
+class ClassesFile {
+    private static final String TAG = "ClassesFile";
+    private static final int VERSION = 1;
+
+    /**
+     * @return internal class name -> class file, null if the file does not exist or is broken
+     */
+    @Nullable
+    static Map<String, byte[]> load(File file) {
+        if (!file.exists()) return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION) return null;
+            int count = in.readInt();
+            Map<String, byte[]> classes = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String className = in.readUTF();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes.put(className, bytes);
+            }
+            return classes;
+        } catch (IOException e) {
+            Log.w(TAG, "load: can not read " + file, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Write to a temporary file first, a build killed while writing leaves no broken file
+     */
+    static void save(File file, Map<String, byte[]> classes) throws IOException {
+        file.getParentFile().mkdirs();
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(VERSION);
+            out.writeInt(classes.size());
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Can not write " + file);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.duy.compile.external.java;
+
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The state of the last incremental compilation: content hash of every source file, the
+ * classes generated from each source and the classes each of them refers to.
+ * <p>
+ * Sources are keyed by the path relative to the source directory, classes by internal name.
+ */
+class CompileState {
+    private static final int VERSION = 2;
+
+    /**
+     * Bootclasspath and classpath of the last compilation, when it changes everything
+     * must be compiled again
+     */
+    String optionsKey;
+    final Map<String, String> sourceHashes = new HashMap<>();
+    final Map<String, Set<String>> sourceClasses = new HashMap<>();
+    final Map<String, Set<String>> classReferences = new HashMap<>();
+    /**
+     * class name -> {@link ClassDependencies#getAbiHash()}
+     */
+    final Map<String, Long> classAbi = new HashMap<>();
+
+    CompileState(String optionsKey) {
+        this.optionsKey = optionsKey;
+    }
+
+    /**
+     * @return the saved state or null if there is no usable state
+     */
+    @Nullable
+    static CompileState load(File file) {
+        if (!file.exists()) return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION) return null;
+            CompileState state = new CompileState(in.readUTF());
+            int sourceCount = in.readInt();
+            for (int i = 0; i < sourceCount; i++) {
+                String source = in.readUTF();
+                String hash = in.readUTF();
+                if (!hash.isEmpty()) state.sourceHashes.put(source, hash);
+                Set<String> classes = new HashSet<>();
+                int classCount = in.readInt();
+                for (int j = 0; j < classCount; j++) {
+                    String className = in.readUTF();
+                    classes.add(className);
+                    state.classAbi.put(className, in.readLong());
+                    Set<String> references = new HashSet<>();
+                    int referenceCount = in.readInt();
+                    for (int k = 0; k < referenceCount; k++) {
+                        references.add(in.readUTF());
+                    }
+                    state.classReferences.put(className, references);
+                }
+                state.sourceClasses.put(source, classes);
+            }
+            return state;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    void save(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        Set<String> sources = new HashSet<>(sourceHashes.keySet());
+        sources.addAll(sourceClasses.keySet());
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(VERSION);
+            out.writeUTF(optionsKey);
+            out.writeInt(sources.size());
+            for (String source : sources) {
+                out.writeUTF(source);
+                String hash = sourceHashes.get(source);
+                out.writeUTF(hash == null ? "" : hash);
+                Set<String> classes = getClasses(source);
+                out.writeInt(classes.size());
+                for (String className : classes) {
+                    out.writeUTF(className);
+                    Long abi = classAbi.get(className);
+                    out.writeLong(abi == null ? 0 : abi);
+                    Set<String> references = classReferences.get(className);
+                    if (references == null) {
+                        out.writeInt(0);
+                    } else {
+                        out.writeInt(references.size());
+                        for (String reference : references) {
+                            out.writeUTF(reference);
+                        }
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    Set<String> getClasses(String source) {
+        Set<String> classes = sourceClasses.get(source);
+        return classes == null ? new HashSet<String>() : classes;
+    }
+
+    boolean containsClass(String className) {
+        return classReferences.containsKey(className);
+    }
+
+    void addClass(String source, ClassDependencies dependencies) {
+        Set<String> classes = sourceClasses.get(source);
+        if (classes == null) {
+            classes = new HashSet<>();
+            sourceClasses.put(source, classes);
+        }
+        classes.add(dependencies.getClassName());
+        classReferences.put(dependencies.getClassName(), dependencies.getReferences());
+        classAbi.put(dependencies.getClassName(), dependencies.getAbiHash());
+    }
+
+    void removeSource(String source) {
+        sourceHashes.remove(source);
+        Set<String> classes = sourceClasses.remove(source);
+        if (classes != null) {
+            for (String className : classes) {
+                classReferences.remove(className);
+                classAbi.remove(className);
+            }
+        }
+    }
+
+    /**
+     * Find the sources which use the given classes directly. The users of those sources are only
+     * compiled again when the ABI of one of their classes changes.
+     *
+     * @param classNames classes which were changed or removed
+     * @return sources whose classes refer to one of the classes
+     */
+    Set<String> findUsers(Collection<String> classNames) {
+        Set<String> result = new HashSet<>();
+        if (classNames.isEmpty()) return result;
+        for (Map.Entry<String, Set<String>> entry : sourceClasses.entrySet()) {
+            for (String className : entry.getValue()) {
+                Set<String> references = classReferences.get(className);
+                if (references != null && !Collections.disjoint(references, classNames)) {
+                    result.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,42 @@
+package com.duy.compile.external.java;
+
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The class files of the last compilation of a project, kept in memory between its builds.
+ * Each {@link com.duy.project.file.java.JavaProjectFolder} owns one, a build of the same
+ * project holds its lock while it compiles.
+ * <p>
+ * When they are not in memory, e.g. after the app restarted, the next build reads them from
+ * the {@link ClassesFile} of the project.
+ */
+public class CompiledClasses {
+    /**
+     * internal class name -> class file, guarded by this
+     */
+    @Nullable
+    private Map<String, byte[]> classes;
+
+    /**
+     * @return a copy of the classes, null if they are not in memory
+     */
+    @Nullable
+    public synchronized Map<String, byte[]> copy() {
+        return classes == null ? null : new HashMap<>(classes);
+    }
+
+    /**
+     * @return the classes which the compiler updates, null if they are not in memory
+     */
+    @Nullable
+    synchronized Map<String, byte[]> get() {
+        return classes;
+    }
+
+    synchronized void set(@Nullable Map<String, byte[]> classes) {
+        this.classes = classes;
+    }
+}
@@ -0,0 +1,104 @@
+package com.duy.compile.external.java;
+
+import android.support.annotation.Nullable;
+
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symbol.VarSymbol;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCFieldAccess;
+import com.sun.tools.javac.tree.JCTree.JCIdent;
+import com.sun.tools.javac.tree.TreeScanner;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the classes whose compile time constants a compiled class uses. javac inlines the
+ * values, so the class file of the user does not refer to the class of the constant and
+ * {@link ClassDependencies} can not find it.
+ * <p>
+ * A class is scanned when it was analyzed, desugar replaces the constants by their values.
+ */
+class ConstantUseListener implements TaskListener {
+    @Nullable
+    private final TaskListener next;
+    /**
+     * internal name of a top level class -> internal names of the classes whose constants it uses
+     */
+    private final Map<String, Set<String>> constantUses = new HashMap<>();
+
+    /**
+     * @param next receives all events too, e.g. the listener of the profiler
+     */
+    ConstantUseListener(@Nullable TaskListener next) {
+        this.next = next;
+    }
+
+    /**
+     * @param className internal name of a top level class
+     * @return the classes whose constants the class and its nested classes use, null if none
+     */
+    @Nullable
+    Set<String> getConstantUses(String className) {
+        return constantUses.get(className);
+    }
+
+    @Override
+    public void started(TaskEvent e) {
+        if (next != null) next.started(e);
+    }
+
+    @Override
+    public void finished(TaskEvent e) {
+        if (e.getKind() == TaskEvent.Kind.ANALYZE && e.getTypeElement() instanceof ClassSymbol
+                && e.getCompilationUnit() instanceof JCCompilationUnit) {
+            scan((JCCompilationUnit) e.getCompilationUnit(), (ClassSymbol) e.getTypeElement());
+        }
+        if (next != null) next.finished(e);
+    }
+
+    private void scan(JCCompilationUnit unit, final ClassSymbol topLevel) {
+        final Set<String> uses = new HashSet<>();
+        TreeScanner scanner = new TreeScanner() {
+            @Override
+            public void visitIdent(JCIdent tree) {
+                add(tree.sym);
+            }
+
+            @Override
+            public void visitSelect(JCFieldAccess tree) {
+                add(tree.sym);
+                super.visitSelect(tree);
+            }
+
+            /**
+             * The type of the tree is not a constant type in every context, e.g. in the
+             * initializer of another constant, the symbol always knows its value
+             */
+            private void add(Symbol sym) {
+                if (!(sym instanceof VarSymbol) || !(sym.owner instanceof ClassSymbol)) return;
+                if (((VarSymbol) sym).getConstValue() == null) return;
+                ClassSymbol owner = (ClassSymbol) sym.owner;
+                //the classes of the same source are compiled together
+                if (owner.outermostClass() != topLevel) {
+                    uses.add(owner.flatname.toString().replace('.', '/'));
+                }
+            }
+        };
+        for (JCTree tree : unit.defs) {
+            if (tree instanceof JCClassDecl && ((JCClassDecl) tree).sym == topLevel) {
+                scanner.scan(tree);
+            }
+        }
+        if (!uses.isEmpty()) {
+            constantUses.put(topLevel.flatname.toString().replace('.', '/'), uses);
+        }
+    }
+}
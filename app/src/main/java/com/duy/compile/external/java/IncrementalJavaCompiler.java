@@ -0,0 +1,402 @@
+package com.duy.compile.external.java;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.duy.compile.external.android.util.Util;
+import com.duy.project.file.java.JavaProjectFolder;
+import com.sun.source.util.TaskListener;
+import com.sun.tools.javac.file.SignatureArchive;
+import com.sun.tools.javac.main.Main;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+
+/**
+ * Compiles only the sources which changed since the last build plus the sources which use
+ * them directly. The users of a compiled class are only compiled in another round when the
+ * ABI of the class changed, e.g. a method signature or the value of a constant.
+ * <p>
+ * The content hash of every source and the dependency graph between the generated classes
+ * are kept in {@link JavaProjectFolder#getJavacStateFile()}. The graph is read from the class
+ * files after each compilation, see {@link ClassDependencies}, the uses of constants which
+ * javac inlines are collected while it compiles, see {@link ConstantUseListener}. A full
+ * build is done when there is no saved state or the classpath changed.
+ * <p>
+ * A full build compiles every java file of the source dir, not only the main class and the
+ * classes javac finds from it through the source path, so a broken file which the app never
+ * uses fails the build too. The dependency graph needs the classes of every source and the
+ * activities of an android project are only referenced from the manifest.
+ * <p>
+ * The class files are kept in memory, see {@link MemoryJavaFileManager}, they are dexed from
+ * there and written only into a jar. The project owns them, see {@link CompiledClasses}, they
+ * are also saved in {@link JavaProjectFolder#getJavacClassesFile()} and read from there by the
+ * first build after the app started.
+ */
+public class IncrementalJavaCompiler {
+    private static final String TAG = "IncrementalCompiler";
+
+    private final JavaProjectFolder projectFile;
+    private final CompiledClasses compiledClasses;
+    @Nullable
+    private final PrintWriter out;
+    @Nullable
+    private final DiagnosticListener<? super JavaFileObject> listener;
+    @Nullable
+    private TaskListener taskListener;
+    /**
+     * The uses of constants of the last javac run
+     */
+    private ConstantUseListener constantUses = new ConstantUseListener(null);
+
+    public IncrementalJavaCompiler(@NonNull JavaProjectFolder projectFile, @Nullable PrintWriter out,
+                                   @Nullable DiagnosticListener<? super JavaFileObject> listener) {
+        this.projectFile = projectFile;
+        this.compiledClasses = projectFile.getCompiledClasses();
+        this.out = out;
+        this.listener = listener;
+    }
+
+    /**
+     * @param taskListener receives the javac phases of the next compilations
+     */
+    public void setTaskListener(@Nullable TaskListener taskListener) {
+        this.taskListener = taskListener;
+    }
+
+    /**
+     * @return a copy of the classes of the last compilation of the project, null if they are
+     * not in memory
+     */
+    @Nullable
+    public static Map<String, byte[]> getClasses(@NonNull JavaProjectFolder projectFile) {
+        return projectFile.getCompiledClasses().copy();
+    }
+
+    public int compile() throws IOException {
+        synchronized (compiledClasses) {
+            return compileLocked();
+        }
+    }
+
+    private int compileLocked() throws IOException {
+        File stateFile = projectFile.getJavacStateFile();
+        String optionsKey = createOptionsKey();
+        Map<String, File> sources = listSources();
+        Map<String, String> hashes = new HashMap<>();
+        for (Map.Entry<String, File> entry : sources.entrySet()) {
+            hashes.put(entry.getKey(), hash(entry.getValue()));
+        }
+
+        CompileState state = CompileState.load(stateFile);
+        if (state == null || !optionsKey.equals(state.optionsKey)) {
+            return compileAll(sources, hashes, optionsKey);
+        }
+        Map<String, byte[]> classes = getClassesLocked();
+        if (classes == null) {
+            println("Classes of the last build are lost, compile all sources");
+            return compileAll(sources, hashes, optionsKey);
+        }
+
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, String> entry : hashes.entrySet()) {
+            if (!entry.getValue().equals(state.sourceHashes.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        Set<String> deleted = new HashSet<>(state.sourceClasses.keySet());
+        deleted.addAll(state.sourceHashes.keySet());
+        deleted.removeAll(sources.keySet());
+        if (changed.isEmpty() && deleted.isEmpty()) {
+            println("Java sources are up to date");
+            return Main.EXIT_OK;
+        }
+
+        Set<String> modifiedClasses = new HashSet<>();
+        for (String source : changed) {
+            modifiedClasses.addAll(state.getClasses(source));
+        }
+        for (String source : deleted) {
+            modifiedClasses.addAll(state.getClasses(source));
+        }
+        Set<String> toCompile = new HashSet<>(changed);
+        for (String dependent : state.findUsers(modifiedClasses)) {
+            if (sources.containsKey(dependent)) toCompile.add(dependent);
+        }
+        println("Incremental compile: " + changed.size() + " changed, " + deleted.size()
+                + " deleted, " + (toCompile.size() - changed.size()) + " dependent sources");
+        for (String source : deleted) {
+            classes.keySet().removeAll(state.getClasses(source));
+            state.removeSource(source);
+        }
+
+        Set<String> compiled = new HashSet<>();
+        while (true) {
+            Map<String, Long> oldAbi = new HashMap<>();
+            for (String source : toCompile) {
+                for (String className : state.getClasses(source)) {
+                    oldAbi.put(className, state.classAbi.get(className));
+                }
+                //remove stale outputs, a changed source may not generate the same inner classes again
+                classes.keySet().removeAll(state.getClasses(source));
+            }
+            int status = runJavac(sources, toCompile, classes);
+            if (status != Main.EXIT_OK) {
+                //keep the classes of the failed sources so that their dependents are found next time
+                for (String source : toCompile) {
+                    state.sourceHashes.remove(source);
+                }
+                saveState(state, classes);
+                return status;
+            }
+            for (String source : toCompile) {
+                state.removeSource(source);
+            }
+            Set<String> generated = collectClasses(state, sources, classes);
+            for (String source : toCompile) {
+                state.sourceHashes.put(source, hashes.get(source));
+            }
+            for (String source : generated) {
+                state.sourceHashes.put(source, hashes.get(source));
+            }
+            compiled.addAll(toCompile);
+
+            //the users of a class whose ABI changed or which is gone are compiled in another round
+            Set<String> abiChanged = new HashSet<>();
+            for (String source : toCompile) {
+                for (String className : state.getClasses(source)) {
+                    Long abi = oldAbi.remove(className);
+                    if (abi == null || !abi.equals(state.classAbi.get(className))) {
+                        abiChanged.add(className);
+                    }
+                }
+            }
+            abiChanged.addAll(oldAbi.keySet());
+            toCompile = new HashSet<>();
+            for (String user : state.findUsers(abiChanged)) {
+                if (!compiled.contains(user) && sources.containsKey(user)) toCompile.add(user);
+            }
+            if (toCompile.isEmpty()) {
+                break;
+            }
+            println("ABI of " + abiChanged.size() + " classes changed, compile "
+                    + toCompile.size() + " more dependent sources");
+        }
+        saveState(state, classes);
+        return Main.EXIT_OK;
+    }
+
+    private int compileAll(Map<String, File> sources, Map<String, String> hashes,
+                           String optionsKey) throws IOException {
+        Log.d(TAG, "compileAll() called");
+        println("Compile all " + sources.size() + " java files of " + projectFile.getDirSrcJava());
+        projectFile.getJavacStateFile().delete();
+        projectFile.getJavacClassesFile().delete();
+        //the class files of older builds
+        File dirClasses = projectFile.getDirBuildClasses();
+        Util.deleteRecursive(dirClasses);
+        dirClasses.mkdirs();
+        Map<String, byte[]> classes = new HashMap<>();
+        compiledClasses.set(classes);
+
+        int status = runJavac(sources, sources.keySet(), classes);
+        if (status != Main.EXIT_OK) {
+            return status;
+        }
+        CompileState state = new CompileState(optionsKey);
+        collectClasses(state, sources, classes);
+        state.sourceHashes.putAll(hashes);
+        saveState(state, classes);
+        return status;
+    }
+
+    /**
+     * @return the classes of the last build, read from the saved file if they are not in memory
+     */
+    @Nullable
+    private Map<String, byte[]> getClassesLocked() {
+        Map<String, byte[]> classes = compiledClasses.get();
+        if (classes != null) {
+            return classes;
+        }
+        classes = ClassesFile.load(projectFile.getJavacClassesFile());
+        if (classes != null) {
+            println("Read " + classes.size() + " classes of the last build");
+            compiledClasses.set(classes);
+        }
+        return classes;
+    }
+
+    /**
+     * The saved classes always belong to the saved state, they are removed before the state
+     * is written
+     */
+    private void saveState(CompileState state, Map<String, byte[]> classes) throws IOException {
+        File classesFile = projectFile.getJavacClassesFile();
+        classesFile.delete();
+        state.save(projectFile.getJavacStateFile());
+        ClassesFile.save(classesFile, classes);
+    }
+
+    private int runJavac(Map<String, File> sources, Set<String> toCompile,
+                         Map<String, byte[]> classes) {
+        constantUses = new ConstantUseListener(taskListener);
+        if (toCompile.isEmpty()) {
+            return Main.EXIT_OK;
+        }
+        List<String> options = new ArrayList<>();
+        options.add("-verbose");
+        //parse the sources on all cores, the trees are entered in the same order
+        options.add("-XDparallelParse");
+        options.add("-bootclasspath");
+        options.add(projectFile.getJavaBootClassPath());
+        try {
+            //built by the first compilation, the next ones read the platform classes from it
+            SignatureArchive.update(new File(projectFile.getJavaBootClassPath()));
+        } catch (IOException e) {
+            Log.w(TAG, "runJavac: can not create the signature archive", e);
+        }
+        List<File> classpath = new ArrayList<>();
+        for (String path : projectFile.getJavaClassPath().split(File.pathSeparator)) {
+            classpath.add(new File(path));
+        }
+        List<File> files = new ArrayList<>();
+        for (String source : toCompile) {
+            files.add(sources.get(source));
+        }
+        Log.d(TAG, "runJavac options = " + options + ", sources = " + files.size());
+        return JavacService.compile(options, classpath,
+                Collections.singletonList(projectFile.getDirSrcJava()),
+                projectFile.getDirBuildClasses(), classes, files, out, listener, constantUses);
+    }
+
+    /**
+     * Read the dependencies of all class files which are not in the state yet
+     *
+     * @return the sources which generated the new classes
+     */
+    private Set<String> collectClasses(CompileState state, Map<String, File> sources,
+                                       Map<String, byte[]> classes) throws IOException {
+        Set<String> result = new HashSet<>();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            String className = entry.getKey();
+            if (state.containsClass(className)) continue;
+
+            ClassDependencies dependencies = ClassDependencies.read(
+                    new DataInputStream(new ByteArrayInputStream(entry.getValue())));
+            Set<String> constants = constantUses.getConstantUses(className);
+            if (constants != null) dependencies.getReferences().addAll(constants);
+            String source = getSourcePath(dependencies);
+            if (!sources.containsKey(source)) {
+                //the package does not match the directory, such classes are not tracked
+                Log.w(TAG, "collectClasses: can not find source of " + className);
+                continue;
+            }
+            state.addClass(source, dependencies);
+            result.add(source);
+        }
+        //keep only the references to classes of this project
+        for (Set<String> references : state.classReferences.values()) {
+            references.retainAll(state.classReferences.keySet());
+        }
+        return result;
+    }
+
+    private String getSourcePath(ClassDependencies dependencies) {
+        String className = dependencies.getClassName();
+        String sourceFile = dependencies.getSourceFile();
+        int index = className.lastIndexOf('/');
+        String packagePath = index < 0 ? "" : className.substring(0, index + 1);
+        if (sourceFile == null) {
+            String simpleName = className.substring(index + 1);
+            if (simpleName.contains("$")) {
+                simpleName = simpleName.substring(0, simpleName.indexOf('$'));
+            }
+            sourceFile = simpleName + ".java";
+        }
+        return packagePath + sourceFile;
+    }
+
+    /**
+     * @return all java files of the project, keyed by the path relative to the source dir
+     */
+    private Map<String, File> listSources() {
+        ArrayList<File> files = new ArrayList<>();
+        File dirSrc = projectFile.getDirSrcJava();
+        listFiles(dirSrc, ".java", files);
+        Map<String, File> sources = new HashMap<>();
+        String root = dirSrc.getPath();
+        for (File file : files) {
+            String path = file.getPath().substring(root.length() + 1).replace(File.separatorChar, '/');
+            sources.put(path, file);
+        }
+        return sources;
+    }
+
+    private void listFiles(File dir, String extension, ArrayList<File> out) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listFiles(file, extension, out);
+            } else if (file.getName().endsWith(extension)) {
+                out.add(file);
+            }
+        }
+    }
+
+    /**
+     * The boot classpath and the classpath, a jar which is replaced at the same path changes the
+     * key by its size and modified time
+     */
+    private String createOptionsKey() {
+        StringBuilder key = new StringBuilder();
+        appendPath(key, projectFile.getJavaBootClassPath());
+        String[] classpath = projectFile.getJavaClassPath().split(File.pathSeparator);
+        Arrays.sort(classpath);
+        for (String path : classpath) {
+            key.append(File.pathSeparator);
+            appendPath(key, path);
+        }
+        return key.toString();
+    }
+
+    private static void appendPath(StringBuilder key, String path) {
+        File file = new File(path);
+        key.append(path);
+        if (file.isFile()) {
+            key.append('@').append(file.length()).append('@').append(file.lastModified());
+        }
+    }
+
+    private String hash(File file) throws IOException {
+        try {
+            return Util.getMD5Checksum(file);
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void println(String message) {
+        Log.d(TAG, message);
+        if (out != null) {
+            out.println(message);
+            out.flush();
+        }
+    }
+}
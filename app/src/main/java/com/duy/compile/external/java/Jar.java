@@ -12,6 +12,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
@@ -50,6 +54,12 @@ public class Jar {
     }
 
     public static void createJarArchive(JavaProjectFolder projectFolder) throws IOException {
+        //the classes of the last compilation, they are not written to the build dir
+        Map<String, byte[]> classes = IncrementalJavaCompiler.getClasses(projectFolder);
+        if (classes != null) {
+            createJarArchive(projectFolder.getOutJarArchive(), classes);
+            return;
+        }
         //input file
         File dirBuildClasses = projectFolder.getDirBuildClasses();
         File archiveFile = projectFolder.getOutJarArchive();
@@ -75,6 +85,34 @@ public class Jar {
         System.out.println("Adding completed OK");
     }
 
+    /**
+     * @param classes internal class name -> class file
+     */
+    public static void createJarArchive(File archiveFile, Map<String, byte[]> classes) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(archiveFile), manifest);
+        try {
+            Set<String> directories = new HashSet<>();
+            //sorted so that the entries of a package are together
+            for (Map.Entry<String, byte[]> entry : new TreeMap<>(classes).entrySet()) {
+                String name = entry.getKey();
+                for (int i = name.indexOf('/'); i >= 0; i = name.indexOf('/', i + 1)) {
+                    String directory = name.substring(0, i + 1);
+                    if (directories.add(directory)) {
+                        out.putNextEntry(new JarEntry(directory));
+                        out.closeEntry();
+                    }
+                }
+                out.putNextEntry(new JarEntry(name + ".class"));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
     private static void addzz(String parentPath, File source, JarOutputStream target) throws IOException {
         String name = source.getPath().substring(parentPath.length() + 1);
         System.out.println("Adding file : " + name);
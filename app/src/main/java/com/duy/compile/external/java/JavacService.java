@@ -0,0 +1,633 @@
+package com.duy.compile.external.java;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.sun.source.util.TaskListener;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symbol.PackageSymbol;
+import com.sun.tools.javac.code.Symtab;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.Types;
+import com.sun.tools.javac.comp.Check;
+import com.sun.tools.javac.comp.Enter;
+import com.sun.tools.javac.comp.Todo;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.file.SignatureArchive;
+import com.sun.tools.javac.jvm.ClassReader;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.main.Main;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Options;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * Keeps one javac context alive between compilations.
+ * <p>
+ * Reading the classes of the boot classpath is the most expensive part of a small compilation.
+ * The warm context keeps the symbol table, the class reader, the name table and the opened
+ * archives. After each compilation only the state of that compilation is reset: the symbols
+ * which were not read from the boot classpath or a library jar are removed, the packages which
+ * contained them are listed again next time and the log and the compiler phases are cleared.
+ * <p>
+ * A new context is created when the options or the boot classpath change, after
+ * {@link #MAX_COMPILATIONS} compilations because the name table only grows, and after the
+ * compiler crashed.
+ * <p>
+ * The completion and the error check of the editor share a second warm context, see
+ * {@link #runInEditorContext}. It only parses, enters and attributes, so it is kept apart from
+ * the one of the builds.
+ */
+public class JavacService {
+    private static final String TAG = "JavacService";
+    private static final int MAX_COMPILATIONS = 50;
+    /**
+     * The tasks of the editor are small and frequent, the context is kept for more of them
+     */
+    private static final int MAX_EDITOR_TASKS = 200;
+
+    private static final ReentrantLock sLock = new ReentrantLock();
+    private static volatile boolean sTrimRequested;
+
+    private static final RedirectWriter sRedirect = new RedirectWriter();
+    /**
+     * Log.outKey of the warm context, the same writer must be given to every compilation
+     */
+    private static final PrintWriter sOut = new PrintWriter(sRedirect, true);
+
+    @Nullable
+    private static Context sContext;
+    private static String sOptionsKey;
+    private static String sPlatformKey;
+    private static String sClasspathKey;
+    private static int sCompilations;
+    /**
+     * Symbols which are read from the boot classpath or a library jar, they survive a reset
+     */
+    private static final Set<ClassSymbol> sKept =
+            Collections.newSetFromMap(new IdentityHashMap<ClassSymbol, Boolean>());
+
+    private static final Object sEditorLock = new Object();
+    @Nullable
+    private static Context sEditorContext;
+    private static String sEditorKey;
+    private static int sEditorTasks;
+    /**
+     * The owner of the tasks whose sources are still entered, see {@link #runInEditorContext}
+     */
+    @Nullable
+    private static Object sEditorOwner;
+    private static final Set<ClassSymbol> sEditorKept =
+            Collections.newSetFromMap(new IdentityHashMap<ClassSymbol, Boolean>());
+
+    /**
+     * Compile the sources in the warm context
+     *
+     * @param options    javac options without paths and sources, e.g. -verbose
+     * @param classpath  library jars and class directories
+     * @param sourcepath directories searched for sources of the referenced classes
+     * @param outputDir  directory of the generated class files
+     * @param sources    java files to compile
+     * @param taskListener receives the javac phases, may be null
+     * @return exit code of javac, see {@link Main#EXIT_OK}
+     */
+    public static int compile(@NonNull List<String> options, @NonNull List<File> classpath,
+                              @NonNull List<File> sourcepath, @NonNull File outputDir,
+                              @NonNull Collection<File> sources, @Nullable PrintWriter out,
+                              @Nullable DiagnosticListener<? super JavaFileObject> listener,
+                              @Nullable TaskListener taskListener) {
+        return compile(options, classpath, sourcepath, outputDir, null, sources, out, listener,
+                taskListener);
+    }
+
+    /**
+     * Compile the sources in the warm context
+     *
+     * @param classes the generated classes are put in this map instead of the output directory,
+     *                the classes already in it are read like the classes of the class path,
+     *                see {@link MemoryJavaFileManager}
+     */
+    public static int compile(@NonNull List<String> options, @NonNull List<File> classpath,
+                              @NonNull List<File> sourcepath, @NonNull File outputDir,
+                              @Nullable Map<String, byte[]> classes,
+                              @NonNull Collection<File> sources, @Nullable PrintWriter out,
+                              @Nullable DiagnosticListener<? super JavaFileObject> listener,
+                              @Nullable TaskListener taskListener) {
+        sLock.lock();
+        try {
+            return compileLocked(options, classpath, sourcepath, outputDir, classes, sources, out,
+                    listener, taskListener);
+        } finally {
+            if (sTrimRequested) release();
+            sLock.unlock();
+        }
+    }
+
+    /**
+     * Drop the warm context when the system is low on memory. A running compilation is not
+     * waited for, the context is dropped when it finishes.
+     */
+    public static void trimMemory() {
+        sTrimRequested = true;
+        if (sLock.tryLock()) {
+            try {
+                release();
+            } finally {
+                sLock.unlock();
+            }
+        }
+        releaseEditorContext();
+    }
+
+    /**
+     * Run a task of the editor in its warm context, e.g. a completion or an error check. The
+     * task parses and enters the edited file itself, the other sources are entered from the
+     * source path when they are referenced. After the task the queue of the classes to
+     * attribute is cleared and only the symbols of the boot classpath and the libraries are
+     * kept. The diagnostics are expected for broken code, nothing is printed.
+     *
+     * @param listener receives the diagnostics of the task
+     * @return the result of the task, null if javac crashed
+     */
+    @Nullable
+    public static <T> T runInEditorContext(@NonNull File bootClasspath, @NonNull List<File> classpath,
+                                           @NonNull File sourcepath,
+                                           @NonNull DiagnosticListener<? super JavaFileObject> listener,
+                                           @NonNull EditorTask<T> task) {
+        return runInEditorContext(null, bootClasspath, classpath, sourcepath, listener, task);
+    }
+
+    /**
+     * Like {@link #runInEditorContext(File, List, File, DiagnosticListener, EditorTask)}, but the
+     * sources which the task entered stay entered until a task of another owner runs or
+     * {@link #dropEditorSources()} is called, so the next task of the same owner can reuse them
+     *
+     * @param owner the owner of the task, null if the sources are dropped after the task
+     */
+    @Nullable
+    public static <T> T runInEditorContext(@Nullable Object owner, @NonNull File bootClasspath,
+                                           @NonNull List<File> classpath, @NonNull File sourcepath,
+                                           @NonNull DiagnosticListener<? super JavaFileObject> listener,
+                                           @NonNull EditorTask<T> task) {
+        synchronized (sEditorLock) {
+            try {
+                prepareEditorContext(bootClasspath, classpath, sourcepath, listener);
+                boolean sourcesKept = owner != null && owner == sEditorOwner;
+                if (!sourcesKept) dropEditorSources();
+                T result = task.run(sEditorContext, sourcesKept);
+                sEditorOwner = owner;
+                return result;
+            } catch (IOException e) {
+                Log.e(TAG, "runInEditorContext: ", e);
+                releaseEditorContext();
+                return null;
+            } catch (RuntimeException | AssertionError e) {
+                //javac does not expect the broken code of an editor everywhere
+                Log.e(TAG, "runInEditorContext: ", e);
+                releaseEditorContext();
+                return null;
+            } finally {
+                if (sEditorOwner == null) newEditorRound();
+            }
+        }
+    }
+
+    /**
+     * Drop the sources which a task of the editor kept entered, called by a task which can not
+     * reuse them
+     */
+    public static void dropEditorSources() {
+        synchronized (sEditorLock) {
+            if (sEditorOwner != null) {
+                sEditorOwner = null;
+                newEditorRound();
+            }
+        }
+    }
+
+    /**
+     * Drop the warm context of the editor, the next task creates a new one
+     */
+    public static void releaseEditorContext() {
+        synchronized (sEditorLock) {
+            if (sEditorContext != null) {
+                JavaFileManager fileManager = sEditorContext.get(JavaFileManager.class);
+                try {
+                    if (fileManager != null) fileManager.close();
+                } catch (IOException ignored) {
+                }
+            }
+            sEditorContext = null;
+            sEditorKey = null;
+            sEditorTasks = 0;
+            sEditorOwner = null;
+            sEditorKept.clear();
+        }
+    }
+
+    private static void prepareEditorContext(File bootClasspath, List<File> classpath, File sourcepath,
+                                             DiagnosticListener<? super JavaFileObject> listener)
+            throws IOException {
+        String key = createKey(Collections.singletonList(bootClasspath)) + createKey(classpath)
+                + sourcepath.getPath();
+        if (sEditorContext != null && key.equals(sEditorKey) && sEditorTasks < MAX_EDITOR_TASKS) {
+            sEditorTasks++;
+            com.sun.tools.javac.util.Log.instance(sEditorContext).setDiagnosticListener(listener);
+            return;
+        }
+
+        releaseEditorContext();
+        Context context = new Context();
+        JavacFileManager.preRegister(context);
+        Options options = Options.instance(context);
+        //the archives are shared with the compiler, mapped archives are read without locking
+        options.put("mmappedIO", "mmappedIO");
+        options.put("signatureArchive", "signatureArchive");
+        //an error check stops after the attribution, the trees with errors are attributed too
+        options.put("shouldStopPolicy", "ATTR");
+        //a redirect without target prints nothing
+        context.put(com.sun.tools.javac.util.Log.outKey, new PrintWriter(new RedirectWriter()));
+        context.put(DiagnosticListener.class, listener);
+        JavacFileManager fileManager = (JavacFileManager) context.get(JavaFileManager.class);
+        fileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH,
+                Collections.singletonList(bootClasspath));
+        fileManager.setLocation(StandardLocation.CLASS_PATH, classpath);
+        fileManager.setLocation(StandardLocation.SOURCE_PATH, Collections.singletonList(sourcepath));
+        sEditorContext = context;
+        sEditorKey = key;
+        sEditorTasks = 1;
+    }
+
+    /**
+     * Drop the symbols of the sources, the state of the compiler and the queue of the classes
+     * to attribute
+     */
+    private static void newEditorRound() {
+        if (sEditorContext == null) return;
+        try {
+            Todo todo = Todo.instance(sEditorContext);
+            while (todo.poll() != null) {
+                //the classes which the task did not attribute are not needed
+            }
+            newRound(sEditorContext, sEditorKept);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "newEditorRound: can not reset context", e);
+            releaseEditorContext();
+        }
+    }
+
+    private static int compileLocked(List<String> options, List<File> classpath, List<File> sourcepath,
+                                     File outputDir, @Nullable Map<String, byte[]> classes,
+                                     Collection<File> sources, @Nullable PrintWriter out,
+                                     @Nullable DiagnosticListener<? super JavaFileObject> listener,
+                                     @Nullable TaskListener taskListener) {
+        String optionsKey = options.toString();
+        String classpathKey = createKey(classpath);
+        boolean warm = sContext != null && optionsKey.equals(sOptionsKey)
+                && sCompilations < MAX_COMPILATIONS && prepareWarmContext(classpathKey);
+        if (!warm) {
+            release();
+            sContext = new Context();
+            sOptionsKey = optionsKey;
+            sPlatformKey = null;
+            //the file manager is created when javac has read the options
+            MemoryJavaFileManager.preRegister(sContext, classes);
+            sContext.put(com.sun.tools.javac.util.Log.outKey, sOut);
+            if (listener != null) {
+                sContext.put(DiagnosticListener.class, listener);
+            }
+        } else {
+            com.sun.tools.javac.util.Log.instance(sContext).setDiagnosticListener(listener);
+        }
+        sClasspathKey = classpathKey;
+        //read by the compiler which is created for each compilation
+        sContext.drop(TaskListener.class);
+        if (taskListener != null) {
+            sContext.put(TaskListener.class, taskListener);
+        }
+        ReusableCompiler.preRegister(sContext);
+        sRedirect.target = out != null ? out : new PrintWriter(System.err);
+        Log.d(TAG, "compile: " + (warm ? "warm" : "new") + " context, " + sources.size() + " sources");
+
+        List<String> args = new ArrayList<>(options);
+        //the cached file states of batch mode would be stale in the next compilation
+        args.add("-XDnonBatchMode");
+        //the boot class path is mapped once and read without locking
+        args.add("-XDmmappedIO");
+        //the boot class path is read from its signature archive when it is up to date
+        args.add("-XDsignatureArchive");
+        args.add("-cp");
+        args.add(joinPath(classpath));
+        args.add("-sourcepath");
+        args.add(joinPath(sourcepath));
+        args.add("-d");
+        args.add(outputDir.getPath());
+        for (File source : sources) {
+            args.add(source.getPath());
+        }
+
+        int status = Main.EXIT_ABNORMAL;
+        try {
+            if (warm) {
+                //the paths of the options are only read once by the file manager
+                JavaFileManager fileManager = sContext.get(JavaFileManager.class);
+                if (fileManager instanceof MemoryJavaFileManager) {
+                    ((MemoryJavaFileManager) fileManager).setClasses(classes);
+                }
+                if (fileManager instanceof StandardJavaFileManager) {
+                    StandardJavaFileManager standardFileManager = (StandardJavaFileManager) fileManager;
+                    standardFileManager.setLocation(StandardLocation.CLASS_PATH, classpath);
+                    standardFileManager.setLocation(StandardLocation.SOURCE_PATH, sourcepath);
+                    standardFileManager.setLocation(StandardLocation.CLASS_OUTPUT,
+                            Collections.singletonList(outputDir));
+                }
+            }
+            Main main = new Main("javac", sOut);
+            status = main.compile(args.toArray(new String[args.size()]), sContext);
+        } catch (IOException e) {
+            sOut.println(e.getMessage());
+            status = Main.EXIT_SYSERR;
+        } finally {
+            sOut.flush();
+            sRedirect.target = null;
+            sCompilations++;
+            if (sContext != null) {
+                JavaFileManager fileManager = sContext.get(JavaFileManager.class);
+                //the map belongs to the caller
+                if (fileManager instanceof MemoryJavaFileManager) {
+                    ((MemoryJavaFileManager) fileManager).setClasses(null);
+                }
+            }
+            if (status == Main.EXIT_OK || status == Main.EXIT_ERROR) {
+                try {
+                    newRound();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "compile: can not reset context", e);
+                    release();
+                }
+            } else {
+                //the compiler crashed or did not start, its state is unknown
+                release();
+            }
+        }
+        return status;
+    }
+
+    private static void release() {
+        sTrimRequested = false;
+        if (sContext != null) {
+            JavaFileManager fileManager = sContext.get(JavaFileManager.class);
+            try {
+                if (fileManager != null) fileManager.close();
+            } catch (IOException ignored) {
+            }
+        }
+        sContext = null;
+        sOptionsKey = null;
+        sCompilations = 0;
+        sKept.clear();
+    }
+
+    /**
+     * @return false if the warm context can not be used
+     */
+    private static boolean prepareWarmContext(String classpathKey) {
+        StandardJavaFileManager fileManager = (StandardJavaFileManager) sContext.get(JavaFileManager.class);
+        Iterable<? extends File> platform = fileManager.getLocation(StandardLocation.PLATFORM_CLASS_PATH);
+        if (!createKey(platform).equals(sPlatformKey)) {
+            return false;
+        }
+        if (!classpathKey.equals(sClasspathKey)) {
+            //a library was added, removed or replaced, read the libraries again
+            try {
+                fileManager.close();
+            } catch (IOException e) {
+                return false;
+            }
+            sKept.clear();
+            purge(sContext, sKept, platform);
+        }
+        return true;
+    }
+
+    /**
+     * Reset the state of the last compilation, only the symbols of the boot classpath and the
+     * library jars are kept
+     */
+    private static void newRound() {
+        StandardJavaFileManager fileManager = (StandardJavaFileManager) sContext.get(JavaFileManager.class);
+        if (sPlatformKey == null) {
+            sPlatformKey = createKey(fileManager.getLocation(StandardLocation.PLATFORM_CLASS_PATH));
+        }
+        newRound(sContext, sKept);
+    }
+
+    /**
+     * Reset the state of the last compilation of a warm context, only the symbols of the boot
+     * classpath and the library jars are kept
+     *
+     * @param kept symbols which survived the previous rounds of this context
+     */
+    public static void newRound(@NonNull Context context, @NonNull Set<ClassSymbol> kept) {
+        StandardJavaFileManager fileManager = (StandardJavaFileManager) context.get(JavaFileManager.class);
+        List<File> stable = new ArrayList<>();
+        for (File file : fileManager.getLocation(StandardLocation.PLATFORM_CLASS_PATH)) {
+            stable.add(file);
+            //the classes may be read from the signature archive of the jar
+            File archive = SignatureArchive.getArchiveFile(file);
+            if (archive.isFile()) stable.add(archive);
+        }
+        Iterable<? extends File> classpath = fileManager.getLocation(StandardLocation.CLASS_PATH);
+        if (classpath != null) {
+            for (File file : classpath) {
+                //class directories change with every build
+                if (file.isFile()) stable.add(file);
+            }
+        }
+        purge(context, kept, stable);
+
+        com.sun.tools.javac.util.Log.instance(context).clear();
+        Check.instance(context).newRound();
+        Enter.instance(context).newRound();
+        Types.instance(context).newRound();
+    }
+
+    /**
+     * Remove all class symbols which were not read from the given archives or directories
+     */
+    private static void purge(Context context, Set<ClassSymbol> kept, Iterable<? extends File> stable) {
+        Symtab syms = Symtab.instance(context);
+        ClassReader reader = ClassReader.instance(context);
+        if (kept.isEmpty()) {
+            keepPredefined(syms, kept);
+        }
+        List<String> prefixes = new ArrayList<>();
+        for (File file : stable) {
+            String uri = file.toURI().normalize().toString();
+            prefixes.add(file.isFile() ? "jar:" + uri + "!" : uri);
+        }
+
+        int removed = 0;
+        for (Iterator<ClassSymbol> iterator = syms.classes.values().iterator(); iterator.hasNext(); ) {
+            ClassSymbol c = iterator.next();
+            if (kept.contains(c)) continue;
+            if (c.classfile != null && c.sourcefile == null && startsWith(c.classfile, prefixes)) {
+                kept.add(c);
+            } else {
+                iterator.remove();
+                removed++;
+            }
+        }
+
+        //list a package again if it contained a removed class or nothing at all
+        int reset = 0;
+        for (PackageSymbol p : syms.packages.values()) {
+            if (p.members_field == null) continue;
+            boolean stablePackage = false;
+            for (Symbol member : p.members_field.getElements()) {
+                stablePackage = member instanceof ClassSymbol && kept.contains(member);
+                if (!stablePackage) break;
+            }
+            if (!stablePackage) {
+                p.members_field = null;
+                p.package_info = null;
+                p.flags_field &= ~Flags.EXISTS;
+                p.completer = reader;
+                reset++;
+            }
+        }
+        Log.d(TAG, "purge: " + kept.size() + " classes kept, " + removed + " removed, "
+                + reset + " packages reset");
+    }
+
+    /**
+     * The predefined types of the symbol table must survive even if they are not read from
+     * the boot classpath, e.g. synthesized when missing
+     */
+    private static void keepPredefined(Symtab syms, Set<ClassSymbol> kept) {
+        kept.add(syms.predefClass);
+        for (Field field : Symtab.class.getFields()) {
+            if (!Type.class.isAssignableFrom(field.getType())) continue;
+            try {
+                Type type = (Type) field.get(syms);
+                if (type != null && type.tsym instanceof ClassSymbol) {
+                    kept.add((ClassSymbol) type.tsym);
+                }
+            } catch (IllegalAccessException ignored) {
+            }
+        }
+    }
+
+    private static boolean startsWith(JavaFileObject file, List<String> prefixes) {
+        String uri = file.toUri().toString();
+        for (String prefix : prefixes) {
+            if (uri.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return paths with size and modified time, changes when a jar is replaced
+     */
+    private static String createKey(Iterable<? extends File> files) {
+        StringBuilder key = new StringBuilder();
+        for (File file : files) {
+            key.append(file.getPath()).append('@').append(file.length())
+                    .append('@').append(file.lastModified()).append(File.pathSeparatorChar);
+        }
+        return key.toString();
+    }
+
+    private static String joinPath(List<File> files) {
+        StringBuilder path = new StringBuilder();
+        for (File file : files) {
+            if (path.length() > 0) path.append(File.pathSeparatorChar);
+            path.append(file.getPath());
+        }
+        return path.toString();
+    }
+
+    /**
+     * A task which runs in the warm context of the editor
+     */
+    public interface EditorTask<T> {
+        /**
+         * @param sourcesKept true if the sources which the last task of the same owner entered
+         *                    are still entered
+         * @return the result of {@link #runInEditorContext}
+         */
+        @Nullable
+        T run(@NonNull Context context, boolean sourcesKept) throws IOException;
+    }
+
+    /**
+     * A compiler which does not dispose the name table when it is closed
+     */
+    private static class ReusableCompiler extends JavaCompiler {
+        ReusableCompiler(Context context) {
+            super(context);
+        }
+
+        static void preRegister(Context context) {
+            context.drop(compilerKey);
+            context.put(compilerKey, new Context.Factory<JavaCompiler>() {
+                @Override
+                public JavaCompiler make(Context c) {
+                    return new ReusableCompiler(c);
+                }
+            });
+        }
+
+        @Override
+        public void close() {
+            close(false);
+        }
+    }
+
+    /**
+     * The log of the warm context keeps its writer, the output of each compilation is
+     * redirected to the writer of the caller
+     */
+    private static class RedirectWriter extends Writer {
+        @Nullable
+        Writer target;
+
+        @Override
+        public void write(@NonNull char[] buffer, int offset, int count) throws IOException {
+            if (target != null) target.write(buffer, offset, count);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (target != null) target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
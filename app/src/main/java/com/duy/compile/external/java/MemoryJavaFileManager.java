@@ -0,0 +1,202 @@
+package com.duy.compile.external.java;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.sun.tools.javac.api.WrappingJavaFileManager;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.util.Context;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.FileObject;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * Keeps the class files written by javac in memory instead of the output directory.
+ * <p>
+ * The classes are put in the map given by {@link #setClasses(Map)}, keyed by internal name
+ * (e.g. "p/Main$1"). The classes already in the map are listed after the class path, in the
+ * place of the output directory, so the classes of the sources which are not compiled again
+ * are read from memory. Without a map the classes are written by the wrapped file manager.
+ */
+public class MemoryJavaFileManager extends WrappingJavaFileManager<StandardJavaFileManager>
+        implements StandardJavaFileManager {
+    @Nullable
+    private Map<String, byte[]> classes;
+
+    public MemoryJavaFileManager(@NonNull StandardJavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    /**
+     * Register a factory which wraps a {@link JavacFileManager}, like
+     * {@link JavacFileManager#preRegister(Context)}
+     *
+     * @param classes see {@link #setClasses(Map)}
+     */
+    public static void preRegister(Context context, @Nullable final Map<String, byte[]> classes) {
+        context.put(JavaFileManager.class, new Context.Factory<JavaFileManager>() {
+            @Override
+            public JavaFileManager make(Context c) {
+                MemoryJavaFileManager fileManager =
+                        new MemoryJavaFileManager(new JavacFileManager(c, false, null));
+                fileManager.setClasses(classes);
+                c.put(JavaFileManager.class, fileManager);
+                return fileManager;
+            }
+        });
+    }
+
+    /**
+     * @param classes output of the next compilations and classes of the previous ones, null to
+     *                write the classes to the output directory
+     */
+    public void setClasses(@Nullable Map<String, byte[]> classes) {
+        this.classes = classes;
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(Location location, String packageName,
+                                         Set<JavaFileObject.Kind> kinds, boolean recurse)
+            throws IOException {
+        Iterable<JavaFileObject> files = super.list(location, packageName, kinds, recurse);
+        Map<String, byte[]> classes = this.classes;
+        if (classes == null || location != StandardLocation.CLASS_PATH
+                || !kinds.contains(JavaFileObject.Kind.CLASS)) {
+            return files;
+        }
+        List<JavaFileObject> result = new ArrayList<>();
+        for (JavaFileObject file : files) {
+            result.add(file);
+        }
+        String prefix = packageName.isEmpty() ? "" : packageName.replace('.', '/') + '/';
+        for (String className : classes.keySet()) {
+            if (!className.startsWith(prefix)) continue;
+            if (recurse || className.indexOf('/', prefix.length()) < 0) {
+                result.add(new MemoryClassFile(className));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String inferBinaryName(Location location, JavaFileObject file) {
+        if (file instanceof MemoryClassFile) {
+            return ((MemoryClassFile) file).className.replace('/', '.');
+        }
+        return super.inferBinaryName(location, file);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                               JavaFileObject.Kind kind, FileObject sibling)
+            throws IOException {
+        if (classes != null && location == StandardLocation.CLASS_OUTPUT
+                && kind == JavaFileObject.Kind.CLASS) {
+            return new MemoryClassFile(className.replace('.', '/'));
+        }
+        return super.getJavaFileForOutput(location, className, kind, sibling);
+    }
+
+    @Override
+    public Iterable<? extends JavaFileObject> getJavaFileObjectsFromFiles(Iterable<? extends File> files) {
+        return fileManager.getJavaFileObjectsFromFiles(files);
+    }
+
+    @Override
+    public Iterable<? extends JavaFileObject> getJavaFileObjects(File... files) {
+        return fileManager.getJavaFileObjects(files);
+    }
+
+    @Override
+    public Iterable<? extends JavaFileObject> getJavaFileObjectsFromStrings(Iterable<String> names) {
+        return fileManager.getJavaFileObjectsFromStrings(names);
+    }
+
+    @Override
+    public Iterable<? extends JavaFileObject> getJavaFileObjects(String... names) {
+        return fileManager.getJavaFileObjects(names);
+    }
+
+    @Override
+    public void setLocation(Location location, Iterable<? extends File> path) throws IOException {
+        fileManager.setLocation(location, path);
+    }
+
+    @Override
+    public Iterable<? extends File> getLocation(Location location) {
+        return fileManager.getLocation(location);
+    }
+
+    /**
+     * A class file of the map, its bytes are looked up when javac reads it
+     */
+    private class MemoryClassFile extends SimpleJavaFileObject {
+        private final String className;
+        /**
+         * Newer than the sources, the classes of the changed sources are removed from the map
+         * before they are compiled again
+         */
+        private final long lastModified = System.currentTimeMillis();
+
+        MemoryClassFile(String className) {
+            super(classUri(className), Kind.CLASS);
+            this.className = className;
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            byte[] bytes = classes != null ? classes.get(className) : null;
+            if (bytes == null) {
+                throw new IOException("Class not found in memory " + className);
+            }
+            return new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    if (classes == null) throw new IOException("No output for " + className);
+                    classes.put(className, toByteArray());
+                }
+            };
+        }
+
+        @Override
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public boolean delete() {
+            return classes != null && classes.remove(className) != null;
+        }
+    }
+
+    private static URI classUri(String className) {
+        try {
+            return new URI("mem", null, "/" + className + ".class", null);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(className, e);
+        }
+    }
+}
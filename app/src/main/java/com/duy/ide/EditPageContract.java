@@ -1,6 +1,9 @@
 package com.duy.ide;
 
 import java.io.File;
+import java.util.List;
+
+import javax.tools.Diagnostic;
 
 /**
  * Created by duy on 19/07/2017.
@@ -32,6 +35,11 @@ public class EditPageContract {
 
         void setCursorPosition(int endPosition);
 
+        /**
+         * Mark the errors of the background check
+         */
+        void showDiagnostics(List<Diagnostic> diagnostics);
+
         File getCurrentFile();
     }
 
@@ -16,8 +16,11 @@
 
 package com.duy.ide;
 
+import android.support.annotation.NonNull;
 import android.view.View;
 
+import java.io.File;
+
 public interface EditorControl {
     void saveAs();
 
@@ -46,4 +49,14 @@ public interface EditorControl {
     void selectThemeFont();
 
     void runFile(String tag);
+
+    /**
+     * Check the edited text of a java file in the background, a newer call cancels the check
+     */
+    void checkCode(@NonNull File file, @NonNull CharSequence text);
+
+    /**
+     * The file was edited, saved, created or deleted
+     */
+    void onFileChanged(@NonNull File file);
 }
@@ -80,6 +80,9 @@ public class MenuEditor {
             case R.id.action_find:
                 activity.showDialogFind();
                 break;
+            case R.id.action_find_in_project:
+                activity.showDialogFindInProject();
+                break;
             case R.id.action_find_and_replace:
                 if (listener != null) listener.findAndReplace();
                 break;
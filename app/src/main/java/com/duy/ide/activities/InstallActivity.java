@@ -26,6 +26,7 @@ import com.google.firebase.storage.FileDownloadTask;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.OnProgressListener;
 import com.google.firebase.storage.StorageReference;
+import com.sun.tools.javac.file.SignatureArchive;
 
 import org.apache.commons.io.IOUtils;
 
@@ -236,6 +237,13 @@ public class InstallActivity extends AbstractAppCompatActivity implements View.O
                 File outputDir = new File(context.getFilesDir(), "system" + File.separator + "classes");
                 unzipArchive(download, outputDir);
                 download.delete();
+                try {
+                    //the compiler reads the signatures of the platform classes from these archives
+                    SignatureArchive.updateAll(outputDir);
+                } catch (IOException e) {
+                    //the jars are used instead
+                    e.printStackTrace();
+                }
 //                File tmp = new File(home, "tmp");
 //                if (!tmp.exists()) tmp.mkdirs();
 //
@@ -1,6 +1,7 @@
 package com.duy.ide.autocomplete;
 
 import android.content.Context;
+import android.support.annotation.Nullable;
 import android.util.Log;
 import android.widget.EditText;
 
@@ -9,6 +10,7 @@ import com.duy.ide.autocomplete.autocomplete.PackageImporter;
 import com.duy.ide.autocomplete.autocomplete.PatternFactory;
 import com.duy.ide.autocomplete.dex.JavaClassReader;
 import com.duy.ide.autocomplete.dex.JavaDexClassLoader;
+import com.duy.ide.autocomplete.javac.JavacCompletionEngine;
 import com.duy.ide.autocomplete.model.ClassDescription;
 import com.duy.ide.autocomplete.model.ConstructorDescription;
 import com.duy.ide.autocomplete.model.Description;
@@ -30,17 +32,21 @@ import static com.duy.ide.autocomplete.dex.JavaClassManager.determineClassName;
 public class AutoCompleteProvider {
     private static final String TAG = "AutoCompleteProvider";
     private JavaDexClassLoader mClassLoader;
-    private Class preReturnType;
+    @Nullable
+    private JavacCompletionEngine mCompletionEngine;
+    private String preReturnType;
     private PackageImporter packageImporter;
     private AutoCompletePackage completePackage;
 
     public AutoCompleteProvider(Context context) {
-        File outDir = context.getDir("dex", Context.MODE_PRIVATE);
-        mClassLoader = new JavaDexClassLoader(FileManager.getClasspathFile(context), outDir);
+        mClassLoader = new JavaDexClassLoader(FileManager.getClasspathFile(context),
+                new File(context.getFilesDir(), "symbols"));
     }
 
     public void load(JavaProjectFolder projectFile) {
         mClassLoader.loadAllClasses(true, projectFile);
+        if (mCompletionEngine != null) mCompletionEngine.dispose();
+        mCompletionEngine = new JavacCompletionEngine(projectFile);
     }
 
     public boolean isLoaded() {
@@ -48,7 +54,10 @@ public class AutoCompleteProvider {
     }
 
 
-    public ArrayList<Description> getSuggestions(EditText editor, int position) {
+    /**
+     * @param text snapshot of the text of the editor, taken on the main thread
+     */
+    public ArrayList<Description> getSuggestions(EditText editor, CharSequence text, int position) {
         // text: 'package.Class.me', prefix: 'package.Class', suffix: 'me'
         // text: 'package.Cla', prefix: 'package', suffix: 'Cla'
         // text: 'Cla', prefix: '', suffix: 'Cla'
@@ -65,6 +74,15 @@ public class AutoCompleteProvider {
         }
         Log.d(TAG, "getSuggestions suffix = " + suffix + " prefix = " + prefix + " current = " + current
                 + " preWord = " + preWord);
+        JavacCompletionEngine completionEngine = mCompletionEngine;
+        if (!prefix.isEmpty() && completionEngine != null) {
+            //members of the type which javac attributes for the receiver
+            ArrayList<Description> members = completionEngine.complete(text.toString(),
+                    position - suffix.length() - 1, suffix);
+            if (members != null) {
+                return members;
+            }
+        }
         boolean couldBeClass = suffix.matches(PatternFactory.IDENTIFIER.toString());
 
         ArrayList<Description> result = null;
@@ -144,15 +162,17 @@ public class AutoCompleteProvider {
 //            if (!suggestion.getSnippet().contains(".")) {
             PackageImporter.importClass(editText, ((ClassDescription) suggestion).getClassName());
 //            }/
+            mClassLoader.touchClass(((ClassDescription) suggestion).getClassName());
         } else if (suggestion instanceof ConstructorDescription) {
             PackageImporter.importClass(editText, suggestion.getName());
+            mClassLoader.touchClass(suggestion.getName());
         } else if (suggestion instanceof Member) {
             this.preReturnType = suggestion.getType();
         }
-//        mClassLoader.touchClass(suggestion.getDescription());
     }
 
     public void dispose() {
         mClassLoader.getClassReader().dispose();
+        if (mCompletionEngine != null) mCompletionEngine.dispose();
     }
 }
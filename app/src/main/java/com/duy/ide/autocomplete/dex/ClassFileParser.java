@@ -0,0 +1,221 @@
+package com.duy.ide.autocomplete.dex;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the names and types of a class file without loading the class.
+ * <p>
+ * Only the constant pool, the class header and the field and method tables are read, the
+ * attributes (code, annotations...) are skipped.
+ */
+public class ClassFileParser {
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_BRIDGE = 0x0040;
+    public static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    @NonNull
+    public static ClassInfo parse(byte[] classBytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classBytes));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); //minor version
+        in.readUnsignedShort(); //major version
+
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classNames = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classNames[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.skipBytes(2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.skipBytes(3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELD_REF:
+                case CONSTANT_METHOD_REF:
+                case CONSTANT_INTERFACE_METHOD_REF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.skipBytes(4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.skipBytes(8);
+                    i++; //takes two entries
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        ClassInfo info = new ClassInfo();
+        info.accessFlags = in.readUnsignedShort();
+        info.name = toClassName(utf8[classNames[in.readUnsignedShort()]]);
+        int superIndex = in.readUnsignedShort();
+        info.superName = superIndex != 0 ? toClassName(utf8[classNames[superIndex]]) : null;
+        int interfaceCount = in.readUnsignedShort();
+        for (int i = 0; i < interfaceCount; i++) {
+            info.interfaces.add(toClassName(utf8[classNames[in.readUnsignedShort()]]));
+        }
+        readMembers(in, utf8, info.fields);
+        readMembers(in, utf8, info.methods);
+        return info;
+    }
+
+    private static void readMembers(DataInputStream in, String[] utf8, List<MemberInfo> out)
+            throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            MemberInfo member = new MemberInfo();
+            member.accessFlags = in.readUnsignedShort();
+            member.name = utf8[in.readUnsignedShort()];
+            member.descriptor = utf8[in.readUnsignedShort()];
+            int attributeCount = in.readUnsignedShort();
+            for (int j = 0; j < attributeCount; j++) {
+                in.skipBytes(2);
+                in.skipBytes(in.readInt());
+            }
+            out.add(member);
+        }
+    }
+
+    /**
+     * java/util/Map$Entry -> java.util.Map$Entry
+     */
+    private static String toClassName(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+    /**
+     * @param descriptor method descriptor, for example (I[Ljava/lang/String;)V
+     * @return the parameter types, for example [int, java.lang.String[]]
+     */
+    @NonNull
+    public static List<String> getParameterTypes(String descriptor) {
+        List<String> result = new ArrayList<>();
+        int[] position = {1};
+        while (descriptor.charAt(position[0]) != ')') {
+            result.add(readType(descriptor, position));
+        }
+        return result;
+    }
+
+    /**
+     * @param descriptor method or field descriptor
+     * @return the return type of a method or the type of a field
+     */
+    @NonNull
+    public static String getType(String descriptor) {
+        int[] position = {descriptor.indexOf(')') + 1};
+        return readType(descriptor, position);
+    }
+
+    private static String readType(String descriptor, int[] position) {
+        int dimensions = 0;
+        while (descriptor.charAt(position[0]) == '[') {
+            dimensions++;
+            position[0]++;
+        }
+        String type;
+        char c = descriptor.charAt(position[0]++);
+        switch (c) {
+            case 'B':
+                type = "byte";
+                break;
+            case 'C':
+                type = "char";
+                break;
+            case 'D':
+                type = "double";
+                break;
+            case 'F':
+                type = "float";
+                break;
+            case 'I':
+                type = "int";
+                break;
+            case 'J':
+                type = "long";
+                break;
+            case 'S':
+                type = "short";
+                break;
+            case 'Z':
+                type = "boolean";
+                break;
+            case 'V':
+                type = "void";
+                break;
+            case 'L':
+                int end = descriptor.indexOf(';', position[0]);
+                type = toClassName(descriptor.substring(position[0], end));
+                position[0] = end + 1;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid descriptor " + descriptor);
+        }
+        StringBuilder result = new StringBuilder(type);
+        for (int i = 0; i < dimensions; i++) {
+            result.append("[]");
+        }
+        return result.toString();
+    }
+
+    public static class ClassInfo {
+        public final List<String> interfaces = new ArrayList<>();
+        public final List<MemberInfo> fields = new ArrayList<>();
+        public final List<MemberInfo> methods = new ArrayList<>();
+        public int accessFlags;
+        public String name;
+        @Nullable
+        public String superName;
+    }
+
+    public static class MemberInfo {
+        public int accessFlags;
+        public String name;
+        public String descriptor;
+    }
+}
@@ -23,9 +23,13 @@ import static com.duy.ide.autocomplete.util.EditorUtil.getWord;
 public class JavaClassManager {
     private static final String TAG = "JavaClassManager";
 
+    /**
+     * Guess the type of the receiver from the text, only used when javac can not attribute
+     * it, see {@link com.duy.ide.autocomplete.javac.JavacCompletionEngine}
+     */
     public static ArrayList<String> determineClassName(EditText editor, int pos, String text,
                                                        @NonNull String prefix, String suffix,
-                                                       @Nullable Class preReturnType) {
+                                                       @Nullable String preReturnType) {
         Log.d(TAG, "determineClassName() called with: text = [" + text + "], prefix = [" + prefix + "], suffix = [" + suffix + "], preReturnType = [" + preReturnType + "]");
 
         try {
@@ -10,148 +10,339 @@ import com.duy.ide.autocomplete.model.MethodDescription;
 import com.duy.project.file.android.AndroidProjectFolder;
 import com.duy.project.file.java.JavaProjectFolder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.WeakHashMap;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-
-import dalvik.system.DexClassLoader;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
+ * Index of the classes of the classpath.
+ * <p>
+ * The index only contains the class names, read from the jar directories. A class file is
+ * parsed with {@link ClassFileParser} when its members are used the first time, no class is
+ * loaded, so the memory grows with the classes which are used by the completion only.
+ * <p>
+ * With a symbol directory the names and members of each jar are read from its
+ * {@link SymbolDatabase}, so the next launches do not open the jars at all. The names are
+ * looked up in the mapped tables of the databases, they are not copied to the heap.
+ * <p>
  * Created by Duy on 20-Jul-17.
  */
 
-public class JavaClassReader {
+public class JavaClassReader implements ClassDescription.MemberLoader {
     private static final String TAG = "JavaClassReader";
+    /**
+     * the completion list shows the best matches only
+     */
+    private static final int MAX_RESULTS = 100;
     private String classpath;
-    private String tempDir;
-    private HashMap<String, Class> mClasses = new HashMap<>();
+    @Nullable
+    private File symbolDir;
+    /**
+     * the jar of each table of the index
+     */
+    private File[] mIndexJars = new File[0];
+    private final HashMap<File, ZipFile> mJars = new HashMap<>();
+    private final HashMap<File, SymbolDatabase> mDatabases = new HashMap<>();
     private WeakHashMap<String, ClassDescription> mCache = new WeakHashMap<>();
+    private SimpleNameIndex mIndex = new SimpleNameIndex();
+    private final int[] mResultBuffer = new int[MAX_RESULTS];
 
-    private boolean loaded = false;
+    /**
+     * held while the tables are built, so the jars are read and the databases opened once
+     */
+    private final Object mLoadLock = new Object();
+    private volatile boolean loaded = false;
 
-    public JavaClassReader(String classpath, String tempDir) {
-        this.classpath = classpath;
-        this.tempDir = tempDir;
+    public JavaClassReader(String classpath) {
+        this(classpath, null);
     }
 
-    public HashMap<String, Class> getClasses() {
-        return mClasses;
+    /**
+     * @param symbolDir directory of the symbol databases, null to always read the jars
+     */
+    public JavaClassReader(String classpath, @Nullable File symbolDir) {
+        this.classpath = classpath;
+        this.symbolDir = symbolDir;
     }
 
-    public HashMap<String, Class> getAllClassesFromProject(boolean android, @Nullable File[] libs) {
-        HashMap<String, Class> classes = new HashMap<>();
-        if (classpath != null) classes.putAll(getAllClassesFromJar(android, classpath));
-        if (libs != null) {
-            for (File lib : libs) {
-                if (lib.getPath().endsWith(".jar")) {
-                    classes.putAll(getAllClassesFromJar(android, lib.getPath()));
+    /**
+     * The table of the symbol database of the jar, or the class names of its directory
+     */
+    @Nullable
+    private SimpleNameIndex.Table readTable(File jar) {
+        SymbolDatabase database = openDatabase(jar);
+        if (database != null) {
+            return database.getSimpleNameTable();
+        }
+        ArrayList<String> classes = new ArrayList<>();
+        try {
+            ZipFile zipFile = new ZipFile(jar);
+            try {
+                Enumeration<? extends ZipEntry> e = zipFile.entries();
+                while (e.hasMoreElements()) {
+                    ZipEntry entry = e.nextElement();
+                    if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+                        continue;
+                    }
+                    String className = entry.getName().substring(0, entry.getName().length() - 6);
+                    className = className.replace('/', '.');
+                    //anonymous and local classes
+                    String simpleName = SimpleNameIndex.getSimpleName(className);
+                    if (simpleName.isEmpty() || Character.isDigit(simpleName.charAt(0))) {
+                        continue;
+                    }
+                    classes.add(className);
                 }
+            } finally {
+                zipFile.close();
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
         }
-        return classes;
+        return SimpleNameIndex.createTable(classes);
     }
 
-    private HashMap<String, Class> getAllClassesFromJar(boolean android, String path) {
-        DexClassLoader dexClassLoader = new DexClassLoader(path, tempDir, null, ClassLoader.getSystemClassLoader());
-        HashMap<String, Class> classes = new HashMap<>();
+    @Nullable
+    private SymbolDatabase openDatabase(File jar) {
+        if (symbolDir == null) return null;
         try {
-            JarFile jarFile = new JarFile(path);
-            Enumeration<JarEntry> e = jarFile.entries();
-
-            while (e.hasMoreElements()) {
-                JarEntry je = e.nextElement();
-                if (je.isDirectory() || !je.getName().endsWith(".class")) {
-                    continue;
-                }
-                String className = je.getName().substring(0, je.getName().length() - 6);
-                className = className.replace('/', '.');
-                try {
-                    if (android) {
-                        Class c = dexClassLoader.loadClass(className);
-                        classes.put(c.getName(), c);
-                    } else if (!className.startsWith("android")) {
-                        Class c = dexClassLoader.loadClass(className);
-                        classes.put(c.getName(), c);
-                    }
-                } catch (ClassNotFoundException e1) {
-                }
+            SymbolDatabase database = SymbolDatabase.open(jar, symbolDir);
+            synchronized (this) {
+                mDatabases.put(jar, database);
             }
+            return database;
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.e(TAG, "openDatabase: " + jar, e);
+            return null;
         }
-        return classes;
     }
 
     public void load(JavaProjectFolder projectFolder) {
         if (loaded) {
             return;
         }
-        this.mClasses.clear();
-        this.mClasses.putAll(getAllClassesFromProject(
-                projectFolder instanceof AndroidProjectFolder, //is android
-                projectFolder.getDirLibs().listFiles()));
-        loaded = true;
+        synchronized (mLoadLock) {
+            if (!loaded) {
+                buildIndex(projectFolder);
+                loaded = true;
+            }
+        }
+    }
+
+    private void buildIndex(JavaProjectFolder projectFolder) {
+        ArrayList<File> jars = new ArrayList<>();
+        if (classpath != null) jars.add(new File(classpath));
+        File[] libs = projectFolder.getDirLibs().listFiles();
+        if (libs != null) {
+            for (File lib : libs) {
+                if (lib.getPath().endsWith(".jar")) jars.add(lib);
+            }
+        }
+        ArrayList<File> indexJars = new ArrayList<>();
+        ArrayList<SimpleNameIndex.Table> tables = new ArrayList<>();
+        for (File jar : jars) {
+            SimpleNameIndex.Table table = readTable(jar);
+            if (table != null) {
+                indexJars.add(jar);
+                tables.add(table);
+            }
+        }
+        SimpleNameIndex index = new SimpleNameIndex(tables.toArray(new SimpleNameIndex.Table[tables.size()]));
+        if (!(projectFolder instanceof AndroidProjectFolder)) {
+            index.setHiddenPrefix("android");
+        }
+        synchronized (this) {
+            this.mIndexJars = indexJars.toArray(new File[indexJars.size()]);
+            this.mIndex = index;
+            this.mCache.clear();
+        }
     }
 
-    public void dispose() {
-        mClasses.clear();
+    public synchronized void dispose() {
+        mIndexJars = new File[0];
+        mIndex = new SimpleNameIndex();
+        mCache.clear();
+        for (ZipFile jar : mJars.values()) {
+            try {
+                jar.close();
+            } catch (IOException ignored) {
+            }
+        }
+        mJars.clear();
+        mDatabases.clear();
     }
 
+    /**
+     * @return the jar which contains the class, null if it is not in the classpath
+     */
     @Nullable
-    public ClassDescription readClassByName(String className) {
+    private synchronized File getJar(String className) {
+        int position = mIndex.indexOf(className);
+        return position >= 0 ? mIndexJars[SimpleNameIndex.getTable(position)] : null;
+    }
+
+    @Nullable
+    public synchronized ClassDescription readClassByName(String className) {
         ClassDescription cache = mCache.get(className);
         if (cache != null) {
             return cache;
         }
-        Class aClass = mClasses.get(className);
-        Log.d(TAG, "readClassByName() called with: className = [" + className + "]");
+        if (getJar(className) != null) {
+            ClassDescription classDesc = new ClassDescription(
+                    SimpleNameIndex.getSimpleName(className), className, this);
+            classDesc.setLastUsed(mIndex.getLastUsed(className));
+            mCache.put(className, classDesc);
+            return classDesc;
+        }
+        return null;
+    }
 
-        if (aClass != null) {
-            String superclass = aClass.getSuperclass() != null ? aClass.getSuperclass().getName() : "";
-            ClassDescription classDesc = new ClassDescription(aClass.getSimpleName(), aClass.getName(), superclass, 0);
-            for (Constructor constructor : aClass.getConstructors()) {
-                if (Modifier.isPublic(constructor.getModifiers())) {
-                    classDesc.addConstructor(new ConstructorDescription(constructor));
-                }
+    @Override
+    public void loadMembers(ClassDescription description) {
+        Log.d(TAG, "loadMembers() called with: className = [" + description.getClassName() + "]");
+        ClassFileParser.ClassInfo info;
+        try {
+            info = readClassInfo(description.getClassName());
+            if (info == null) return;
+        } catch (IOException e) {
+            Log.e(TAG, "loadMembers: " + description.getClassName(), e);
+            return;
+        }
+        description.setSuperClass(info.superName != null ? info.superName : "");
+
+        Set<String> signatures = new HashSet<>();
+        for (ClassFileParser.MemberInfo field : info.fields) {
+            if ((field.accessFlags & ClassFileParser.ACC_PUBLIC) != 0
+                    && (field.accessFlags & ClassFileParser.ACC_SYNTHETIC) == 0) {
+                description.addField(new FieldDescription(field.name,
+                        ClassFileParser.getType(field.descriptor)));
             }
-            for (Field field : aClass.getDeclaredFields()) {
-                if (Modifier.isPublic(field.getModifiers())) {
-                    if (!field.getName().equals(field.getDeclaringClass().getName())) {
-                        classDesc.addField(new FieldDescription(field));
-                    }
+        }
+        for (ClassFileParser.MemberInfo method : info.methods) {
+            if ((method.accessFlags & ClassFileParser.ACC_PUBLIC) == 0
+                    || (method.accessFlags & (ClassFileParser.ACC_SYNTHETIC | ClassFileParser.ACC_BRIDGE)) != 0) {
+                continue;
+            }
+            if (method.name.equals("<init>")) {
+                description.addConstructor(new ConstructorDescription(info.name,
+                        ClassFileParser.getParameterTypes(method.descriptor)));
+            } else if (!method.name.equals("<clinit>")) {
+                MethodDescription methodDesc = new MethodDescription(method.name,
+                        ClassFileParser.getParameterTypes(method.descriptor),
+                        ClassFileParser.getType(method.descriptor));
+                signatures.add(methodDesc.getPrototype());
+                description.addMethod(methodDesc);
+            }
+        }
+
+        //inherited public methods, like Class.getMethods
+        ArrayList<String> parents = new ArrayList<>(info.interfaces);
+        if (info.superName != null) parents.add(0, info.superName);
+        for (String parent : parents) {
+            ClassDescription parentDesc = readClassByName(parent);
+            if (parentDesc == null) continue;
+            for (MethodDescription method : parentDesc.getMethods()) {
+                if (signatures.add(method.getPrototype())) {
+                    description.addMethod(method);
                 }
             }
-            for (Method method : aClass.getMethods()) {
-                if (Modifier.isPublic(method.getModifiers())) {
-                    classDesc.addMethod(new MethodDescription(method));
+        }
+    }
+
+    @Nullable
+    private ClassFileParser.ClassInfo readClassInfo(String className) throws IOException {
+        SymbolDatabase database;
+        synchronized (this) {
+            File jar = getJar(className);
+            if (jar == null) return null;
+            database = mDatabases.get(jar);
+        }
+        if (database != null) {
+            return database.readClass(className);
+        }
+        byte[] classBytes = readClassFile(className);
+        return classBytes != null ? ClassFileParser.parse(classBytes) : null;
+    }
+
+    @Nullable
+    private byte[] readClassFile(String className) throws IOException {
+        File jar;
+        ZipFile zipFile;
+        synchronized (this) {
+            jar = getJar(className);
+            if (jar == null) return null;
+            zipFile = mJars.get(jar);
+            if (zipFile == null) {
+                zipFile = new ZipFile(jar);
+                mJars.put(jar, zipFile);
+            }
+        }
+        ZipEntry entry = zipFile.getEntry(className.replace('.', '/') + ".class");
+        if (entry == null) return null;
+        InputStream in = zipFile.getInputStream(entry);
+        try {
+            if (entry.getSize() < 0) {
+                //the size is not known, e.g. not written in the local header
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
                 }
+                return out.toByteArray();
             }
-            mCache.put(className, classDesc);
-            return classDesc;
+            byte[] bytes = new byte[(int) entry.getSize()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int count = in.read(bytes, offset, bytes.length - offset);
+                if (count < 0) throw new IOException("Unexpected end of " + entry.getName());
+                offset += count;
+            }
+            return bytes;
+        } finally {
+            in.close();
         }
-        return null;
     }
 
-    public ArrayList<ClassDescription> findClass(String simpleNamePrefix) {
-        ArrayList<ClassDescription> classDescriptions = new ArrayList<>();
-        for (Map.Entry<String, Class> entry : mClasses.entrySet()) {
-            if (entry.getValue().getSimpleName().startsWith(simpleNamePrefix)) {
-                classDescriptions.add(new ClassDescription(entry.getValue()));
+    /**
+     * @param simpleNamePrefix prefix or camel case humps of the simple name, "ArLi" finds ArrayList
+     * @return at most {@link #MAX_RESULTS} classes, recently used classes first
+     */
+    public synchronized ArrayList<ClassDescription> findClass(String simpleNamePrefix) {
+        int count = mIndex.find(simpleNamePrefix, mResultBuffer);
+        ArrayList<ClassDescription> classDescriptions = new ArrayList<>(count);
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            //a class which is in two jars is shown once
+            String className = mIndex.getClassName(mResultBuffer[i]);
+            if (names.add(className)) {
+                classDescriptions.add(readClassByName(className));
             }
         }
         return classDescriptions;
     }
 
+    /**
+     * Rank the class before the classes which are not used
+     */
+    public synchronized void touchClass(String className, long time) {
+        mIndex.setLastUsed(className, time);
+        ClassDescription cache = mCache.get(className);
+        if (cache != null) {
+            cache.setLastUsed(time);
+        }
+    }
+
     public boolean isLoaded() {
         return loaded;
     }
@@ -16,8 +16,15 @@ public class JavaDexClassLoader {
     private static final String TAG = "JavaDexClassLoader";
     private JavaClassReader mClassReader;
 
-    public JavaDexClassLoader(File classpath, File outDir) {
-        mClassReader = new JavaClassReader(classpath.getPath(), outDir.getPath());
+    public JavaDexClassLoader(File classpath) {
+        mClassReader = new JavaClassReader(classpath.getPath());
+    }
+
+    /**
+     * @param symbolDir directory of the symbol databases of the jars, kept between launches
+     */
+    public JavaDexClassLoader(File classpath, File symbolDir) {
+        mClassReader = new JavaClassReader(classpath.getPath(), symbolDir);
     }
 
     public JavaClassReader getClassReader() {
@@ -31,10 +38,7 @@ public class JavaDexClassLoader {
 
 
     public void touchClass(String className) {
-        ArrayList<ClassDescription> classDescriptions = findClass(className);
-        if (classDescriptions.size() > 0) {
-            classDescriptions.get(0).setLastUsed(System.currentTimeMillis());
-        }
+        mClassReader.touchClass(className, System.currentTimeMillis());
     }
 
     public ClassDescription loadClass(String className) {
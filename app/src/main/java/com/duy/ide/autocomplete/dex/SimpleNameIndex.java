@@ -0,0 +1,303 @@
+package com.duy.ide.autocomplete.dex;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Index of the simple names of classes for the class completion.
+ * <p>
+ * The classes are read from {@link Table}s which are sorted by simple name, so the classes
+ * which start with a prefix are found with a binary search and a scan of the matching range
+ * of each table. A table can be a {@link SymbolDatabase} which is memory mapped, then the names
+ * are not kept in the heap. A query with more upper case letters, like "ArLi", also matches the
+ * humps of a camel case name, like "ArrayList". Results are ranked: recently used classes
+ * first, then names starting with the query, then camel case matches, shorter names first in
+ * each group.
+ * <p>
+ * A position of a class is the index of its table in the high bits and its position in the
+ * table in the low bits. The ranking keys are kept in a buffer which is reused between queries.
+ */
+public class SimpleNameIndex {
+    private static final int KIND_PREFIX = 1;
+    private static final int KIND_CAMEL = 2;
+    private static final int TABLE_SHIFT = 24;
+    private static final int POSITION_MASK = (1 << TABLE_SHIFT) - 1;
+
+    private final Table[] tables;
+    /**
+     * position -> time of the last use, only the used classes are in it
+     */
+    private final HashMap<Integer, Long> lastUsed = new HashMap<>();
+    @Nullable
+    private String hiddenPrefix;
+
+    private long[] keys = new long[256];
+    private int[] recent = new int[16];
+
+    /**
+     * @param classNames full names of the classes, for example java.util.Map$Entry
+     */
+    public SimpleNameIndex(@NonNull Collection<String> classNames) {
+        this(createTable(classNames));
+    }
+
+    /**
+     * @param tables the first table which has a class wins, at most 128 tables
+     */
+    public SimpleNameIndex(@NonNull Table... tables) {
+        this.tables = tables;
+    }
+
+    /**
+     * java.util.Map$Entry -> Entry
+     */
+    public static String getSimpleName(String className) {
+        int start = Math.max(className.lastIndexOf('.'), className.lastIndexOf('$'));
+        return className.substring(start + 1);
+    }
+
+    /**
+     * @return true if every hump of the query is the start of a hump of the name, in order
+     */
+    static boolean matchesCamelCase(String name, String query) {
+        int namePos = 0;
+        int queryPos = 0;
+        while (queryPos < query.length()) {
+            int humpEnd = queryPos + 1;
+            while (humpEnd < query.length() && !Character.isUpperCase(query.charAt(humpEnd))) {
+                humpEnd++;
+            }
+            int humpLength = humpEnd - queryPos;
+            //find the next hump of the name which starts with the hump of the query
+            while (namePos < name.length()) {
+                if ((namePos == 0 || Character.isUpperCase(name.charAt(namePos)))
+                        && name.regionMatches(namePos, query, queryPos, humpLength)) {
+                    break;
+                }
+                namePos++;
+            }
+            if (namePos >= name.length()) {
+                return false;
+            }
+            namePos += humpLength;
+            queryPos = humpEnd;
+        }
+        return true;
+    }
+
+    /**
+     * @param classNames full names of the classes, they are kept in the heap
+     */
+    @NonNull
+    public static Table createTable(@NonNull Collection<String> classNames) {
+        return new ArrayTable(classNames);
+    }
+
+    /**
+     * @return the index of the table of the position
+     */
+    public static int getTable(int position) {
+        return position >>> TABLE_SHIFT;
+    }
+
+    /**
+     * Classes whose name starts with the prefix are not found, e.g. "android" for a java project
+     */
+    public synchronized void setHiddenPrefix(@Nullable String prefix) {
+        this.hiddenPrefix = prefix;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Table table : tables) {
+            size += table.size();
+        }
+        return size;
+    }
+
+    public String getClassName(int position) {
+        return tables[getTable(position)].getClassName(position & POSITION_MASK);
+    }
+
+    public synchronized long getLastUsed(String className) {
+        Long time = lastUsed.get(indexOf(className));
+        return time != null ? time : 0;
+    }
+
+    public synchronized void setLastUsed(String className, long time) {
+        int position = indexOf(className);
+        if (position >= 0) lastUsed.put(position, time);
+    }
+
+    /**
+     * @return the position of the class, -1 if no table has it
+     */
+    public synchronized int indexOf(@NonNull String className) {
+        if (isHidden(className)) return -1;
+        String simpleName = getSimpleName(className);
+        for (int t = 0; t < tables.length; t++) {
+            Table table = tables[t];
+            for (int i = lowerBound(table, simpleName); i < table.size(); i++) {
+                if (!table.getSimpleName(i).equals(simpleName)) break;
+                if (table.getClassName(i).equals(className)) return t << TABLE_SHIFT | i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isHidden(String className) {
+        return hiddenPrefix != null && className.startsWith(hiddenPrefix);
+    }
+
+    /**
+     * @return the first position whose simple name is not less than the prefix
+     */
+    private static int lowerBound(Table table, String prefix) {
+        int low = 0;
+        int high = table.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (table.getSimpleName(mid).compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the classes whose simple name matches the query
+     *
+     * @param query  prefix or camel case humps of the simple name
+     * @param result receives the positions of the best matches, use {@link #getClassName(int)}
+     * @return the number of positions written to result
+     */
+    public synchronized int find(@NonNull String query, @NonNull int[] result) {
+        if (query.isEmpty() || result.length == 0) return 0;
+
+        //every match starts with the first hump of the query
+        int firstHumpEnd = 1;
+        while (firstHumpEnd < query.length() && !Character.isUpperCase(query.charAt(firstHumpEnd))) {
+            firstHumpEnd++;
+        }
+        boolean camelCase = firstHumpEnd < query.length();
+        String firstHump = camelCase ? query.substring(0, firstHumpEnd) : query;
+
+        int keyCount = 0;
+        int recentCount = 0;
+        for (int t = 0; t < tables.length; t++) {
+            Table table = tables[t];
+            for (int i = lowerBound(table, firstHump); i < table.size(); i++) {
+                String name = table.getSimpleName(i);
+                if (!name.startsWith(firstHump)) break;
+                int kind;
+                if (!camelCase || name.startsWith(query)) {
+                    kind = KIND_PREFIX;
+                } else if (matchesCamelCase(name, query)) {
+                    kind = KIND_CAMEL;
+                } else {
+                    continue;
+                }
+                if (hiddenPrefix != null && isHidden(table.getClassName(i))) {
+                    continue;
+                }
+                int position = t << TABLE_SHIFT | i;
+                if (!lastUsed.isEmpty() && lastUsed.containsKey(position)) {
+                    if (recentCount == recent.length) recent = Arrays.copyOf(recent, recentCount * 2);
+                    recent[recentCount++] = position;
+                    continue;
+                }
+                if (keyCount == keys.length) keys = Arrays.copyOf(keys, keyCount * 2);
+                keys[keyCount++] = ((long) kind << 48)
+                        | ((long) Math.min(name.length(), 0xffff) << 32) | position;
+            }
+        }
+
+        //few classes are used, insertion sort by last use
+        for (int i = 1; i < recentCount; i++) {
+            int position = recent[i];
+            int j = i - 1;
+            while (j >= 0 && lastUsed.get(recent[j]) < lastUsed.get(position)) {
+                recent[j + 1] = recent[j];
+                j--;
+            }
+            recent[j + 1] = position;
+        }
+        Arrays.sort(keys, 0, keyCount);
+
+        int count = 0;
+        for (int i = 0; i < recentCount && count < result.length; i++) {
+            result[count++] = recent[i];
+        }
+        for (int i = 0; i < keyCount && count < result.length; i++) {
+            result[count++] = (int) keys[i];
+        }
+        return count;
+    }
+
+    /**
+     * Classes sorted by simple name, then by full name
+     */
+    public interface Table {
+        int size();
+
+        @NonNull
+        String getSimpleName(int position);
+
+        @NonNull
+        String getClassName(int position);
+    }
+
+    /**
+     * The names in the heap, for the jars which have no symbol database
+     */
+    private static class ArrayTable implements Table {
+        private final String[] simpleNames;
+        private final String[] classNames;
+
+        ArrayTable(Collection<String> classNames) {
+            String[][] entries = new String[classNames.size()][];
+            int i = 0;
+            for (String className : classNames) {
+                //many classes share a simple name, like Builder
+                entries[i++] = new String[]{SimpleNameIndex.getSimpleName(className).intern(), className};
+            }
+            Arrays.sort(entries, new Comparator<String[]>() {
+                @Override
+                public int compare(String[] o1, String[] o2) {
+                    int result = o1[0].compareTo(o2[0]);
+                    return result != 0 ? result : o1[1].compareTo(o2[1]);
+                }
+            });
+            this.simpleNames = new String[entries.length];
+            this.classNames = new String[entries.length];
+            for (i = 0; i < entries.length; i++) {
+                simpleNames[i] = entries[i][0];
+                this.classNames[i] = entries[i][1];
+            }
+        }
+
+        @Override
+        public int size() {
+            return simpleNames.length;
+        }
+
+        @NonNull
+        @Override
+        public String getSimpleName(int position) {
+            return simpleNames[position];
+        }
+
+        @NonNull
+        @Override
+        public String getClassName(int position) {
+            return classNames[position];
+        }
+    }
+}
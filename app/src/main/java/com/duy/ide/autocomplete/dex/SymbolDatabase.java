@@ -0,0 +1,484 @@
+package com.duy.ide.autocomplete.dex;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Class names and public members of a jar, stored in a binary file which is memory mapped.
+ * <p>
+ * The file is written once per jar and read by the next launches without opening the jar, the
+ * tables live in the page cache instead of the heap. Its name is made of a digest of the path
+ * of the jar, the size and the modified time of the jar, so a changed jar gets a new file and
+ * the old file of the same path is deleted. The header also holds a CRC of the central
+ * directory of the jar, which covers the name and the CRC of every entry, so a jar replaced
+ * in the same second with the same length is indexed again too.
+ * <p>
+ * Layout, all numbers are big endian:
+ * <pre>
+ * header        magic, version, jar size, jar modified time, central directory CRC,
+ *               table sizes
+ * string table  offset of each string in the string data
+ * class table   name, super name, interfaces start and count, members start and count,
+ *               simple name, sorted by name
+ * member table  access flags, name, descriptor
+ * interfaces    string indices of the interface names
+ * simple names  class indices sorted by simple name, then by name
+ * string data   length (unsigned short) and utf-8 bytes of each string
+ * </pre>
+ */
+public class SymbolDatabase {
+    private static final String TAG = "SymbolDatabase";
+    private static final int MAGIC = 0x4A53594D; //JSYM
+    private static final int VERSION = 3;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int COUNTS_OFFSET = 28;
+    private static final int HEADER_SIZE = COUNTS_OFFSET + 4 * 4;
+    private static final int CLASS_ENTRY_SIZE = 7 * 4;
+    private static final int MEMBER_ENTRY_SIZE = 3 * 4;
+
+    private final ByteBuffer buffer;
+    private final int classCount;
+    private final int stringTableOffset;
+    private final int classTableOffset;
+    private final int memberTableOffset;
+    private final int interfaceTableOffset;
+    private final int simpleNameTableOffset;
+
+    private SymbolDatabase(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a symbol database");
+        }
+        this.buffer = buffer;
+        int stringCount = buffer.getInt(COUNTS_OFFSET);
+        this.classCount = buffer.getInt(COUNTS_OFFSET + 4);
+        int memberCount = buffer.getInt(COUNTS_OFFSET + 8);
+        int interfaceCount = buffer.getInt(COUNTS_OFFSET + 12);
+        this.stringTableOffset = HEADER_SIZE;
+        this.classTableOffset = stringTableOffset + stringCount * 4;
+        this.memberTableOffset = classTableOffset + classCount * CLASS_ENTRY_SIZE;
+        this.interfaceTableOffset = memberTableOffset + memberCount * MEMBER_ENTRY_SIZE;
+        this.simpleNameTableOffset = interfaceTableOffset + interfaceCount * 4;
+    }
+
+    /**
+     * Map the database of the jar, write it first if there is none or the jar was changed
+     *
+     * @param dir directory of the databases, shared by all projects
+     */
+    @NonNull
+    public static SymbolDatabase open(@NonNull File jar, @NonNull File dir) throws IOException {
+        if (!dir.exists()) dir.mkdirs();
+        String prefix = sha1(jar.getAbsolutePath()) + "-";
+        File file = new File(dir, prefix + Long.toHexString(jar.length()) + "-"
+                + Long.toHexString(jar.lastModified()) + ".db");
+        int centralDirectoryCrc = centralDirectoryCrc(jar);
+        if (file.exists() && !isValid(file, jar, centralDirectoryCrc)) {
+            file.delete();
+        }
+        if (!file.exists()) {
+            //the database of the jar before it was changed
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File old : files) {
+                    if (old.getName().startsWith(prefix)) {
+                        Log.d(TAG, "open: " + jar + " was changed");
+                        old.delete();
+                    }
+                }
+            }
+            long start = System.currentTimeMillis();
+            //write to a temporary file so that a killed app never leaves a broken database
+            File temp = new File(dir, file.getName() + ".tmp");
+            try {
+                write(jar, centralDirectoryCrc, temp);
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Can not write " + file);
+            }
+            Log.d(TAG, "open: indexed " + jar + " in " + (System.currentTimeMillis() - start) + "ms");
+        }
+        return new SymbolDatabase(map(file));
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            //the mapping stays valid after the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * A file which was not written completely or by another version is written again
+     */
+    private static boolean isValid(File file, File jar, int centralDirectoryCrc) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.length() >= HEADER_SIZE && raf.readInt() == MAGIC && raf.readInt() == VERSION
+                    && raf.readLong() == jar.length() && raf.readLong() == jar.lastModified()
+                    && raf.readInt() == centralDirectoryCrc;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Hashing the whole jar would cost as much as indexing it, the central directory is a small
+     * part at its end and changes with the content of any entry
+     */
+    private static int centralDirectoryCrc(File jar) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(jar, "r");
+        try {
+            //the end of central directory record is 22 bytes, followed by a comment of at most 64k
+            long length = raf.length();
+            int tailSize = (int) Math.min(length, 22 + 0xffff);
+            byte[] tail = new byte[tailSize];
+            raf.seek(length - tailSize);
+            raf.readFully(tail);
+            ByteBuffer end = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = tailSize - 22; i >= 0; i--) {
+                if (end.getInt(i) != 0x06054b50) continue;
+                long size = end.getInt(i + 12) & 0xffffffffL;
+                long offset = end.getInt(i + 16) & 0xffffffffL;
+                if (offset + size > length) break;
+                CRC32 crc = new CRC32();
+                byte[] buffer = new byte[8192];
+                raf.seek(offset);
+                while (size > 0) {
+                    int count = (int) Math.min(buffer.length, size);
+                    raf.readFully(buffer, 0, count);
+                    crc.update(buffer, 0, count);
+                    size -= count;
+                }
+                return (int) crc.getValue();
+            }
+            throw new IOException("No central directory in " + jar);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * The hash code of the path is too short, two jars could share a file
+     */
+    private static String sha1(String path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        StringBuilder result = new StringBuilder(40);
+        for (byte b : digest.digest(path.getBytes(UTF_8))) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    private static void write(File jar, int centralDirectoryCrc, File file) throws IOException {
+        List<ClassFileParser.ClassInfo> classes = new ArrayList<>();
+        ZipFile zipFile = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> e = zipFile.entries();
+            while (e.hasMoreElements()) {
+                ZipEntry entry = e.nextElement();
+                if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+                    continue;
+                }
+                String simpleName = SimpleNameIndex.getSimpleName(
+                        entry.getName().substring(0, entry.getName().length() - 6).replace('/', '.'));
+                //anonymous and local classes
+                if (simpleName.isEmpty() || Character.isDigit(simpleName.charAt(0))) {
+                    continue;
+                }
+                InputStream in = zipFile.getInputStream(entry);
+                try {
+                    classes.add(ClassFileParser.parse(readFully(in, (int) entry.getSize())));
+                } catch (IOException ex) {
+                    Log.w(TAG, "write: skip " + entry.getName(), ex);
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+        Collections.sort(classes, new Comparator<ClassFileParser.ClassInfo>() {
+            @Override
+            public int compare(ClassFileParser.ClassInfo o1, ClassFileParser.ClassInfo o2) {
+                return o1.name.compareTo(o2.name);
+            }
+        });
+
+        StringTable strings = new StringTable();
+        ByteArrayBuilder classTable = new ByteArrayBuilder();
+        ByteArrayBuilder memberTable = new ByteArrayBuilder();
+        ByteArrayBuilder interfaceTable = new ByteArrayBuilder();
+        int memberCount = 0;
+        int interfaceCount = 0;
+        for (ClassFileParser.ClassInfo info : classes) {
+            int firstMember = memberCount;
+            memberCount += writeMembers(info.fields, strings, memberTable);
+            memberCount += writeMembers(info.methods, strings, memberTable);
+            classTable.writeInt(strings.add(info.name));
+            classTable.writeInt(info.superName != null ? strings.add(info.superName) : -1);
+            classTable.writeInt(interfaceCount);
+            classTable.writeInt(info.interfaces.size());
+            classTable.writeInt(firstMember);
+            classTable.writeInt(memberCount - firstMember);
+            classTable.writeInt(strings.add(SimpleNameIndex.getSimpleName(info.name)));
+            for (String name : info.interfaces) {
+                interfaceTable.writeInt(strings.add(name));
+                interfaceCount++;
+            }
+        }
+
+        final Integer[] bySimpleName = new Integer[classes.size()];
+        final String[] simpleNames = new String[classes.size()];
+        for (int i = 0; i < bySimpleName.length; i++) {
+            bySimpleName[i] = i;
+            simpleNames[i] = SimpleNameIndex.getSimpleName(classes.get(i).name);
+        }
+        //the classes are sorted by name, a stable sort keeps that order for the same simple name
+        Arrays.sort(bySimpleName, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return simpleNames[o1].compareTo(simpleNames[o2]);
+            }
+        });
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(jar.length());
+            out.writeLong(jar.lastModified());
+            out.writeInt(centralDirectoryCrc);
+            out.writeInt(strings.size());
+            out.writeInt(classes.size());
+            out.writeInt(memberCount);
+            out.writeInt(interfaceCount);
+            int dataOffset = HEADER_SIZE + strings.size() * 4 + classTable.size()
+                    + memberTable.size() + interfaceTable.size() + bySimpleName.length * 4;
+            for (int offset : strings.offsets) {
+                out.writeInt(dataOffset + offset);
+            }
+            classTable.writeTo(out);
+            memberTable.writeTo(out);
+            interfaceTable.writeTo(out);
+            for (int index : bySimpleName) {
+                out.writeInt(index);
+            }
+            strings.data.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Only public members are shown by the completion
+     *
+     * @return the number of written members
+     */
+    private static int writeMembers(List<ClassFileParser.MemberInfo> members, StringTable strings,
+                                    ByteArrayBuilder memberTable) {
+        int count = 0;
+        for (ClassFileParser.MemberInfo member : members) {
+            if ((member.accessFlags & ClassFileParser.ACC_PUBLIC) == 0) continue;
+            memberTable.writeInt(member.accessFlags);
+            memberTable.writeInt(strings.add(member.name));
+            memberTable.writeInt(strings.add(member.descriptor));
+            count++;
+        }
+        return count;
+    }
+
+    private static byte[] readFully(InputStream in, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        int offset = 0;
+        while (offset < size) {
+            int count = in.read(bytes, offset, size - offset);
+            if (count < 0) throw new IOException("Unexpected end of class file");
+            offset += count;
+        }
+        return bytes;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * @param index index in the class table, classes are sorted by name
+     */
+    @NonNull
+    public String getClassName(int index) {
+        return getString(buffer.getInt(classTableOffset + index * CLASS_ENTRY_SIZE));
+    }
+
+    /**
+     * @return the names and public members of the class, null if the jar has no such class
+     */
+    @Nullable
+    public ClassFileParser.ClassInfo readClass(@NonNull String className) {
+        int index = indexOf(className);
+        if (index < 0) return null;
+        int entry = classTableOffset + index * CLASS_ENTRY_SIZE;
+        ClassFileParser.ClassInfo info = new ClassFileParser.ClassInfo();
+        info.accessFlags = ClassFileParser.ACC_PUBLIC;
+        info.name = className;
+        int superName = buffer.getInt(entry + 4);
+        info.superName = superName >= 0 ? getString(superName) : null;
+        int firstInterface = buffer.getInt(entry + 8);
+        int interfaceCount = buffer.getInt(entry + 12);
+        for (int i = 0; i < interfaceCount; i++) {
+            info.interfaces.add(getString(buffer.getInt(interfaceTableOffset + (firstInterface + i) * 4)));
+        }
+        int firstMember = buffer.getInt(entry + 16);
+        int memberCount = buffer.getInt(entry + 20);
+        for (int i = 0; i < memberCount; i++) {
+            int member = memberTableOffset + (firstMember + i) * MEMBER_ENTRY_SIZE;
+            ClassFileParser.MemberInfo memberInfo = new ClassFileParser.MemberInfo();
+            memberInfo.accessFlags = buffer.getInt(member);
+            memberInfo.name = getString(buffer.getInt(member + 4));
+            memberInfo.descriptor = getString(buffer.getInt(member + 8));
+            if (memberInfo.descriptor.charAt(0) == '(') {
+                info.methods.add(memberInfo);
+            } else {
+                info.fields.add(memberInfo);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * @return the classes of the jar sorted by simple name, read from the mapped file
+     */
+    @NonNull
+    public SimpleNameIndex.Table getSimpleNameTable() {
+        return new SimpleNameIndex.Table() {
+            @Override
+            public int size() {
+                return classCount;
+            }
+
+            @NonNull
+            @Override
+            public String getSimpleName(int position) {
+                return getString(buffer.getInt(getClassEntry(position) + 24));
+            }
+
+            @NonNull
+            @Override
+            public String getClassName(int position) {
+                return getString(buffer.getInt(getClassEntry(position)));
+            }
+
+            private int getClassEntry(int position) {
+                return classTableOffset
+                        + buffer.getInt(simpleNameTableOffset + position * 4) * CLASS_ENTRY_SIZE;
+            }
+        };
+    }
+
+    private int indexOf(String className) {
+        int low = 0;
+        int high = classCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int result = getClassName(mid).compareTo(className);
+            if (result < 0) {
+                low = mid + 1;
+            } else if (result > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Absolute reads only, the buffer is shared by all threads
+     */
+    private String getString(int index) {
+        int offset = buffer.getInt(stringTableOffset + index * 4);
+        int length = buffer.getShort(offset) & 0xffff;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 2 + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    private static class StringTable {
+        private final HashMap<String, Integer> indices = new HashMap<>();
+        private final ArrayList<Integer> offsets = new ArrayList<>();
+        private final ByteArrayBuilder data = new ByteArrayBuilder();
+
+        int add(String value) {
+            Integer index = indices.get(value);
+            if (index == null) {
+                byte[] bytes = value.getBytes(UTF_8);
+                index = offsets.size();
+                offsets.add(data.size());
+                data.writeShort(bytes.length);
+                data.write(bytes, 0, bytes.length);
+                indices.put(value, index);
+            }
+            return index;
+        }
+
+        int size() {
+            return offsets.size();
+        }
+    }
+
+    private static class ByteArrayBuilder extends ByteArrayOutputStream {
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        void writeShort(int value) {
+            write(value >>> 8);
+            write(value);
+        }
+    }
+}
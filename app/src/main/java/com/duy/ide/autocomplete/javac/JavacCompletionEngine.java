@@ -0,0 +1,390 @@
+package com.duy.ide.autocomplete.javac;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.duy.compile.external.java.JavacService;
+import com.duy.ide.autocomplete.model.Description;
+import com.duy.ide.autocomplete.model.FieldDescription;
+import com.duy.ide.autocomplete.model.MethodDescription;
+import com.duy.project.file.java.JavaProjectFolder;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.code.Kinds;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import com.sun.tools.javac.code.Symtab;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.code.TypeTags;
+import com.sun.tools.javac.code.Types;
+import com.sun.tools.javac.comp.Attr;
+import com.sun.tools.javac.comp.AttrContext;
+import com.sun.tools.javac.comp.Enter;
+import com.sun.tools.javac.comp.Env;
+import com.sun.tools.javac.comp.MemberEnter;
+import com.sun.tools.javac.comp.Resolve;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCBlock;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCFieldAccess;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.JCTree.JCVariableDecl;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Position;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * Member completion from the type which javac attributes for the receiver.
+ * <p>
+ * The word after the dot is replaced by a marker, "receiver.marker", the file is parsed and
+ * entered, then only the enclosing method body is attributed and only up to the marker, like
+ * {@link com.sun.tools.javac.api.JavacTrees#getScope}. Chained calls, generics, fields and
+ * locals resolve like in the compiler. The requests run in the warm context of the editor, see
+ * {@link JavacService#runInEditorContext}.
+ * <p>
+ * The entered file stays entered after a request. When the next request is in the same method
+ * and the text outside of its body did not change, only the new body is put into the entered
+ * tree and attributed, the rest of the file is not entered again.
+ */
+public class JavacCompletionEngine {
+    private static final String TAG = "JavacCompletionEngine";
+    private static final String MARKER = "__completion__";
+    /**
+     * The diagnostics of the broken code are expected, they are ignored
+     */
+    private static final DiagnosticListener<JavaFileObject> IGNORE_DIAGNOSTICS =
+            new DiagnosticListener<JavaFileObject>() {
+                @Override
+                public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+                }
+            };
+
+    private final JavaProjectFolder projectFolder;
+
+    /**
+     * The patched text and the tree of the last request, while its sources are kept entered
+     */
+    @Nullable
+    private String lastSource;
+    /**
+     * Path to the method of the last request in the entered tree, null if the marker was not in
+     * a method body
+     */
+    @Nullable
+    private TreePath lastMethodPath;
+    private int enterCount;
+
+    public JavacCompletionEngine(@NonNull JavaProjectFolder projectFolder) {
+        this.projectFolder = projectFolder;
+    }
+
+    /**
+     * "list.ad|" -> "list.__completion__();", a call is a statement, a field access is not
+     */
+    static String patch(String source, int dotOffset) {
+        int end = dotOffset + 1;
+        while (end < source.length() && Character.isJavaIdentifierPart(source.charAt(end))) {
+            end++;
+        }
+        int lineEnd = source.indexOf('\n', end);
+        if (lineEnd < 0) lineEnd = source.length();
+        boolean endOfLine = source.substring(end, lineEnd).trim().isEmpty();
+
+        StringBuilder patched = new StringBuilder(source.length() + MARKER.length() + 3);
+        patched.append(source, 0, dotOffset + 1).append(MARKER);
+        if (endOfLine) patched.append("();");
+        patched.append(source, end, source.length());
+        return patched.toString();
+    }
+
+    /**
+     * @param source    text of the edited file
+     * @param dotOffset offset of the dot after the receiver
+     * @param prefix    the start of the member name which is typed after the dot
+     * @return the members of the receiver which start with the prefix, null if javac can not
+     * attribute the receiver, for example a package name
+     */
+    @Nullable
+    public ArrayList<Description> complete(@NonNull String source, int dotOffset,
+                                           @NonNull final String prefix) {
+        if (dotOffset < 0 || dotOffset >= source.length() || source.charAt(dotOffset) != '.') {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        final String patched = patch(source, dotOffset);
+        try {
+            return JavacService.runInEditorContext(this, projectFolder.getBootClasspath(),
+                    projectFolder.getLibraryJars(), projectFolder.getDirSrcJava(), IGNORE_DIAGNOSTICS,
+                    new JavacService.EditorTask<ArrayList<Description>>() {
+                        @Nullable
+                        @Override
+                        public ArrayList<Description> run(@NonNull Context context, boolean sourcesKept) {
+                            return completeLocked(context, sourcesKept, patched, prefix);
+                        }
+                    });
+        } finally {
+            Log.d(TAG, "complete: took " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    /**
+     * @return how many times a file was entered, for the tests
+     */
+    int getEnterCount() {
+        return enterCount;
+    }
+
+    public void dispose() {
+        lastSource = null;
+        lastMethodPath = null;
+        JavacService.releaseEditorContext();
+    }
+
+    @Nullable
+    private ArrayList<Description> completeLocked(Context context, boolean sourcesKept,
+                                                  String source, String prefix) {
+        JavaCompiler compiler = JavaCompiler.instance(context);
+        JCCompilationUnit unit = compiler.parse(new SourceFileObject(source));
+        TreePath path = findMarker(unit);
+        if (path == null) {
+            return null;
+        }
+        TreePath reused = sourcesKept ? reuseLastMethod(path, source) : null;
+        if (reused != null) {
+            path = reused;
+        } else {
+            JavacService.dropEditorSources();
+            compiler.enterTrees(com.sun.tools.javac.util.List.of(unit));
+            enterCount++;
+            lastSource = source;
+            lastMethodPath = findMethod(path);
+        }
+        Env<AttrContext> env = attribute(context, path);
+        JCFieldAccess select = (JCFieldAccess) path.getLeaf();
+        Type site = select.selected.type;
+        if (env == null || site == null || site.isErroneous()) {
+            return null;
+        }
+        //String.| shows the static members only
+        Symbol siteSymbol = TreeInfo.symbol(select.selected);
+        boolean staticOnly = siteSymbol != null && siteSymbol.kind == Kinds.TYP;
+        return collectMembers(context, env, site, staticOnly, prefix);
+    }
+
+    /**
+     * @return the path to the method of a class whose body contains the leaf of the path, null
+     * if the leaf is in a field initializer or in a local class
+     */
+    @Nullable
+    private static TreePath findMethod(TreePath path) {
+        ArrayList<TreePath> paths = new ArrayList<>();
+        for (TreePath p = path; p != null; p = p.getParentPath()) {
+            paths.add(0, p);
+        }
+        for (int i = 0; i < paths.size() - 1; i++) {
+            Tree tree = paths.get(i).getLeaf();
+            if (tree instanceof JCMethodDecl) {
+                return ((JCMethodDecl) tree).body == paths.get(i + 1).getLeaf() ? paths.get(i) : null;
+            }
+            if (!(tree instanceof JCCompilationUnit) && !(tree instanceof JCClassDecl)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Put the body which contains the marker into the entered tree of the last request, if the
+     * marker is in the same method and the text outside of the body is the same
+     *
+     * @param path path to the marker in the new tree
+     * @return path to the marker through the entered tree, null if the file must be entered again
+     */
+    @Nullable
+    private TreePath reuseLastMethod(TreePath path, String source) {
+        TreePath methodPath = findMethod(path);
+        if (methodPath == null || lastMethodPath == null || lastSource == null) {
+            return null;
+        }
+        JCBlock body = ((JCMethodDecl) methodPath.getLeaf()).body;
+        JCMethodDecl lastMethod = (JCMethodDecl) lastMethodPath.getLeaf();
+        int start = body.pos;
+        int end = body.endpos;
+        int lastEnd = lastMethod.body.endpos;
+        if (start != lastMethod.body.pos || end == Position.NOPOS || lastEnd == Position.NOPOS
+                || source.length() - end != lastSource.length() - lastEnd
+                || !source.regionMatches(0, lastSource, 0, start)
+                || !source.regionMatches(end, lastSource, lastEnd, source.length() - end)) {
+            return null;
+        }
+        lastMethod.body = body;
+        lastSource = source;
+
+        ArrayList<Tree> trees = new ArrayList<>();
+        for (TreePath p = path; p.getLeaf() != body; p = p.getParentPath()) {
+            trees.add(0, p.getLeaf());
+        }
+        TreePath result = new TreePath(lastMethodPath, body);
+        for (Tree tree : trees) {
+            result = new TreePath(result, tree);
+        }
+        return result;
+    }
+
+    @Nullable
+    private TreePath findMarker(JCCompilationUnit unit) {
+        final TreePath[] result = new TreePath[1];
+        new TreePathScanner<Void, Void>() {
+            @Override
+            public Void visitMemberSelect(MemberSelectTree node, Void aVoid) {
+                if (node.getIdentifier().contentEquals(MARKER)) {
+                    result[0] = getCurrentPath();
+                }
+                return super.visitMemberSelect(node, aVoid);
+            }
+        }.scan(new TreePath(unit), null);
+        return result[0];
+    }
+
+    /**
+     * Attribute the enclosing method body or field initializer up to the marker
+     *
+     * @return the environment at the marker
+     */
+    @Nullable
+    private Env<AttrContext> attribute(Context context, TreePath path) {
+        Enter enter = Enter.instance(context);
+        MemberEnter memberEnter = MemberEnter.instance(context);
+        Attr attr = Attr.instance(context);
+        JCTree leaf = (JCTree) path.getLeaf();
+
+        ArrayList<Tree> trees = new ArrayList<>();
+        for (TreePath p = path; p != null; p = p.getParentPath()) {
+            trees.add(0, p.getLeaf());
+        }
+        Env<AttrContext> env = null;
+        JCMethodDecl method = null;
+        JCVariableDecl field = null;
+        for (Tree tree : trees) {
+            switch (tree.getKind()) {
+                case COMPILATION_UNIT:
+                    env = enter.getTopLevelEnv((JCCompilationUnit) tree);
+                    break;
+                case ANNOTATION_TYPE:
+                case CLASS:
+                case ENUM:
+                case INTERFACE:
+                    ClassSymbol symbol = ((JCClassDecl) tree).sym;
+                    if (symbol == null) return null;
+                    env = enter.getClassEnv(symbol);
+                    method = null;
+                    field = null;
+                    break;
+                case METHOD:
+                    method = (JCMethodDecl) tree;
+                    break;
+                case VARIABLE:
+                    field = (JCVariableDecl) tree;
+                    break;
+                case BLOCK:
+                    if (env == null) return null;
+                    if (method != null) {
+                        if (method.sym == null) return null;
+                        env = memberEnter.getMethodEnv(method, env);
+                    }
+                    return attr.attribStatToTree((JCTree) tree, env, leaf);
+                default:
+                    if (env != null && field != null && field.init == tree && field.sym != null) {
+                        env = memberEnter.getInitEnv(field, env);
+                        return attr.attribExprToTree((JCTree) tree, env, leaf);
+                    }
+            }
+        }
+        return null;
+    }
+
+    private ArrayList<Description> collectMembers(Context context, Env<AttrContext> env, Type site,
+                                                  boolean staticOnly, String prefix) {
+        Types types = Types.instance(context);
+        Resolve resolve = Resolve.instance(context);
+        ArrayList<Description> result = new ArrayList<>();
+        Type type = site;
+        if (type.tag == TypeTags.TYPEVAR) {
+            type = type.getUpperBound();
+        } else if (type.tag == TypeTags.ARRAY) {
+            //length and clone are members of the array class
+            type = Symtab.instance(context).arrayClass.type;
+        }
+        if (type.tag != TypeTags.CLASS) {
+            return result;
+        }
+
+        //subclasses come first in the closure, so overridden members are skipped
+        Set<String> seen = new HashSet<>();
+        for (Type superType : types.closure(type)) {
+            for (Symbol member : superType.tsym.members().getElements()) {
+                String name = member.name.toString();
+                if (!name.startsWith(prefix) || name.equals(MARKER)
+                        || (member.flags() & Flags.SYNTHETIC) != 0
+                        || (staticOnly && (member.flags() & Flags.STATIC) == 0)
+                        || !resolve.isAccessible(env, site, member)) {
+                    continue;
+                }
+                if (member.kind == Kinds.VAR) {
+                    if (seen.add(name)) {
+                        result.add(new FieldDescription(name, getTypeName(types, types.memberType(site, member))));
+                    }
+                } else if (member.kind == Kinds.MTH && !member.isConstructor()
+                        && !name.equals("<clinit>")) {
+                    Type methodType = types.memberType(site, member).asMethodType();
+                    ArrayList<String> parameterTypes = new ArrayList<>();
+                    for (Type parameterType : methodType.getParameterTypes()) {
+                        parameterTypes.add(getTypeName(types, parameterType));
+                    }
+                    if (seen.add(name + parameterTypes)) {
+                        result.add(new MethodDescription(name, parameterTypes,
+                                getTypeName(types, methodType.getReturnType())));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The model of the completion has no generics, List&lt;String&gt;.get returns String
+     */
+    private static String getTypeName(Types types, Type type) {
+        return types.erasure(type).toString();
+    }
+
+    private static class SourceFileObject extends SimpleJavaFileObject {
+        private final String content;
+
+        SourceFileObject(String content) {
+            super(URI.create("string:///Completion.java"), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+}
@@ -1,13 +1,10 @@
 package com.duy.ide.autocomplete.model;
 
+import android.support.annotation.Nullable;
 
 import com.duy.ide.autocomplete.util.JavaUtil;
 import com.duy.ide.editor.view.CodeSuggestsEditText;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 
 /**
@@ -21,6 +18,11 @@ public class ClassDescription implements Description {
     private ArrayList<ConstructorDescription> constructors;
     private ArrayList<FieldDescription> fields;
     private ArrayList<MethodDescription> methods;
+    /**
+     * Fills the members and the super class when they are used the first time
+     */
+    @Nullable
+    private MemberLoader memberLoader;
 
     public ClassDescription(String simpleName, String className, String extend, long lastUsed) {
         this.name = simpleName;
@@ -35,41 +37,23 @@ public class ClassDescription implements Description {
         methods = new ArrayList<>();
     }
 
-    public ClassDescription(Class value) {
-        this.simpleName = value.getSimpleName();
-        this.name = value.getSimpleName();
-        this.className = value.getName();
-        if (value.getSuperclass() != null) {
-            this.extend = value.getSuperclass().getName();
-        }
-        this.packageName = JavaUtil.getPackageName(className);
-        this.lastUsed = 0;
-
-
-        constructors = new ArrayList<>();
-        fields = new ArrayList<>();
-        methods = new ArrayList<>();
+    /**
+     * A description whose super class and members are read when they are used the first time
+     */
+    public ClassDescription(String simpleName, String className, MemberLoader memberLoader) {
+        this(simpleName, className, null, 0);
+        this.memberLoader = memberLoader;
+    }
 
-        for (Constructor constructor : value.getConstructors()) {
-            if (Modifier.isPublic(constructor.getModifiers())) {
-                addConstructor(new ConstructorDescription(constructor));
-            }
-        }
-        for (Field field : value.getDeclaredFields()) {
-            if (Modifier.isPublic(field.getModifiers())) {
-                if (!field.getName().equals(field.getDeclaringClass().getName())) {
-                    addField(new FieldDescription(field));
-                }
-            }
-        }
-        for (Method method : value.getMethods()) {
-            if (Modifier.isPublic(method.getModifiers())) {
-                addMethod(new MethodDescription(method));
-            }
+    private synchronized void ensureMembersLoaded() {
+        MemberLoader loader = memberLoader;
+        if (loader != null) {
+            memberLoader = null;
+            loader.loadMembers(this);
         }
     }
 
-    public Class getType() {
+    public String getType() {
         return null;
     }
 
@@ -107,9 +91,14 @@ public class ClassDescription implements Description {
     }
 
     public String getSuperClass() {
+        ensureMembersLoaded();
         return extend;
     }
 
+    public void setSuperClass(String extend) {
+        this.extend = extend;
+    }
+
     public String getPackageName() {
         return packageName;
     }
@@ -123,6 +112,7 @@ public class ClassDescription implements Description {
     }
 
     public ArrayList<ConstructorDescription> getConstructors() {
+        ensureMembersLoaded();
         return constructors;
     }
 
@@ -131,6 +121,7 @@ public class ClassDescription implements Description {
     }
 
     public ArrayList<FieldDescription> getFields() {
+        ensureMembersLoaded();
         return fields;
     }
 
@@ -148,6 +139,7 @@ public class ClassDescription implements Description {
     }
 
     public ArrayList<MethodDescription> getMethods() {
+        ensureMembersLoaded();
         return methods;
     }
 
@@ -157,6 +149,7 @@ public class ClassDescription implements Description {
     }
 
     public ArrayList<Description> getMember(String suffix) {
+        ensureMembersLoaded();
         ArrayList<Description> result = new ArrayList<>();
         for (ConstructorDescription constructor : constructors) {
             if (!suffix.isEmpty() && constructor.getName().startsWith(suffix)) {
@@ -175,4 +168,8 @@ public class ClassDescription implements Description {
         }
         return result;
     }
+
+    public interface MemberLoader {
+        void loadMembers(ClassDescription description);
+    }
 }
@@ -3,19 +3,25 @@ package com.duy.ide.autocomplete.model;
 import com.duy.ide.autocomplete.util.JavaUtil;
 import com.duy.ide.editor.view.IndentEditText;
 
-import java.lang.reflect.Constructor;
+import java.util.List;
 
 /**
  * Created by Duy on 20-Jul-17.
  */
 
 public class ConstructorDescription extends DescriptionImpl {
-    private Constructor constructor;
+    private String className;
+    private List<String> parameterTypes;
     private String simpleName;
 
-    public ConstructorDescription(Constructor constructor) {
-        this.constructor = constructor;
-        this.simpleName = JavaUtil.getSimpleName(constructor.getName());
+    /**
+     * @param className      full name of the class
+     * @param parameterTypes names of the parameter types, for example java.lang.String
+     */
+    public ConstructorDescription(String className, List<String> parameterTypes) {
+        this.className = className;
+        this.parameterTypes = parameterTypes;
+        this.simpleName = JavaUtil.getSimpleName(className);
     }
 
     public String getSimpleName() {
@@ -24,7 +30,7 @@ public class ConstructorDescription extends DescriptionImpl {
 
     @Override
     public String getName() {
-        return constructor.getName();
+        return className;
     }
 
     @Override
@@ -33,13 +39,13 @@ public class ConstructorDescription extends DescriptionImpl {
     }
 
     @Override
-    public Class getType() {
+    public String getType() {
         return null;
     }
 
     @Override
     public String getSnippet() {
-        if (constructor.getParameterTypes().length > 0) {
+        if (parameterTypes.size() > 0) {
             return getSimpleName() + "(" + IndentEditText.CURSOR + ");";
         } else {
             return getSimpleName() + "();" + IndentEditText.CURSOR;
@@ -48,16 +54,11 @@ public class ConstructorDescription extends DescriptionImpl {
 
     @Override
     public String toString() {
-        Class<?>[] parameterTypes = constructor.getParameterTypes();
         StringBuilder params = new StringBuilder();
-        for (int i = 0; i < parameterTypes.length; i++) {
-            Class<?> parameterType = parameterTypes[i];
-            if (i == parameterTypes.length - 1) {
-                params.append(parameterType.getSimpleName());
-                break;
-            }
-            params.append(parameterType.getSimpleName()).append(",");
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (i > 0) params.append(",");
+            params.append(JavaUtil.getSimpleName(parameterTypes.get(i)));
         }
-        return JavaUtil.getSimpleName(constructor.getName()) + "(" + params.toString() + ")";
+        return JavaUtil.getSimpleName(className) + "(" + params.toString() + ")";
     }
 }
@@ -13,7 +13,10 @@ public interface Description {
 
     void setLastUsed(long time);
 
-    Class getType();
+    /**
+     * @return name of the type, for example java.lang.String, or null
+     */
+    String getType();
 
     String getSnippet();
 }
\ No newline at end of file
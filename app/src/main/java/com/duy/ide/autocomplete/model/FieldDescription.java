@@ -1,21 +1,24 @@
 package com.duy.ide.autocomplete.model;
 
-import java.lang.reflect.Field;
-
 /**
  * Created by Duy on 20-Jul-17.
  */
 
 public class FieldDescription implements Member , Description {
-    private Field field;
+    private String name;
+    private String type;
 
-    public FieldDescription(Field field) {
-        this.field = field;
+    /**
+     * @param type name of the type, for example java.lang.String
+     */
+    public FieldDescription(String name, String type) {
+        this.name = name;
+        this.type = type;
     }
 
     @Override
     public String getName() {
-        return field.getName();
+        return name;
     }
 
     @Override
@@ -34,27 +37,27 @@ public class FieldDescription implements Member , Description {
     }
 
     @Override
-    public Class getType() {
-        return field.getType();
+    public String getType() {
+        return type;
     }
 
     @Override
     public String getSnippet() {
-        return field.getName();
+        return name;
     }
 
     @Override
     public String getPrototype() {
-        return field.getName();
+        return name;
     }
 
     @Override
-    public Class getReturnType() {
-        return field.getType();
+    public String getReturnType() {
+        return type;
     }
 
     @Override
     public String toString() {
-        return field.getName();
+        return name;
     }
 }
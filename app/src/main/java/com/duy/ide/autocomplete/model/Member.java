@@ -9,5 +9,5 @@ public interface Member {
 
     String getPrototype();
 
-    Class getReturnType();
+    String getReturnType();
 }
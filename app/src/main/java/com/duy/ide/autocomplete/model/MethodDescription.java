@@ -5,8 +5,7 @@ import android.support.annotation.NonNull;
 import com.duy.ide.autocomplete.util.JavaUtil;
 import com.duy.ide.editor.view.IndentEditText;
 
-import java.lang.reflect.Method;
-import java.util.Arrays;
+import java.util.List;
 
 /**
  * Created by Duy on 20-Jul-17.
@@ -14,18 +13,26 @@ import java.util.Arrays;
 
 public class MethodDescription implements Member, Description {
 
-    private Method method;
+    private String name;
+    private List<String> parameterTypes;
+    private String returnType;
     private String simpleName;
 
-    public MethodDescription(@NonNull Method method) {
-        this.method = method;
-        method.getClass(); //check null
-        this.simpleName = JavaUtil.getSimpleName(method.getName());
+    /**
+     * @param parameterTypes names of the parameter types, for example java.lang.String
+     * @param returnType     name of the return type
+     */
+    public MethodDescription(@NonNull String name, @NonNull List<String> parameterTypes,
+                             @NonNull String returnType) {
+        this.name = name;
+        this.parameterTypes = parameterTypes;
+        this.returnType = returnType;
+        this.simpleName = JavaUtil.getSimpleName(name);
     }
 
     @Override
     public String getName() {
-        return method.getName();
+        return name;
     }
 
     @Override
@@ -44,13 +51,17 @@ public class MethodDescription implements Member, Description {
     }
 
     @Override
-    public Class getType() {
-        return method.getReturnType();
+    public String getType() {
+        return returnType;
+    }
+
+    public List<String> getParameterTypes() {
+        return parameterTypes;
     }
 
     @Override
     public String getSnippet() {
-        if (method.getParameterTypes().length > 0) {
+        if (parameterTypes.size() > 0) {
             return getSimpleName() + "(" + IndentEditText.CURSOR + ");";
         } else {
             return getSimpleName() + "();" + IndentEditText.CURSOR;
@@ -59,27 +70,22 @@ public class MethodDescription implements Member, Description {
 
     @Override
     public String getPrototype() {
-        return method.getName() + "(" + Arrays.toString(method.getParameterTypes()) + ")";
+        return name + "(" + parameterTypes + ")";
     }
 
     @Override
     public String toString() {
-        Class<?>[] parameterTypes = method.getParameterTypes();
         StringBuilder params = new StringBuilder();
-        for (int i = 0; i < parameterTypes.length; i++) {
-            Class<?> parameterType = parameterTypes[i];
-            if (i == parameterTypes.length - 1) {
-                params.append(parameterType.getSimpleName());
-                break;
-            }
-            params.append(parameterType.getSimpleName()).append(",");
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (i > 0) params.append(",");
+            params.append(JavaUtil.getSimpleName(parameterTypes.get(i)));
         }
-        return method.getName() + "(" + params.toString() + ")";
+        return name + "(" + params.toString() + ")";
     }
 
     @Override
-    public Class getReturnType() {
-        return method.getReturnType();
+    public String getReturnType() {
+        return returnType;
     }
 
     public String getSimpleName() {
@@ -18,13 +18,10 @@ package com.duy.ide.autocomplete.util;
 
 import android.support.annotation.NonNull;
 import android.text.Layout;
-import android.text.TextUtils;
 import android.widget.EditText;
 import android.widget.ScrollView;
 
 public class LineUtils {
-    private boolean[] toCountLinesArray;
-    private int[] realLines;
 
     public static int getYAtLine(ScrollView scrollView, int lineCount, int line) {
         if (lineCount == 0) return 0;
@@ -51,15 +48,11 @@ public class LineUtils {
      * Gets the lineInfo from the index of the letter in the text
      */
     public static int getLineFromIndex(int index, int lineCount, Layout layout) {
-        int line;
-        int currentIndex = 0;
-
-        for (line = 0; line < lineCount; line++) {
-            currentIndex += layout.getLineEnd(line) - layout.getLineStart(line);
-            if (currentIndex >= index) {
-                break;
-            }
-        }
+        if (lineCount == 0) return 0;
+        if (index > layout.getLineEnd(lineCount - 1)) return lineCount;
+        int line = layout.getLineForOffset(index);
+        //the end of a line belongs to it, not to the next line
+        if (line > 0 && index == layout.getLineStart(line)) line--;
         return line;
     }
 
@@ -70,76 +63,4 @@ public class LineUtils {
         }
         return 0;
     }
-
-    public boolean[] getGoodLines() {
-        return toCountLinesArray;
-    }
-
-    public int[] getRealLines() {
-        return realLines;
-    }
-
-    public void updateHasNewLineArray(int lineCount, Layout layout, String text) {
-        boolean[] hasNewLineArray = new boolean[lineCount];
-        toCountLinesArray = new boolean[lineCount];
-        realLines = new int[lineCount];
-        if (TextUtils.isEmpty(text)) {
-            toCountLinesArray[0] = false;
-            realLines[0] = 0;
-            return;
-        }
-
-        if (lineCount == 0) return;
-
-        int i;
-
-        // for every lineInfo on the edittext
-        for (i = 0; i < lineCount; i++) {
-            // check if this lineInfo contains "\n"
-            if (layout.getLineEnd(i) == 0) {
-                hasNewLineArray[i] = false;
-            } else {
-                hasNewLineArray[i] = text.charAt(layout.getLineEnd(i) - 1) == '\n';
-            }
-            // if true
-            if (hasNewLineArray[i]) {
-                int j = i - 1;
-                while (j >= 0 && !hasNewLineArray[j]) {
-                    j--;
-                }
-                toCountLinesArray[j + 1] = true;
-
-            }
-        }
-
-        toCountLinesArray[lineCount - 1] = true;
-
-        int realLine = 0;
-        for (i = 0; i < toCountLinesArray.length; i++) {
-            realLines[i] = realLine;
-            if (toCountLinesArray[i]) {
-                realLine++;
-            }
-        }
-    }
-
-    public int firstReadLine() {
-        return realLines[0];
-    }
-
-    public int lastReadLine() {
-        return realLines[realLines.length - 1];
-    }
-
-    public int fakeLineFromRealLine(int realLine) {
-        int i;
-        int fakeLine = 0;
-        for (i = 0; i < realLines.length; i++) {
-            if (realLine == realLines[i]) {
-                fakeLine = i;
-                break;
-            }
-        }
-        return fakeLine;
-    }
-}
\ No newline at end of file
+}
@@ -333,6 +333,7 @@ public abstract class BaseEditorActivity extends AbstractAppCompatActivity
                 int position = mPageAdapter.getPositionForTag(file.getPath());
                 boolean success = mFileManager.deleteFile(file);
                 if (success) {
+                    onFileChanged(file);
                     if (position >= 0) {
                         removePage(position);
                     }
@@ -486,6 +487,7 @@ public abstract class BaseEditorActivity extends AbstractAppCompatActivity
 
     @Override
     public void onFileCreated(File classF) {
+        onFileChanged(classF);
         mFilePresenter.show(mProjectFile, true);
         addNewPageEditor(classF, true);
     }
@@ -25,6 +25,8 @@ import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -48,6 +50,9 @@ import com.google.googlejavaformat.java.JavaFormatterOptions;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.util.List;
+
+import javax.tools.Diagnostic;
 
 /**
  * Created by Duy on 15-Mar-17.
@@ -63,6 +68,27 @@ public class EditorFragment extends Fragment implements EditorListener, EditPage
     private Dialog dialog;
     private EditPageContract.Presenter mPresenter;
     private AutoCompleteProvider autoCompleteProvider;
+    /**
+     * Checks the edited text in the background when auto compile is enabled, and tells the
+     * activity that the file changed
+     */
+    private final TextWatcher mCheckCodeWatcher = new TextWatcher() {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            checkCode();
+            notifyFileChanged();
+        }
+    };
 
 //    private LockableHorizontalScrollView mHorizontalScrollView;
 
@@ -122,6 +148,7 @@ public class EditorFragment extends Fragment implements EditorListener, EditPage
 //        }
 //        mCodeEditor.setSuggestData(items);
         if (autoCompleteProvider != null) mCodeEditor.setAutoCompleteProvider(autoCompleteProvider);
+        mCodeEditor.addTextChangedListener(mCheckCodeWatcher);
         return view;
     }
 
@@ -149,6 +176,22 @@ public class EditorFragment extends Fragment implements EditorListener, EditPage
         super.onResume();
         mCodeEditor.updateFromSettings();
         mCodeEditor.restoreHistory(getFilePath());
+        checkCode();
+    }
+
+    private void checkCode() {
+        if (mCodeEditor == null || !mCodeEditor.isAutoCompile()) return;
+        File file = getCurrentFile();
+        if (file != null && file.getName().endsWith(".java") && getActivity() instanceof EditorControl) {
+            ((EditorControl) getActivity()).checkCode(file, mCodeEditor.getSnapshot());
+        }
+    }
+
+    private void notifyFileChanged() {
+        File file = getCurrentFile();
+        if (file != null && getActivity() instanceof EditorControl) {
+            ((EditorControl) getActivity()).onFileChanged(file);
+        }
     }
 
     @Override
@@ -173,7 +216,10 @@ public class EditorFragment extends Fragment implements EditorListener, EditPage
 
     @Override
     public void gotoLine(int line, int col) {
-        // TODO: 19/07/2017
+        if (mCodeEditor != null) {
+            mCodeEditor.requestFocus();
+            mCodeEditor.goToLine(line, col);
+        }
     }
 
     @Override
@@ -207,10 +253,9 @@ public class EditorFragment extends Fragment implements EditorListener, EditPage
         boolean result;
         if (filePath != null) {
             try {
-                String code = getCode();
-                result = FileManager.saveFile(filePath, code);
+                result = FileManager.saveFile(filePath, mCodeEditor.getSnapshot());
                 if (result) {
-                    //do some thing
+                    notifyFileChanged();
                 } else {
                     Toast.makeText(getContext(), getString(R.string.can_not_save_file) + " " + (new File(filePath).getName()),
                             Toast.LENGTH_SHORT).show();
@@ -228,13 +273,14 @@ public class EditorFragment extends Fragment implements EditorListener, EditPage
 
     @Override
     public void formatCode() {
+        if (mCodeEditor == null) return;
         String filePath = getArguments().getString(CompileManager.FILE_PATH);
         if (filePath != null) {
             File f = new File(filePath);
             if (f.getName().endsWith(".java")) {
                 JavaPreferences javaPreferences = new JavaPreferences(getContext());
                 int formatType = javaPreferences.getFormatType();
-                new JavaFormatCode(formatType).execute(getCode());
+                new JavaFormatCode(formatType).execute(mCodeEditor.getSnapshot());
             }else {
                 Toast.makeText(getContext(), R.string.unsupport_format_file, Toast.LENGTH_SHORT).show();
             }
@@ -256,6 +302,13 @@ public class EditorFragment extends Fragment implements EditorListener, EditPage
         }
     }
 
+    @Override
+    public void showDiagnostics(List<Diagnostic> diagnostics) {
+        if (mCodeEditor != null) {
+            mCodeEditor.setDiagnostics(diagnostics);
+        }
+    }
+
     @Override
     public File getCurrentFile() {
         String filePath = getArguments().getString(CompileManager.FILE_PATH);
@@ -356,7 +409,7 @@ public class EditorFragment extends Fragment implements EditorListener, EditPage
         }
     }
 
-    private class JavaFormatCode extends AsyncTask<String, Void, String> {
+    private class JavaFormatCode extends AsyncTask<CharSequence, Void, String> {
         private Exception error;
         private int formatType;
 
@@ -371,10 +424,11 @@ public class EditorFragment extends Fragment implements EditorListener, EditPage
         }
 
         @Override
-        protected String doInBackground(String... params) {
+        protected String doInBackground(CharSequence... params) {
             try {
-                String src = params[0];
-                if (src == null) return null;
+                if (params[0] == null) return null;
+                //the snapshot is copied in the background
+                String src = params[0].toString();
 
                 JavaFormatterOptions.Builder builder = JavaFormatterOptions.builder();
                 builder.style(formatType == 0 ? JavaFormatterOptions.Style.GOOGLE
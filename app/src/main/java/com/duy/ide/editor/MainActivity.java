@@ -24,6 +24,7 @@ import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.design.widget.NavigationView;
 import android.support.design.widget.Snackbar;
 import android.support.v4.content.ContextCompat;
@@ -50,7 +51,9 @@ import com.duy.compile.BuildJarAchieveTask;
 import com.duy.compile.CompileJavaTask;
 import com.duy.compile.CompileManager;
 import com.duy.compile.diagnostic.DiagnosticFragment;
+import com.duy.compile.diagnostic.JavacDiagnosticsEngine;
 import com.duy.ide.Builder;
+import com.duy.ide.EditPageContract;
 import com.duy.ide.MenuEditor;
 import com.duy.ide.R;
 import com.duy.ide.autocomplete.AutoCompleteProvider;
@@ -62,10 +65,12 @@ import com.duy.ide.editor.view.EditorView;
 import com.duy.ide.editor.view.IndentEditText;
 import com.duy.ide.setting.JavaPreferences;
 import com.duy.ide.themefont.activities.ThemeFontActivity;
+import com.duy.project.dialog.DialogFindInProject;
 import com.duy.project.file.android.AndroidProjectFolder;
 import com.duy.project.file.java.ClassFile;
 import com.duy.project.file.java.JavaProjectFolder;
 import com.duy.project.file.java.ProjectManager;
+import com.duy.project.search.ProjectSearch;
 import com.duy.project.utils.ClassUtil;
 import com.duy.run.dialog.DialogRunConfig;
 import com.sothree.slidinguppanel.SlidingUpPanelLayout;
@@ -80,6 +85,7 @@ import javax.tools.Diagnostic;
 public class MainActivity extends BaseEditorActivity implements
         DrawerLayout.DrawerListener,
         DialogRunConfig.OnConfigChangeListener,
+        DialogFindInProject.SearchListener,
         Builder {
     public static final int ACTION_FILE_SELECT_CODE = 1012;
     public static final int ACTION_PICK_MEDIA_URL = 1013;
@@ -93,6 +99,10 @@ public class MainActivity extends BaseEditorActivity implements
     private Dialog mDialog;
     private MenuItem mActionRun;
     private ProgressBar mCompileProgress;
+    @Nullable
+    private ProjectSearch mProjectSearch;
+    @Nullable
+    private JavacDiagnosticsEngine mDiagnosticsEngine;
 
     private void populateAutoCompleteService(AutoCompleteProvider provider) {
         mPagePresenter.setAutoCompleteProvider(provider);
@@ -442,6 +452,74 @@ public class MainActivity extends BaseEditorActivity implements
 
     }
 
+    /**
+     * search the files of the project, the open files are saved first
+     */
+    public void showDialogFindInProject() {
+        saveAllFile();
+        DialogFindInProject dialog = DialogFindInProject.newInstance();
+        dialog.show(getSupportFragmentManager(), DialogFindInProject.TAG);
+    }
+
+    @Nullable
+    @Override
+    public ProjectSearch getProjectSearch() {
+        if (mProjectFile == null) return null;
+        File root = mProjectFile.getProjectDir();
+        //the index is kept while the project is opened
+        if (mProjectSearch == null || !mProjectSearch.getRoot().equals(root)) {
+            mProjectSearch = new ProjectSearch(root);
+        }
+        return mProjectSearch;
+    }
+
+    @Override
+    public void onFileChanged(@NonNull File file) {
+        if (mProjectSearch != null) {
+            mProjectSearch.markDirty(file);
+        }
+    }
+
+    @Override
+    public void checkCode(@NonNull File file, @NonNull CharSequence text) {
+        if (mProjectFile == null) return;
+        //the context of the engine is kept while the project is opened
+        if (mDiagnosticsEngine == null || mDiagnosticsEngine.getProjectFolder() != mProjectFile) {
+            if (mDiagnosticsEngine != null) mDiagnosticsEngine.dispose();
+            mDiagnosticsEngine = new JavacDiagnosticsEngine(mProjectFile);
+        }
+        mDiagnosticsEngine.schedule(file, text, new JavacDiagnosticsEngine.Callback() {
+            @Override
+            public void onDiagnostics(@NonNull final JavacDiagnosticsEngine.Request request,
+                                      @NonNull final List<Diagnostic> diagnostics, boolean finished) {
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        //the positions are wrong after a new edit
+                        if (request.isCancelled() || isFinishing()) return;
+                        mDiagnosticPresenter.display(diagnostics);
+                        EditPageContract.View page = mPagePresenter.getCurrentPage();
+                        if (page != null && request.file.equals(page.getCurrentFile())) {
+                            page.showDiagnostics(diagnostics);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void onSearchResultClick(@NonNull ProjectSearch.Match match) {
+        String path = match.file.getPath();
+        if (mPagePresenter.gotoPage(path) == -1) {
+            mPagePresenter.addPage(path, true);
+        }
+        EditPageContract.View editor = mPagePresenter.getCurrentPage();
+        if (editor != null) {
+            editor.gotoLine(match.line, match.column);
+        }
+    }
+
     @Override
     public void saveCurrentFile() {
         EditorFragment editorFragment = mPageAdapter.getCurrentFragment();
@@ -467,6 +545,10 @@ public class MainActivity extends BaseEditorActivity implements
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (mDiagnosticsEngine != null) {
+            mDiagnosticsEngine.dispose();
+            mDiagnosticsEngine = null;
+        }
         if (mDialog != null && mDialog.isShowing()) {
             mDialog.dismiss();
         }
@@ -0,0 +1,87 @@
+/*
+ *  Copyright (c) 2017 Tran Le Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.duy.ide.editor.findreplace;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Edits of a replace all, found in a snapshot of the text.
+ * <p>
+ * Only the matched ranges are replaced, so the spans and the line states of the other text are
+ * kept. The edits are applied from the last one, so the offsets of the next edits do not move.
+ */
+public class ReplaceEdits {
+    private final ArrayList<String> replacements = new ArrayList<>();
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+
+    /**
+     * @param replacement replacement of each match, with the group references like
+     *                    {@link Matcher#appendReplacement} if it is not literal
+     */
+    @NonNull
+    public static ReplaceEdits find(@NonNull Pattern pattern, @NonNull CharSequence text,
+                                    @NonNull String replacement, boolean literal) {
+        ReplaceEdits edits = new ReplaceEdits();
+        //holds the text between the previous match and the replacement of the current one
+        StringBuffer buffer = new StringBuffer();
+        int appendPosition = 0;
+        for (Matcher m = pattern.matcher(text); m.find(); ) {
+            if (literal) {
+                edits.add(m.start(), m.end(), replacement);
+            } else {
+                buffer.setLength(0);
+                m.appendReplacement(buffer, replacement);
+                edits.add(m.start(), m.end(), buffer.substring(m.start() - appendPosition));
+                appendPosition = m.end();
+            }
+        }
+        return edits;
+    }
+
+    private void add(int start, int end, String replacement) {
+        int count = replacements.size();
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        replacements.add(replacement);
+    }
+
+    public int size() {
+        return replacements.size();
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    public String getReplacement(int index) {
+        return replacements.get(index);
+    }
+}
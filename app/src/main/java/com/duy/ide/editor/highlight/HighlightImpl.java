@@ -1,5 +1,7 @@
 package com.duy.ide.editor.highlight;
 
+import android.support.annotation.NonNull;
+
 import com.duy.ide.themefont.themes.database.CodeTheme;
 
 /**
@@ -22,4 +24,9 @@ public abstract class HighlightImpl implements Highlighter {
     public void setErrorRange(long startPosition, long endPosition) {
 
     }
+
+    @Override
+    public void onTextChanged(@NonNull CharSequence text, int start, int before, int count) {
+
+    }
 }
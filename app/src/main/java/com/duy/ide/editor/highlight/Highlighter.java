@@ -32,4 +32,9 @@ public interface Highlighter {
     void setCodeTheme(CodeTheme codeTheme);
 
     void setErrorRange(long startPosition, long endPosition);
+
+    /**
+     * Called by the text watcher of the editor for every edit, before the next highlight
+     */
+    void onTextChanged(@NonNull CharSequence text, int start, int before, int count);
 }
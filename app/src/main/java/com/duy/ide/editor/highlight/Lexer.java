@@ -0,0 +1,54 @@
+/*
+ *  Copyright (c) 2017 Tran Le Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.duy.ide.editor.highlight;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Splits one line of text into colored tokens.
+ * <p>
+ * A construct which spans lines, like a block comment, is carried to the next line by the
+ * returned state, so a line can be lexed without the lines before it when its start state is
+ * known, see {@link LineStateCache}.
+ */
+public interface Lexer {
+    /**
+     * start state of the first line
+     */
+    int STATE_DEFAULT = 0;
+
+    int TOKEN_COMMENT = 1;
+    int TOKEN_STRING = 2;
+    int TOKEN_NUMBER = 3;
+    int TOKEN_KEYWORD = 4;
+    int TOKEN_TAG = 5;
+    int TOKEN_ATTRIBUTE = 6;
+
+    /**
+     * @param text     the document
+     * @param start    start of the line
+     * @param end      end of the line, the index of the line feed or the length of the text
+     * @param state    state at the start of the line
+     * @param callback receives the tokens in order, null to compute the state only
+     * @return the state at the start of the next line
+     */
+    int lexLine(CharSequence text, int start, int end, int state, @Nullable TokenCallback callback);
+
+    interface TokenCallback {
+        void onToken(int type, int start, int end);
+    }
+}
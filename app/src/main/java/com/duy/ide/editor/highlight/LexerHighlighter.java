@@ -0,0 +1,95 @@
+/*
+ *  Copyright (c) 2017 Tran Le Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.duy.ide.editor.highlight;
+
+import android.support.annotation.NonNull;
+import android.text.Editable;
+
+import com.duy.ide.editor.view.LineIndex;
+import com.duy.ide.themefont.themes.database.CodeTheme;
+
+/**
+ * Colors the tokens of a {@link Lexer}, the lines are lexed in one pass with the start state
+ * kept by a {@link LineStateCache}, the colors are applied as a diff by {@link SyntaxSpans}.
+ */
+public abstract class LexerHighlighter extends HighlightImpl implements Lexer.TokenCallback {
+    private final LineStateCache mLineStates;
+    private final SyntaxSpans mSpans = new SyntaxSpans();
+
+    /**
+     * @param lines the lines of the text, updated by the editor before {@link #onTextChanged}
+     */
+    protected LexerHighlighter(@NonNull Lexer lexer, @NonNull LineIndex lines) {
+        this.mLineStates = new LineStateCache(lexer, lines);
+    }
+
+    @Override
+    public void setCodeTheme(CodeTheme codeTheme) {
+        super.setCodeTheme(codeTheme);
+        mSpans.clearPool();
+    }
+
+    @Override
+    public void onTextChanged(@NonNull CharSequence text, int start, int before, int count) {
+        mLineStates.onTextChanged(text, start, before, count);
+    }
+
+    @Override
+    public void highlight(@NonNull Editable allText,
+                          @NonNull CharSequence textToHighlight, int start) {
+        int end = start + textToHighlight.length();
+        mSpans.begin();
+        mLineStates.lex(allText, start, end, this);
+        addSpans(mSpans, start, end);
+        mSpans.apply(allText, start, end);
+    }
+
+    /**
+     * Add colors which are not from the lexer, clipped to the highlighted range
+     */
+    protected void addSpans(@NonNull SyntaxSpans spans, int start, int end) {
+
+    }
+
+    @Override
+    public void onToken(int type, int start, int end) {
+        int color;
+        boolean bold = false;
+        switch (type) {
+            case Lexer.TOKEN_COMMENT:
+                color = codeTheme.getCommentColor();
+                break;
+            case Lexer.TOKEN_STRING:
+                color = codeTheme.getStringColor();
+                break;
+            case Lexer.TOKEN_NUMBER:
+            case Lexer.TOKEN_ATTRIBUTE:
+                color = codeTheme.getNumberColor();
+                break;
+            case Lexer.TOKEN_KEYWORD:
+                bold = true;
+                color = codeTheme.getKeywordColor();
+                break;
+            case Lexer.TOKEN_TAG:
+                color = codeTheme.getKeywordColor();
+                break;
+            default:
+                return;
+        }
+        mSpans.add(start, end, color, bold);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ *  Copyright (c) 2017 Tran Le Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.duy.ide.editor.highlight;
+
+import android.support.annotation.NonNull;
+
+import com.duy.ide.editor.view.LineIndex;
+
+import java.util.Arrays;
+
+/**
+ * Start state of the {@link Lexer} for every line of a document, the lines are split by the
+ * {@link LineIndex} of the editor, which is updated before {@link #onTextChanged} is called.
+ * <p>
+ * An edit only invalidates the states after the edited line. They are lexed again lazily, when
+ * a line below is highlighted, and the lexing stops as soon as the state of a line after the
+ * edit is the same as before the edit, the states of the next lines did not change either.
+ * So a window in the middle of the document is colored with the state of the lines above,
+ * for example inside a block comment which starts above the window.
+ */
+public class LineStateCache {
+    private final Lexer lexer;
+    private final LineIndex lines;
+    /**
+     * lexer state at the start of each line
+     */
+    private int[] states = new int[64];
+    /**
+     * the states of the lines before this line are valid
+     */
+    private int validLines;
+    /**
+     * the edited lines are before this line, the old state of a line from this line on can be
+     * compared to its new state
+     */
+    private int dirtyEnd;
+    /**
+     * length of the text and count of the lines of the states, -1 if the states are not known
+     */
+    private int length = -1;
+    private int lineCount;
+
+    /**
+     * @param lines the lines of the text, shared with the editor
+     */
+    public LineStateCache(@NonNull Lexer lexer, @NonNull LineIndex lines) {
+        this.lexer = lexer;
+        this.lines = lines;
+    }
+
+    /**
+     * Forget the states, the text is split into lines again if the index does not match it
+     */
+    public void reset(@NonNull CharSequence text) {
+        if (!lines.isValid(text)) lines.reset(text);
+        length = text.length();
+        lineCount = lines.getLineCount();
+        ensureCapacity(lineCount);
+        states[0] = Lexer.STATE_DEFAULT;
+        validLines = 1;
+        //there is no old state to compare with
+        dirtyEnd = lines.getLineCount();
+    }
+
+    /**
+     * Same arguments as {@link android.text.TextWatcher#onTextChanged}, the text and the line
+     * index are already changed, the count chars at start replace before chars.
+     */
+    public void onTextChanged(@NonNull CharSequence text, int start, int before, int count) {
+        if (length < 0 || length != text.length() - count + before || !lines.isValid(text)) {
+            //an edit was missed
+            reset(text);
+            return;
+        }
+        //the lines before the edit did not move
+        int line = lines.getLineOfOffset(start);
+        int oldCount = this.lineCount;
+        int inserted = 0;
+        for (int i = start; i < start + count; i++) {
+            if (text.charAt(i) == '\n') inserted++;
+        }
+        int lineCount = lines.getLineCount();
+        //lines which started inside the replaced text
+        int removed = oldCount - lineCount + inserted;
+        this.length = text.length();
+        this.lineCount = lineCount;
+
+        if (inserted != removed) {
+            ensureCapacity(lineCount);
+            System.arraycopy(states, line + 1 + removed, states, line + 1 + inserted,
+                    oldCount - (line + 1 + removed));
+        }
+        Arrays.fill(states, line + 1, line + 1 + inserted, Lexer.STATE_DEFAULT);
+
+        //the state of the edited line depends on the lines above only
+        validLines = Math.min(validLines, line + 1);
+        if (dirtyEnd > line) {
+            dirtyEnd = Math.max(line + 1, dirtyEnd - removed + inserted);
+        }
+        dirtyEnd = Math.min(lineCount, Math.max(dirtyEnd, line + inserted + 1));
+    }
+
+    /**
+     * Lex the lines which intersect the range, the tokens are clipped to the range
+     */
+    public void lex(@NonNull CharSequence text, int start, int end,
+                    @NonNull final Lexer.TokenCallback callback) {
+        if (length != text.length() || !lines.isValid(text)) reset(text);
+        final int rangeStart = start;
+        final int rangeEnd = end;
+        Lexer.TokenCallback clip = new Lexer.TokenCallback() {
+            @Override
+            public void onToken(int type, int tokenStart, int tokenEnd) {
+                tokenStart = Math.max(tokenStart, rangeStart);
+                tokenEnd = Math.min(tokenEnd, rangeEnd);
+                if (tokenStart < tokenEnd) callback.onToken(type, tokenStart, tokenEnd);
+            }
+        };
+        int line = lines.getLineOfOffset(start);
+        int state = getState(text, line);
+        int lineCount = lines.getLineCount();
+        while (line < lineCount && lines.getLineStart(line) < end) {
+            state = lexer.lexLine(text, lines.getLineStart(line), lines.getLineEnd(line), state, clip);
+            line++;
+            if (line == validLines && line < lineCount) {
+                storeNextState(state);
+            }
+        }
+    }
+
+    /**
+     * @return the start state of the line, the lines after the valid lines are lexed first
+     */
+    public int getState(@NonNull CharSequence text, int line) {
+        if (length != text.length() || !lines.isValid(text)) reset(text);
+        while (validLines <= line) {
+            int previous = validLines - 1;
+            storeNextState(lexer.lexLine(text, lines.getLineStart(previous),
+                    lines.getLineEnd(previous), states[previous], null));
+        }
+        return states[line];
+    }
+
+    /**
+     * @param state the new start state of the first line which is not valid
+     */
+    private void storeNextState(int state) {
+        if (validLines >= dirtyEnd && state == states[validLines]) {
+            //converged, the next lines are lexed as before
+            validLines = lines.getLineCount();
+            dirtyEnd = validLines;
+        } else {
+            states[validLines++] = state;
+        }
+    }
+
+    public int getLineCount() {
+        return lines.getLineCount();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > states.length) {
+            states = Arrays.copyOf(states, Math.max(capacity, states.length * 2));
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ *  Copyright (c) 2017 Tran Le Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.duy.ide.editor.highlight;
+
+import android.graphics.Typeface;
+import android.support.annotation.NonNull;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.StyleSpan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Syntax colors of the highlighted window, applied to the text as a diff.
+ * <p>
+ * The colored ranges of a highlight are collected with {@link #add}, then {@link #apply}
+ * compares them with the syntax spans which are already in the window: a span with the same
+ * range and color is kept, the other spans are removed and the missing ranges are added. After
+ * a small edit most spans are unchanged, so few spans are removed and added. The syntax spans
+ * outside the window are removed too, the text there is highlighted again when it is shown, so
+ * the text only holds the spans of one window.
+ * <p>
+ * A span can only be set once in a text, but spans with the same color are interchangeable, so
+ * the removed spans are kept in a pool by color and reused for the next added ranges. The pool
+ * is dropped with {@link #clearPool} when the theme changes.
+ */
+public class SyntaxSpans {
+    /**
+     * a removed span is kept if its pool is smaller
+     */
+    private static final int MAX_POOL_SIZE = 256;
+    private static final int FLAG_BOLD = 1;
+    private static final int FLAG_ON_TOP = 2;
+
+    private int count;
+    private int[] starts = new int[256];
+    private int[] ends = new int[256];
+    private int[] colors = new int[256];
+    private int[] flags = new int[256];
+    private boolean[] matched = new boolean[256];
+
+    private long[] sortKeys = new long[256];
+
+    private int[] poolColors = new int[8];
+    private ArrayList<ArrayList<ColorSpan>> colorPools = new ArrayList<>();
+    private final ArrayList<BoldSpan> boldPool = new ArrayList<>();
+
+    /**
+     * Start a new highlight, forget the added ranges
+     */
+    public void begin() {
+        count = 0;
+    }
+
+    /**
+     * Add a colored range, the ranges are kept sorted by start
+     */
+    public void add(int start, int end, int color, boolean isBold) {
+        add(start, end, color, isBold ? FLAG_BOLD : 0);
+    }
+
+    /**
+     * Add a range whose color is drawn over the other colors, like an error, its span is set
+     * again by every highlight so it is the last one
+     */
+    public void addOnTop(int start, int end, int color) {
+        add(start, end, color, FLAG_ON_TOP);
+    }
+
+    private void add(int start, int end, int color, int flag) {
+        if (start >= end) return;
+        if (count == starts.length) {
+            int capacity = count * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            matched = Arrays.copyOf(matched, capacity);
+        }
+        //the lexer adds in order, only the error range is inserted
+        int i = count;
+        while (i > 0 && starts[i - 1] > start) {
+            starts[i] = starts[i - 1];
+            ends[i] = ends[i - 1];
+            colors[i] = colors[i - 1];
+            flags[i] = flags[i - 1];
+            i--;
+        }
+        starts[i] = start;
+        ends[i] = end;
+        colors[i] = color;
+        flags[i] = flag;
+        count++;
+    }
+
+    /**
+     * Make the syntax spans of the window the same as the added ranges and remove the syntax
+     * spans of the rest of the text
+     */
+    public void apply(@NonNull Spannable text, int start, int end) {
+        diff(text, text.getSpans(0, text.length(), ColorSpan.class), start, end, false);
+        diff(text, text.getSpans(0, text.length(), BoldSpan.class), start, end, true);
+    }
+
+    public void clearPool() {
+        colorPools.clear();
+        boldPool.clear();
+    }
+
+    private void diff(Spannable text, Object[] spans, int start, int end, boolean isBold) {
+        int spanCount = spans.length;
+        if (sortKeys.length < spanCount) sortKeys = new long[spanCount * 2];
+        for (int i = 0; i < spanCount; i++) {
+            sortKeys[i] = ((long) text.getSpanStart(spans[i]) << 32) | i;
+        }
+        Arrays.sort(sortKeys, 0, spanCount);
+        Arrays.fill(matched, 0, count, false);
+
+        int first = 0;
+        for (int i = 0; i < spanCount; i++) {
+            Object span = spans[(int) sortKeys[i]];
+            int spanStart = text.getSpanStart(span);
+            int spanEnd = text.getSpanEnd(span);
+            if (spanEnd <= start || spanStart >= end) {
+                //scrolled out of the window
+                text.removeSpan(span);
+                recycle(span);
+                continue;
+            }
+            int spanColor = isBold ? 0 : ((ColorSpan) span).getForegroundColor();
+            while (first < count && starts[first] < spanStart) first++;
+            boolean keep = false;
+            for (int j = first; j < count && starts[j] == spanStart; j++) {
+                if (!matched[j] && ends[j] == spanEnd && (flags[j] & FLAG_ON_TOP) == 0
+                        && (isBold ? (flags[j] & FLAG_BOLD) != 0 : colors[j] == spanColor)) {
+                    matched[j] = true;
+                    keep = true;
+                    break;
+                }
+            }
+            if (!keep) {
+                text.removeSpan(span);
+                recycle(span);
+            }
+        }
+        for (int j = 0; j < count; j++) {
+            if (!matched[j] && (flags[j] & FLAG_ON_TOP) == 0) {
+                if (!isBold) {
+                    text.setSpan(obtainColor(colors[j]), starts[j], ends[j],
+                            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                } else if ((flags[j] & FLAG_BOLD) != 0) {
+                    text.setSpan(obtainBold(), starts[j], ends[j], Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+            }
+        }
+        if (!isBold) {
+            for (int j = 0; j < count; j++) {
+                if ((flags[j] & FLAG_ON_TOP) != 0) {
+                    text.setSpan(obtainColor(colors[j]), starts[j], ends[j],
+                            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+            }
+        }
+    }
+
+    private ArrayList<ColorSpan> getColorPool(int color) {
+        for (int i = 0; i < colorPools.size(); i++) {
+            if (poolColors[i] == color) return colorPools.get(i);
+        }
+        if (colorPools.size() == poolColors.length) {
+            poolColors = Arrays.copyOf(poolColors, poolColors.length * 2);
+        }
+        poolColors[colorPools.size()] = color;
+        ArrayList<ColorSpan> pool = new ArrayList<>();
+        colorPools.add(pool);
+        return pool;
+    }
+
+    private ColorSpan obtainColor(int color) {
+        ArrayList<ColorSpan> pool = getColorPool(color);
+        return pool.isEmpty() ? new ColorSpan(color) : pool.remove(pool.size() - 1);
+    }
+
+    private BoldSpan obtainBold() {
+        return boldPool.isEmpty() ? new BoldSpan() : boldPool.remove(boldPool.size() - 1);
+    }
+
+    private void recycle(Object span) {
+        if (span instanceof ColorSpan) {
+            ArrayList<ColorSpan> pool = getColorPool(((ColorSpan) span).getForegroundColor());
+            if (pool.size() < MAX_POOL_SIZE) pool.add((ColorSpan) span);
+        } else if (boldPool.size() < MAX_POOL_SIZE) {
+            boldPool.add((BoldSpan) span);
+        }
+    }
+
+    /**
+     * Color set by the highlighter, the other foreground spans are not diffed
+     */
+    public static class ColorSpan extends ForegroundColorSpan {
+        public ColorSpan(int color) {
+            super(color);
+        }
+    }
+
+    public static class BoldSpan extends StyleSpan {
+        public BoldSpan() {
+            super(Typeface.BOLD);
+        }
+    }
+}
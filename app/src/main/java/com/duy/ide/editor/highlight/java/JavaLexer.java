@@ -0,0 +1,173 @@
+/*
+ *  Copyright (c) 2017 Tran Le Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.duy.ide.editor.highlight.java;
+
+import android.support.annotation.Nullable;
+
+import com.duy.ide.editor.highlight.Lexer;
+
+/**
+ * Single pass lexer of java comments, strings, numbers and keywords.
+ * <p>
+ * Only block comments span lines, string and char literals end at the end of the line like
+ * in javac, an unclosed literal is colored to the end of its line.
+ */
+public class JavaLexer implements Lexer {
+    public static final int STATE_BLOCK_COMMENT = 1;
+
+    private static final String[] KEYWORDS = {
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class",
+            "const", "continue", "default", "do", "double", "else", "enum", "extends", "final",
+            "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int",
+            "interface", "long", "native", "new", "package", "private", "protected", "public",
+            "short", "static", "super", "switch", "synchronized", "this", "throw", "throws",
+            "transient", "try", "void", "volatile", "while", "null"};
+
+    /**
+     * keywords by length, so an identifier is compared to a few keywords without a substring
+     */
+    private static final String[][] KEYWORDS_BY_LENGTH;
+
+    static {
+        int maxLength = 0;
+        for (String keyword : KEYWORDS) maxLength = Math.max(maxLength, keyword.length());
+        int[] counts = new int[maxLength + 1];
+        for (String keyword : KEYWORDS) counts[keyword.length()]++;
+        KEYWORDS_BY_LENGTH = new String[maxLength + 1][];
+        for (int i = 0; i <= maxLength; i++) KEYWORDS_BY_LENGTH[i] = new String[counts[i]];
+        for (String keyword : KEYWORDS) {
+            int length = keyword.length();
+            KEYWORDS_BY_LENGTH[length][--counts[length]] = keyword;
+        }
+    }
+
+    static boolean isKeyword(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length >= KEYWORDS_BY_LENGTH.length) return false;
+        for (String keyword : KEYWORDS_BY_LENGTH[length]) {
+            int i = 0;
+            while (i < length && keyword.charAt(i) == text.charAt(start + i)) i++;
+            if (i == length) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int lexLine(CharSequence text, int start, int end, int state,
+                       @Nullable TokenCallback callback) {
+        int pos = start;
+        if (state == STATE_BLOCK_COMMENT) {
+            int close = indexOfCommentEnd(text, pos, end);
+            if (close < 0) {
+                emit(callback, TOKEN_COMMENT, pos, end);
+                return STATE_BLOCK_COMMENT;
+            }
+            emit(callback, TOKEN_COMMENT, pos, close);
+            pos = close;
+        }
+        while (pos < end) {
+            char c = text.charAt(pos);
+            if (c == '/' && pos + 1 < end && text.charAt(pos + 1) == '/') {
+                emit(callback, TOKEN_COMMENT, pos, end);
+                return STATE_DEFAULT;
+            } else if (c == '/' && pos + 1 < end && text.charAt(pos + 1) == '*') {
+                int close = indexOfCommentEnd(text, pos + 2, end);
+                if (close < 0) {
+                    emit(callback, TOKEN_COMMENT, pos, end);
+                    return STATE_BLOCK_COMMENT;
+                }
+                emit(callback, TOKEN_COMMENT, pos, close);
+                pos = close;
+            } else if (c == '"' || c == '\'') {
+                int tokenEnd = skipLiteral(text, pos + 1, end, c);
+                emit(callback, TOKEN_STRING, pos, tokenEnd);
+                pos = tokenEnd;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int tokenEnd = pos + 1;
+                while (tokenEnd < end && Character.isJavaIdentifierPart(text.charAt(tokenEnd))) {
+                    tokenEnd++;
+                }
+                if (callback != null && isKeyword(text, pos, tokenEnd)) {
+                    callback.onToken(TOKEN_KEYWORD, pos, tokenEnd);
+                }
+                pos = tokenEnd;
+            } else if (isDigit(c) || (c == '.' && pos + 1 < end && isDigit(text.charAt(pos + 1)))) {
+                int tokenEnd = skipNumber(text, pos, end);
+                emit(callback, TOKEN_NUMBER, pos, tokenEnd);
+                pos = tokenEnd;
+            } else {
+                pos++;
+            }
+        }
+        return STATE_DEFAULT;
+    }
+
+    private static void emit(@Nullable TokenCallback callback, int type, int start, int end) {
+        if (callback != null && start < end) callback.onToken(type, start, end);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return the index after the closing star slash, -1 if the comment does not end on the line
+     */
+    private static int indexOfCommentEnd(CharSequence text, int pos, int end) {
+        for (int i = pos; i + 1 < end; i++) {
+            if (text.charAt(i) == '*' && text.charAt(i + 1) == '/') return i + 2;
+        }
+        return -1;
+    }
+
+    private static int skipLiteral(CharSequence text, int pos, int end, char quote) {
+        while (pos < end) {
+            char c = text.charAt(pos++);
+            if (c == '\\') {
+                pos++;
+            } else if (c == quote) {
+                return pos;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Decimal, hex, octal and binary literals with underscores, exponents and suffixes
+     */
+    private static int skipNumber(CharSequence text, int pos, int end) {
+        boolean hex = text.charAt(pos) == '0' && pos + 1 < end
+                && (text.charAt(pos + 1) == 'x' || text.charAt(pos + 1) == 'X');
+        if (hex) pos += 2;
+        while (pos < end) {
+            char c = text.charAt(pos);
+            if (isDigit(c) || c == '_' || c == '.'
+                    || (hex && ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')))) {
+                pos++;
+            } else if (!hex && (c == 'e' || c == 'E')) {
+                pos++;
+                if (pos < end && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) pos++;
+            } else if (Character.isJavaIdentifierPart(c)) {
+                //suffix like L, f, d or the b of a binary literal
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,117 @@
+package com.duy.ide.editor.highlight.xml;
+
+import android.support.annotation.Nullable;
+
+import com.duy.ide.editor.highlight.Lexer;
+
+/**
+ * Single pass lexer of xml comments, tags, attributes and attribute values.
+ * <p>
+ * Comments, tags and attribute values can span lines, the state tells which one is open.
+ */
+public class XmlLexer implements Lexer {
+    public static final int STATE_COMMENT = 1;
+    public static final int STATE_TAG = 2;
+    public static final int STATE_DOUBLE_QUOTE = 3;
+    public static final int STATE_SINGLE_QUOTE = 4;
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == ':' || c == '-' || c == '_' || c == '.';
+    }
+
+    private static void emit(@Nullable TokenCallback callback, int type, int start, int end) {
+        if (callback != null && start < end) callback.onToken(type, start, end);
+    }
+
+    private static boolean startsWith(CharSequence text, int pos, int end, String prefix) {
+        if (pos + prefix.length() > end) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(pos + i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int lexLine(CharSequence text, int start, int end, int state,
+                       @Nullable TokenCallback callback) {
+        int pos = start;
+        //start of a comment or value which is opened on this line
+        int tokenStart = start;
+        while (pos < end) {
+            switch (state) {
+                case STATE_COMMENT: {
+                    while (pos < end && !startsWith(text, pos, end, "-->")) pos++;
+                    if (pos == end) {
+                        emit(callback, TOKEN_COMMENT, tokenStart, end);
+                        return STATE_COMMENT;
+                    }
+                    pos += 3;
+                    emit(callback, TOKEN_COMMENT, tokenStart, pos);
+                    state = STATE_DEFAULT;
+                    break;
+                }
+                case STATE_DOUBLE_QUOTE:
+                case STATE_SINGLE_QUOTE: {
+                    char quote = state == STATE_DOUBLE_QUOTE ? '"' : '\'';
+                    while (pos < end && text.charAt(pos) != quote) pos++;
+                    if (pos == end) {
+                        emit(callback, TOKEN_STRING, tokenStart, end);
+                        return state;
+                    }
+                    pos++;
+                    emit(callback, TOKEN_STRING, tokenStart, pos);
+                    state = STATE_TAG;
+                    break;
+                }
+                case STATE_TAG: {
+                    char c = text.charAt(pos);
+                    if (c == '>') {
+                        emit(callback, TOKEN_TAG, pos, pos + 1);
+                        pos++;
+                        state = STATE_DEFAULT;
+                    } else if ((c == '/' || c == '?') && pos + 1 < end && text.charAt(pos + 1) == '>') {
+                        emit(callback, TOKEN_TAG, pos, pos + 2);
+                        pos += 2;
+                        state = STATE_DEFAULT;
+                    } else if (c == '"' || c == '\'') {
+                        tokenStart = pos;
+                        pos++;
+                        state = c == '"' ? STATE_DOUBLE_QUOTE : STATE_SINGLE_QUOTE;
+                    } else if (isNameChar(c)) {
+                        int nameEnd = pos + 1;
+                        while (nameEnd < end && isNameChar(text.charAt(nameEnd))) nameEnd++;
+                        emit(callback, TOKEN_ATTRIBUTE, pos, nameEnd);
+                        pos = nameEnd;
+                    } else {
+                        pos++;
+                    }
+                    break;
+                }
+                default: {
+                    if (startsWith(text, pos, end, "<!--")) {
+                        tokenStart = pos;
+                        pos += 4;
+                        state = STATE_COMMENT;
+                    } else if (text.charAt(pos) == '<') {
+                        int nameEnd = pos + 1;
+                        if (nameEnd < end && "/?!".indexOf(text.charAt(nameEnd)) >= 0) nameEnd++;
+                        while (nameEnd < end && isNameChar(text.charAt(nameEnd))) nameEnd++;
+                        emit(callback, TOKEN_TAG, pos, nameEnd);
+                        pos = nameEnd;
+                        state = STATE_TAG;
+                    } else {
+                        pos++;
+                    }
+                    break;
+                }
+            }
+        }
+        //a comment or value opened at the end of the line
+        if (state == STATE_COMMENT) {
+            emit(callback, TOKEN_COMMENT, tokenStart, end);
+        } else if (state == STATE_DOUBLE_QUOTE || state == STATE_SINGLE_QUOTE) {
+            emit(callback, TOKEN_STRING, tokenStart, end);
+        }
+        return state;
+    }
+}
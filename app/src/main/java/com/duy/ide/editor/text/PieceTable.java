@@ -0,0 +1,379 @@
+/*
+ *  Copyright (c) 2017 Tran Le Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.duy.ide.editor.text;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Piece table of the text of the editor, updated from the text change events.
+ * <p>
+ * The text is a list of pieces of two buffers: the original text, and the added buffer where
+ * the inserted chars are appended. The buffers are never changed, an edit only splits, removes
+ * and inserts pieces, and typing extends the last added piece.
+ * <p>
+ * A {@link Snapshot} shares the buffers and the piece list, so it is taken without copying the
+ * text. The piece list is copied by the next edit only, and the added buffer is only appended,
+ * so a snapshot never changes and can be read by a background thread while the text is edited.
+ * When most of the added buffer was removed from the text, the added pieces are copied to a new
+ * buffer.
+ */
+public class PieceTable {
+    private static final int SOURCE_ORIGINAL = 0;
+    private static final int SOURCE_ADDED = 1;
+
+    private String original = "";
+    private char[] added = new char[256];
+    private int addedLength;
+
+    private int pieceCount;
+    private int[] sources = new int[16];
+    /**
+     * start of each piece in its buffer
+     */
+    private int[] starts = new int[16];
+    private int[] lengths = new int[16];
+    /**
+     * start of each piece in the text
+     */
+    private int[] offsets = new int[16];
+    /**
+     * length of the text, -1 if the text is not known
+     */
+    private int length = -1;
+
+    /**
+     * the piece list is used by a snapshot, it is copied before the next edit
+     */
+    private boolean shared;
+    private Snapshot snapshot;
+
+    /**
+     * Forget the edits, the text becomes the original buffer
+     */
+    public void reset(@NonNull CharSequence text) {
+        original = text.toString();
+        //the old added buffer may be read by a snapshot
+        added = new char[256];
+        addedLength = 0;
+        if (shared) unshare();
+        pieceCount = 0;
+        length = original.length();
+        if (length > 0) {
+            sources[0] = SOURCE_ORIGINAL;
+            starts[0] = 0;
+            lengths[0] = length;
+            offsets[0] = 0;
+            pieceCount = 1;
+        }
+        snapshot = null;
+    }
+
+    /**
+     * Same arguments as {@link android.text.TextWatcher#onTextChanged}, the text is already
+     * changed, the count chars at start replace before chars.
+     */
+    public void onTextChanged(@NonNull CharSequence text, int start, int before, int count) {
+        if (!isValidEdit(text, before, count)) {
+            //an edit was missed
+            reset(text);
+            return;
+        }
+        replace(start, start + before, text, start, start + count);
+    }
+
+    public boolean isValidEdit(@NonNull CharSequence text, int before, int count) {
+        return length >= 0 && length == text.length() - count + before;
+    }
+
+    public boolean isValid(@NonNull CharSequence text) {
+        return length == text.length();
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Replace the chars from start to end by the chars of the text from textStart to textEnd
+     */
+    public void replace(int start, int end, @NonNull CharSequence text, int textStart, int textEnd) {
+        if (shared) unshare();
+        snapshot = null;
+
+        int first = split(start);
+        int last = split(end);
+        removePieces(first, last);
+
+        int count = textEnd - textStart;
+        if (count > 0) {
+            int addedStart = append(text, textStart, textEnd);
+            if (first > 0 && sources[first - 1] == SOURCE_ADDED
+                    && starts[first - 1] + lengths[first - 1] == addedStart) {
+                //typing, the previous piece ends where the chars are appended
+                lengths[first - 1] += count;
+            } else {
+                insertPiece(first, SOURCE_ADDED, addedStart, count);
+                first++;
+            }
+        }
+        length += count - (end - start);
+        updateOffsets(Math.max(0, first - 1));
+    }
+
+    /**
+     * Copy the added pieces to a new added buffer if more than half of the buffer is not in the
+     * text any more, e.g. after a large replace
+     */
+    public void compact() {
+        int live = 0;
+        for (int i = 0; i < pieceCount; i++) {
+            if (sources[i] == SOURCE_ADDED) live += lengths[i];
+        }
+        if (addedLength == 0 || live > addedLength / 2) return;
+        if (shared) unshare();
+        snapshot = null;
+        //a new array, the old one may be read by a snapshot
+        char[] buffer = new char[Math.max(256, live * 2)];
+        int position = 0;
+        for (int i = 0; i < pieceCount; i++) {
+            if (sources[i] == SOURCE_ADDED) {
+                System.arraycopy(added, starts[i], buffer, position, lengths[i]);
+                starts[i] = position;
+                position += lengths[i];
+            }
+        }
+        added = buffer;
+        addedLength = position;
+    }
+
+    int getAddedLength() {
+        return addedLength;
+    }
+
+    /**
+     * @return the current text, it does not change when the text is edited
+     */
+    @NonNull
+    public Snapshot getSnapshot() {
+        if (snapshot == null) {
+            snapshot = new Snapshot(original, added, pieceCount, sources, starts, lengths,
+                    offsets, 0, length);
+            shared = true;
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the index of the first piece which starts at or after the offset, the piece which
+     * contains the offset is split in two
+     */
+    private int split(int offset) {
+        if (offset >= length) return pieceCount;
+        int piece = findPiece(offsets, pieceCount, offset);
+        int delta = offset - offsets[piece];
+        if (delta == 0) return piece;
+        insertPiece(piece + 1, sources[piece], starts[piece] + delta, lengths[piece] - delta);
+        offsets[piece + 1] = offset;
+        lengths[piece] = delta;
+        return piece + 1;
+    }
+
+    private void insertPiece(int index, int source, int start, int pieceLength) {
+        if (pieceCount == sources.length) {
+            int capacity = pieceCount * 2;
+            sources = Arrays.copyOf(sources, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+        int tail = pieceCount - index;
+        System.arraycopy(sources, index, sources, index + 1, tail);
+        System.arraycopy(starts, index, starts, index + 1, tail);
+        System.arraycopy(lengths, index, lengths, index + 1, tail);
+        System.arraycopy(offsets, index, offsets, index + 1, tail);
+        sources[index] = source;
+        starts[index] = start;
+        lengths[index] = pieceLength;
+        pieceCount++;
+    }
+
+    private void removePieces(int from, int to) {
+        int tail = pieceCount - to;
+        System.arraycopy(sources, to, sources, from, tail);
+        System.arraycopy(starts, to, starts, from, tail);
+        System.arraycopy(lengths, to, lengths, from, tail);
+        System.arraycopy(offsets, to, offsets, from, tail);
+        pieceCount -= to - from;
+    }
+
+    private void updateOffsets(int from) {
+        int offset = from > 0 ? offsets[from - 1] + lengths[from - 1] : 0;
+        for (int i = from; i < pieceCount; i++) {
+            offsets[i] = offset;
+            offset += lengths[i];
+        }
+    }
+
+    /**
+     * @return the start of the chars in the added buffer
+     */
+    private int append(CharSequence text, int start, int end) {
+        int count = end - start;
+        if (addedLength + count > added.length) {
+            compact();
+        }
+        if (addedLength + count > added.length) {
+            //a new array, the old one may be read by a snapshot
+            added = Arrays.copyOf(added, Math.max(addedLength + count, added.length * 2));
+        }
+        int addedStart = addedLength;
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, added, addedStart);
+        } else {
+            for (int i = start; i < end; i++) {
+                added[addedStart + i - start] = text.charAt(i);
+            }
+        }
+        addedLength += count;
+        return addedStart;
+    }
+
+    private void unshare() {
+        sources = sources.clone();
+        starts = starts.clone();
+        lengths = lengths.clone();
+        offsets = offsets.clone();
+        shared = false;
+    }
+
+    /**
+     * @return the piece which contains the offset
+     */
+    private static int findPiece(int[] offsets, int pieceCount, int offset) {
+        int low = 0;
+        int high = pieceCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Immutable text of a {@link PieceTable}
+     */
+    public static final class Snapshot implements CharSequence {
+        private final String original;
+        private final char[] added;
+        private final int pieceCount;
+        private final int[] sources;
+        private final int[] starts;
+        private final int[] lengths;
+        private final int[] offsets;
+        /**
+         * range of the pieces which is the text of this snapshot
+         */
+        private final int start;
+        private final int end;
+        /**
+         * the piece of the last read char, sequential reads do not search the pieces
+         */
+        private int lastPiece;
+
+        private Snapshot(String original, char[] added, int pieceCount, int[] sources,
+                         int[] starts, int[] lengths, int[] offsets, int start, int end) {
+            this.original = original;
+            this.added = added;
+            this.pieceCount = pieceCount;
+            this.sources = sources;
+            this.starts = starts;
+            this.lengths = lengths;
+            this.offsets = offsets;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+            }
+            int offset = start + index;
+            int piece = lastPiece;
+            if (offset < offsets[piece] || offset >= offsets[piece] + lengths[piece]) {
+                piece = findPiece(offsets, pieceCount, offset);
+                lastPiece = piece;
+            }
+            int position = starts[piece] + offset - offsets[piece];
+            return sources[piece] == SOURCE_ORIGINAL ? original.charAt(position) : added[position];
+        }
+
+        /**
+         * Copy the chars from start to end to the array
+         */
+        public void getChars(int start, int end, char[] dest, int destStart) {
+            if (start < 0 || end > length() || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end);
+            }
+            int from = this.start + start;
+            int to = this.start + end;
+            if (from == to) return;
+            for (int piece = findPiece(offsets, pieceCount, from); from < to; piece++) {
+                int count = Math.min(to, offsets[piece] + lengths[piece]) - from;
+                int position = starts[piece] + from - offsets[piece];
+                if (sources[piece] == SOURCE_ORIGINAL) {
+                    original.getChars(position, position + count, dest, destStart);
+                } else {
+                    System.arraycopy(added, position, dest, destStart, count);
+                }
+                from += count;
+                destStart += count;
+            }
+        }
+
+        /**
+         * @return a snapshot of the range, the text is not copied
+         */
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length() || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end);
+            }
+            return new Snapshot(original, added, pieceCount, sources, starts, lengths, offsets,
+                    this.start + start, this.start + end);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            char[] chars = new char[length()];
+            getChars(0, chars.length, chars, 0);
+            return new String(chars);
+        }
+    }
+}
@@ -126,6 +126,12 @@ public abstract class CodeSuggestsEditText extends IndentEditText
 
     public abstract void onPopupChangePosition();
 
+    /**
+     * @return the current text, it does not change when the text is edited
+     */
+    @NonNull
+    public abstract CharSequence getSnapshot();
+
     /**
      * invalidate data for auto suggest
      */
@@ -270,6 +276,7 @@ public abstract class CodeSuggestsEditText extends IndentEditText
         private final EditText editText;
         private final AutoCompleteProvider provider;
         private int selection;
+        private CharSequence text;
 
         GenerateSuggestDataTask(@NonNull EditText editText, @NonNull AutoCompleteProvider provider) {
             Log.d(TAG, "GenerateSuggestDataTask() called with: editText = [" + editText + "], provider = [" + provider + "]");
@@ -284,12 +291,14 @@ public abstract class CodeSuggestsEditText extends IndentEditText
         protected void onPreExecute() {
             super.onPreExecute();
             this.selection = editText.getSelectionEnd();
+            //the text is read on the main thread, the background task reads the snapshot
+            this.text = getSnapshot();
         }
 
         @Override
         protected ArrayList<Description> doInBackground(Void... params) {
             try {
-                return provider.getSuggestions(editText, selection);
+                return provider.getSuggestions(editText, text, selection);
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -47,17 +47,25 @@ import android.widget.ScrollView;
 import android.widget.Scroller;
 
 import com.duy.ide.R;
+import com.duy.ide.editor.findreplace.ReplaceEdits;
 import com.duy.ide.editor.highlight.Highlighter;
+import com.duy.ide.editor.highlight.SyntaxSpans;
 import com.duy.ide.editor.highlight.java.BracketHighlighter;
 import com.duy.ide.editor.highlight.java.JavaHighlighter;
 import com.duy.ide.editor.highlight.xml.XmlHighlighter;
+import com.duy.ide.editor.text.PieceTable;
+import com.duy.ide.editor.view.spans.ErrorSpan;
 import com.duy.ide.themefont.themes.ThemeManager;
 import com.duy.ide.themefont.themes.database.CodeTheme;
 import com.duy.ide.themefont.themes.database.CodeThemeUtils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.tools.Diagnostic;
+
 public class HighlightEditor extends CodeSuggestsEditText
         implements View.OnKeyListener, GestureDetector.OnGestureListener {
     public static final String TAG = HighlightEditor.class.getSimpleName();
@@ -97,9 +105,14 @@ public class HighlightEditor extends CodeSuggestsEditText
     @Nullable
     private ScrollView verticalScroll;
     private int lastPinLine = -1;
-    private LineUtils lineUtils;
-    private boolean[] isGoodLineArray;
-    private int[] realLines;
+    /**
+     * lines of the text, for the line numbers
+     */
+    private final LineIndex mLineIndex = new LineIndex();
+    /**
+     * same text as the editable, for the snapshots
+     */
+    private final PieceTable mDocument = new PieceTable();
     private int lineCount;
     private boolean isFinding = false;
     /**
@@ -111,6 +124,35 @@ public class HighlightEditor extends CodeSuggestsEditText
      * The change listener.
      */
     private EditTextChangeListener mChangeListener;
+    /**
+     * Keeps the line index, the document and the highlighter in sync with the text, it is never
+     * removed
+     */
+    private final TextWatcher mLineChangeListener = new TextWatcher() {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+            mLineIndex.onTextChanged(s, start, before, count);
+            mDocument.onTextChanged(s, start, before, count);
+            if (mHighlighter != null) {
+                mHighlighter.onTextChanged(s, start, before, count);
+            }
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+
+        }
+    };
+    /**
+     * the watchers added to this view, they are suppressed during a replace all. It is created
+     * by the first call, the super constructors add watchers before the fields are initialized
+     */
+    private ArrayList<TextWatcher> mTextWatchers;
     private int numberWidth = 0;
     @Nullable
     private Highlighter mHighlighter;
@@ -180,7 +222,6 @@ public class HighlightEditor extends CodeSuggestsEditText
     private void setup(Context context) {
         this.mContext = context;
 
-        lineUtils = new LineUtils();
         mPaintNumbers = new Paint();
         mPaintNumbers.setColor(getResources().getColor(R.color.color_number_color));
         mPaintNumbers.setAntiAlias(true);
@@ -196,6 +237,7 @@ public class HighlightEditor extends CodeSuggestsEditText
         mChangeListener = new EditTextChangeListener();
         mBracketHighlighter = new BracketHighlighter(this, codeTheme);
         updateFromSettings();
+        addTextChangedListener(mLineChangeListener);
         enableTextChangedListener();
     }
 
@@ -279,12 +321,11 @@ public class HighlightEditor extends CodeSuggestsEditText
     @Override
     public void onDraw(@NonNull Canvas canvas) {
         int lineX, baseline;
-        if (lineCount != getLineCount()) {
-            lineCount = getLineCount();
-            lineUtils.updateHasNewLineArray(lineCount, getLayout(), getText().toString());
-            isGoodLineArray = lineUtils.getGoodLines();
-            realLines = lineUtils.getRealLines();
+        lineCount = getLineCount();
+        if (!mLineIndex.isValid(getText())) {
+            mLineIndex.reset(getText());
         }
+        Layout layout = getLayout();
         if (showLines) {
             int padding = calculateLinePadding();
             if (mLinePadding != padding) {
@@ -317,9 +358,12 @@ public class HighlightEditor extends CodeSuggestsEditText
             if ((i == mHighlightedLine) && (!wordWrap)) {
                 canvas.drawRect(mLineBounds, mPaintHighlight);
             }
-            if (showLines && isGoodLineArray[i]) {
-                int realLine = realLines[i];
-                canvas.drawText("" + (realLine + 1), mDrawingRect.left, baseline, mPaintNumbers);
+            if (showLines) {
+                //only the first row of a wrapped line has a number
+                int realLine = LineUtils.getRealLine(mLineIndex, layout, i);
+                if (LineUtils.getVisualLine(mLineIndex, layout, realLine) == i) {
+                    canvas.drawText("" + (realLine + 1), mDrawingRect.left, baseline, mPaintNumbers);
+                }
             }
         }
         if (showLines) {
@@ -436,6 +480,27 @@ public class HighlightEditor extends CodeSuggestsEditText
         return getText().toString();
     }
 
+    /**
+     * @return the lines of the text, updated before the highlighter is notified of a change
+     */
+    @NonNull
+    public LineIndex getLineIndex() {
+        return mLineIndex;
+    }
+
+    /**
+     * @return the current text without copying it, it does not change when the text is edited
+     * so a background task can read it
+     */
+    @NonNull
+    @Override
+    public PieceTable.Snapshot getSnapshot() {
+        if (!mDocument.isValid(getText())) {
+            mDocument.reset(getText());
+        }
+        return mDocument.getSnapshot();
+    }
+
     /**
      * Gets the first lineInfo that is visible on the screen.
      */
@@ -501,7 +566,55 @@ public class HighlightEditor extends CodeSuggestsEditText
                 pattern = Pattern.compile(Pattern.quote(what), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
             }
         }
-        setText(getText().toString().replaceAll(pattern.toString(), replace));
+        //one batch edit which only replaces the matches
+        ReplaceEdits edits = ReplaceEdits.find(pattern, getSnapshot(), replace, !regex);
+        if (edits.size() == 0) return;
+        Editable text = getText();
+        int start = edits.getStart(0);
+        int end = edits.getEnd(edits.size() - 1);
+        int after = end - start;
+        for (int i = 0; i < edits.size(); i++) {
+            after += edits.getReplacement(i).length() - (edits.getEnd(i) - edits.getStart(i));
+        }
+        //the other watchers see one replace of the range from the first to the last match, so
+        //there is one undo edit, one highlight and one check of the code
+        TextWatcher[] watchers = mTextWatchers.toArray(new TextWatcher[mTextWatchers.size()]);
+        for (TextWatcher watcher : watchers) {
+            if (watcher == mLineChangeListener) continue;
+            watcher.beforeTextChanged(text, start, end - start, after);
+            super.removeTextChangedListener(watcher);
+        }
+        beginBatchEdit();
+        try {
+            for (int i = edits.size() - 1; i >= 0; i--) {
+                text.replace(edits.getStart(i), edits.getEnd(i), edits.getReplacement(i));
+            }
+        } finally {
+            for (TextWatcher watcher : watchers) {
+                if (watcher != mLineChangeListener) super.addTextChangedListener(watcher);
+            }
+            endBatchEdit();
+        }
+        mDocument.compact();
+        for (TextWatcher watcher : watchers) {
+            if (watcher != mLineChangeListener) watcher.onTextChanged(text, start, end - start, after);
+        }
+        for (TextWatcher watcher : watchers) {
+            if (watcher != mLineChangeListener) watcher.afterTextChanged(text);
+        }
+    }
+
+    @Override
+    public void addTextChangedListener(TextWatcher watcher) {
+        super.addTextChangedListener(watcher);
+        if (mTextWatchers == null) mTextWatchers = new ArrayList<>();
+        mTextWatchers.add(watcher);
+    }
+
+    @Override
+    public void removeTextChangedListener(TextWatcher watcher) {
+        super.removeTextChangedListener(watcher);
+        if (mTextWatchers != null) mTextWatchers.remove(watcher);
     }
 
     /**
@@ -519,6 +632,21 @@ public class HighlightEditor extends CodeSuggestsEditText
         }
     }
 
+    /**
+     * move cursor to a column of a line
+     *
+     * @param line   - line of the text, start at 1
+     * @param column - column in the line, start at 0
+     */
+    public void goToLine(int line, int column) {
+        if (!mLineIndex.isValid(getText())) {
+            mLineIndex.reset(getText());
+        }
+        line = Math.max(0, Math.min(line - 1, mLineIndex.getLineCount() - 1));
+        int start = mLineIndex.getLineStart(line);
+        setSelection(Math.min(start + Math.max(0, column), mLineIndex.getLineEnd(line)));
+    }
+
     /**
      * @param line   - current line
      * @param column - column of line
@@ -691,13 +819,14 @@ public class HighlightEditor extends CodeSuggestsEditText
     }
 
     /**
-     * remove span from start to end
+     * remove span from start to end, the spans of the highlighter are kept, it only updates
+     * the spans which changed
      */
     private void clearSpans(Editable e, int start, int end) {
         {
             ForegroundColorSpan spans[] = e.getSpans(start, end, ForegroundColorSpan.class);
             for (ForegroundColorSpan span : spans) {
-                e.removeSpan(span);
+                if (!(span instanceof SyntaxSpans.ColorSpan)) e.removeSpan(span);
             }
         }
         {
@@ -709,7 +838,7 @@ public class HighlightEditor extends CodeSuggestsEditText
         {
             StyleSpan[] spans = e.getSpans(start, end, StyleSpan.class);
             for (StyleSpan span : spans) {
-                e.removeSpan(span);
+                if (!(span instanceof SyntaxSpans.BoldSpan)) e.removeSpan(span);
             }
         }
         {
@@ -790,6 +919,41 @@ public class HighlightEditor extends CodeSuggestsEditText
         refresh();
     }
 
+    /**
+     * Mark the errors of the background check, the old marks are removed. A mark does not go
+     * past the end of its line
+     */
+    public void setDiagnostics(@NonNull List<Diagnostic> diagnostics) {
+        Editable e = getEditableText();
+        ErrorSpan[] spans = e.getSpans(0, e.length(), ErrorSpan.class);
+        for (ErrorSpan span : spans) {
+            e.removeSpan(span);
+        }
+        int length = e.length();
+        if (length == 0) return;
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.getKind() != Diagnostic.Kind.ERROR) continue;
+            if (diagnostic.getStartPosition() == Diagnostic.NOPOS) continue;
+            int start = (int) Math.min(diagnostic.getStartPosition(), length - 1);
+            int end = (int) Math.min(Math.max(diagnostic.getEndPosition(), start + 1), length);
+            //the error at the end of a line, e.g. a missing semicolon
+            if (e.charAt(start) == '\n' && start > 0 && e.charAt(start - 1) != '\n') {
+                start--;
+                end = start + 1;
+            }
+            for (int i = start; i < end; i++) {
+                if (e.charAt(i) == '\n') {
+                    end = i;
+                    break;
+                }
+            }
+            if (start < end) {
+                e.setSpan(new ErrorSpan(codeTheme.getErrorColor()), start, end,
+                        Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        }
+    }
+
     @Override
     protected void onSelectionChanged(int selStart, int selEnd) {
         super.onSelectionChanged(selStart, selEnd);
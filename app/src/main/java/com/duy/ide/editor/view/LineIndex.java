@@ -0,0 +1,145 @@
+/*
+ *  Copyright (c) 2017 Tran Le Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.duy.ide.editor.view;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Start offsets of the lines of a text, updated from the text change events.
+ * <p>
+ * The offsets are kept in a gap buffer at the last edited line. The offsets after the gap are
+ * stored relative to the end of the text, so an edit does not change them, it only moves the
+ * gap, which is short when the next edit is near the previous one. The line of an offset is
+ * found with a binary search.
+ */
+public class LineIndex {
+    private int[] starts = new int[64];
+    private int gapStart;
+    private int gapEnd;
+    /**
+     * length of the text, -1 if the text is not known
+     */
+    private int length = -1;
+
+    public LineIndex() {
+        gapStart = 0;
+        gapEnd = starts.length;
+    }
+
+    /**
+     * Split the text into lines
+     */
+    public void reset(@NonNull CharSequence text) {
+        gapStart = 0;
+        gapEnd = starts.length;
+        length = text.length();
+        insert(0);
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '\n') insert(i + 1);
+        }
+    }
+
+    /**
+     * Same arguments as {@link android.text.TextWatcher#onTextChanged}, the text is already
+     * changed, the count chars at start replace before chars.
+     */
+    public void onTextChanged(@NonNull CharSequence text, int start, int before, int count) {
+        if (!isValidEdit(text, before, count)) {
+            //an edit was missed
+            reset(text);
+            return;
+        }
+        int line = getLineOfOffset(start);
+        //the lines which start inside the replaced text are removed
+        int removed = getLineOfOffset(start + before) - line;
+        moveGap(line + 1);
+        gapEnd += removed;
+        //the offsets after the gap follow the end of the text
+        length = text.length();
+        for (int i = start; i < start + count; i++) {
+            if (text.charAt(i) == '\n') insert(i + 1);
+        }
+    }
+
+    /**
+     * @return false if an edit was missed, the text must be {@link #reset}
+     */
+    public boolean isValidEdit(@NonNull CharSequence text, int before, int count) {
+        return length >= 0 && length == text.length() - count + before;
+    }
+
+    public boolean isValid(@NonNull CharSequence text) {
+        return length == text.length();
+    }
+
+    public int getLineCount() {
+        return starts.length - (gapEnd - gapStart);
+    }
+
+    public int getLineStart(int line) {
+        return line < gapStart ? starts[line] : starts[line + gapEnd - gapStart] + length;
+    }
+
+    /**
+     * @return the end of the line, before its line feed
+     */
+    public int getLineEnd(int line) {
+        return line + 1 < getLineCount() ? getLineStart(line + 1) - 1 : length;
+    }
+
+    /**
+     * @return the line which contains the offset
+     */
+    public int getLineOfOffset(int offset) {
+        int low = 0;
+        int high = getLineCount() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (getLineStart(mid) <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Insert a line start at the gap, the offset is absolute
+     */
+    private void insert(int offset) {
+        if (gapStart == gapEnd) {
+            int[] newStarts = Arrays.copyOf(starts, starts.length * 2);
+            int tail = starts.length - gapEnd;
+            System.arraycopy(starts, gapEnd, newStarts, newStarts.length - tail, tail);
+            gapEnd = newStarts.length - tail;
+            starts = newStarts;
+        }
+        starts[gapStart++] = offset;
+    }
+
+    private void moveGap(int line) {
+        while (gapStart > line) {
+            starts[--gapEnd] = starts[--gapStart] - length;
+        }
+        while (gapStart < line) {
+            starts[gapStart++] = starts[gapEnd++] + length;
+        }
+    }
+}
@@ -33,6 +33,11 @@ import com.duy.ide.utils.clipboard.ClipboardManagerCompat;
 import com.duy.ide.utils.clipboard.ClipboardManagerCompatFactory;
 import com.google.firebase.crash.FirebaseCrash;
 
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 //import android.util.Log;
 
 /**
@@ -66,7 +71,7 @@ public class UndoRedoSupportEditText extends HighlightEditor {
 
     private void init() {
         mUndoRedoHelper = new UndoRedoHelper(this);
-        mUndoRedoHelper.setMaxHistorySize(mEditorSetting.getMaxHistoryEdit());
+        mUndoRedoHelper.setMaxHistoryBytes(mEditorSetting.getMaxHistoryBytes());
 
         SharedPreferences mPrefs = PreferenceManager.getDefaultSharedPreferences(getContext());
         mSettings = new KeySettings(mPrefs, getContext());
@@ -74,6 +79,14 @@ public class UndoRedoSupportEditText extends HighlightEditor {
         mClipboardManager = ClipboardManagerCompatFactory.newInstance(getContext());
     }
 
+    @Override
+    public void updateFromSettings() {
+        super.updateFromSettings();
+        //called by the super constructor before the helper is created
+        if (mUndoRedoHelper != null) {
+            mUndoRedoHelper.setMaxHistoryBytes(mEditorSetting.getMaxHistoryBytes());
+        }
+    }
 
     /**
      * undo text
@@ -123,17 +136,55 @@ public class UndoRedoSupportEditText extends HighlightEditor {
     }
 
     public void saveHistory(@NonNull String key) {
-        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(getContext()).edit();
-        mUndoRedoHelper.storePersistentState(editor, key);
-        editor.apply();
+        mUndoRedoHelper.storePersistentState(getHistoryFile(key), key, getSnapshot());
     }
 
+    /**
+     * The history is restored in the background
+     */
     public void restoreHistory(String key) {
+        if (key == null) return;
+        removeOldHistory(key);
+        //the log was named by the hash code of the key before
+        new File(new File(getContext().getFilesDir(), "undo"),
+                Integer.toHexString(key.hashCode()) + ".log").delete();
+        mUndoRedoHelper.restorePersistentState(getHistoryFile(key), key, getSnapshot());
+    }
+
+    /**
+     * log of the edit history of a file
+     */
+    private File getHistoryFile(@NonNull String key) {
+        File dir = new File(getContext().getFilesDir(), "undo");
+        //the hash code of the path is too short, two files could share a log
+        return new File(dir, sha1(key) + ".log");
+    }
+
+    private static String sha1(String key) {
+        MessageDigest digest;
         try {
-            mUndoRedoHelper.restorePersistentState(
-                    PreferenceManager.getDefaultSharedPreferences(getContext()), key);
-        } catch (Exception ignored) {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder result = new StringBuilder(40);
+        for (byte b : digest.digest(key.getBytes(Charset.forName("UTF-8")))) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    /**
+     * The history was saved in the preferences before, remove it
+     */
+    private void removeOldHistory(@NonNull String key) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(getContext());
+        if (!preferences.contains(key + ".hash")) return;
+        SharedPreferences.Editor editor = preferences.edit();
+        for (String name : preferences.getAll().keySet()) {
+            if (name.startsWith(key + ".")) editor.remove(name);
         }
+        editor.apply();
     }
 
     /**
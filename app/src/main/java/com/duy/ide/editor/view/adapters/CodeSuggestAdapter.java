@@ -35,6 +35,7 @@ import com.duy.ide.autocomplete.model.ConstructorDescription;
 import com.duy.ide.autocomplete.model.Description;
 import com.duy.ide.autocomplete.model.FieldDescription;
 import com.duy.ide.autocomplete.model.MethodDescription;
+import com.duy.ide.autocomplete.util.JavaUtil;
 import com.duy.ide.setting.JavaPreferences;
 
 import java.util.ArrayList;
@@ -95,7 +96,7 @@ public class CodeSuggestAdapter extends ArrayAdapter<Description> {
                 txtName.setText(SpanUtil.formatClass(context, (ClassDescription) item));
             } else {
                 txtName.setText(item.toString());
-                txtType.setText(item.getType() != null ? item.getType().getSimpleName() : "");
+                txtType.setText(item.getType() != null ? JavaUtil.getSimpleName(item.getType()) : "");
             }
 
             if (item instanceof ClassDescription || item instanceof ConstructorDescription) {
@@ -50,6 +50,10 @@ public class ErrorSpan extends ReplacementSpan {
 
     @Override
     public int getSize(@NonNull Paint paint, CharSequence text, int start, int end, Paint.FontMetricsInt fm) {
+        //keep the height of the line
+        if (fm != null) {
+            paint.getFontMetricsInt(fm);
+        }
         return Math.round(measureText(paint, text, start, end));
     }
 
@@ -130,7 +130,7 @@ public class FileManager {
      * @param filePath - name of file
      * @param text     - content of file
      */
-    public static boolean saveFile(@NonNull String filePath, String text) {
+    public static boolean saveFile(@NonNull String filePath, CharSequence text) {
         try {
             File file = new File(filePath);
             if (!file.exists()) {
@@ -138,7 +138,11 @@ public class FileManager {
                 file.createNewFile();
             }
             OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
-            if (text.length() > 0) writer.write(text);
+            //written in chunks, a large text is not copied to one string
+            int length = text.length();
+            for (int i = 0; i < length; i += 8192) {
+                writer.append(text, i, Math.min(length, i + 8192));
+            }
             writer.close();
             return true;
         } catch (Exception ignored) {
@@ -29,6 +29,7 @@ import com.duy.ide.R;
 import com.duy.ide.themefont.fonts.FontEntry;
 import com.duy.ide.themefont.fonts.FontManager;
 import com.duy.ide.utils.DonateUtils;
+import com.duy.ide.utils.UndoJournal;
 
 /**
  * Setting for application
@@ -299,11 +300,15 @@ public class JavaPreferences {
         put(context.getString(R.string.key_max_page), count);
     }
 
-    public int getMaxHistoryEdit() {
-        int max = getInt(context.getString(R.string.key_max_page), 100);
-        max = Math.min(10, max);
-        max = Math.max(1, max);
-        return max;
+    /**
+     * @return the size of the undo history in bytes, the preference is in KB
+     */
+    public int getMaxHistoryBytes() {
+        int max = getInt(context.getString(R.string.key_max_history_size),
+                UndoJournal.DEFAULT_MAX_BYTES / 1024);
+        max = Math.min(64 * 1024, max);
+        max = Math.max(64, max);
+        return max * 1024;
     }
 
     public long getMaxStackSize() {
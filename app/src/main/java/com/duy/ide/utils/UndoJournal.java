@@ -0,0 +1,418 @@
+/*
+ *  Copyright (c) 2017 Tran Le Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.duy.ide.utils;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Undo history of a text, each edit is the replaced chars and the inserted chars at an offset.
+ * <p>
+ * The chars of all edits are stored one after another in one char buffer, the before chars of
+ * an edit then its after chars, and the edits are rows of int arrays, so an edit costs its chars
+ * and four ints. The oldest edits are dropped when the size is over {@link #setMaxBytes}.
+ * <p>
+ * The journal also remembers which edits are already written to its log, {@link #takeChanges}
+ * only encodes the changes since the last call: the dropped and rewritten edits and the new
+ * ones. {@link #applyChanges} replays them.
+ */
+public class UndoJournal {
+    public static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+    /**
+     * estimated size of an edit without its chars
+     */
+    private static final int EDIT_BYTES = 16;
+
+    private static final byte OP_DROP = 1;
+    private static final byte OP_TRUNCATE = 2;
+    private static final byte OP_EDIT = 3;
+    private static final byte OP_POSITION = 4;
+
+    private int count;
+    private int position;
+    private int[] starts = new int[64];
+    private int[] textStarts = new int[64];
+    private int[] beforeLengths = new int[64];
+    private int[] afterLengths = new int[64];
+    private char[] chars = new char[1024];
+    private int charCount;
+
+    private int maxBytes = DEFAULT_MAX_BYTES;
+
+    /**
+     * edits in the log
+     */
+    private int loggedCount;
+    /**
+     * the first saved edits are the same as the logged edits after the dropped ones
+     */
+    private int savedCount;
+    private int droppedCount;
+
+    public int size() {
+        return count;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public boolean canUndo() {
+        return position > 0;
+    }
+
+    public boolean canRedo() {
+        return position < count;
+    }
+
+    public void clear() {
+        count = 0;
+        position = 0;
+        charCount = 0;
+        savedCount = 0;
+    }
+
+    /**
+     * @param maxBytes the oldest edits are dropped when the edits are larger, the last edit is
+     *                 always kept
+     */
+    public void setMaxBytes(int maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    /**
+     * @return the estimated memory of the edits
+     */
+    public int getByteSize() {
+        return charCount * 2 + count * EDIT_BYTES;
+    }
+
+    /**
+     * Add an edit after the current one, the undone edits are removed
+     *
+     * @param start offset of the edit in the text
+     */
+    public void add(int start, @NonNull CharSequence before, int beforeStart, int beforeEnd,
+                    @NonNull CharSequence after, int afterStart, int afterEnd) {
+        addEdit(start, before, beforeStart, beforeEnd, after, afterStart, afterEnd);
+        trim();
+    }
+
+    private void addEdit(int start, CharSequence before, int beforeStart, int beforeEnd,
+                         CharSequence after, int afterStart, int afterEnd) {
+        truncate(position);
+        if (count == starts.length) {
+            int capacity = count * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            textStarts = Arrays.copyOf(textStarts, capacity);
+            beforeLengths = Arrays.copyOf(beforeLengths, capacity);
+            afterLengths = Arrays.copyOf(afterLengths, capacity);
+        }
+        starts[count] = start;
+        textStarts[count] = charCount;
+        beforeLengths[count] = beforeEnd - beforeStart;
+        afterLengths[count] = afterEnd - afterStart;
+        appendChars(before, beforeStart, beforeEnd);
+        appendChars(after, afterStart, afterEnd);
+        count++;
+        position = count;
+    }
+
+    /**
+     * Add the typed chars to the last edit if they follow its inserted chars
+     *
+     * @return false if the chars are not after the last edit
+     */
+    public boolean extendInsert(int start, @NonNull CharSequence text, int from, int to) {
+        int last = count - 1;
+        if (last < 0 || position != count || afterLengths[last] == 0
+                || start != starts[last] + afterLengths[last]) {
+            return false;
+        }
+        //the chars of the last edit are at the end of the buffer
+        appendChars(text, from, to);
+        afterLengths[last] += to - from;
+        savedCount = Math.min(savedCount, last);
+        trim();
+        return true;
+    }
+
+    /**
+     * Add the deleted chars to the last edit if it is a delete next to them, by backspace or by
+     * the delete key
+     *
+     * @return false if the chars are not next to the last delete
+     */
+    public boolean extendDelete(int start, @NonNull CharSequence text, int from, int to) {
+        int last = count - 1;
+        if (last < 0 || position != count || afterLengths[last] != 0
+                || beforeLengths[last] == 0) {
+            return false;
+        }
+        int length = to - from;
+        if (start == starts[last]) {
+            //delete key, the chars follow the deleted chars
+            appendChars(text, from, to);
+        } else if (start + length == starts[last]) {
+            //backspace, the chars are before the deleted chars
+            int textStart = textStarts[last];
+            ensureCapacity(charCount + length);
+            System.arraycopy(chars, textStart, chars, textStart + length, charCount - textStart);
+            for (int i = from; i < to; i++) {
+                chars[textStart + i - from] = text.charAt(i);
+            }
+            charCount += length;
+            starts[last] = start;
+        } else {
+            return false;
+        }
+        beforeLengths[last] += length;
+        savedCount = Math.min(savedCount, last);
+        trim();
+        return true;
+    }
+
+    /**
+     * @return the edit to undo, -1 if there is none
+     */
+    public int undo() {
+        if (position == 0) return -1;
+        return --position;
+    }
+
+    /**
+     * @return the edit to redo, -1 if there is none
+     */
+    public int redo() {
+        if (position == count) return -1;
+        return position++;
+    }
+
+    public int getStart(int edit) {
+        return starts[edit];
+    }
+
+    public int getBeforeLength(int edit) {
+        return beforeLengths[edit];
+    }
+
+    public int getAfterLength(int edit) {
+        return afterLengths[edit];
+    }
+
+    @NonNull
+    public String getBefore(int edit) {
+        return new String(chars, textStarts[edit], beforeLengths[edit]);
+    }
+
+    @NonNull
+    public String getAfter(int edit) {
+        return new String(chars, textStarts[edit] + beforeLengths[edit], afterLengths[edit]);
+    }
+
+    /**
+     * Encode the changes since the last call, the log which had the changes of the previous
+     * calls becomes the same as this journal when they are applied
+     */
+    @NonNull
+    public byte[] takeChanges() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            if (droppedCount > 0) {
+                out.writeByte(OP_DROP);
+                out.writeInt(droppedCount);
+            }
+            if (savedCount < loggedCount - droppedCount) {
+                out.writeByte(OP_TRUNCATE);
+                out.writeInt(savedCount);
+            }
+            for (int i = savedCount; i < count; i++) {
+                out.writeByte(OP_EDIT);
+                out.writeInt(starts[i]);
+                writeChars(out, textStarts[i], beforeLengths[i]);
+                writeChars(out, textStarts[i] + beforeLengths[i], afterLengths[i]);
+            }
+            out.writeByte(OP_POSITION);
+            out.writeInt(position);
+            out.close();
+        } catch (IOException e) {
+            //a byte array does not throw
+            throw new IllegalStateException(e);
+        }
+        markSaved();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replay the changes of {@link #takeChanges}, the size is not limited
+     *
+     * @param length number of bytes of the changes
+     */
+    public void applyChanges(@NonNull DataInput in, int length) throws IOException {
+        int end = length;
+        while (end > 0) {
+            byte op = in.readByte();
+            end--;
+            switch (op) {
+                case OP_DROP: {
+                    int dropped = in.readInt();
+                    if (dropped > count) throw new IOException("drop " + dropped + " of " + count);
+                    drop(dropped);
+                    end -= 4;
+                    break;
+                }
+                case OP_TRUNCATE: {
+                    int size = in.readInt();
+                    if (size > count) throw new IOException("truncate " + size + " of " + count);
+                    truncate(size);
+                    end -= 4;
+                    break;
+                }
+                case OP_EDIT: {
+                    int start = in.readInt();
+                    String before = readChars(in);
+                    String after = readChars(in);
+                    addEdit(start, before, 0, before.length(), after, 0, after.length());
+                    end -= 12 + 2 * (before.length() + after.length());
+                    break;
+                }
+                case OP_POSITION: {
+                    int position = in.readInt();
+                    if (position < 0 || position > count) {
+                        throw new IOException("position " + position + " of " + count);
+                    }
+                    this.position = position;
+                    end -= 4;
+                    break;
+                }
+                default:
+                    throw new IOException("unknown operation " + op);
+            }
+        }
+        if (end < 0) throw new IOException("operation after the end of the changes");
+    }
+
+    /**
+     * The edits are the same as the log, after they are read from it
+     */
+    public void markSaved() {
+        loggedCount = count;
+        savedCount = count;
+        droppedCount = 0;
+    }
+
+    /**
+     * The log is empty or deleted, the next changes have all edits
+     */
+    public void markUnsaved() {
+        loggedCount = 0;
+        savedCount = 0;
+        droppedCount = 0;
+    }
+
+    /**
+     * Drop the oldest edits if the size is over the limit
+     */
+    void trim() {
+        if (getByteSize() <= maxBytes || count <= 1) return;
+        //drop to 3/4 of the limit, so the arrays are not shifted by each edit
+        int target = maxBytes - maxBytes / 4;
+        int size = getByteSize();
+        int dropped = 0;
+        while (dropped < count - 1 && size > target) {
+            size -= (beforeLengths[dropped] + afterLengths[dropped]) * 2 + EDIT_BYTES;
+            dropped++;
+        }
+        drop(dropped);
+    }
+
+    /**
+     * Remove the oldest edits
+     */
+    private void drop(int dropped) {
+        if (dropped == 0) return;
+        int remaining = count - dropped;
+        int firstChar = dropped < count ? textStarts[dropped] : charCount;
+        System.arraycopy(chars, firstChar, chars, 0, charCount - firstChar);
+        charCount -= firstChar;
+        System.arraycopy(starts, dropped, starts, 0, remaining);
+        System.arraycopy(beforeLengths, dropped, beforeLengths, 0, remaining);
+        System.arraycopy(afterLengths, dropped, afterLengths, 0, remaining);
+        for (int i = 0; i < remaining; i++) {
+            textStarts[i] = textStarts[i + dropped] - firstChar;
+        }
+        count = remaining;
+        position = Math.max(0, position - dropped);
+
+        int droppedSaved = Math.min(dropped, savedCount);
+        droppedCount += droppedSaved;
+        savedCount -= droppedSaved;
+    }
+
+    /**
+     * Remove the edits from the index
+     */
+    private void truncate(int size) {
+        if (size >= count) return;
+        charCount = textStarts[size];
+        count = size;
+        position = Math.min(position, size);
+        savedCount = Math.min(savedCount, size);
+    }
+
+    private void appendChars(CharSequence text, int from, int to) {
+        ensureCapacity(charCount + to - from);
+        if (text instanceof String) {
+            ((String) text).getChars(from, to, chars, charCount);
+            charCount += to - from;
+        } else {
+            for (int i = from; i < to; i++) {
+                chars[charCount++] = text.charAt(i);
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+        }
+    }
+
+    private void writeChars(DataOutputStream out, int from, int length) throws IOException {
+        out.writeInt(length);
+        for (int i = from; i < from + length; i++) {
+            out.writeChar(chars[i]);
+        }
+    }
+
+    private static String readChars(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("length " + length);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
+    }
+}
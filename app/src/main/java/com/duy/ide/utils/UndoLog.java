@@ -0,0 +1,242 @@
+/*
+ *  Copyright (c) 2017 Tran Le Duy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.duy.ide.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Append only file of the changes of an {@link UndoJournal}.
+ * <p>
+ * The file is a header with the key of the edited file, then one block for each save: the
+ * length and hash of the text when it was saved, then the changes. A block which was not
+ * completely written is ignored. When the file is much larger than the journal, it is
+ * compacted: the blocks are replayed and written again as one block.
+ * <p>
+ * The files are written and read by one background thread, in the order of the calls.
+ */
+public class UndoLog {
+    private static final String TAG = "UndoLog";
+    private static final int MAGIC = 0x556e446f;
+    private static final int VERSION = 1;
+    /**
+     * the file is compacted when it is larger than this and twice the journal
+     */
+    private static final int MIN_COMPACT_LENGTH = 64 * 1024;
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    Thread thread = new Thread(r, "undo-log");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Append the changes of a journal in the background
+     *
+     * @param changes  from {@link UndoJournal#takeChanges}
+     * @param text     the text when the changes were taken, it must not change
+     * @param liveSize estimated size of the journal
+     */
+    public static void append(@NonNull final File file, @NonNull final String key,
+                              @NonNull final byte[] changes, @NonNull final CharSequence text,
+                              final int liveSize) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    boolean exists = file.length() > 0;
+                    if (!exists) file.getParentFile().mkdirs();
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(file, true)));
+                    try {
+                        if (!exists) writeHeader(out, key);
+                        writeBlock(out, changes, text.length(), hash(text));
+                    } finally {
+                        out.close();
+                    }
+                    if (file.length() > Math.max(MIN_COMPACT_LENGTH, 2 * liveSize)) {
+                        compact(file, key);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "append: " + file, e);
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Replay the file into a new journal in the background, after the pending appends. The file
+     * is deleted if it is not the history of the text.
+     *
+     * @param text     the current text, it must not change
+     * @param callback called on the log thread
+     */
+    public static void read(@NonNull final File file, @NonNull final String key,
+                            @NonNull final CharSequence text, final int maxBytes,
+                            @NonNull final ReadCallback callback) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                UndoJournal journal = new UndoJournal();
+                journal.setMaxBytes(maxBytes);
+                callback.onRead(read(file, key, journal, text) ? journal : null);
+            }
+        });
+    }
+
+    private static boolean read(File file, String key, UndoJournal journal, CharSequence text) {
+        if (!file.exists()) return false;
+        try {
+            long[] saved = replay(file, key, journal);
+            if (saved != null && saved[0] == text.length() && saved[1] == hash(text)) {
+                journal.markSaved();
+                journal.trim();
+                return true;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "read: " + file, e);
+        }
+        file.delete();
+        return false;
+    }
+
+    /**
+     * Write the journal of the file as one block
+     */
+    private static void compact(File file, String key) throws IOException {
+        UndoJournal journal = new UndoJournal();
+        long[] saved = replay(file, key, journal);
+        if (saved == null) {
+            file.delete();
+            return;
+        }
+        journal.markUnsaved();
+        byte[] changes = journal.takeChanges();
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)));
+        try {
+            writeHeader(out, key);
+            writeBlock(out, changes, (int) saved[0], (int) saved[1]);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("can not rename " + temp);
+        }
+    }
+
+    /**
+     * @return the text length and hash of the last complete block, null if the file is not the
+     * history of the key
+     */
+    private static long[] replay(File file, String key, UndoJournal journal) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            byte[] header = header(key);
+            byte[] fileHeader = new byte[header.length];
+            in.readFully(fileHeader);
+            if (!Arrays.equals(header, fileHeader)) return null;
+            long[] saved = null;
+            long remaining = file.length() - header.length;
+            while (remaining >= 12) {
+                int length = in.readInt();
+                if (length < 0 || length > remaining - 12) {
+                    //the last save was interrupted
+                    break;
+                }
+                int textLength = in.readInt();
+                int textHash = in.readInt();
+                journal.applyChanges(in, length);
+                saved = new long[]{textLength, textHash};
+                remaining -= 12 + length;
+            }
+            return saved;
+        } catch (EOFException e) {
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, String key) throws IOException {
+        out.write(header(key));
+    }
+
+    private static byte[] header(String key) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(key);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static void writeBlock(DataOutputStream out, byte[] changes, int textLength,
+                                   int textHash) throws IOException {
+        out.writeInt(changes.length);
+        out.writeInt(textLength);
+        out.writeInt(textHash);
+        out.write(changes);
+    }
+
+    /**
+     * Same as {@link String#hashCode} without copying the text
+     */
+    private static int hash(CharSequence text) {
+        int hash = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Receives the journal of {@link #read}
+     */
+    public interface ReadCallback {
+        /**
+         * @param journal the history of the text, null if there is no history of the text
+         */
+        void onRead(@Nullable UndoJournal journal);
+    }
+}
@@ -16,28 +16,41 @@
 
 package com.duy.ide.utils;
 
-import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.text.Editable;
 import android.text.Selection;
-import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.text.style.UnderlineSpan;
 import android.widget.TextView;
 
-import java.util.LinkedList;
+import java.io.File;
 
+/**
+ * Undo and redo of the edits of a text view, the edits are kept in an {@link UndoJournal} and
+ * saved to an {@link UndoLog}. Consecutive keystrokes are coalesced in one edit.
+ */
 public class UndoRedoHelper {
     private static final String TAG = UndoRedoHelper.class.getCanonicalName();
+    /**
+     * keystrokes within this time are coalesced
+     */
+    private static final long COALESCE_TIME = 1000;
     private boolean mIsUndoOrRedo = false;
 
-    private EditHistory mEditHistory;
+    private UndoJournal mJournal = new UndoJournal();
+    private int mMaxBytes = UndoJournal.DEFAULT_MAX_BYTES;
+    /**
+     * changes of the text and of the history, a restored history is dropped if it changed
+     * while the history was read
+     */
+    private int mChangeCount = 0;
 
     private EditTextChangeListener mChangeListener;
     private TextView mTextView;
 
     public UndoRedoHelper(TextView textView) {
         mTextView = textView;
-        mEditHistory = new EditHistory();
         mChangeListener = new EditTextChangeListener();
         mTextView.addTextChangedListener(mChangeListener);
     }
@@ -48,56 +61,65 @@ public class UndoRedoHelper {
         }
     }
 
-    public void setMaxHistorySize(int maxHistorySize) {
-        mEditHistory.setMaxHistorySize(maxHistorySize);
+    /**
+     * @param maxBytes the oldest edits are dropped when the history is larger
+     */
+    public void setMaxHistoryBytes(int maxBytes) {
+        mMaxBytes = maxBytes;
+        mJournal.setMaxBytes(maxBytes);
     }
 
     public void clearHistory() {
-        mEditHistory.clear();
+        mChangeCount++;
+        mJournal.clear();
     }
 
     public boolean getCanUndo() {
-        return (mEditHistory.mmPosition > 0);
+        return mJournal.canUndo();
     }
 
     public void undo() {
-        EditItem edit = mEditHistory.getPrevious();
-        if (edit == null) {
+        int edit = mJournal.undo();
+        if (edit < 0) {
             return;
         }
 
         Editable editable = mTextView.getEditableText();
-        int start = edit.start;
-        int end = start + (edit.after != null ? edit.after.length() : 0);
+        int start = mJournal.getStart(edit);
+        int end = start + mJournal.getAfterLength(edit);
+        String before = mJournal.getBefore(edit);
 
         mIsUndoOrRedo = true;
-        editable.replace(start, end, edit.before);
+        editable.replace(start, end, before);
         mIsUndoOrRedo = false;
+        mChangeListener.lastActionType = ActionType.NOT_DEF;
 
         for (Object o : editable.getSpans(0, editable.length(), UnderlineSpan.class)) {
             editable.removeSpan(o);
         }
 
-        Selection.setSelection(editable, edit.before == null ? start : (start + edit.before.length()));
+        Selection.setSelection(editable, start + before.length());
     }
 
     public boolean getCanRedo() {
-        return (mEditHistory.mmPosition < mEditHistory.mmHistory.size());
+        return mJournal.canRedo();
     }
 
     public void redo() {
-        EditItem edit = mEditHistory.getNext();
-        if (edit == null) {
+        int edit = mJournal.redo();
+        if (edit < 0) {
             return;
         }
 
         Editable text = mTextView.getEditableText();
-        int start = edit.start;
-        int end = start + (edit.before != null ? edit.before.length() : 0);
+        int start = mJournal.getStart(edit);
+        int end = start + mJournal.getBeforeLength(edit);
+        String after = mJournal.getAfter(edit);
 
         mIsUndoOrRedo = true;
-        text.replace(start, end, edit.after);
+        text.replace(start, end, after);
         mIsUndoOrRedo = false;
+        mChangeListener.lastActionType = ActionType.NOT_DEF;
 
         // This will get rid of underlines inserted when editor tries to come
         // up with a suggestion.
@@ -105,76 +127,53 @@ public class UndoRedoHelper {
             text.removeSpan(o);
         }
 
-        Selection.setSelection(text, edit.after == null ? start
-                : (start + edit.after.length()));
+        Selection.setSelection(text, start + after.length());
     }
 
-    public void storePersistentState(SharedPreferences.Editor editor, String prefix) {
-        // Store hash code of text in the editor so that we can check if the
-        // editor contents has changed.
-        editor.putString(prefix + ".hash", String.valueOf(mTextView.getText().toString().hashCode()));
-        editor.putInt(prefix + ".maxSize", mEditHistory.mmMaxHistorySize);
-        editor.putInt(prefix + ".position", mEditHistory.mmPosition);
-        editor.putInt(prefix + ".size", mEditHistory.mmHistory.size());
-
-        int i = 0;
-        for (EditItem ei : mEditHistory.mmHistory) {
-            String pre = prefix + "." + i;
-
-            editor.putInt(pre + ".start", ei.start);
-            editor.putString(pre + ".before", ei.before.toString());
-            editor.putString(pre + ".after", ei.after.toString());
-
-            i++;
-        }
+    /**
+     * Append the edits since the last save to the log file, it is written in the background
+     *
+     * @param key  the edited file
+     * @param text the current text, it must not change
+     */
+    public void storePersistentState(@NonNull File file, @NonNull String key,
+                                     @NonNull CharSequence text) {
+        UndoLog.append(file, key, mJournal.takeChanges(), text, mJournal.getByteSize());
     }
 
-    public boolean restorePersistentState(SharedPreferences sp, String prefix)
-            throws IllegalStateException {
-
-        boolean ok = doRestorePersistentState(sp, prefix);
-        if (!ok) {
-            mEditHistory.clear();
-        }
-
-        return ok;
+    /**
+     * Read the log file in the background, the history is replaced when it is read if the text
+     * was not edited in the meantime
+     *
+     * @param text the current text, it must not change. The history is cleared if it is not the
+     *             text of the log
+     */
+    public void restorePersistentState(@NonNull File file, @NonNull String key,
+                                       @NonNull CharSequence text) {
+        final int changeCount = mChangeCount;
+        UndoLog.read(file, key, text, mMaxBytes, new UndoLog.ReadCallback() {
+            @Override
+            public void onRead(@Nullable final UndoJournal journal) {
+                mTextView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onHistoryRead(journal, changeCount);
+                    }
+                });
+            }
+        });
     }
 
-    private boolean doRestorePersistentState(SharedPreferences sp, String prefix) {
-        String hash = sp.getString(prefix + ".hash", null);
-        if (hash == null) {
-            // No state to be restored.
-            return true;
-        }
-
-        if (Integer.valueOf(hash) != mTextView.getText().toString().hashCode()) {
-            return false;
-        }
-
-        mEditHistory.clear();
-        mEditHistory.mmMaxHistorySize = sp.getInt(prefix + ".maxSize", -1);
-
-        int count = sp.getInt(prefix + ".size", -1);
-        if (count == -1) {
-            return false;
-        }
-
-        for (int i = 0; i < count; i++) {
-            String pre = prefix + "." + i;
-
-            int start = sp.getInt(pre + ".start", -1);
-            String before = sp.getString(pre + ".before", null);
-            String after = sp.getString(pre + ".after", null);
-
-            if (start == -1 || before == null || after == null) {
-                return false;
-            }
-            mEditHistory.add(new EditItem(start, before, after));
+    private void onHistoryRead(@Nullable UndoJournal journal, int changeCount) {
+        boolean changed = changeCount != mChangeCount;
+        if (journal != null) {
+            //the log still has the history before the changes, the next save appends them
+            if (!changed) mJournal = journal;
+            return;
         }
-
-        mEditHistory.mmPosition = sp.getInt(prefix + ".position", -1);
-        return mEditHistory.mmPosition != -1;
-
+        //the log was deleted
+        if (!changed) mJournal.clear();
+        mJournal.markUnsaved();
     }
 
     // =================================================================== //
@@ -183,96 +182,11 @@ public class UndoRedoHelper {
         INSERT, DELETE, PASTE, NOT_DEF
     }
 
-    private final class EditHistory {
-        private final LinkedList<EditItem> mmHistory = new LinkedList<>();
-        private int mmPosition = 0;
-        private int mmMaxHistorySize = -1;
-
-        private void clear() {
-            mmPosition = 0;
-            mmHistory.clear();
-        }
-
-        private void add(EditItem item) {
-            while (mmHistory.size() > mmPosition) {
-                mmHistory.removeLast();
-            }
-            mmHistory.add(item);
-            mmPosition++;
-
-            if (mmMaxHistorySize >= 0) {
-                trimHistory();
-            }
-        }
-
-        private void setMaxHistorySize(int maxHistorySize) {
-            mmMaxHistorySize = maxHistorySize;
-            if (mmMaxHistorySize >= 0) {
-                trimHistory();
-            }
-        }
-
-        private void trimHistory() {
-            while (mmHistory.size() > mmMaxHistorySize) {
-                mmHistory.removeFirst();
-                mmPosition--;
-            }
-
-            if (mmPosition < 0) {
-                mmPosition = 0;
-            }
-        }
-
-        private EditItem getCurrent() {
-            if (mmPosition == 0) {
-                return null;
-            }
-            return mmHistory.get(mmPosition - 1);
-        }
-
-        private EditItem getPrevious() {
-            if (mmPosition == 0) {
-                return null;
-            }
-            mmPosition--;
-            return mmHistory.get(mmPosition);
-        }
-
-        private EditItem getNext() {
-            if (mmPosition >= mmHistory.size()) {
-                return null;
-            }
-
-            EditItem item = mmHistory.get(mmPosition);
-            mmPosition++;
-            return item;
-        }
-    }
-
-    private final class EditItem {
-        private int start;
-        private CharSequence before;
-        private CharSequence after;
-
-        public EditItem(int start, CharSequence before, CharSequence after) {
-            this.start = start;
-            this.before = before;
-            this.after = after;
-        }
-
-        @Override
-        public String toString() {
-            return "EditItem{" +
-                    "start=" + start +
-                    ", before=" + before +
-                    ", after=" + after +
-                    '}';
-        }
-    }
-
     private final class EditTextChangeListener implements TextWatcher {
-        private CharSequence mBeforeChange;
-        private CharSequence mAfterChange;
+        /**
+         * the replaced chars, copied before they are removed
+         */
+        private final StringBuilder mBeforeChange = new StringBuilder();
         private ActionType lastActionType = ActionType.NOT_DEF;
         private long lastActionTime = 0;
 
@@ -280,38 +194,42 @@ public class UndoRedoHelper {
             if (mIsUndoOrRedo) {
                 return;
             }
-            mBeforeChange = s.subSequence(start, start + count);
+            mBeforeChange.setLength(0);
+            mBeforeChange.append(s, start, start + count);
         }
 
         public void onTextChanged(CharSequence s, int start, int before, int count) {
-            if (mIsUndoOrRedo) {
+            mChangeCount++;
+            if (mIsUndoOrRedo || (before == 0 && count == 0)) {
                 return;
             }
-            mAfterChange = s.subSequence(start, start + count);
-            makeBatch(start);
-        }
-
-        private void makeBatch(int start) {
-            ActionType at = getActionType();
-            EditItem editItem = mEditHistory.getCurrent();
-            if ((lastActionType != at || ActionType.PASTE == at || System.currentTimeMillis() - lastActionTime > 1000) || editItem == null) {
-                mEditHistory.add(new EditItem(start, mBeforeChange, mAfterChange));
-            } else {
-                if (at == ActionType.DELETE) {
-                    editItem.start = start;
-                    editItem.before = mBeforeChange + editItem.before.toString();
-                } else {
-                    editItem.after = editItem.after + mAfterChange.toString();
+            makeBatch(s, start, count);
+        }
+
+        private void makeBatch(CharSequence s, int start, int count) {
+            ActionType at = getActionType(count);
+            long time = System.currentTimeMillis();
+            boolean coalesced = false;
+            if (lastActionType == at && time - lastActionTime <= COALESCE_TIME) {
+                if (at == ActionType.INSERT) {
+                    coalesced = mJournal.extendInsert(start, s, start, start + count);
+                } else if (at == ActionType.DELETE) {
+                    coalesced = mJournal.extendDelete(start, mBeforeChange, 0,
+                            mBeforeChange.length());
                 }
             }
+            if (!coalesced) {
+                mJournal.add(start, mBeforeChange, 0, mBeforeChange.length(),
+                        s, start, start + count);
+            }
             lastActionType = at;
-            lastActionTime = System.currentTimeMillis();
+            lastActionTime = time;
         }
 
-        private ActionType getActionType() {
-            if (!TextUtils.isEmpty(mBeforeChange) && TextUtils.isEmpty(mAfterChange)) {
+        private ActionType getActionType(int count) {
+            if (mBeforeChange.length() > 0 && count == 0) {
                 return ActionType.DELETE;
-            } else if (TextUtils.isEmpty(mBeforeChange) && !TextUtils.isEmpty(mAfterChange)) {
+            } else if (mBeforeChange.length() == 0 && count > 0) {
                 return ActionType.INSERT;
             } else {
                 return ActionType.PASTE;
@@ -321,4 +239,4 @@ public class UndoRedoHelper {
         public void afterTextChanged(Editable s) {
         }
     }
-}
\ No newline at end of file
+}
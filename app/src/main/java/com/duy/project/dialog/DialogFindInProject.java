@@ -0,0 +1,206 @@
+package com.duy.project.dialog;
+
+import android.app.Dialog;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.app.AppCompatDialogFragment;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.duy.ide.R;
+import com.duy.ide.setting.JavaPreferences;
+import com.duy.project.search.ProjectSearch;
+
+import java.io.File;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import static android.view.ViewGroup.LayoutParams;
+
+/**
+ * Search the files of the project while the query is typed, the matches are added to the list
+ * as they are found.
+ */
+public class DialogFindInProject extends AppCompatDialogFragment implements ProjectSearch.Callback {
+    public static final String TAG = "DialogFindInProject";
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private EditText mEditFind;
+    private CheckBox mCkbRegex, mCkbMatchCase;
+    private TextView mTxtStatus;
+    private ArrayAdapter<ProjectSearch.Match> mAdapter;
+    @Nullable
+    private SearchListener listener;
+    @Nullable
+    private ProjectSearch mProjectSearch;
+    /**
+     * the running search, the results of the other searches are ignored
+     */
+    @Nullable
+    private ProjectSearch.Search mSearch;
+
+    public static DialogFindInProject newInstance() {
+        return new DialogFindInProject();
+    }
+
+    @Override
+    public void onAttach(Context context) {
+        super.onAttach(context);
+        try {
+            listener = (SearchListener) getActivity();
+        } catch (ClassCastException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
+        return inflater.inflate(R.layout.dialog_find_in_project, container, false);
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        Dialog dialog = getDialog();
+        if (dialog != null) {
+            dialog.getWindow().setLayout(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
+        }
+    }
+
+    @Override
+    public void onViewCreated(View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        getDialog().setTitle(R.string.find_in_project);
+        mEditFind = (EditText) view.findViewById(R.id.txt_find);
+        mCkbRegex = (CheckBox) view.findViewById(R.id.ckb_regex);
+        mCkbMatchCase = (CheckBox) view.findViewById(R.id.ckb_match_key);
+        mTxtStatus = (TextView) view.findViewById(R.id.txt_status);
+        ListView listResult = (ListView) view.findViewById(R.id.list_result);
+        mAdapter = new ArrayAdapter<>(getContext(), android.R.layout.simple_list_item_1);
+        listResult.setAdapter(mAdapter);
+        listResult.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                ProjectSearch.Match match = mAdapter.getItem(position);
+                if (listener != null && match != null) {
+                    listener.onSearchResultClick(match);
+                }
+                dismiss();
+            }
+        });
+
+        mProjectSearch = listener != null ? listener.getProjectSearch() : null;
+        if (mProjectSearch == null) {
+            mTxtStatus.setText(R.string.project_search_need_project);
+            return;
+        }
+        mEditFind.setText(new JavaPreferences(getContext()).getString(JavaPreferences.LAST_FIND));
+        mEditFind.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                search();
+            }
+        });
+        CompoundButton.OnCheckedChangeListener onCheckedChange = new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                search();
+            }
+        };
+        mCkbRegex.setOnCheckedChangeListener(onCheckedChange);
+        mCkbMatchCase.setOnCheckedChangeListener(onCheckedChange);
+        search();
+    }
+
+    /**
+     * Start a new search, the running one is cancelled
+     */
+    private void search() {
+        if (mProjectSearch == null) return;
+        mAdapter.clear();
+        mSearch = null;
+        String query = mEditFind.getText().toString();
+        if (query.isEmpty()) {
+            mProjectSearch.cancel();
+            mTxtStatus.setText("");
+            return;
+        }
+        try {
+            mSearch = mProjectSearch.search(query, mCkbRegex.isChecked(), mCkbMatchCase.isChecked(), this);
+            mTxtStatus.setText(R.string.searching);
+        } catch (PatternSyntaxException e) {
+            mProjectSearch.cancel();
+            mTxtStatus.setText(e.getDescription());
+        }
+    }
+
+    @Override
+    public void onMatches(@NonNull final ProjectSearch.Search search, @NonNull File file,
+                          @NonNull final List<ProjectSearch.Match> matches) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (search == mSearch) {
+                    mAdapter.addAll(matches);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onFinished(@NonNull final ProjectSearch.Search search, final int fileCount) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (search == mSearch) {
+                    mTxtStatus.setText(getString(R.string.project_search_result, mAdapter.getCount(), fileCount));
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (mProjectSearch != null) {
+            mProjectSearch.cancel();
+            new JavaPreferences(getContext()).put(JavaPreferences.LAST_FIND, mEditFind.getText().toString());
+        }
+        mSearch = null;
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+    public interface SearchListener {
+        /**
+         * @return the search of the opened project, null if no project is opened
+         */
+        @Nullable
+        ProjectSearch getProjectSearch();
+
+        void onSearchResultClick(@NonNull ProjectSearch.Match match);
+    }
+}
@@ -19,6 +19,7 @@ public class AndroidProjectFolder extends JavaProjectFolder {
     /* Output */
     private final File apkUnsigned;
     private final File apkUnaligned;
+    private final File apkAligned;
     public File xmlManifest;
     public File resourceFile;
     private KeyStore keystore;
@@ -42,6 +43,7 @@ public class AndroidProjectFolder extends JavaProjectFolder {
         dirOutApk = new File(dirOutput, "apk");
         apkUnsigned = new File(dirOutput, "app-unsigned-debug.apk");
         apkUnaligned = new File(dirOutput, "app-unaligned-debug.apk");
+        apkAligned = new File(dirOutput, "app-debug.apk");
 
         createClassR();
 
@@ -79,6 +81,13 @@ public class AndroidProjectFolder extends JavaProjectFolder {
         return apkUnaligned;
     }
 
+    /**
+     * @return the signed and aligned apk
+     */
+    public File getApkAligned() {
+        return apkAligned;
+    }
+
     public File getResourceFile() throws IOException {
         if (!resourceFile.exists()) {
             resourceFile.getParentFile().mkdirs();
@@ -4,6 +4,7 @@ import android.support.annotation.CallSuper;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.duy.compile.external.java.CompiledClasses;
 import com.duy.ide.editor.completion.Template;
 import com.duy.ide.file.FileManager;
 
@@ -13,6 +14,8 @@ import org.json.JSONObject;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by Duy on 16-Jul-17.
@@ -38,12 +41,18 @@ public class JavaProjectFolder implements Serializable, Cloneable {
     protected File dirDexedLibs;
     protected File dirDexedClass;
     protected File dexedClassesFile;
+    protected File dirBuildIncremental;
     protected String packageName;
 
     /*Main class*/
     private ClassFile mainClass;
     private String projectName;
     private File jarArchive;
+    /**
+     * Classes of the last compilation, they are not saved with the project
+     */
+    @Nullable
+    private transient CompiledClasses compiledClasses;
 
     public JavaProjectFolder(File root, String mainClassName, String packageName, String projectName,
                              String classpath) {
@@ -67,6 +76,7 @@ public class JavaProjectFolder implements Serializable, Cloneable {
         dirOutputJar = new File(dirOutput, "jar");
         dirDexedLibs = new File(dirBuild, "dexedLibs");
         dirDexedClass = new File(dirBuild, "dexedClasses");
+        dirBuildIncremental = new File(dirBuild, "incremental");
 
         dexedClassesFile = new File(dirDexedClass, projectName + ".dex");
         bootClasspath = new File(classpath);
@@ -172,6 +182,39 @@ public class JavaProjectFolder implements Serializable, Cloneable {
         return dirDexedClass;
     }
 
+    /**
+     * @return the file which keeps source hashes and class dependencies of the last compilation
+     */
+    public File getJavacStateFile() {
+        if (!dirBuildIncremental.exists()) dirBuildIncremental.mkdirs();
+        return new File(dirBuildIncremental, "javac.state");
+    }
+
+    /**
+     * @return the file which keeps the classes of the last compilation, next to the javac state
+     */
+    public File getJavacClassesFile() {
+        if (!dirBuildIncremental.exists()) dirBuildIncremental.mkdirs();
+        return new File(dirBuildIncremental, "javac.classes");
+    }
+
+    /**
+     * @return the classes of the last compilation which are kept in memory, see
+     * IncrementalJavaCompiler
+     */
+    public synchronized CompiledClasses getCompiledClasses() {
+        if (compiledClasses == null) compiledClasses = new CompiledClasses();
+        return compiledClasses;
+    }
+
+    /**
+     * @return the Chrome trace JSON of the last build, see BuildProfiler
+     */
+    public File getBuildTraceFile() {
+        if (!dirBuild.exists()) dirBuild.mkdirs();
+        return new File(dirBuild, "build-trace.json");
+    }
+
     public File getDirOutputJar() {
         if (!dirOutputJar.exists()) dirOutputJar.mkdirs();
         return dirOutputJar;
@@ -311,15 +354,26 @@ public class JavaProjectFolder implements Serializable, Cloneable {
      */
     public String getJavaClassPath() {
         String classpath = ".";
+        for (File jarLib : getLibraryJars()) {
+            classpath += File.pathSeparator + jarLib.getPath();
+        }
+        return classpath;
+    }
+
+    /**
+     * @return all file *.jar in dirLibs
+     */
+    public List<File> getLibraryJars() {
+        List<File> jars = new ArrayList<>();
         File[] files = getDirLibs().listFiles();
         if (files != null) {
             for (File jarLib : files) {
                 if (jarLib.isFile() && jarLib.getName().endsWith(".jar")) {
-                    classpath += File.pathSeparator + jarLib.getPath();
+                    jars.add(jarLib);
                 }
             }
         }
-        return classpath;
+        return jars;
     }
 
     public File getDirSrcJava() {
@@ -0,0 +1,279 @@
+package com.duy.project.search;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Search of the text files of a project in the background.
+ * <p>
+ * The {@link TrigramIndex} of the project is updated, then the files which may contain the
+ * query are matched by a pool of threads. The matches of each file are sent to the callback as
+ * soon as the file is matched. A new search cancels the running one.
+ */
+public class ProjectSearch {
+    private static final String TAG = "ProjectSearch";
+    /**
+     * the search stops after this number of matches
+     */
+    private static final int MAX_MATCHES = 5000;
+    /**
+     * the text of a match line is cut to this length
+     */
+    private static final int MAX_LINE_LENGTH = 200;
+
+    private static final ExecutorService sSearchExecutor = Executors.newSingleThreadExecutor(
+            new SearchThreadFactory("project-search"));
+    private static final ExecutorService sMatchExecutor = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors()),
+            new SearchThreadFactory("project-search-match"));
+
+    private final File mRoot;
+    private final TrigramIndex mIndex = new TrigramIndex();
+    private Search mCurrent;
+
+    public ProjectSearch(@NonNull File root) {
+        this.mRoot = root;
+    }
+
+    public File getRoot() {
+        return mRoot;
+    }
+
+    /**
+     * The file or directory was created, changed or deleted, the next search indexes it again
+     */
+    public void markDirty(@NonNull File file) {
+        mIndex.markDirty(file);
+    }
+
+    /**
+     * Cancel the running search and start a new one
+     *
+     * @param callback called from the search threads
+     * @throws PatternSyntaxException if the regex is not valid
+     */
+    @NonNull
+    public synchronized Search search(@NonNull String query, boolean regex, boolean matchCase,
+                                      @NonNull Callback callback) throws PatternSyntaxException {
+        int flags = matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        Pattern pattern = Pattern.compile(regex ? query : Pattern.quote(query), flags);
+        int[] trigrams = TrigramIndex.getTrigrams(TrigramIndex.getLiterals(query, regex));
+
+        cancel();
+        mCurrent = new Search(pattern, trigrams, callback);
+        sSearchExecutor.execute(mCurrent);
+        return mCurrent;
+    }
+
+    public synchronized void cancel() {
+        if (mCurrent != null) {
+            mCurrent.cancel();
+            mCurrent = null;
+        }
+    }
+
+    public interface Callback {
+        /**
+         * @param matches the matches of a file, in the order of the text
+         */
+        void onMatches(@NonNull Search search, @NonNull File file, @NonNull List<Match> matches);
+
+        /**
+         * Not called if the search is cancelled
+         *
+         * @param fileCount number of the files which have matches
+         */
+        void onFinished(@NonNull Search search, int fileCount);
+    }
+
+    public static class Match {
+        public final File file;
+        /**
+         * line of the match, starts at 1
+         */
+        public final int line;
+        /**
+         * column of the start in the line, starts at 0
+         */
+        public final int column;
+        public final int start;
+        public final int end;
+        /**
+         * text of the line, it may be cut
+         */
+        public final String lineText;
+
+        Match(File file, int line, int column, int start, int end, String lineText) {
+            this.file = file;
+            this.line = line;
+            this.column = column;
+            this.start = start;
+            this.end = end;
+            this.lineText = lineText;
+        }
+
+        @Override
+        public String toString() {
+            return file.getName() + ":" + line + ": " + lineText;
+        }
+    }
+
+    public final class Search implements Runnable {
+        private final Pattern mPattern;
+        private final int[] mTrigrams;
+        private final Callback mCallback;
+        private final AtomicBoolean mCancelled = new AtomicBoolean();
+        private final AtomicInteger mMatchCount = new AtomicInteger();
+        private final AtomicInteger mFileCount = new AtomicInteger();
+
+        private Search(Pattern pattern, int[] trigrams, Callback callback) {
+            this.mPattern = pattern;
+            this.mTrigrams = trigrams;
+            this.mCallback = callback;
+        }
+
+        public void cancel() {
+            mCancelled.set(true);
+        }
+
+        public boolean isCancelled() {
+            return mCancelled.get();
+        }
+
+        @Override
+        public void run() {
+            if (isCancelled()) return;
+            mIndex.update(mRoot, mCancelled);
+            List<File> files = mIndex.query(mTrigrams);
+            ArrayList<Future<?>> futures = new ArrayList<>(files.size());
+            for (final File file : files) {
+                futures.add(sMatchExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        match(file);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    cancel();
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "run: ", e.getCause());
+                }
+            }
+            if (!isCancelled()) mCallback.onFinished(this, mFileCount.get());
+        }
+
+        private void match(File file) {
+            if (isCancelled() || mMatchCount.get() >= MAX_MATCHES) return;
+            String text;
+            try {
+                text = TrigramIndex.readFile(file);
+            } catch (IOException e) {
+                Log.w(TAG, "match: can not read " + file, e);
+                return;
+            }
+            ArrayList<Match> matches = new ArrayList<>();
+            int line = 1;
+            int lineStart = 0;
+            int counted = 0;
+            try {
+                Matcher matcher = mPattern.matcher(new CancellableText(text, mCancelled));
+                while (matcher.find()) {
+                    if (matcher.start() == matcher.end()) continue;
+                    for (; counted < matcher.start(); counted++) {
+                        if (text.charAt(counted) == '\n') {
+                            line++;
+                            lineStart = counted + 1;
+                        }
+                    }
+                    int lineEnd = text.indexOf('\n', lineStart);
+                    if (lineEnd < 0) lineEnd = text.length();
+                    lineEnd = Math.min(lineEnd, lineStart + MAX_LINE_LENGTH);
+                    matches.add(new Match(file, line, matcher.start() - lineStart,
+                            matcher.start(), matcher.end(), text.substring(lineStart, lineEnd)));
+                    if (mMatchCount.incrementAndGet() >= MAX_MATCHES) break;
+                }
+            } catch (CancellationException e) {
+                return;
+            }
+            if (!matches.isEmpty() && !isCancelled()) {
+                mFileCount.incrementAndGet();
+                mCallback.onMatches(this, file, matches);
+            }
+        }
+    }
+
+    /**
+     * Text of a file which stops the matcher when the search is cancelled, a regex can take a
+     * long time on a large file
+     */
+    private static final class CancellableText implements CharSequence {
+        private final String mText;
+        private final AtomicBoolean mCancelled;
+        private int mReads;
+
+        CancellableText(String text, AtomicBoolean cancelled) {
+            this.mText = text;
+            this.mCancelled = cancelled;
+        }
+
+        @Override
+        public int length() {
+            return mText.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((++mReads & 0xfff) == 0 && mCancelled.get()) {
+                throw new CancellationException();
+            }
+            return mText.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return mText.subSequence(start, end);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return mText;
+        }
+    }
+
+    private static final class SearchThreadFactory implements ThreadFactory {
+        private final String mName;
+
+        SearchThreadFactory(String name) {
+            this.mName = name;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread thread = new Thread(r, mName);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
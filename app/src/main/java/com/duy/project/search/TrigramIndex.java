@@ -0,0 +1,402 @@
+package com.duy.project.search;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Trigrams of the text files of a project, to find the files which may contain a query.
+ * <p>
+ * Each file has the sorted set of the trigrams of its lower case text. A file can only match a
+ * query if it has all the trigrams of the literal parts of the query, so only these files are
+ * read and matched.
+ * <p>
+ * The first {@link #update} walks the project, the next ones only index the files and
+ * directories given to {@link #markDirty} since the last update, e.g. by the save and the edits
+ * of the editor. Changes which are not marked are seen when the project is opened again.
+ */
+public class TrigramIndex {
+    private static final String TAG = "TrigramIndex";
+    /**
+     * larger files are not searched
+     */
+    static final long MAX_FILE_LENGTH = 1024 * 1024;
+    private static final HashSet<String> EXTENSIONS = new HashSet<>(Arrays.asList(
+            "java", "xml", "gradle", "properties", "txt", "json", "pro", "cfg", "md", "html",
+            "css", "js", "kt", "c", "cpp", "h", "mk"));
+    private static final HashSet<String> SKIPPED_DIRS = new HashSet<>(Arrays.asList(
+            "build", "bin", "gen"));
+
+    private final HashMap<File, Entry> mEntries = new HashMap<>();
+    /**
+     * guarded by itself, not by the index, so marking does not wait for a running update
+     */
+    private final HashSet<File> mDirty = new HashSet<>();
+    private boolean mScanned = false;
+
+    public static boolean isTextFile(@NonNull File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && EXTENSIONS.contains(name.substring(dot + 1).toLowerCase());
+    }
+
+    /**
+     * The file or directory was created, changed or deleted, the next update indexes it again
+     */
+    public void markDirty(@NonNull File file) {
+        synchronized (mDirty) {
+            mDirty.add(file);
+        }
+    }
+
+    /**
+     * Index all files under the root the first time, then only the dirty files
+     *
+     * @param cancelled the update stops when it is set, the index is updated later
+     */
+    public synchronized void update(@NonNull File root, @NonNull AtomicBoolean cancelled) {
+        ArrayList<File> dirty;
+        synchronized (mDirty) {
+            dirty = new ArrayList<>(mDirty);
+            mDirty.clear();
+        }
+        if (!mScanned) {
+            HashSet<File> found = new HashSet<>();
+            updateDir(root, found, cancelled);
+            if (cancelled.get()) {
+                markAllDirty(dirty);
+                return;
+            }
+            removeUnder(root, found);
+            mScanned = true;
+            return;
+        }
+        for (int i = 0; i < dirty.size(); i++) {
+            if (cancelled.get()) {
+                markAllDirty(dirty.subList(i, dirty.size()));
+                return;
+            }
+            File file = dirty.get(i);
+            if (!isSearched(root, file)) continue;
+            if (file.isDirectory()) {
+                HashSet<File> found = new HashSet<>();
+                updateDir(file, found, cancelled);
+                if (cancelled.get()) {
+                    markAllDirty(dirty.subList(i, dirty.size()));
+                    return;
+                }
+                removeUnder(file, found);
+            } else {
+                //it may have been a directory
+                removeUnder(file, new HashSet<File>());
+                if (file.isFile()) {
+                    updateFile(file, true);
+                } else {
+                    mEntries.remove(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param trigrams from {@link #getTrigrams(List)}, null if the query has no literal part
+     * @return the files which have all the trigrams
+     */
+    @NonNull
+    public synchronized List<File> query(@Nullable int[] trigrams) {
+        ArrayList<File> files = new ArrayList<>();
+        for (Entry entry : mEntries.values()) {
+            if (trigrams == null || entry.containsAll(trigrams)) {
+                files.add(entry.file);
+            }
+        }
+        return files;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    private void markAllDirty(List<File> files) {
+        synchronized (mDirty) {
+            mDirty.addAll(files);
+        }
+    }
+
+    /**
+     * @return true if the walk of the root reaches the file
+     */
+    private static boolean isSearched(File root, File file) {
+        for (File parent = file; parent != null; parent = parent.getParentFile()) {
+            if (parent.equals(root)) return true;
+            if (parent.getName().startsWith(".")) return false;
+            if ((parent != file || file.isDirectory())
+                    && SKIPPED_DIRS.contains(parent.getName())) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forget the files under the directory which were not found
+     */
+    private void removeUnder(File dir, HashSet<File> found) {
+        String prefix = dir.getPath() + File.separator;
+        for (Iterator<File> iterator = mEntries.keySet().iterator(); iterator.hasNext(); ) {
+            File file = iterator.next();
+            if (file.getPath().startsWith(prefix) && !found.contains(file)) iterator.remove();
+        }
+    }
+
+    private void updateDir(File dir, HashSet<File> found, AtomicBoolean cancelled) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (cancelled.get()) return;
+            if (file.getName().startsWith(".")) continue;
+            if (file.isDirectory()) {
+                if (!SKIPPED_DIRS.contains(file.getName())) updateDir(file, found, cancelled);
+            } else if (updateFile(file, false)) {
+                found.add(file);
+            }
+        }
+    }
+
+    /**
+     * @param force read the file even if its modified time and length did not change, they may
+     *              be the same after a quick save
+     * @return true if the file is indexed
+     */
+    private boolean updateFile(File file, boolean force) {
+        if (!isTextFile(file) || file.length() > MAX_FILE_LENGTH) {
+            mEntries.remove(file);
+            return false;
+        }
+        Entry entry = mEntries.get(file);
+        if (force || entry == null || entry.lastModified != file.lastModified()
+                || entry.length != file.length()) {
+            try {
+                mEntries.put(file, new Entry(file, file.lastModified(), file.length(),
+                        getTrigrams(readFile(file))));
+            } catch (IOException e) {
+                Log.w(TAG, "updateFile: can not read " + file, e);
+                mEntries.remove(file);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NonNull
+    static String readFile(@NonNull File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            StringBuilder text = new StringBuilder((int) file.length());
+            char[] buffer = new char[8192];
+            int count;
+            while ((count = reader.read(buffer)) > 0) {
+                text.append(buffer, 0, count);
+            }
+            return text.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the sorted trigrams of the lower case text
+     */
+    @NonNull
+    static int[] getTrigrams(@NonNull CharSequence text) {
+        int length = text.length();
+        if (length < 3) return new int[0];
+        int[] trigrams = new int[length - 2];
+        char c0 = Character.toLowerCase(text.charAt(0));
+        char c1 = Character.toLowerCase(text.charAt(1));
+        for (int i = 2; i < length; i++) {
+            char c2 = Character.toLowerCase(text.charAt(i));
+            trigrams[i - 2] = trigram(c0, c1, c2);
+            c0 = c1;
+            c1 = c2;
+        }
+        return getUnique(trigrams);
+    }
+
+    /**
+     * @param literals the texts which are in every match
+     * @return the sorted trigrams of the literals, null if they have no trigram
+     */
+    @Nullable
+    static int[] getTrigrams(@NonNull List<String> literals) {
+        ArrayList<int[]> all = new ArrayList<>();
+        int count = 0;
+        for (String literal : literals) {
+            int[] trigrams = getTrigrams(literal);
+            all.add(trigrams);
+            count += trigrams.length;
+        }
+        if (count == 0) return null;
+        int[] trigrams = new int[count];
+        int offset = 0;
+        for (int[] array : all) {
+            System.arraycopy(array, 0, trigrams, offset, array.length);
+            offset += array.length;
+        }
+        return getUnique(trigrams);
+    }
+
+    /**
+     * @return the texts which are in every match of the query, empty if it is not known
+     */
+    @NonNull
+    static List<String> getLiterals(@NonNull String query, boolean regex) {
+        ArrayList<String> literals = new ArrayList<>();
+        if (!regex) {
+            literals.add(query);
+            return literals;
+        }
+        //an alternative, an inline flag or a quote changes which chars are literal
+        if (query.indexOf('|') >= 0 || query.contains("(?") || query.contains("\\Q")) {
+            return literals;
+        }
+        StringBuilder run = new StringBuilder();
+        //the chars in a group are not required, the group may be optional
+        int depth = 0;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (i + 1 == query.length()) return new ArrayList<>();
+                    char next = query.charAt(++i);
+                    if (Character.isLetterOrDigit(next)) {
+                        if ("xucpPkN0".indexOf(next) >= 0) {
+                            //the escape has more chars
+                            return new ArrayList<>();
+                        }
+                        endRun(literals, run);
+                    } else if (depth == 0) {
+                        run.append(next);
+                    }
+                    break;
+                case '[':
+                    endRun(literals, run);
+                    i = skipClass(query, i);
+                    if (i < 0) return new ArrayList<>();
+                    break;
+                case '*':
+                case '?':
+                case '{':
+                    //the previous char may be absent
+                    if (run.length() > 0) run.setLength(run.length() - 1);
+                    endRun(literals, run);
+                    if (c == '{') {
+                        i = query.indexOf('}', i);
+                        if (i < 0) return new ArrayList<>();
+                    }
+                    break;
+                case '(':
+                    depth++;
+                    endRun(literals, run);
+                    break;
+                case ')':
+                    depth--;
+                    endRun(literals, run);
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    endRun(literals, run);
+                    break;
+                default:
+                    if (depth == 0) run.append(c);
+                    break;
+            }
+        }
+        endRun(literals, run);
+        return literals;
+    }
+
+    private static void endRun(List<String> literals, StringBuilder run) {
+        if (run.length() > 0) {
+            literals.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    /**
+     * @return the index of the end of the char class, -1 if it does not end
+     */
+    private static int skipClass(String query, int start) {
+        int depth = 0;
+        for (int i = start; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+                //a ] just after the opening bracket is a char of the class
+                if (i + 1 < query.length() && query.charAt(i + 1) == '^') i++;
+                if (i + 1 < query.length() && query.charAt(i + 1) == ']') i++;
+            } else if (c == ']') {
+                if (--depth == 0) return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the sorted trigrams without duplicates
+     */
+    private static int[] getUnique(int[] trigrams) {
+        Arrays.sort(trigrams);
+        int count = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) trigrams[count++] = trigrams[i];
+        }
+        return Arrays.copyOf(trigrams, count);
+    }
+
+    /**
+     * The chars below 1024 are packed without collision, which is all the chars of most source
+     * files. A collision of other chars only adds a candidate file.
+     */
+    private static int trigram(char c0, char c1, char c2) {
+        return (c0 << 20) ^ (c1 << 10) ^ c2;
+    }
+
+    private static final class Entry {
+        final File file;
+        final long lastModified;
+        final long length;
+        final int[] trigrams;
+
+        Entry(File file, long lastModified, long length, int[] trigrams) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.trigrams = trigrams;
+        }
+
+        boolean containsAll(int[] required) {
+            for (int trigram : required) {
+                if (Arrays.binarySearch(trigrams, trigram) < 0) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -54,6 +54,21 @@ public final class TaskEvent
          * For events relating to elements being analyzed for errors.
          **/
         ANALYZE,
+        /**
+         * For events relating to the attribution of a class, the first part of
+         * {@link #ANALYZE}.
+         **/
+        ATTRIBUTE,
+        /**
+         * For events relating to the dataflow checks of a class, the second part of
+         * {@link #ANALYZE}.
+         **/
+        FLOW,
+        /**
+         * For events relating to the translation of a class before its class files are
+         * generated, e.g. erasure and lowering.
+         **/
+        DESUGAR,
         /**
          * For events relating to class files being generated.
          **/
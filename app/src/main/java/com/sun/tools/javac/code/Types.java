@@ -2710,6 +2710,17 @@ public class Types {
      */
     private Map<Type,List<Type>> closureCache = new HashMap<Type,List<Type>>();
 
+    /**
+     * Drop the cached results of the last compilation, used when the
+     * context is reused for another compilation.
+     */
+    public void newRound() {
+        isDerivedRawCache.clear();
+        implCache._map.clear();
+        membersCache._map.clear();
+        closureCache.clear();
+    }
+
     /**
      * Returns the closure of a class or interface type.
      */
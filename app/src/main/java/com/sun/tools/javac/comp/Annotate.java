@@ -90,6 +90,12 @@ public class Annotate {
         q.prepend(a);
     }
 
+    /** Drop the annotations left by a failed compilation. */
+    public void newRound() {
+        q.clear();
+        enterCount = 0;
+    }
+
     /** Called when the Enter phase starts. */
     public void enterStart() {
         enterCount++;
@@ -159,6 +159,16 @@ public class Check {
      */
     public Map<Name,ClassSymbol> compiled = new HashMap<Name, ClassSymbol>();
 
+    /** Reset the state kept for one compilation, used when the context is
+     *  reused for another compilation.
+     */
+    public void newRound() {
+        compiled.clear();
+        deprecationHandler.clear();
+        uncheckedHandler.clear();
+        sunApiHandler.clear();
+    }
+
     /** A handler for messages about deprecated usage.
      */
     private MandatoryWarningHandler deprecationHandler;
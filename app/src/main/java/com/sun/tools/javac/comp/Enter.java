@@ -172,6 +172,17 @@ public class Enter extends JCTree.Visitor {
     Map<TypeSymbol,Env<AttrContext>> typeEnvs =
             new HashMap<TypeSymbol,Env<AttrContext>>();
 
+    /** Reset the state kept for one compilation, used when the context is
+     *  reused for another compilation.
+     */
+    public void newRound() {
+        typeEnvs.clear();
+        uncompleted = null;
+        memberEnter.halfcompleted.clear();
+        memberEnter.isFirst = true;
+        annotate.newRound();
+    }
+
     /** Accessor for typeEnvs
      */
     public Env<AttrContext> getEnv(TypeSymbol sym) {
@@ -67,6 +67,7 @@ import javax.tools.StandardJavaFileManager;
 import static com.sun.tools.javac.main.OptionName.D;
 import static com.sun.tools.javac.main.OptionName.S;
 import static javax.tools.StandardLocation.CLASS_OUTPUT;
+import static javax.tools.StandardLocation.PLATFORM_CLASS_PATH;
 import static javax.tools.StandardLocation.SOURCE_OUTPUT;
 
 /**
@@ -90,6 +91,11 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
             EnumSet.of(JavaFileObject.Kind.SOURCE, JavaFileObject.Kind.CLASS);
     protected boolean mmappedIO;
     protected boolean ignoreSymbolFile;
+    /**
+     * Read the jars of the platform class path from their signature archives
+     * when the archives are up to date, see SignatureArchive.
+     */
+    protected boolean preferSignatureArchive;
     protected SortFiles sortFiles;
     /**
      * A directory of zip files already opened.
@@ -299,6 +305,7 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
 
         mmappedIO = options.isSet("mmappedIO");
         ignoreSymbolFile = options.isSet("ignore.symbol.file");
+        preferSignatureArchive = options.isSet("signatureArchive");
 
         String sf = options.get("sortFiles");
         if (sf != null) {
@@ -505,6 +512,7 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
      */
     private Archive openArchive(File zipFileName, boolean useOptimizedZip) throws IOException {
         File origZipFileName = zipFileName;
+        boolean symbolFile = false;
         if (!ignoreSymbolFile && paths.isDefaultBootClassPathRtJar(zipFileName)) {
             File file = zipFileName.getParentFile().getParentFile(); // ${java.home}
             if (new File(file.getName()).equals(new File("jre")))
@@ -513,8 +521,15 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
             for (String name : symbolFileLocation)
                 file = new File(file, name);
             // file == ${jdk.home}/lib/ct.sym
-            if (file.exists())
+            if (file.exists()) {
+                zipFileName = file;
+                symbolFile = true;
+            }
+        } else if (preferSignatureArchive && isPlatformClassPathFile(zipFileName)) {
+            File file = SignatureArchive.getArchiveFile(zipFileName);
+            if (SignatureArchive.isUpToDate(zipFileName, file)) {
                 zipFileName = file;
+            }
         }
 
         Archive archive;
@@ -552,7 +567,8 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                 }
             }
 
-            if (origZipFileName == zipFileName) {
+            //a signature archive has the layout of its jar, the entries need no prefix
+            if (!symbolFile) {
                 if (!useOptimizedZip) {
                     archive = new ZipArchive(this, zdir);
                 } else {
@@ -561,7 +577,8 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                                     null,
                                     usePreindexedCache,
                                     preindexCacheLocation,
-                                    options.isSet("writezipindexfiles")));
+                                    options.isSet("writezipindexfiles"),
+                                    mmappedIO));
                 }
             } else {
                 if (!useOptimizedZip) {
@@ -572,7 +589,8 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                                     symbolFilePrefix,
                                     usePreindexedCache,
                                     preindexCacheLocation,
-                                    options.isSet("writezipindexfiles")));
+                                    options.isSet("writezipindexfiles"),
+                                    mmappedIO));
                 }
             }
         } catch (FileNotFoundException ex) {
@@ -589,6 +607,11 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         return archive;
     }
 
+    private boolean isPlatformClassPathFile(File file) {
+        Collection<File> path = paths.getPathForLocation(PLATFORM_CLASS_PATH);
+        return path != null && path.contains(file);
+    }
+
     /**
      * Flush any output resources.
      */
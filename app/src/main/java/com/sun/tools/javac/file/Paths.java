@@ -47,6 +47,7 @@ import java.util.zip.ZipFile;
 
 import javax.tools.JavaFileManager.Location;
 
+import static com.sun.tools.javac.main.OptionName.BOOTCLASSPATH;
 import static com.sun.tools.javac.main.OptionName.CLASSPATH;
 import static com.sun.tools.javac.main.OptionName.PROCESSORPATH;
 import static com.sun.tools.javac.main.OptionName.SOURCEPATH;
@@ -316,6 +317,9 @@ public class Paths {
         String optionValue;
         Path path = new Path();
 
+        // the platform classes of the project come first, e.g. the android.jar it is built against
+        path.addFiles(options.get(BOOTCLASSPATH));
+
         Map<String, String> envs = System.getenv();
 
         String bootclasspath = envs.get("BOOTCLASSPATH");
@@ -0,0 +1,573 @@
+package com.sun.tools.javac.file;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A signature-only copy of a class path jar, stored next to the jar.
+ *
+ * <p>The archive has the entries of the class files of the jar, with the
+ * same names, but only the parts read by the compiler are kept: the class
+ * header, the non-private members with their descriptors, and the
+ * Signature, Exceptions, InnerClasses, EnclosingMethod, ConstantValue,
+ * AnnotationDefault and annotation attributes. Code, debug attributes,
+ * private and synthetic members and resources are dropped, and the
+ * constant pool is rebuilt with the remaining constants. The class files
+ * are stored without compression, so a mapped archive serves them without
+ * inflating.
+ *
+ * <p>The first entry of the archive is a stamp with the length and the
+ * modification time of the jar, an archive whose stamp does not match
+ * its jar is out of date and is not used.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class SignatureArchive {
+    public static final String SUFFIX = ".sym";
+
+    /** The name of the stamp entry.
+     */
+    static final String STAMP_NAME = "META-INF/SIGNATURES";
+
+    /** The version of the stripped format, archives of other versions are rebuilt.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private SignatureArchive() {
+    }
+
+    /** The archive of a jar, the jar path followed by SUFFIX.
+     */
+    public static File getArchiveFile(File jar) {
+        return new File(jar.getPath() + SUFFIX);
+    }
+
+    /** Create the archive of the jar unless it is up to date.
+     * @return the archive of the jar
+     */
+    public static synchronized File update(File jar) throws IOException {
+        File archive = getArchiveFile(jar);
+        if (!isUpToDate(jar, archive)) {
+            write(jar, archive);
+        }
+        return archive;
+    }
+
+    /** Update the archives of all jars of a directory, such as the system classes.
+     */
+    public static void updateAll(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(".jar"))
+                update(file);
+        }
+    }
+
+    /** Is the archive created from the current content of the jar?
+     *  Only the local header and the data of the stamp entry are read.
+     */
+    public static boolean isUpToDate(File jar, File archive) {
+        if (!jar.isFile() || !archive.isFile())
+            return false;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(archive, "r");
+            try {
+                byte[] header = new byte[30];
+                raf.readFully(header);
+                if (get4(header, 0) != 0x04034b50 || get2(header, 8) != ZipEntry.STORED)
+                    return false;
+                int size = get4(header, 18);
+                int nameLength = get2(header, 26);
+                int extraLength = get2(header, 28);
+                if (size < 0 || size > 1024)
+                    return false;
+                byte[] name = new byte[nameLength];
+                raf.readFully(name);
+                if (!STAMP_NAME.equals(new String(name, "UTF-8")))
+                    return false;
+                raf.seek(header.length + nameLength + extraLength);
+                byte[] data = new byte[size];
+                raf.readFully(data);
+                return stamp(jar).equals(new String(data, "UTF-8"));
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Write the archive of the jar, the archive is replaced when it is complete.
+     */
+    public static void write(File jar, File archive) throws IOException {
+        String stamp = stamp(jar);
+        File tmp = new File(archive.getPath() + ".tmp");
+        ZipFile zip = new ZipFile(jar);
+        try {
+            ZipOutputStream out = new ZipOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                putEntry(out, STAMP_NAME, stamp.getBytes("UTF-8"));
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (entry.isDirectory() || !entry.getName().endsWith(".class"))
+                        continue;
+                    byte[] bytes = readFully(zip.getInputStream(entry));
+                    byte[] stripped;
+                    try {
+                        stripped = new ClassStripper(bytes).strip();
+                    } catch (IOException | RuntimeException e) {
+                        //a class which can not be stripped is kept as it is
+                        stripped = bytes;
+                    }
+                    if (stripped != null)
+                        putEntry(out, entry.getName(), stripped);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        } finally {
+            zip.close();
+        }
+        if (!tmp.renameTo(archive)) {
+            archive.delete();
+            if (!tmp.renameTo(archive)) {
+                tmp.delete();
+                throw new IOException("can not write " + archive);
+            }
+        }
+    }
+
+    /** Strip a class file to the parts read by the compiler.
+     * @return the stripped class file, or null if the class is not needed
+     */
+    public static byte[] strip(byte[] classFile) throws IOException {
+        return new ClassStripper(classFile).strip();
+    }
+
+    private static String stamp(File jar) {
+        return FORMAT_VERSION + "\n" + jar.length() + "\n" + jar.lastModified() + "\n";
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, byte[] data) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int get2(byte[] buf, int pos) {
+        return (buf[pos] & 0xFF) + ((buf[pos + 1] & 0xFF) << 8);
+    }
+
+    private static int get4(byte[] buf, int pos) {
+        return (buf[pos] & 0xFF) + ((buf[pos + 1] & 0xFF) << 8)
+                + ((buf[pos + 2] & 0xFF) << 16) + ((buf[pos + 3] & 0xFF) << 24);
+    }
+
+    /**
+     * Copies the kept parts of a class file, the constants are entered in the
+     * new pool when they are first referenced.
+     */
+    private static class ClassStripper {
+        private static final int ACC_PRIVATE = 0x0002;
+        private static final int ACC_BRIDGE = 0x0040;
+        private static final int ACC_SYNTHETIC = 0x1000;
+        private static final int ACC_MODULE = 0x8000;
+
+        private static final Set<String> keptAttributes = new HashSet<String>(Arrays.asList(
+                "Signature", "Exceptions", "InnerClasses", "EnclosingMethod",
+                "ConstantValue", "AnnotationDefault", "Deprecated", "Synthetic",
+                "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations",
+                "RuntimeVisibleParameterAnnotations", "RuntimeInvisibleParameterAnnotations",
+                "Annotation", "Bridge", "Enum", "Varargs"));
+
+        private final byte[] buf;
+        private int bp;
+
+        /** The offsets of the constants in the class file.
+         */
+        private int[] poolOffset;
+
+        /** The indexes of the constants in the new pool, 0 if not entered.
+         */
+        private int[] newIndex;
+
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private int poolSize = 1;
+
+        ClassStripper(byte[] buf) {
+            this.buf = buf;
+        }
+
+        byte[] strip() throws IOException {
+            if (get4() != 0xCAFEBABE)
+                throw new IOException("not a class file");
+            int minor = get2();
+            int major = get2();
+            indexPool();
+
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(buf.length);
+            DataOutputStream body = new DataOutputStream(bodyBytes);
+            int flags = get2();
+            if ((flags & ACC_MODULE) != 0)
+                return null;
+            body.writeShort(flags);
+            body.writeShort(ref(get2()));
+            body.writeShort(ref(get2()));
+            int interfaces = get2();
+            body.writeShort(interfaces);
+            for (int i = 0; i < interfaces; i++) {
+                body.writeShort(ref(get2()));
+            }
+            copyMembers(body, false);
+            copyMembers(body, true);
+            copyAttributes(body);
+
+            ByteArrayOutputStream result = new ByteArrayOutputStream(
+                    10 + poolBytes.size() + bodyBytes.size());
+            DataOutputStream out = new DataOutputStream(result);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(minor);
+            out.writeShort(major);
+            out.writeShort(poolSize);
+            poolBytes.writeTo(out);
+            bodyBytes.writeTo(out);
+            out.flush();
+            return result.toByteArray();
+        }
+
+        private void indexPool() throws IOException {
+            int count = get2();
+            poolOffset = new int[count];
+            newIndex = new int[count];
+            for (int i = 1; i < count; i++) {
+                poolOffset[i] = bp;
+                int tag = buf[bp++];
+                switch (tag) {
+                    case 1: //Utf8
+                        bp += 2 + get2(bp);
+                        break;
+                    case 3: //Integer
+                    case 4: //Float
+                    case 9: //Fieldref
+                    case 10: //Methodref
+                    case 11: //InterfaceMethodref
+                    case 12: //NameAndType
+                    case 17: //Dynamic
+                    case 18: //InvokeDynamic
+                        bp += 4;
+                        break;
+                    case 5: //Long
+                    case 6: //Double
+                        bp += 8;
+                        i++;
+                        break;
+                    case 7: //Class
+                    case 8: //String
+                    case 16: //MethodType
+                    case 19: //Module
+                    case 20: //Package
+                        bp += 2;
+                        break;
+                    case 15: //MethodHandle
+                        bp += 3;
+                        break;
+                    default:
+                        throw new IOException("bad constant pool tag " + tag);
+                }
+            }
+        }
+
+        /** Enter a constant and the constants it refers to in the new pool.
+         * @return the index in the new pool
+         */
+        private int ref(int i) throws IOException {
+            if (i == 0)
+                return 0;
+            if (newIndex[i] != 0)
+                return newIndex[i];
+            int p = poolOffset[i];
+            int tag = buf[p];
+            int index = poolSize;
+            switch (tag) {
+                case 1:
+                    pool.write(buf, p, 3 + get2(p + 1));
+                    poolSize++;
+                    break;
+                case 3:
+                case 4:
+                    pool.write(buf, p, 5);
+                    poolSize++;
+                    break;
+                case 5:
+                case 6:
+                    pool.write(buf, p, 9);
+                    poolSize += 2;
+                    break;
+                case 7:
+                case 8:
+                case 16: {
+                    int r = ref(get2(p + 1));
+                    index = poolSize;
+                    pool.writeByte(tag);
+                    pool.writeShort(r);
+                    poolSize++;
+                    break;
+                }
+                case 12: {
+                    int name = ref(get2(p + 1));
+                    int type = ref(get2(p + 3));
+                    index = poolSize;
+                    pool.writeByte(tag);
+                    pool.writeShort(name);
+                    pool.writeShort(type);
+                    poolSize++;
+                    break;
+                }
+                default:
+                    throw new IOException("unexpected constant pool tag " + tag);
+            }
+            newIndex[i] = index;
+            return index;
+        }
+
+        private String utf(int i) throws IOException {
+            int p = poolOffset[i];
+            if (buf[p] != 1)
+                throw new IOException("bad constant pool index " + i);
+            return new String(buf, p + 3, get2(p + 1), "UTF-8");
+        }
+
+        private void copyMembers(DataOutputStream out, boolean methods) throws IOException {
+            int count = get2();
+            int kept = 0;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream members = new DataOutputStream(bytes);
+            for (int i = 0; i < count; i++) {
+                int flags = get2();
+                int name = get2();
+                int type = get2();
+                //synthetic members other than bridges are not entered by the class reader
+                boolean keep = (flags & ACC_PRIVATE) == 0
+                        && ((flags & ACC_SYNTHETIC) == 0 || (methods && (flags & ACC_BRIDGE) != 0))
+                        && !(methods && utf(name).equals("<clinit>"));
+                if (keep) {
+                    members.writeShort(flags);
+                    members.writeShort(ref(name));
+                    members.writeShort(ref(type));
+                    copyAttributes(members);
+                    kept++;
+                } else {
+                    skipAttributes();
+                }
+            }
+            out.writeShort(kept);
+            bytes.writeTo(out);
+        }
+
+        private void skipAttributes() {
+            int count = get2();
+            for (int i = 0; i < count; i++) {
+                bp += 2;
+                bp += 4 + get4();
+            }
+        }
+
+        private void copyAttributes(DataOutputStream out) throws IOException {
+            int count = get2();
+            int kept = 0;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream attributes = new DataOutputStream(bytes);
+            for (int i = 0; i < count; i++) {
+                int nameIndex = get2();
+                String name = utf(nameIndex);
+                int length = get4();
+                if (!keptAttributes.contains(name)) {
+                    bp += length;
+                    continue;
+                }
+                int end = bp + length;
+                //the indexes are replaced in place, the length does not change
+                attributes.writeShort(ref(nameIndex));
+                attributes.writeInt(length);
+                copyAttribute(attributes, name);
+                if (bp != end)
+                    throw new IOException("bad length of attribute " + name);
+                kept++;
+            }
+            out.writeShort(kept);
+            bytes.writeTo(out);
+        }
+
+        private void copyAttribute(DataOutputStream out, String name) throws IOException {
+            switch (name) {
+                case "Signature":
+                case "ConstantValue":
+                    out.writeShort(ref(get2()));
+                    break;
+                case "Exceptions": {
+                    int count = get2();
+                    out.writeShort(count);
+                    for (int i = 0; i < count; i++) {
+                        out.writeShort(ref(get2()));
+                    }
+                    break;
+                }
+                case "InnerClasses": {
+                    int count = get2();
+                    out.writeShort(count);
+                    for (int i = 0; i < count; i++) {
+                        out.writeShort(ref(get2()));
+                        out.writeShort(ref(get2()));
+                        out.writeShort(ref(get2()));
+                        out.writeShort(get2());
+                    }
+                    break;
+                }
+                case "EnclosingMethod":
+                    out.writeShort(ref(get2()));
+                    out.writeShort(ref(get2()));
+                    break;
+                case "AnnotationDefault":
+                    copyElementValue(out);
+                    break;
+                case "RuntimeVisibleAnnotations":
+                case "RuntimeInvisibleAnnotations":
+                    copyAnnotations(out);
+                    break;
+                case "RuntimeVisibleParameterAnnotations":
+                case "RuntimeInvisibleParameterAnnotations": {
+                    int count = buf[bp++] & 0xFF;
+                    out.writeByte(count);
+                    for (int i = 0; i < count; i++) {
+                        copyAnnotations(out);
+                    }
+                    break;
+                }
+                default:
+                    //Deprecated, Synthetic and the legacy flag attributes are empty
+                    break;
+            }
+        }
+
+        private void copyAnnotations(DataOutputStream out) throws IOException {
+            int count = get2();
+            out.writeShort(count);
+            for (int i = 0; i < count; i++) {
+                copyAnnotation(out);
+            }
+        }
+
+        private void copyAnnotation(DataOutputStream out) throws IOException {
+            out.writeShort(ref(get2()));
+            int pairs = get2();
+            out.writeShort(pairs);
+            for (int i = 0; i < pairs; i++) {
+                out.writeShort(ref(get2()));
+                copyElementValue(out);
+            }
+        }
+
+        private void copyElementValue(DataOutputStream out) throws IOException {
+            int tag = buf[bp++];
+            out.writeByte(tag);
+            switch (tag) {
+                case 'B':
+                case 'C':
+                case 'D':
+                case 'F':
+                case 'I':
+                case 'J':
+                case 'S':
+                case 'Z':
+                case 's':
+                case 'c':
+                    out.writeShort(ref(get2()));
+                    break;
+                case 'e':
+                    out.writeShort(ref(get2()));
+                    out.writeShort(ref(get2()));
+                    break;
+                case '@':
+                    copyAnnotation(out);
+                    break;
+                case '[': {
+                    int count = get2();
+                    out.writeShort(count);
+                    for (int i = 0; i < count; i++) {
+                        copyElementValue(out);
+                    }
+                    break;
+                }
+                default:
+                    throw new IOException("bad element value tag " + tag);
+            }
+        }
+
+        private int get2() {
+            int value = get2(bp);
+            bp += 2;
+            return value;
+        }
+
+        private int get4() {
+            int value = get4(bp);
+            bp += 4;
+            return value;
+        }
+
+        private int get2(int pos) {
+            return ((buf[pos] & 0xFF) << 8) + (buf[pos + 1] & 0xFF);
+        }
+
+        private int get4(int pos) {
+            return ((buf[pos] & 0xFF) << 24) + ((buf[pos + 1] & 0xFF) << 16)
+                    + ((buf[pos + 2] & 0xFF) << 8) + (buf[pos + 3] & 0xFF);
+        }
+    }
+}
@@ -35,15 +35,20 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 import java.util.zip.ZipException;
@@ -71,6 +76,12 @@ import java.util.zip.ZipException;
  * timestamp checking to reindex the zip files if it is needed. In batch mode
  * the timestamps are not checked and the compiler uses the cached indexes.
  *
+ * If "-XDmmappedIO" is specified, the archive is mapped in memory once and all
+ * directory entries are built when the index is created. The index is not
+ * changed after that, so the lookups and the reads do not lock it: a stored
+ * entry is read as a slice of the mapped archive and a deflated entry is
+ * inflated from it with an inflater of a shared pool.
+ *
  * <p><b>This is NOT part of any supported API.
  * If you write code that depends on this, you do so at your own risk.
  * This code and its internal interfaces are subject to change or
@@ -113,13 +124,33 @@ public class ZipFileIndex {
     private Map<String, SoftReference<RelativeDirectory>> relativeDirectoryCache =
             new HashMap<String, SoftReference<RelativeDirectory>>();
 
+    /**
+     * The mapped archive in the mmappedIO mode, null in the other mode or if
+     * the archive can not be mapped.
+     */
+    private final MappedArchive mappedArchive;
+
+    /**
+     * Inflaters of the reads from the mapped archive, there are at most as many
+     * as the threads which read at the same time.
+     */
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
 
-    public synchronized boolean isOpen() {
-        return (zipRandomFile != null);
+    public boolean isOpen() {
+        if (mappedArchive != null)
+            return true;
+        synchronized (this) {
+            return (zipRandomFile != null);
+        }
     }
 
     ZipFileIndex(File zipFile, RelativeDirectory symbolFilePrefix, boolean writeIndex,
             boolean useCache, String cacheLocation) throws IOException {
+        this(zipFile, symbolFilePrefix, writeIndex, useCache, cacheLocation, false);
+    }
+
+    ZipFileIndex(File zipFile, RelativeDirectory symbolFilePrefix, boolean writeIndex,
+            boolean useCache, String cacheLocation, boolean mmappedIO) throws IOException {
         this.zipFile = zipFile;
         this.symbolFilePrefix = symbolFilePrefix;
         this.symbolFilePrefixLength = (symbolFilePrefix == null ? 0 :
@@ -134,6 +165,45 @@ public class ZipFileIndex {
 
         // Validate integrity of the zip file
         checkIndex();
+
+        mappedArchive = mmappedIO ? mapArchive() : null;
+    }
+
+    /**
+     * Is the archive mapped in memory? The index is not locked then.
+     */
+    public boolean isMapped() {
+        return mappedArchive != null;
+    }
+
+    /**
+     * Map the archive and build all directory entries, they are not changed
+     * after this.
+     *
+     * @return null if the archive can not be mapped
+     */
+    private MappedArchive mapArchive() {
+        if (zipFile == null || zipFile.length() > Integer.MAX_VALUE)
+            return null;
+        ByteBuffer buffer;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(zipFile, "r");
+            try {
+                // the mapping stays valid after the file is closed
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        for (DirectoryEntry de : directories.values()) {
+            de.getFiles();
+            de.getDirectories();
+            de.getEntries();
+        }
+        return new MappedArchive(buffer, directories,
+                Collections.unmodifiableSet(new LinkedHashSet<RelativeDirectory>(directories.keySet())));
     }
 
     @Override
@@ -230,7 +300,17 @@ public class ZipFileIndex {
     /**
      * Returns the ZipFileIndexEntry for a path, if there is one.
      */
-    synchronized Entry getZipIndexEntry(RelativePath path) {
+    Entry getZipIndexEntry(RelativePath path) {
+        if (mappedArchive != null) {
+            DirectoryEntry de = mappedArchive.directories.get(path.dirname());
+            return (de == null) ? null : de.getEntry(path.basename());
+        }
+        synchronized (this) {
+            return getZipIndexEntryLocked(path);
+        }
+    }
+
+    private Entry getZipIndexEntryLocked(RelativePath path) {
         try {
             checkIndex();
             DirectoryEntry de = directories.get(path.dirname());
@@ -245,7 +325,17 @@ public class ZipFileIndex {
     /**
      * Returns a javac List of filenames within a directory in the ZipFileIndex.
      */
-    public synchronized com.sun.tools.javac.util.List<String> getFiles(RelativeDirectory path) {
+    public com.sun.tools.javac.util.List<String> getFiles(RelativeDirectory path) {
+        if (mappedArchive != null) {
+            DirectoryEntry de = mappedArchive.directories.get(path);
+            return (de == null) ? com.sun.tools.javac.util.List.<String>nil() : de.getFiles();
+        }
+        synchronized (this) {
+            return getFilesLocked(path);
+        }
+    }
+
+    private com.sun.tools.javac.util.List<String> getFilesLocked(RelativeDirectory path) {
         try {
             checkIndex();
 
@@ -262,7 +352,17 @@ public class ZipFileIndex {
         }
     }
 
-    public synchronized List<String> getDirectories(RelativeDirectory path) {
+    public List<String> getDirectories(RelativeDirectory path) {
+        if (mappedArchive != null) {
+            DirectoryEntry de = mappedArchive.directories.get(path);
+            return (de == null) ? com.sun.tools.javac.util.List.<String>nil() : de.getDirectories();
+        }
+        synchronized (this) {
+            return getDirectoriesLocked(path);
+        }
+    }
+
+    private List<String> getDirectoriesLocked(RelativeDirectory path) {
         try {
             checkIndex();
 
@@ -280,7 +380,15 @@ public class ZipFileIndex {
         }
     }
 
-    public synchronized Set<RelativeDirectory> getAllDirectories() {
+    public Set<RelativeDirectory> getAllDirectories() {
+        if (mappedArchive != null)
+            return mappedArchive.allDirs;
+        synchronized (this) {
+            return getAllDirectoriesLocked();
+        }
+    }
+
+    private Set<RelativeDirectory> getAllDirectoriesLocked() {
         try {
             checkIndex();
             if (allDirs == Collections.EMPTY_SET) {
@@ -301,7 +409,15 @@ public class ZipFileIndex {
      * @param path A path within the zip.
      * @return True if the path is a file or dir, false otherwise.
      */
-    public synchronized boolean contains(RelativePath path) {
+    public boolean contains(RelativePath path) {
+        if (mappedArchive != null)
+            return getZipIndexEntry(path) != null;
+        synchronized (this) {
+            return containsLocked(path);
+        }
+    }
+
+    private boolean containsLocked(RelativePath path) {
         try {
             checkIndex();
             return getZipIndexEntry(path) != null;
@@ -311,7 +427,15 @@ public class ZipFileIndex {
         }
     }
 
-    public synchronized boolean isDirectory(RelativePath path) throws IOException {
+    public boolean isDirectory(RelativePath path) throws IOException {
+        if (mappedArchive != null)
+            return path.getPath().length() == 0 || mappedArchive.directories.get(path) != null;
+        synchronized (this) {
+            return isDirectoryLocked(path);
+        }
+    }
+
+    private boolean isDirectoryLocked(RelativePath path) throws IOException {
         // The top level in a zip file is always a directory.
         if (path.getPath().length() == 0) {
             lastReferenceTimeStamp = System.currentTimeMillis();
@@ -322,14 +446,14 @@ public class ZipFileIndex {
         return directories.get(path) != null;
     }
 
-    public synchronized long getLastModified(RelativeFile path) throws IOException {
+    public long getLastModified(RelativeFile path) throws IOException {
         Entry entry = getZipIndexEntry(path);
         if (entry == null)
             throw new FileNotFoundException();
         return entry.getLastModified();
     }
 
-    public synchronized int length(RelativeFile path) throws IOException {
+    public int length(RelativeFile path) throws IOException {
         Entry entry = getZipIndexEntry(path);
         if (entry == null)
             throw new FileNotFoundException();
@@ -338,7 +462,23 @@ public class ZipFileIndex {
             return 0;
         }
 
-        byte[] header = getHeader(entry);
+        if (mappedArchive != null) {
+            getMappedDataOffset(entry);
+            return isMappedStored(entry) ? entry.compressedSize : entry.size;
+        }
+        synchronized (this) {
+            return lengthLocked(entry);
+        }
+    }
+
+    private int lengthLocked(Entry entry) throws IOException {
+        openFile();
+        byte[] header;
+        try {
+            header = getHeader(entry);
+        } finally {
+            closeFile();
+        }
         // entry is not compressed?
         if (get2ByteLittleEndian(header, 8) == 0) {
             return entry.compressedSize;
@@ -347,31 +487,119 @@ public class ZipFileIndex {
         }
     }
 
-    public synchronized byte[] read(RelativeFile path) throws IOException {
+    public byte[] read(RelativeFile path) throws IOException {
         Entry entry = getZipIndexEntry(path);
         if (entry == null)
             throw new FileNotFoundException("Path not found in ZIP: " + path.path);
         return read(entry);
     }
 
-    synchronized byte[] read(Entry entry) throws IOException {
-        openFile();
-        byte[] result = readBytes(entry);
-        closeFile();
-        return result;
+    byte[] read(Entry entry) throws IOException {
+        if (mappedArchive != null) {
+            ByteBuffer data = readMapped(entry);
+            if (data.hasArray() && data.arrayOffset() == 0 && data.array().length == data.remaining())
+                return data.array();
+            byte[] result = new byte[data.remaining()];
+            data.get(result);
+            return result;
+        }
+        synchronized (this) {
+            openFile();
+            byte[] result = readBytes(entry);
+            closeFile();
+            return result;
+        }
+    }
+
+    /**
+     * Read the data of an entry. It is a read only slice of the mapped archive
+     * for a stored entry in the mmappedIO mode.
+     */
+    ByteBuffer readBuffer(Entry entry) throws IOException {
+        if (mappedArchive != null)
+            return readMapped(entry);
+        return ByteBuffer.wrap(read(entry));
     }
 
-    public synchronized int read(RelativeFile path, byte[] buffer) throws IOException {
+    public int read(RelativeFile path, byte[] buffer) throws IOException {
         Entry entry = getZipIndexEntry(path);
         if (entry == null)
             throw new FileNotFoundException();
         return read(entry, buffer);
     }
 
-    synchronized int read(Entry entry, byte[] buffer)
+    int read(Entry entry, byte[] buffer)
             throws IOException {
-        int result = readBytes(entry, buffer);
-        return  result;
+        if (mappedArchive != null) {
+            ByteBuffer data = readMapped(entry);
+            data.get(buffer, 0, Math.min(buffer.length, data.remaining()));
+            return entry.size;
+        }
+        synchronized (this) {
+            openFile();
+            int result = readBytes(entry, buffer);
+            closeFile();
+            return result;
+        }
+    }
+
+    /**
+     * Read an entry of the mapped archive without locking the index.
+     */
+    private ByteBuffer readMapped(Entry entry) throws IOException {
+        int dataOffset = getMappedDataOffset(entry);
+        int csize = entry.compressedSize;
+        ByteBuffer data = mappedArchive.buffer.duplicate();
+        if (csize < 0 || dataOffset + csize > data.limit())
+            throw new ZipException("corrupted zip file");
+        data.position(dataOffset);
+        data.limit(dataOffset + csize);
+        if (isMappedStored(entry))
+            return data.slice();
+
+        byte[] cbuf = new byte[csize];
+        data.get(cbuf);
+        int size = entry.size;
+        byte[] buf = new byte[size];
+        Inflater inflater = inflaters.poll();
+        if (inflater == null)
+            inflater = new Inflater(true);
+        try {
+            inflater.setInput(cbuf);
+            if (inflater.inflate(buf) != size)
+                throw new ZipException("corrupted zip file");
+        } catch (DataFormatException ex) {
+            throw new ZipException("corrupted zip file");
+        } finally {
+            inflater.reset();
+            inflaters.offer(inflater);
+        }
+        return ByteBuffer.wrap(buf);
+    }
+
+    /**
+     * Check the local header of an entry in the mapped archive.
+     *
+     * @return the offset of the data of the entry
+     */
+    private int getMappedDataOffset(Entry entry) throws IOException {
+        ByteBuffer buf = mappedArchive.buffer;
+        int pos = entry.offset;
+        if (pos < 0 || pos + 30 > buf.limit())
+            throw new ZipException("corrupted zip file");
+        if (get4ByteLittleEndian(buf, pos) != 0x04034b50)
+            throw new ZipException("corrupted zip file");
+        if ((get2ByteLittleEndian(buf, pos + 6) & 1) != 0)
+            throw new ZipException("encrypted zip file");
+        return pos + 30 + get2ByteLittleEndian(buf, pos + 26) + get2ByteLittleEndian(buf, pos + 28);
+    }
+
+    /**
+     * Is the entry of the mapped archive not compressed? Offset 8 in the local
+     * header.
+     */
+    private boolean isMappedStored(Entry entry) {
+        return get2ByteLittleEndian(mappedArchive.buffer, entry.offset + 8) == 0;
     }
 
     private byte[] readBytes(Entry entry) throws IOException {
@@ -476,6 +704,40 @@ public class ZipFileIndex {
                 ((buf[pos + 2] & 0xFF) << 16) + ((buf[pos + 3] & 0xFF) << 24);
     }
 
+    /**
+     * The same as {@link #get2ByteLittleEndian(byte[], int)}, with an absolute
+     * get which does not change the buffer.
+     */
+    private static int get2ByteLittleEndian(ByteBuffer buf, int pos) {
+        return (buf.get(pos) & 0xFF) + ((buf.get(pos + 1) & 0xFF) << 8);
+    }
+
+    private static int get4ByteLittleEndian(ByteBuffer buf, int pos) {
+        return (buf.get(pos) & 0xFF) + ((buf.get(pos + 1) & 0xFF) << 8) +
+                ((buf.get(pos + 2) & 0xFF) << 16) + ((buf.get(pos + 3) & 0xFF) << 24);
+    }
+
+    /* ----------------------------------------------------------------------------
+     * MappedArchive
+     * ----------------------------------------------------------------------------*/
+
+    /**
+     * The mapped archive and the directories, which are only read after the
+     * index is created.
+     */
+    private static final class MappedArchive {
+        final ByteBuffer buffer;
+        final Map<RelativeDirectory, DirectoryEntry> directories;
+        final Set<RelativeDirectory> allDirs;
+
+        MappedArchive(ByteBuffer buffer, Map<RelativeDirectory, DirectoryEntry> directories,
+                Set<RelativeDirectory> allDirs) {
+            this.buffer = buffer;
+            this.directories = directories;
+            this.allDirs = allDirs;
+        }
+    }
+
     /* ----------------------------------------------------------------------------
      * ZipDirectory
      * ----------------------------------------------------------------------------*/
@@ -687,6 +949,8 @@ public class ZipFileIndex {
      * @return long
      */
     public long getZipFileLastModified() throws IOException {
+        if (mappedArchive != null)
+            return zipFileLastModified;
         synchronized (this) {
             checkIndex();
             return zipFileLastModified;
@@ -1072,7 +1336,8 @@ public class ZipFileIndex {
         int offset;
         int size;
         int compressedSize;
-        long javatime;
+        // computed on the first read, which may be on any thread of a mapped index
+        volatile long javatime;
 
         private int nativetime;
 
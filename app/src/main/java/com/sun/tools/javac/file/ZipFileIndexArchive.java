@@ -148,7 +148,7 @@ public class ZipFileIndexArchive implements Archive {
         public InputStream openInputStream() throws IOException {
             if (inputStream == null) {
                 Assert.checkNonNull(entry); // see constructor
-                inputStream = new ByteArrayInputStream(zfIndex.read(entry));
+                inputStream = newInputStream(zfIndex.readBuffer(entry));
             }
             return inputStream;
         }
@@ -162,21 +162,16 @@ public class ZipFileIndexArchive implements Archive {
         public CharBuffer getCharContent(boolean ignoreEncodingErrors) throws IOException {
             CharBuffer cb = fileManager.getCachedContent(this);
             if (cb == null) {
-                InputStream in = new ByteArrayInputStream(zfIndex.read(entry));
+                // decoded from the slice of the mapped archive, or the inflated bytes
+                ByteBuffer bb = zfIndex.readBuffer(entry);
+                JavaFileObject prev = fileManager.log.useSource(this);
                 try {
-                    ByteBuffer bb = fileManager.makeByteBuffer(in);
-                    JavaFileObject prev = fileManager.log.useSource(this);
-                    try {
-                        cb = fileManager.decode(bb, ignoreEncodingErrors);
-                    } finally {
-                        fileManager.log.useSource(prev);
-                    }
-                    fileManager.recycleByteBuffer(bb); // save for next time
-                    if (!ignoreEncodingErrors)
-                        fileManager.cache(this, cb);
+                    cb = fileManager.decode(bb, ignoreEncodingErrors);
                 } finally {
-                    in.close();
+                    fileManager.log.useSource(prev);
                 }
+                if (!ignoreEncodingErrors)
+                    fileManager.cache(this, cb);
             }
             return cb;
         }
@@ -251,4 +246,50 @@ public class ZipFileIndexArchive implements Archive {
         }
     }
 
+    /**
+     * A stream of the data of an entry, which is not copied if it is a slice
+     * of the mapped archive.
+     */
+    static InputStream newInputStream(ByteBuffer data) {
+        if (data.hasArray())
+            return new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(),
+                    data.remaining());
+        return new ByteBufferInputStream(data);
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer data;
+
+        ByteBufferInputStream(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return data.hasRemaining() ? data.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!data.hasRemaining())
+                return -1;
+            len = Math.min(len, data.remaining());
+            data.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, data.remaining()));
+            data.position(data.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return data.remaining();
+        }
+    }
 }
@@ -94,11 +94,23 @@ public class ZipFileIndexCache {
             RelativeDirectory symbolFilePrefix,
             boolean useCache, String cacheLocation,
             boolean writeIndex) throws IOException {
+        return getZipFileIndex(zipFile, symbolFilePrefix, useCache, cacheLocation,
+                writeIndex, false);
+    }
+
+    /**
+     * @param mmappedIO map the archive, an index which is not mapped is replaced
+     */
+    public synchronized ZipFileIndex getZipFileIndex(File zipFile,
+            RelativeDirectory symbolFilePrefix,
+            boolean useCache, String cacheLocation,
+            boolean writeIndex, boolean mmappedIO) throws IOException {
         ZipFileIndex zi = getExistingZipIndex(zipFile);
 
-        if (zi == null || (zi != null && zipFile.lastModified() != zi.zipFileLastModified)) {
+        if (zi == null || (zi != null && zipFile.lastModified() != zi.zipFileLastModified)
+                || (mmappedIO && !zi.isMapped())) {
             zi = new ZipFileIndex(zipFile, symbolFilePrefix, writeIndex,
-                    useCache, cacheLocation);
+                    useCache, cacheLocation, mmappedIO);
             map.put(zipFile, zi);
         }
         return zi;
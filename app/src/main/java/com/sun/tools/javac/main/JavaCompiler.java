@@ -70,6 +70,7 @@ import com.sun.tools.javac.tree.TreeTranslator;
 import com.sun.tools.javac.util.Abort;
 import com.sun.tools.javac.util.Assert;
 import com.sun.tools.javac.util.BaseFileManager;
+import com.sun.tools.javac.util.ConcurrentNameTable;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.JCDiagnostic;
 import com.sun.tools.javac.util.List;
@@ -93,6 +94,12 @@ import java.util.MissingResourceException;
 import java.util.Queue;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -462,6 +469,7 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         devVerbose = options.isSet("dev");
         processPcks = options.isSet("process.packages");
         werror = options.isSet(WERROR);
+        parallelParseThreads = getParallelParseThreads(options);
 
         if (source.compareTo(Source.DEFAULT) < 0) {
             if (options.isUnset(XLINT_CUSTOM, "-" + LintCategory.OPTIONS.option)) {
@@ -557,6 +565,23 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
      */
     protected boolean werror;
 
+    /**
+     * Number of threads which parse the files, set by -XDparallelParse or
+     * -XDparallelParse=threads. The files are parsed one by one if it is 1.
+     */
+    protected int parallelParseThreads;
+
+    private static int getParallelParseThreads(Options options) {
+        String value = options.get("parallelParse");
+        if (value == null)
+            return 1;
+        try {
+            return Math.max(1, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+
     /**
      * Switch: is annotation processing requested explitly via
      * CompilationTask.setProcessors?
@@ -1037,17 +1062,139 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
             return List.nil();
 
         //parse all files
-        ListBuffer<JCCompilationUnit> trees = lb();
+        ListBuffer<JavaFileObject> files = lb();
         Set<JavaFileObject> filesSoFar = new HashSet<JavaFileObject>();
         for (JavaFileObject fileObject : fileObjects) {
             if (!filesSoFar.contains(fileObject)) {
                 filesSoFar.add(fileObject);
-                trees.append(parse(fileObject));
+                files.append(fileObject);
             }
         }
+        //the names of the parsers are entered from several threads
+        if (parallelParseThreads > 1 && files.size() > 1
+                && names.table instanceof ConcurrentNameTable)
+            return parseFilesParallel(files.toList());
+
+        ListBuffer<JCCompilationUnit> trees = lb();
+        for (JavaFileObject fileObject : files) {
+            trees.append(parse(fileObject));
+        }
         return trees.toList();
     }
 
+    /**
+     * Parses a list of files on a pool of threads. The files are read by this
+     * thread while the previous files are parsed, since the file manager is not
+     * thread safe. The trees, the diagnostics and the task events are handed
+     * off in the order of the files.
+     */
+    protected List<JCCompilationUnit> parseFilesParallel(List<JavaFileObject> fileObjects) {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(parallelParseThreads, fileObjects.size()), new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "javac-parse");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            ListBuffer<ParseTask> tasks = lb();
+            for (JavaFileObject fileObject : fileObjects) {
+                JavaFileObject prev = log.useSource(fileObject);
+                try {
+                    ParseTask task = new ParseTask(fileObject, readSource(fileObject));
+                    if (task.content != null)
+                        task.future = executor.submit(task);
+                    tasks.append(task);
+                } finally {
+                    log.useSource(prev);
+                }
+            }
+
+            ListBuffer<JCCompilationUnit> trees = lb();
+            for (ParseTask task : tasks) {
+                trees.append(task.handOff());
+            }
+            return trees.toList();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Parse of a file on another thread, with its own parser factory and log
+     */
+    private class ParseTask implements Callable<JCCompilationUnit> {
+        final JavaFileObject fileObject;
+        final CharSequence content;
+        final Log deferredLog = log.newDeferredLog();
+        Future<JCCompilationUnit> future;
+        long elapsed;
+
+        ParseTask(JavaFileObject fileObject, CharSequence content) {
+            this.fileObject = fileObject;
+            this.content = content;
+        }
+
+        public JCCompilationUnit call() {
+            long msec = now();
+            deferredLog.useSource(fileObject);
+            Parser parser = parserFactory.fork(deferredLog)
+                    .newParser(content, keepComments(), genEndPos, lineDebugInfo);
+            JCCompilationUnit tree = parser.parseCompilationUnit();
+            tree.sourcefile = fileObject;
+            //the deferred diagnostics have the source of the deferred log
+            if (tree.endPositions != null)
+                deferredLog.setEndPosTable(fileObject, tree.endPositions);
+            elapsed = elapsed(msec);
+            return tree;
+        }
+
+        /**
+         * Wait for the tree and report it like {@link #parse(JavaFileObject)}
+         */
+        JCCompilationUnit handOff() {
+            if (content == null) {
+                JCCompilationUnit tree = make.TopLevel(List.<JCAnnotation>nil(),
+                        null, List.<JCTree>nil());
+                tree.sourcefile = fileObject;
+                return tree;
+            }
+            if (verbose) {
+                log.printVerbose("parsing.started", fileObject);
+            }
+            if (taskListener != null) {
+                TaskEvent e = new TaskEvent(TaskEvent.Kind.PARSE, fileObject);
+                taskListener.started(e);
+            }
+            JCCompilationUnit tree;
+            try {
+                tree = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new Abort(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new Abort(cause);
+            }
+            log.reportDeferredDiagnostics(deferredLog);
+            if (verbose) {
+                log.printVerbose("parsing.done", Long.toString(elapsed));
+            }
+            if (tree.endPositions != null)
+                log.setEndPosTable(fileObject, tree.endPositions);
+            if (taskListener != null) {
+                TaskEvent e = new TaskEvent(TaskEvent.Kind.PARSE, tree);
+                taskListener.finished(e);
+            }
+            return tree;
+        }
+    }
+
     /**
      * Enter the symbols found in a list of parse trees.
      * As a side-effect, this puts elements on the "todo" list.
@@ -1313,6 +1460,7 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         if (taskListener != null) {
             TaskEvent e = new TaskEvent(TaskEvent.Kind.ANALYZE, env.toplevel, env.enclClass.sym);
             taskListener.started(e);
+            taskListener.started(new TaskEvent(TaskEvent.Kind.ATTRIBUTE, env.toplevel, env.enclClass.sym));
         }
 
         JavaFileObject prev = log.useSource(
@@ -1329,6 +1477,9 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
             compileStates.put(env, CompileState.ATTR);
         } finally {
             log.useSource(prev);
+            if (taskListener != null) {
+                taskListener.finished(new TaskEvent(TaskEvent.Kind.ATTRIBUTE, env.toplevel, env.enclClass.sym));
+            }
         }
 
         return env;
@@ -1377,6 +1528,9 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
                     env.enclClass.sym.sourcefile != null ?
                             env.enclClass.sym.sourcefile :
                             env.toplevel.sourcefile);
+            if (taskListener != null) {
+                taskListener.started(new TaskEvent(TaskEvent.Kind.FLOW, env.toplevel, env.enclClass.sym));
+            }
             try {
                 make.at(Position.FIRSTPOS);
                 TreeMaker localMake = make.forToplevel(env.toplevel);
@@ -1389,6 +1543,9 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
                 results.add(env);
             } finally {
                 log.useSource(prev);
+                if (taskListener != null) {
+                    taskListener.finished(new TaskEvent(TaskEvent.Kind.FLOW, env.toplevel, env.enclClass.sym));
+                }
             }
         } finally {
             if (taskListener != null) {
@@ -1474,6 +1631,10 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
         if (verboseCompilePolicy)
             printNote("[desugar " + env.enclClass.sym + "]");
 
+        //started after the superclasses, their desugaring is reported by their own events
+        if (taskListener != null) {
+            taskListener.started(new TaskEvent(TaskEvent.Kind.DESUGAR, env.toplevel, env.enclClass.sym));
+        }
         JavaFileObject prev = log.useSource(env.enclClass.sym.sourcefile != null ?
                 env.enclClass.sym.sourcefile :
                 env.toplevel.sourcefile);
@@ -1544,6 +1705,9 @@ public class JavaCompiler implements ClassReader.SourceCompleter {
             }
         } finally {
             log.useSource(prev);
+            if (taskListener != null) {
+                taskListener.finished(new TaskEvent(TaskEvent.Kind.DESUGAR, env.toplevel, env.enclClass.sym));
+            }
         }
 
     }
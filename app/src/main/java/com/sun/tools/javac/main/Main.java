@@ -58,6 +58,7 @@ import javax.annotation.processing.Processor;
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
 
 import static com.sun.tools.javac.main.OptionName.D;
 import static com.sun.tools.javac.main.OptionName.FULLVERSION;
@@ -503,7 +504,8 @@ public class Main {
                 // add filenames to fileObjects
                 comp = JavaCompiler.instance(context);
                 List<JavaFileObject> otherFiles = List.nil();
-                JavacFileManager dfm = (JavacFileManager) fileManager;
+                // the file manager may wrap a JavacFileManager
+                StandardJavaFileManager dfm = (StandardJavaFileManager) fileManager;
                 for (JavaFileObject fo : dfm.getJavaFileObjectsFromFiles(files))
                     otherFiles = otherFiles.prepend(fo);
                 for (JavaFileObject fo : otherFiles)
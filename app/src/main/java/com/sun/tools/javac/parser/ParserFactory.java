@@ -73,6 +73,29 @@ public class ParserFactory {
         this.scannerFactory = ScannerFactory.instance(context);
     }
 
+    /**
+     * A factory with its own tree maker and log, for parsing on another thread
+     */
+    protected ParserFactory(ParserFactory fac, Log log) {
+        this.F = fac.F.forToplevel(null);
+        this.log = log;
+        this.names = fac.names;
+        this.keywords = fac.keywords;
+        this.source = fac.source;
+        this.options = fac.options;
+        this.scannerFactory = fac.scannerFactory.fork(log);
+    }
+
+    /**
+     * A factory for parsing on another thread, the names must be in a concurrent table.
+     * It is not registered in the context.
+     *
+     * @param log a log which is only used by the thread
+     */
+    public ParserFactory fork(Log log) {
+        return new ParserFactory(this, log);
+    }
+
     public Parser newParser(CharSequence input, boolean keepDocComments, boolean keepEndPos, boolean keepLineMap) {
         Lexer lexer = scannerFactory.newScanner(input, keepDocComments);
         if (keepEndPos) {
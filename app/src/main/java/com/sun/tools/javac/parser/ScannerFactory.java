@@ -64,6 +64,16 @@ public class ScannerFactory {
         this.keywords = Keywords.instance(context);
     }
 
+    /**
+     * A factory with another log, for scanning on another thread.
+     */
+    protected ScannerFactory(ScannerFactory fac, Log log) {
+        this.log = log;
+        this.names = fac.names;
+        this.source = fac.source;
+        this.keywords = fac.keywords;
+    }
+
     /**
      * Get the Factory instance for this context.
      */
@@ -74,6 +84,15 @@ public class ScannerFactory {
         return instance;
     }
 
+    /**
+     * A factory for scanning on another thread, it is not registered in the context.
+     *
+     * @param log a log which is only used by the thread
+     */
+    public ScannerFactory fork(Log log) {
+        return new ScannerFactory(this, log);
+    }
+
     public Scanner newScanner(CharSequence input, boolean keepDocComments) {
         if (input instanceof CharBuffer) {
             CharBuffer buf = (CharBuffer) input;
@@ -0,0 +1,179 @@
+package com.sun.tools.javac.util;
+
+/**
+ * Implementation of Name.Table which can be used by several threads, the
+ * table of the parallel parse of JavaCompiler.
+ *
+ * <p>The names are stored in chunks of bytes like the shared byte array of
+ * SharedNameTable, but a chunk is never copied to a larger array, so the bytes
+ * of a name can be read without a lock after the name is returned. The index
+ * of a name is its offset in the chunks, names are created in increasing
+ * index order as the Keywords table requires.
+ *
+ * <p><b>This is NOT part of any supported API.
+ * If you write code that depends on this, you do so at your own risk.
+ * This code and its internal interfaces are subject to change or
+ * deletion without notice.</b>
+ */
+public class ConcurrentNameTable extends Name.Table {
+    static public Name.Table create(Names names) {
+        return new ConcurrentNameTable(names);
+    }
+
+    private static final int CHUNK_SIZE = 0x10000;
+
+    /** The hash table for names.
+     */
+    private final NameImpl[] hashes;
+
+    /** The mask to be used for hashing
+     */
+    private final int hashMask;
+
+    /** The chunk holding the last names.
+     */
+    private byte[] chunk;
+
+    /** The index of the first byte of the chunk.
+     */
+    private int chunkStart;
+
+    /** The number of filled bytes in the chunk.
+     */
+    private int nc;
+
+    public ConcurrentNameTable(Names names, int hashSize) {
+        super(names);
+        hashMask = hashSize - 1;
+        hashes = new NameImpl[hashSize];
+        chunk = new byte[CHUNK_SIZE];
+    }
+
+    public ConcurrentNameTable(Names names) {
+        this(names, 0x8000);
+    }
+
+    @Override
+    public synchronized Name fromChars(char[] cs, int start, int len) {
+        //encode into the free bytes of the chunk, they are kept if the name is new
+        ensureFree(len * 3);
+        int nbytes = Convert.chars2utf(cs, start, chunk, nc, len) - nc;
+        return enter(chunk, nc, nbytes, false);
+    }
+
+    @Override
+    public synchronized Name fromUtf(byte[] cs, int start, int len) {
+        return enter(cs, start, len, true);
+    }
+
+    /**
+     * @param copy false if the bytes are already at the end of the chunk
+     */
+    private Name enter(byte[] cs, int start, int len, boolean copy) {
+        int h = hashValue(cs, start, len) & hashMask;
+        NameImpl n = hashes[h];
+        while (n != null &&
+                (n.length != len || !equals(n.bytes, n.offset, cs, start, len))) {
+            n = n.next;
+        }
+        if (n == null) {
+            if (copy) {
+                ensureFree(len);
+                System.arraycopy(cs, start, chunk, nc, len);
+            }
+            n = new NameImpl(this, chunk, nc, chunkStart + nc, len);
+            n.next = hashes[h];
+            hashes[h] = n;
+            nc += len;
+            if (len == 0) {
+                nc++;
+            }
+        }
+        return n;
+    }
+
+    /** Start a new chunk if the current one has less than `len' free bytes.
+     */
+    private void ensureFree(int len) {
+        //the empty name takes an index too
+        if (nc + len + 1 > chunk.length) {
+            chunkStart += nc;
+            chunk = new byte[Math.max(CHUNK_SIZE, len + 1)];
+            nc = 0;
+        }
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    static class NameImpl extends Name {
+        /** The next name occupying the same hash bucket.
+         */
+        NameImpl next;
+
+        /** The chunk of the bytes of this name.
+         */
+        final byte[] bytes;
+
+        /** The offset of the bytes in the chunk.
+         */
+        final int offset;
+
+        /** The offset of the bytes in all chunks.
+         */
+        final int index;
+
+        /** The number of bytes in this name.
+         */
+        final int length;
+
+        NameImpl(ConcurrentNameTable table, byte[] bytes, int offset, int index, int length) {
+            super(table);
+            this.bytes = bytes;
+            this.offset = offset;
+            this.index = index;
+            this.length = length;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public int getByteLength() {
+            return length;
+        }
+
+        @Override
+        public byte getByteAt(int i) {
+            return bytes[offset + i];
+        }
+
+        @Override
+        public byte[] getByteArray() {
+            return bytes;
+        }
+
+        @Override
+        public int getByteOffset() {
+            return offset;
+        }
+
+        /** Return the hash value of this name.
+         */
+        public int hashCode() {
+            return index;
+        }
+
+        /** Is this name equal to other?
+         */
+        public boolean equals(Object other) {
+            if (other instanceof Name)
+                return
+                    table == ((Name)other).table && index == ((Name) other).getIndex();
+            else return false;
+        }
+    }
+}
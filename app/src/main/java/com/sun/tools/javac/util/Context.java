@@ -197,6 +197,16 @@ public class Context {
         put(key(clazz), fac);
     }
 
+    /** Remove the value for the key, so that a new one can be put in this context. */
+    public <T> void drop(Key<T> key) {
+        checkState(ht);
+        ht.remove(key);
+    }
+
+    public <T> void drop(Class<T> clazz) {
+        drop(key(clazz));
+    }
+
     /**
      * TODO: This method should be removed and Context should be made type safe.
      * This can be accomplished by using class literals as type tokens.
@@ -195,6 +195,35 @@ public class Log extends AbstractLog {
         this(context, defaultWriter, defaultWriter, defaultWriter);
     }
 
+    /**
+     * Construct a log with the settings of another log which defers all
+     * diagnostics. It is not registered in the context.
+     */
+    protected Log(Log parent) {
+        super(parent.diags);
+        this.errWriter = parent.errWriter;
+        this.warnWriter = parent.warnWriter;
+        this.noticeWriter = parent.noticeWriter;
+        this.dumpOnError = parent.dumpOnError;
+        this.promptOnError = parent.promptOnError;
+        this.emitWarnings = parent.emitWarnings;
+        this.suppressNotes = parent.suppressNotes;
+        this.multipleErrors = parent.multipleErrors;
+        this.MaxErrors = parent.MaxErrors;
+        this.MaxWarnings = parent.MaxWarnings;
+        this.messages = parent.messages;
+        this.diagFormatter = parent.diagFormatter;
+        this.deferDiagnostics = true;
+    }
+
+    /**
+     * A log for a task on another thread, its diagnostics are deferred until
+     * they are reported to this log by {@link #reportDeferredDiagnostics(Log)}.
+     */
+    public Log newDeferredLog() {
+        return new Log(this);
+    }
+
     /**
      * The default writer for diagnostics
      */
@@ -276,6 +305,22 @@ public class Log extends AbstractLog {
         return diagListener != null;
     }
 
+    public void setDiagnosticListener(DiagnosticListener<? super JavaFileObject> diagListener) {
+        this.diagListener = diagListener;
+    }
+
+    /**
+     * Forget the errors and warnings of the last compilation, used when the
+     * context is reused for another compilation.
+     */
+    public void clear() {
+        recorded.clear();
+        sourceMap.clear();
+        deferredDiagnostics.clear();
+        nerrors = 0;
+        nwarnings = 0;
+    }
+
     public void setEndPosTable(JavaFileObject name, Map<JCTree, Integer> table) {
         name.getClass(); // null check
         getSource(name).setEndPosTable(table);
@@ -433,6 +478,17 @@ public class Log extends AbstractLog {
         }
     }
 
+    /**
+     * Report the deferred diagnostics of a log from {@link #newDeferredLog}
+     * to this log.
+     */
+    public void reportDeferredDiagnostics(Log deferredLog) {
+        JCDiagnostic d;
+        while ((d = deferredLog.deferredDiagnostics.poll()) != null) {
+            report(d);
+        }
+    }
+
     /**
      * Common diagnostic handling.
      * The diagnostic is counted, and depending on the options and how many diagnostics have been
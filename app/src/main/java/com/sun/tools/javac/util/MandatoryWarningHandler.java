@@ -180,6 +180,17 @@ public class MandatoryWarningHandler {
         }
     }
 
+    /**
+     * Forget the warnings reported so far, used when the log is reused
+     * for another compilation.
+     */
+    public void clear() {
+        sourcesWithReportedWarnings = null;
+        deferredDiagnosticKind = null;
+        deferredDiagnosticSource = null;
+        deferredDiagnosticArg = null;
+    }
+
     /**
      * Check two objects, each possibly null, are either both null or are equal.
      */
@@ -270,7 +270,10 @@ public class Names {
 
     protected Name.Table createTable(Options options) {
         boolean useUnsharedTable = options.isSet("useUnsharedTable");
-        if (useUnsharedTable)
+        //the parallel parse enters names from several threads
+        if (options.isSet("parallelParse"))
+            return new ConcurrentNameTable(this);
+        else if (useUnsharedTable)
             return new UnsharedNameTable(this);
         else
             return new SharedNameTable(this);
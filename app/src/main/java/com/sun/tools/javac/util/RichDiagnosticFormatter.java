@@ -103,6 +103,7 @@ public class RichDiagnosticFormatter extends
 
     protected RichDiagnosticFormatter(Context context) {
         super((AbstractDiagnosticFormatter) Log.instance(context).getDiagnosticFormatter());
+        context.put(RichDiagnosticFormatter.class, this);
         setRichPrinter(new RichPrinter());
         this.syms = Symtab.instance(context);
         this.diags = JCDiagnostic.Factory.instance(context);
@@ -0,0 +1,136 @@
+package com.duy.compile.diagnostic;
+
+import android.support.annotation.NonNull;
+
+import com.duy.TestFiles;
+import com.duy.project.file.java.JavaProjectFolder;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.Diagnostic;
+
+public class JavacDiagnosticsEngineTest extends TestCase {
+    private static final String BROKEN = "package p;\n" +
+            "public class Main {\n" +
+            "    void a() { String s = Helper.twice(1); }\n" +
+            "    void b() { Helper.missing(); }\n" +
+            "    int c() { int x = ; return x; }\n" +
+            "    int d() { }\n" +
+            "}\n";
+    private static final String FIXED = "package p;\n" +
+            "public class Main {\n" +
+            "    void a() { int s = Helper.twice(1); }\n" +
+            "}\n";
+
+    private File root;
+    private JavacDiagnosticsEngine engine;
+    private File mainFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        File rtJar = new File(System.getProperty("java.home"), "lib" + File.separator + "rt.jar");
+        assertTrue("needs the rt.jar of a JDK 8", rtJar.isFile());
+        root = File.createTempFile("projects", "");
+        root.delete();
+        JavaProjectFolder project = new JavaProjectFolder(root, "p.Main", "p", "diagnostics",
+                rtJar.getPath());
+        File dir = new File(project.getDirSrcJava(), "p");
+        dir.mkdirs();
+        write(new File(dir, "Helper.java"),
+                "package p;\npublic class Helper { public static int twice(int x) { return 2 * x; } }\n");
+        mainFile = new File(dir, "Main.java");
+        //the saved file is older than the text of the editor
+        write(mainFile, "package p;\npublic class Main {\n}\n");
+        engine = new JavacDiagnosticsEngine(project);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        engine.dispose();
+        TestFiles.delete(root);
+        super.tearDown();
+    }
+
+    private static void write(File file, String text) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * The errors, the class files of the jdk 8 are newer than the compiler and give warnings
+     */
+    private static String codes(List<Diagnostic> diagnostics) {
+        StringBuilder result = new StringBuilder();
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.getKind() != Diagnostic.Kind.ERROR) continue;
+            result.append(diagnostic.getLineNumber()).append(':').append(diagnostic.getCode()).append('\n');
+        }
+        return result.toString();
+    }
+
+    public void testAttributeOnly() {
+        final ArrayList<String> published = new ArrayList<>();
+        JavacDiagnosticsEngine.Callback callback = new JavacDiagnosticsEngine.Callback() {
+            @Override
+            public void onDiagnostics(@NonNull JavacDiagnosticsEngine.Request request,
+                                      @NonNull List<Diagnostic> diagnostics, boolean finished) {
+                published.add(codes(diagnostics) + finished);
+            }
+        };
+        List<Diagnostic> diagnostics = engine.check(engine.new Request(mainFile, BROKEN, callback));
+        assertNotNull(diagnostics);
+        //the trees with syntax errors are attributed, the missing return of d() is a flow error
+        assertEquals("5:compiler.err.illegal.start.of.expr\n" +
+                "3:compiler.err.prob.found.req\n" +
+                "4:compiler.err.cant.resolve.location.args\n", codes(diagnostics));
+        for (Diagnostic diagnostic : diagnostics) {
+            assertEquals(mainFile.getPath(), ((javax.tools.JavaFileObject) diagnostic.getSource()).getName());
+        }
+        //the syntax error is published before the attribution
+        assertEquals("5:compiler.err.illegal.start.of.expr\nfalse", published.get(0));
+        assertEquals(codes(diagnostics) + true, published.get(published.size() - 1));
+
+        //the symbols of the previous check are dropped
+        published.clear();
+        diagnostics = engine.check(engine.new Request(mainFile, FIXED, callback));
+        assertNotNull(diagnostics);
+        assertEquals("", codes(diagnostics));
+        assertEquals("true", published.get(published.size() - 1));
+    }
+
+    public void testScheduleCancelsPrevious() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(1);
+        final ArrayList<JavacDiagnosticsEngine.Request> published = new ArrayList<>();
+        JavacDiagnosticsEngine.Callback callback = new JavacDiagnosticsEngine.Callback() {
+            @Override
+            public void onDiagnostics(@NonNull JavacDiagnosticsEngine.Request request,
+                                      @NonNull List<Diagnostic> diagnostics, boolean done) {
+                synchronized (published) {
+                    published.add(request);
+                }
+                if (done) finished.countDown();
+            }
+        };
+        JavacDiagnosticsEngine.Request first = engine.schedule(mainFile, BROKEN, callback);
+        JavacDiagnosticsEngine.Request second = engine.schedule(mainFile, FIXED, callback);
+        assertTrue(first.isCancelled());
+        assertTrue(finished.await(60, TimeUnit.SECONDS));
+        synchronized (published) {
+            assertFalse(published.contains(first));
+            assertTrue(published.contains(second));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.duy.compile.external;
+
+import android.support.annotation.NonNull;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class BuildGraphTest extends TestCase {
+    private final File dir = new File("project");
+    private List<String> order;
+    private ByteArrayOutputStream output;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        order = Collections.synchronizedList(new ArrayList<String>());
+        output = new ByteArrayOutputStream();
+    }
+
+    private String getOutput() {
+        synchronized (output) {
+            return output.toString();
+        }
+    }
+
+    public void testDependenciesFromFiles() throws Exception {
+        BuildGraph graph = new BuildGraph(4);
+        //added in the reverse order, the files decide the order
+        graph.add(new RecordTask("package").inputs(new File(dir, "build/classes.dex"),
+                new File(dir, "build/resources.ap_")));
+        graph.add(new RecordTask("dex").inputs(new File(dir, "build/classes/p/A.class"))
+                .outputs(new File(dir, "build/classes.dex")));
+        graph.add(new RecordTask("javac").inputs(new File(dir, "src"))
+                .outputs(new File(dir, "build/classes")));
+        graph.add(new RecordTask("aapt").inputs(new File(dir, "res"))
+                .outputs(new File(dir, "build/resources.ap_"), new File(dir, "src/R.java")));
+        graph.run(output);
+
+        assertEquals(4, order.size());
+        assertTrue(order.toString(), order.indexOf("aapt") < order.indexOf("javac"));
+        assertTrue(order.toString(), order.indexOf("javac") < order.indexOf("dex"));
+        assertTrue(order.toString(), order.indexOf("dex") < order.indexOf("package"));
+    }
+
+    public void testExplicitDependencies() throws Exception {
+        BuildGraph graph = new BuildGraph(4);
+        BuildGraph.Task align = new RecordTask("align");
+        BuildGraph.Task sign = new RecordTask("sign");
+        BuildGraph.Task publish = new RecordTask("publish");
+        graph.add(publish.dependsOn(align));
+        graph.add(align.dependsOn(sign));
+        graph.add(sign);
+        graph.run(output);
+
+        assertEquals(Arrays.asList("sign", "align", "publish"), order);
+    }
+
+    public void testParallel() throws Exception {
+        BuildGraph graph = new BuildGraph(2);
+        //each task waits for the other one, they only finish if they run at the same time
+        final CountDownLatch running = new CountDownLatch(2);
+        for (String name : Arrays.asList("dexLibs", "aapt")) {
+            graph.add(new RecordTask(name) {
+                @Override
+                protected void run(@NonNull PrintStream out) throws Exception {
+                    running.countDown();
+                    if (!running.await(10, TimeUnit.SECONDS)) {
+                        throw new Exception("the tasks did not run in parallel");
+                    }
+                    super.run(out);
+                }
+            });
+        }
+        graph.run(output);
+
+        assertEquals(2, order.size());
+    }
+
+    public void testFailure() throws Exception {
+        BuildGraph graph = new BuildGraph(2);
+        final Exception error = new IOException("compile error");
+        final CountDownLatch failed = new CountDownLatch(1);
+        BuildGraph.Task javac = graph.add(new RecordTask("javac") {
+            @Override
+            protected void run(@NonNull PrintStream out) throws Exception {
+                failed.countDown();
+                throw error;
+            }
+        });
+        graph.add(new RecordTask("dex").dependsOn(javac));
+        //a running task is not interrupted by the failure
+        graph.add(new RecordTask("dexLibs") {
+            @Override
+            protected void run(@NonNull PrintStream out) throws Exception {
+                failed.await(10, TimeUnit.SECONDS);
+                super.run(out);
+            }
+        });
+        try {
+            graph.run(output);
+            fail();
+        } catch (Exception e) {
+            assertSame(error, e);
+        }
+
+        assertEquals(Collections.singletonList("dexLibs"), order);
+        assertTrue(getOutput(), getOutput().contains("[javac] java.io.IOException: compile error"));
+    }
+
+    public void testCycle() throws Exception {
+        BuildGraph graph = new BuildGraph(2);
+        graph.add(new RecordTask("javac").inputs(new File(dir, "src"))
+                .outputs(new File(dir, "build/classes")));
+        graph.add(new RecordTask("generate").inputs(new File(dir, "build/classes"))
+                .outputs(new File(dir, "src/Generated.java")));
+        try {
+            graph.run(output);
+            fail();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        assertTrue(order.isEmpty());
+    }
+
+    public void testOutputIsStreamed() throws Exception {
+        BuildGraph graph = new BuildGraph(2);
+        final CountDownLatch printed = new CountDownLatch(1);
+        graph.add(new RecordTask("javac") {
+            @Override
+            protected void run(@NonNull PrintStream out) throws Exception {
+                out.println("Compile Main.java");
+                //the line is in the build output while the task still runs
+                if (!printed.await(10, TimeUnit.SECONDS)) {
+                    throw new Exception("the output was not streamed");
+                }
+                out.print("done");
+            }
+        });
+        graph.add(new RecordTask("watch") {
+            @Override
+            protected void run(@NonNull PrintStream out) throws Exception {
+                long end = System.currentTimeMillis() + 10000;
+                while (!getOutput().contains("[javac] Compile Main.java\n")
+                        && System.currentTimeMillis() < end) {
+                    Thread.sleep(10);
+                }
+                printed.countDown();
+            }
+        });
+        graph.run(output);
+
+        //the last line without a line break is written when the task is done
+        assertTrue(getOutput(), getOutput().contains("[javac] done\n"));
+    }
+
+    private class RecordTask extends BuildGraph.Task {
+        RecordTask(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void run(@NonNull PrintStream out) throws Exception {
+            order.add(toString());
+        }
+    }
+}
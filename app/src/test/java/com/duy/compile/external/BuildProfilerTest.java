@@ -0,0 +1,229 @@
+package com.duy.compile.external;
+
+import com.duy.TestFiles;
+import com.sun.source.util.TaskListener;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Log;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.JavaFileManager;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardLocation;
+
+public class BuildProfilerTest extends TestCase {
+    private static final Pattern EVENT = Pattern.compile(
+            "\\{\"name\":\"([^\"]*)\",\"cat\":\"(\\w+)\",\"ph\":\"X\",\"pid\":1,\"tid\":(\\d+)"
+                    + ",\"ts\":(\\d+),\"dur\":(\\d+),\"args\":\\{(?:\"allocatedBytes\":(\\d+))?");
+
+    private File traceFile;
+    private FakeCounter counter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        traceFile = File.createTempFile("build-trace", ".json");
+        counter = new FakeCounter();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        traceFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * @return name -> {duration in micro seconds, allocated bytes or -1}
+     */
+    private Map<String, long[]> readStages(List<String> order) throws IOException {
+        String trace = new String(TestFiles.readFully(new FileInputStream(traceFile)), "UTF-8");
+        assertTrue(trace, trace.startsWith("{\"traceEvents\":["));
+        assertTrue(trace, trace.trim().endsWith("],\"displayTimeUnit\":\"ms\"}"));
+        Map<String, long[]> stages = new HashMap<>();
+        Matcher matcher = EVENT.matcher(trace);
+        while (matcher.find()) {
+            assertEquals("stage", matcher.group(2));
+            order.add(matcher.group(1));
+            stages.put(matcher.group(1), new long[]{Long.parseLong(matcher.group(5)),
+                    matcher.group(6) != null ? Long.parseLong(matcher.group(6)) : -1});
+        }
+        return stages;
+    }
+
+    public void testJavacPhases() throws Exception {
+        File rtJar = new File(System.getProperty("java.home"), "lib" + File.separator + "rt.jar");
+        assertTrue("needs the rt.jar of a JDK 8", rtJar.isFile());
+        File outputDir = File.createTempFile("classes", "");
+        outputDir.delete();
+        outputDir.mkdirs();
+
+        BuildProfiler profiler = new BuildProfiler(counter);
+        Context context = new Context();
+        context.put(Log.outKey, new PrintWriter(new StringWriter()));
+        context.put(TaskListener.class, profiler.createJavacListener());
+        JavacFileManager.preRegister(context);
+        JavacFileManager fileManager = (JavacFileManager) context.get(JavaFileManager.class);
+        fileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH, Collections.singletonList(rtJar));
+        fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(outputDir));
+        SimpleJavaFileObject source = new SimpleJavaFileObject(URI.create("string:///Main.java"),
+                SimpleJavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return "public class Main { Runnable r = new Runnable() { public void run() { } }; }";
+            }
+        };
+        JavaCompiler compiler = JavaCompiler.instance(context);
+        compiler.enterTrees(compiler.parseFiles(com.sun.tools.javac.util.List.of(source)));
+        compiler.generate(compiler.desugar(compiler.flow(compiler.attribute(compiler.todo))));
+        compiler.close();
+        fileManager.close();
+        new File(outputDir, "Main.class").delete();
+        new File(outputDir, "Main$1.class").delete();
+        outputDir.delete();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        profiler.finish(traceFile, new PrintStream(output, true));
+        String trace = new String(TestFiles.readFully(new FileInputStream(traceFile)), "UTF-8");
+        Set<String> phases = new HashSet<>();
+        Matcher matcher = EVENT.matcher(trace);
+        while (matcher.find()) {
+            assertEquals("javac", matcher.group(2));
+            phases.add(matcher.group(1));
+        }
+        assertTrue(phases.toString(), phases.containsAll(Arrays.asList(
+                "parse", "enter", "attribute", "flow", "desugar", "generate")));
+        //analyze spans attribute and flow, it would count their time twice
+        assertFalse(phases.toString(), phases.contains("analyze"));
+        String summary = output.toString("UTF-8");
+        assertTrue(summary, summary.matches("(?s).*javac phases.*desugar\\s+\\d+ ms.*"));
+    }
+
+    public void testStages() throws Exception {
+        BuildProfiler profiler = new BuildProfiler(counter);
+        assertEquals(1, counter.users);
+
+        BuildProfiler.Stage javac = profiler.startStage("javac");
+        counter.allocate(3 * 1024 * 1024);
+        Thread.sleep(30);
+        javac.end();
+        BuildProfiler.Stage dx = profiler.startStage("dx");
+        counter.allocate(1024);
+        dx.end();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        profiler.finish(traceFile, new PrintStream(output, true));
+        assertEquals(0, counter.users);
+        //a second call does not stop the counting of another build
+        profiler.finish(traceFile, new PrintStream(new ByteArrayOutputStream(), true));
+        assertEquals(0, counter.users);
+
+        List<String> order = new ArrayList<>();
+        Map<String, long[]> stages = readStages(order);
+        assertEquals(2, order.size());
+        assertTrue(stages.get("javac")[0] >= 30 * 1000);
+        assertEquals(3 * 1024 * 1024, stages.get("javac")[1]);
+        assertEquals(1024, stages.get("dx")[1]);
+
+        String summary = output.toString("UTF-8");
+        assertTrue(summary, summary.contains("Build profile, total"));
+        assertTrue(summary, summary.matches("(?s).*javac\\s+\\d+ ms\\s+3\\.0 MB allocated.*"));
+        assertTrue(summary, summary.contains("Build trace: " + traceFile.getPath()));
+    }
+
+    public void testAllocationsPerThread() throws Exception {
+        final BuildProfiler profiler = new BuildProfiler(counter);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                BuildProfiler.Stage stage = profiler.startStage("dexLibs");
+                counter.allocate(500);
+                stage.end();
+            }
+        });
+        BuildProfiler.Stage stage = profiler.startStage("aapt");
+        thread.start();
+        thread.join();
+        counter.allocate(100);
+        stage.end();
+        profiler.finish(traceFile, new PrintStream(new ByteArrayOutputStream(), true));
+
+        Map<String, long[]> stages = readStages(new ArrayList<String>());
+        assertEquals(500, stages.get("dexLibs")[1]);
+        assertEquals(100, stages.get("aapt")[1]);
+    }
+
+    public void testNoAllocations() throws Exception {
+        counter.counting = false;
+        BuildProfiler profiler = new BuildProfiler(counter);
+        profiler.startStage("package").end();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        profiler.finish(traceFile, new PrintStream(output, true));
+
+        assertEquals(-1, readStages(new ArrayList<String>()).get("package")[1]);
+        assertFalse(output.toString("UTF-8").contains("allocated"));
+    }
+
+    public void testConcurrentProfilers() throws Exception {
+        BuildProfiler first = new BuildProfiler(counter);
+        BuildProfiler second = new BuildProfiler(counter);
+        assertEquals(2, counter.users);
+        first.finish(traceFile, new PrintStream(new ByteArrayOutputStream(), true));
+        assertEquals(1, counter.users);
+        second.finish(traceFile, new PrintStream(new ByteArrayOutputStream(), true));
+        assertEquals(0, counter.users);
+    }
+
+    /**
+     * Counts the bytes given to {@link #allocate(long)} for each thread
+     */
+    private static class FakeCounter implements BuildProfiler.AllocationCounter {
+        private final ThreadLocal<long[]> allocated = new ThreadLocal<long[]>() {
+            @Override
+            protected long[] initialValue() {
+                return new long[1];
+            }
+        };
+        volatile boolean counting = true;
+        int users;
+
+        void allocate(long bytes) {
+            allocated.get()[0] += bytes;
+        }
+
+        @Override
+        public synchronized void start() {
+            users++;
+        }
+
+        @Override
+        public synchronized void stop() {
+            users--;
+        }
+
+        @Override
+        public long getThreadAllocatedBytes() {
+            return counting ? allocated.get()[0] : -1;
+        }
+    }
+}
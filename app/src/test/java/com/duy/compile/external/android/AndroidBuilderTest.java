@@ -0,0 +1,137 @@
+package com.duy.compile.external.android;
+
+import com.duy.TestFiles;
+
+import junit.framework.TestCase;
+
+import org.spongycastle.asn1.x500.X500Name;
+import org.spongycastle.cert.X509v3CertificateBuilder;
+import org.spongycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.spongycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.spongycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.security.CodeSigner;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import kellinwood.security.zipsigner.KeySet;
+import kellinwood.security.zipsigner.optional.KeyStoreFileManager;
+
+public class AndroidBuilderTest extends TestCase {
+    private File dir;
+    private File resources;
+    private File dex;
+    private KeySet keySet;
+    /**
+     * Name -> data of the entries which must be signed
+     */
+    private Map<String, byte[]> contents;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        //the apk is signed with SHA1 like the apks of the app, newer JDKs treat it as unsigned
+        Security.setProperty("jdk.jar.disabledAlgorithms", "");
+        dir = File.createTempFile("apk", "");
+        dir.delete();
+        dir.mkdirs();
+
+        //the output of aapt
+        contents = new HashMap<>();
+        resources = new File(dir, "resources.ap_");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(resources));
+        try {
+            for (String name : Arrays.asList("AndroidManifest.xml", "resources.arsc",
+                    "res/layout/main.xml", "res/drawable/icon.png")) {
+                contents.put(name, name.getBytes("UTF-8"));
+                out.putNextEntry(new ZipEntry(name));
+                out.write(contents.get(name));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        dex = new File(dir, "classes.dex");
+        contents.put("classes.dex", "dex\n035\0".getBytes("UTF-8"));
+        FileOutputStream dexOut = new FileOutputStream(dex);
+        dexOut.write(contents.get("classes.dex"));
+        dexOut.close();
+
+        keySet = createKeySet();
+    }
+
+    /**
+     * @return a new key with a self signed certificate
+     */
+    static KeySet createKeySet() throws Exception {
+        //the signature block is created by the spongycastle provider, it is registered when
+        //the key store of the project is loaded
+        assertNotNull(Security.getProvider(KeyStoreFileManager.getProvider().getName()));
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        KeyPair keyPair = generator.generateKeyPair();
+        X500Name name = new X500Name("CN=Test");
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name, BigInteger.ONE,
+                new Date(System.currentTimeMillis() - 60000), new Date(System.currentTimeMillis() + 3600000),
+                name, keyPair.getPublic());
+        X509Certificate certificate = new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA1withRSA").build(keyPair.getPrivate())));
+        return new KeySet("test", certificate, keyPair.getPrivate(), "SHA1withRSA", null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+
+    public void testSignedApk() throws Exception {
+        File apk = new File(dir, "app.apk");
+        AndroidBuilder.buildApk(apk, resources, dex, keySet, new PrintStream(new ByteArrayOutputStream()));
+
+        Set<String> names = new HashSet<>();
+        JarFile jarFile = new JarFile(apk, true);
+        try {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                names.add(entry.getName());
+                //the signers are known when the entry was read to the end
+                byte[] data = TestFiles.readFully(jarFile.getInputStream(entry));
+                if (entry.getName().startsWith("META-INF/")) continue;
+
+                assertTrue(entry.getName(), Arrays.equals(contents.get(entry.getName()), data));
+                CodeSigner[] signers = entry.getCodeSigners();
+                assertNotNull(entry.getName(), signers);
+                assertEquals(entry.getName(), 1, signers.length);
+                assertEquals(keySet.getPublicKey(), signers[0].getSignerCertPath().getCertificates().get(0));
+            }
+        } finally {
+            jarFile.close();
+        }
+        Set<String> expected = new HashSet<>(contents.keySet());
+        expected.addAll(Arrays.asList("META-INF/MANIFEST.MF", "META-INF/CERT.SF", "META-INF/CERT.RSA"));
+        assertEquals(expected, names);
+    }
+}
@@ -0,0 +1,124 @@
+package com.duy.compile.external.android;
+
+import com.android.sdklib.internal.build.SignedJarBuilder;
+import com.duy.TestFiles;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Enumeration;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import kellinwood.security.zipsigner.KeySet;
+
+public class SignedJarBuilderTest extends TestCase {
+    private static final int ENTRY_COUNT = 100;
+    private File dir;
+    private File input;
+    private File dex;
+    private KeySet keySet;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Security.setProperty("jdk.jar.disabledAlgorithms", "");
+        dir = TestFiles.createTempDir("signed");
+        keySet = AndroidBuilderTest.createKeySet();
+        input = new File(dir, "resources.ap_");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(input));
+        try {
+            //entries of different size so that the digests do not finish in order
+            for (int i = ENTRY_COUNT - 1; i >= 0; i--) {
+                byte[] data = new byte[(i % 7) * 50000 + i];
+                Arrays.fill(data, (byte) i);
+                out.putNextEntry(new ZipEntry("res/dir" + (i % 5) + "/file" + i + ".bin"));
+                out.write(data);
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        dex = new File(dir, "classes.dex");
+        FileOutputStream dexOut = new FileOutputStream(dex);
+        try {
+            byte[] data = new byte[300000];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) (i * 31);
+            }
+            dexOut.write(data);
+        } finally {
+            dexOut.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+
+    private File build(int threadCount) throws Exception {
+        File output = new File(dir, "signed-" + threadCount + ".apk");
+        SignedJarBuilder builder = new SignedJarBuilder(new FileOutputStream(output),
+                keySet.getPrivateKey(), keySet.getPublicKey());
+        builder.setDigestThreadCount(threadCount);
+        FileInputStream in = new FileInputStream(input);
+        try {
+            builder.writeZip(in, null);
+        } finally {
+            in.close();
+        }
+        builder.writeFile(dex, "classes.dex");
+        builder.close();
+        return output;
+    }
+
+    private static byte[] read(File file) throws Exception {
+        return TestFiles.readFully(new FileInputStream(file));
+    }
+
+    public void testSameOutputWithThreads() throws Exception {
+        byte[] single = read(build(1));
+        assertTrue(single.length > 0);
+        assertTrue(Arrays.equals(single, read(build(4))));
+        assertTrue(Arrays.equals(single, read(build(16))));
+    }
+
+    public void testDigests() throws Exception {
+        JarFile jar = new JarFile(build(4), true);
+        try {
+            int count = 0;
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (entry.getName().startsWith("META-INF/")) continue;
+                InputStream in = jar.getInputStream(entry);
+                byte[] data = TestFiles.readFully(in);
+                //the certificates are known after the data of the entry was read and verified
+                assertNotNull(entry.getName(), entry.getCertificates());
+                Attributes attributes = jar.getManifest().getAttributes(entry.getName());
+                assertEquals(entry.getName(),
+                        Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA1").digest(data)),
+                        attributes.getValue("SHA1-Digest"));
+                count++;
+            }
+            assertEquals(ENTRY_COUNT + 1, count);
+        } finally {
+            jar.close();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.duy.compile.external.android;
+
+import com.duy.TestFiles;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import kellinwood.security.zipsigner.KeySet;
+import kellinwood.zipio.ZioEntry;
+import kellinwood.zipio.ZipInput;
+
+public class ZipAlignTest extends TestCase {
+    private File dir;
+    private File resources;
+    private File dex;
+    private KeySet keySet;
+    /**
+     * Name -> compression method of the entries of the resources
+     */
+    private Map<String, Integer> methods;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Security.setProperty("jdk.jar.disabledAlgorithms", "");
+        dir = TestFiles.createTempDir("align");
+        keySet = AndroidBuilderTest.createKeySet();
+
+        //names of different length so that the data would start at odd offsets
+        methods = new LinkedHashMap<>();
+        methods.put("AndroidManifest.xml", ZipEntry.DEFLATED);
+        methods.put("resources.arsc", ZipEntry.STORED);
+        methods.put("res/raw/a.bin", ZipEntry.STORED);
+        methods.put("lib/armeabi/libone.so", ZipEntry.STORED);
+        methods.put("res/drawable/icon.png", ZipEntry.STORED);
+        methods.put("lib/x86/libtwo.so", ZipEntry.STORED);
+        methods.put("assets/text.txt", ZipEntry.DEFLATED);
+        methods.put("r", ZipEntry.STORED);
+
+        resources = new File(dir, "resources.ap_");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(resources));
+        try {
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : methods.entrySet()) {
+                byte[] data = getData(i++);
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                zipEntry.setMethod(entry.getValue());
+                if (entry.getValue() == ZipEntry.STORED) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    zipEntry.setSize(data.length);
+                    zipEntry.setCompressedSize(data.length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(zipEntry);
+                out.write(data);
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        dex = new File(dir, "classes.dex");
+        FileOutputStream dexOut = new FileOutputStream(dex);
+        dexOut.write("dex\n035\0".getBytes("UTF-8"));
+        dexOut.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestFiles.delete(dir);
+        super.tearDown();
+    }
+
+    private static byte[] getData(int index) {
+        byte[] data = new byte[1000 + index * 777];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % (index + 7));
+        }
+        return data;
+    }
+
+    /**
+     * @return the position of the data of the entry, read from its local header
+     */
+    private static long getDataPosition(RandomAccessFile file, ZioEntry entry) throws IOException {
+        file.seek(entry.getLocalHeaderOffset() + 26);
+        int nameLength = file.read() | file.read() << 8;
+        int extraLength = file.read() | file.read() << 8;
+        return entry.getLocalHeaderOffset() + 30 + nameLength + extraLength;
+    }
+
+    public void testAlignment() throws Exception {
+        File apk = new File(dir, "app.apk");
+        AndroidBuilder.buildApk(apk, resources, dex, keySet, new PrintStream(new ByteArrayOutputStream()));
+
+        ZipInput input = ZipInput.read(apk.getPath());
+        RandomAccessFile file = new RandomAccessFile(apk, "r");
+        try {
+            int stored = 0;
+            for (ZioEntry entry : input.getEntries().values()) {
+                String name = entry.getName();
+                if (entry.getCompression() == ZipEntry.STORED) {
+                    long position = getDataPosition(file, entry);
+                    assertEquals(name, 0, position % (name.endsWith(".so") ? 4096 : 4));
+                    stored++;
+                }
+            }
+            //the stored entries of the resources keep their method
+            assertEquals(6, stored);
+        } finally {
+            input.close();
+            file.close();
+        }
+
+        //the aligned apk has the same content and its signature is still valid
+        JarFile jarFile = new JarFile(apk, true);
+        try {
+            int i = 0;
+            Enumeration<JarEntry> entries = jarFile.entries();
+            for (String name : methods.keySet()) {
+                JarEntry entry = entries.nextElement();
+                assertEquals(name, entry.getName());
+                assertTrue(name, Arrays.equals(getData(i++), TestFiles.readFully(jarFile.getInputStream(entry))));
+                assertNotNull(name, entry.getCodeSigners());
+            }
+        } finally {
+            jarFile.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.duy.compile.external.dex;
+
+import com.android.dex.Dex;
+import com.duy.TestFiles;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class DexMergeHelperTest extends TestCase {
+    private File dir;
+    private List<Dex> inputs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = TestFiles.createTempDir("merge");
+        Map<String, byte[]> classes = TestClasses.compile(
+                "package p; public class A { B b; }",
+                "package p; public class B { C c; }",
+                "package p; public class C {}",
+                "package q; public class D { p.A a; }",
+                "package q; public class E extends D {}");
+        inputs = new ArrayList<>();
+        for (String className : Arrays.asList("p/A", "p/B", "p/C", "q/D", "q/E")) {
+            inputs.add(new Dex(IncrementalDexer.translate(className, classes.get(className))));
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestFiles.delete(dir);
+        super.tearDown();
+    }
+
+    private List<String> merge(int count) throws IOException {
+        return TestClasses.getClassNames(DexMergeHelper.merge(inputs.subList(0, count)));
+    }
+
+    public void testMerge() throws IOException {
+        assertNull(DexMergeHelper.merge(new ArrayList<Dex>()));
+        assertSame(inputs.get(0), DexMergeHelper.merge(inputs.subList(0, 1)));
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;"), merge(2));
+        //the odd input is merged in the next round
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;", "Lp/C;"), merge(3));
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;", "Lp/C;", "Lq/D;", "Lq/E;"), merge(5));
+    }
+
+    private File writeLibrary(String name, Dex dex) throws IOException {
+        File file = new File(dir, name);
+        dex.writeTo(file);
+        return file;
+    }
+
+    private File[] listMerged(File cacheDir) {
+        File[] files = cacheDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("merged-") && name.endsWith(".dex");
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+
+    public void testMergeAllCachesLibraries() throws IOException {
+        File cacheDir = new File(dir, "cache");
+        File output = new File(dir, "classes.dex");
+        List<File> libs = new ArrayList<>();
+        libs.add(writeLibrary("b.dex", inputs.get(1)));
+        libs.add(writeLibrary("c.dex", inputs.get(2)));
+        libs.add(writeLibrary("d.dex", inputs.get(3)));
+
+        DexMergeHelper.mergeAll(inputs.get(0), libs, cacheDir, output);
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;", "Lp/C;", "Lq/D;"),
+                TestClasses.getClassNames(new Dex(output)));
+        File[] merged = listMerged(cacheDir);
+        assertEquals(1, merged.length);
+        assertEquals(Arrays.asList("Lp/B;", "Lp/C;", "Lq/D;"),
+                TestClasses.getClassNames(new Dex(merged[0])));
+
+        //the libraries are not merged again
+        assertTrue(merged[0].setLastModified(1000));
+        assertTrue(output.delete());
+        DexMergeHelper.mergeAll(inputs.get(4), libs, cacheDir, output);
+        assertEquals(1000, merged[0].lastModified());
+        assertEquals(Arrays.asList("Lp/B;", "Lp/C;", "Lq/D;", "Lq/E;"),
+                TestClasses.getClassNames(new Dex(output)));
+
+        //another library list has another key
+        libs.remove(2);
+        DexMergeHelper.mergeAll(inputs.get(0), libs, cacheDir, output);
+        assertEquals(2, listMerged(cacheDir).length);
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;", "Lp/C;"),
+                TestClasses.getClassNames(new Dex(output)));
+    }
+
+    public void testMergeAllWithoutLibraries() throws IOException {
+        File output = new File(dir, "classes.dex");
+        DexMergeHelper.mergeAll(inputs.get(0), new ArrayList<File>(), dir, output);
+        assertEquals(Arrays.asList("Lp/A;"), TestClasses.getClassNames(new Dex(output)));
+    }
+}
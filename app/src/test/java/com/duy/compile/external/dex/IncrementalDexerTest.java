@@ -0,0 +1,130 @@
+package com.duy.compile.external.dex;
+
+import com.android.dex.Dex;
+import com.duy.TestFiles;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class IncrementalDexerTest extends TestCase {
+    private File dir;
+    private File dirCache;
+    private File dirFragments;
+    private Map<String, byte[]> classes;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = TestFiles.createTempDir("dexer");
+        dirCache = new File(dir, "cache");
+        dirFragments = new File(dirCache, "fragments");
+        classes = TestClasses.compile(
+                "package p; public class A { B b; }",
+                "package p; public class B {}",
+                "package q; public class C {}");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestFiles.delete(dir);
+        super.tearDown();
+    }
+
+    private Dex dex() throws IOException {
+        return new IncrementalDexer(new HashMap<>(classes), dirCache).dex();
+    }
+
+    private File getFragment(String className) throws IOException {
+        return new File(dirFragments, DexMergeHelper.md5(classes.get(className)) + ".dex");
+    }
+
+    /**
+     * Mark the fragments, the fragments which are written again lose the mark
+     */
+    private void markFragments() {
+        for (File fragment : dirFragments.listFiles()) {
+            assertTrue(fragment.setLastModified(1000));
+        }
+    }
+
+    public void testUnchanged() throws IOException {
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;", "Lq/C;"), TestClasses.getClassNames(dex()));
+        assertEquals(3, dirFragments.list().length);
+        markFragments();
+        File output = new File(dirCache, "classes.dex");
+        assertTrue(output.setLastModified(1000));
+
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;", "Lq/C;"), TestClasses.getClassNames(dex()));
+        for (String className : classes.keySet()) {
+            assertEquals(1000, getFragment(className).lastModified());
+        }
+        //no bucket changed, the output of the last build is used
+        assertEquals(1000, output.lastModified());
+    }
+
+    public void testChanged() throws IOException {
+        dex();
+        File oldFragment = getFragment("p/B");
+        markFragments();
+        classes.putAll(TestClasses.compile("package p; public class B { int changed; }"));
+
+        Dex dex = dex();
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;", "Lq/C;"), TestClasses.getClassNames(dex));
+        assertFalse(oldFragment.exists());
+        assertTrue(getFragment("p/B").exists());
+        assertEquals(1000, getFragment("p/A").lastModified());
+        assertEquals(1000, getFragment("q/C").lastModified());
+        //the new field is in the output
+        assertTrue(dex.strings().contains("changed"));
+    }
+
+    public void testRemoved() throws IOException {
+        dex();
+        File fragment = getFragment("q/C");
+        classes.remove("q/C");
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;"), TestClasses.getClassNames(dex()));
+        assertFalse(fragment.exists());
+        assertEquals(2, dirFragments.list().length);
+    }
+
+    public void testCorruptIndex() throws IOException {
+        dex();
+        //the index ends after the count of the entries
+        FileOutputStream out = new FileOutputStream(new File(dirCache, "index"));
+        out.write(new byte[]{0, 0, 0, 1, 0, 0, 0, 3});
+        out.close();
+        //the bucket of the removed class must be merged again without the index
+        classes.remove("q/C");
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;"), TestClasses.getClassNames(dex()));
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;"), TestClasses.getClassNames(dex()));
+    }
+
+    public void testMissingIndex() throws IOException {
+        dex();
+        assertTrue(new File(dirCache, "index").delete());
+        classes.remove("p/A");
+        assertEquals(Arrays.asList("Lp/B;", "Lq/C;"), TestClasses.getClassNames(dex()));
+    }
+
+    public void testDirectory() throws IOException {
+        File dirClasses = new File(dir, "classes");
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            File file = new File(dirClasses, entry.getKey() + ".class");
+            file.getParentFile().mkdirs();
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(entry.getValue());
+            out.close();
+        }
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;", "Lq/C;"),
+                TestClasses.getClassNames(new IncrementalDexer(dirClasses, dirCache).dex()));
+        assertTrue(new File(dirClasses, "p/A.class").delete());
+        assertEquals(Arrays.asList("Lp/B;", "Lq/C;"),
+                TestClasses.getClassNames(new IncrementalDexer(dirClasses, dirCache).dex()));
+    }
+}
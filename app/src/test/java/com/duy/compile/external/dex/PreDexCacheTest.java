@@ -0,0 +1,129 @@
+package com.duy.compile.external.dex;
+
+import com.android.dex.Dex;
+import com.android.dx.Version;
+import com.duy.TestFiles;
+import com.duy.compile.external.android.util.Util;
+import com.duy.compile.external.java.Jar;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+public class PreDexCacheTest extends TestCase {
+    private File dir;
+    private File cacheDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = TestFiles.createTempDir("predex");
+        //no app wide cache dir is set, the fallback dir is the cache
+        cacheDir = new File(dir, "cache");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestFiles.delete(dir);
+        super.tearDown();
+    }
+
+    private File createJar(String name, String... sources) throws IOException {
+        File jar = new File(dir, name);
+        Jar.createJarArchive(jar, TestClasses.compile(sources));
+        return jar;
+    }
+
+    public void testHit() throws Exception {
+        File lib = createJar("lib.jar", "package p; public class A {}", "package p; class B {}");
+        File dexed = PreDexCache.dex(lib, cacheDir);
+        assertEquals(Util.getMD5Checksum(lib) + "-"
+                + Integer.toHexString(Version.VERSION.hashCode()) + ".dex", dexed.getName());
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;"), TestClasses.getClassNames(new Dex(dexed)));
+
+        //the same content at another path is not dexed again
+        assertTrue(dexed.setLastModified(1000));
+        File copy = new File(dir, "copy.jar");
+        assertTrue(lib.renameTo(copy));
+        assertEquals(dexed, PreDexCache.dex(copy, cacheDir));
+        assertEquals(1000, dexed.lastModified());
+    }
+
+    public void testVerboseOutput() throws Exception {
+        File lib = createJar("lib.jar", "package p; public class A {}");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        File dexed = PreDexCache.dex(lib, cacheDir, new PrintStream(out, true));
+        assertTrue(out.toString(), out.toString().contains("p/A.class"));
+        //the verbose option is not part of the cache key
+        assertEquals(dexed, PreDexCache.dex(lib, cacheDir));
+    }
+
+    public void testMissAfterContentChange() throws Exception {
+        File lib = createJar("lib.jar", "package p; public class A {}");
+        long modified = lib.lastModified();
+        File dexed = PreDexCache.dex(lib, cacheDir);
+
+        createJar("lib.jar", "package p; public class A { int changed; }");
+        //the hash is remembered by path, length and time, the time is changed for sure
+        assertTrue(lib.setLastModified(modified - 10000));
+        File changed = PreDexCache.dex(lib, cacheDir);
+        assertFalse(dexed.equals(changed));
+        assertEquals(Arrays.asList("Lp/A;"), TestClasses.getClassNames(new Dex(changed)));
+        assertTrue(dexed.exists());
+    }
+
+    public void testLeftoverTemp() throws Exception {
+        File lib = createJar("lib.jar", "package p; public class A {}");
+        String name = PreDexCache.dex(lib, new File(dir, "first")).getName();
+
+        //a build which was killed while dx wrote the entry
+        cacheDir.mkdirs();
+        File temp = new File(cacheDir, name.replace(".dex", "-123.dex"));
+        FileOutputStream out = new FileOutputStream(temp);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+        //an empty entry is not a hit either
+        File empty = new File(cacheDir, name);
+        assertTrue(empty.createNewFile());
+
+        File dexed = PreDexCache.dex(lib, cacheDir);
+        assertEquals(empty, dexed);
+        assertEquals(Arrays.asList("Lp/A;"), TestClasses.getClassNames(new Dex(dexed)));
+        assertEquals(3, temp.length());
+        assertEquals(2, cacheDir.list().length);
+    }
+
+    public void testConcurrentBuilds() throws Exception {
+        final File lib = createJar("lib.jar", "package p; public class A {}", "package p; class B {}");
+        final File[] dexed = new File[4];
+        final Exception[] errors = new Exception[dexed.length];
+        Thread[] threads = new Thread[dexed.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        dexed[index] = PreDexCache.dex(lib, cacheDir);
+                    } catch (Exception e) {
+                        errors[index] = e;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            assertNull(errors[i]);
+            assertEquals(dexed[0], dexed[i]);
+        }
+        assertEquals(Arrays.asList("Lp/A;", "Lp/B;"), TestClasses.getClassNames(new Dex(dexed[0])));
+        //no temporary file is left
+        assertEquals(1, cacheDir.list().length);
+    }
+}
@@ -0,0 +1,101 @@
+package com.duy.compile.external.dex;
+
+import com.android.dex.ClassDef;
+import com.android.dex.Dex;
+import com.duy.compile.external.java.MemoryJavaFileManager;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.List;
+import com.sun.tools.javac.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Class files for the dex tests, compiled in memory by the javac of the app, dx does not read
+ * the class files of a newer javac
+ */
+class TestClasses {
+    private static final Pattern PACKAGE = Pattern.compile("package\\s+([\\w.]+)\\s*;");
+    private static final Pattern CLASS = Pattern.compile("(?:class|interface)\\s+(\\w+)");
+
+    /**
+     * @param sources the text of each source, e.g. "package p; public class A {}"
+     * @return internal class name -> class file
+     */
+    static Map<String, byte[]> compile(String... sources) throws IOException {
+        File rtJar = new File(System.getProperty("java.home"), "lib" + File.separator + "rt.jar");
+        if (!rtJar.isFile()) throw new IOException("needs the rt.jar of a JDK 8");
+        Map<String, byte[]> classes = new HashMap<>();
+        Context context = new Context();
+        StringWriter log = new StringWriter();
+        context.put(Log.outKey, new PrintWriter(log));
+        MemoryJavaFileManager.preRegister(context, classes);
+        MemoryJavaFileManager fileManager = (MemoryJavaFileManager) context.get(JavaFileManager.class);
+        fileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH, Collections.singletonList(rtJar));
+        fileManager.setLocation(StandardLocation.CLASS_PATH, Collections.<File>emptyList());
+        fileManager.setLocation(StandardLocation.SOURCE_PATH, Collections.<File>emptyList());
+
+        ArrayList<JavaFileObject> files = new ArrayList<>();
+        for (String source : sources) {
+            files.add(new Source(getClassName(source), source));
+        }
+        JavaCompiler compiler = JavaCompiler.instance(context);
+        compiler.enterTrees(compiler.parseFiles(List.from(files.toArray(new JavaFileObject[0]))));
+        compiler.generate(compiler.desugar(compiler.flow(compiler.attribute(compiler.todo))));
+        int errors = compiler.errorCount();
+        compiler.close();
+        fileManager.close();
+        if (errors > 0) throw new IOException(log.toString());
+        return classes;
+    }
+
+    private static String getClassName(String source) {
+        Matcher packageName = PACKAGE.matcher(source);
+        Matcher className = CLASS.matcher(source);
+        if (!className.find()) throw new IllegalArgumentException(source);
+        return packageName.find()
+                ? packageName.group(1).replace('.', '/') + '/' + className.group(1)
+                : className.group(1);
+    }
+
+    /**
+     * @return the sorted type names of the classes defined in the dex, e.g. "Lp/A;"
+     */
+    static java.util.List<String> getClassNames(Dex dex) {
+        java.util.List<String> names = new ArrayList<>();
+        for (ClassDef classDef : dex.classDefs()) {
+            names.add(dex.typeNames().get(classDef.getTypeIndex()));
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static class Source extends SimpleJavaFileObject {
+        private final String text;
+
+        Source(String name, String text) {
+            super(URI.create("string:///" + name + ".java"), Kind.SOURCE);
+            this.text = text;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return text;
+        }
+    }
+}
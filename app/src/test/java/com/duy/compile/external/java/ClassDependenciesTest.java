@@ -0,0 +1,92 @@
+package com.duy.compile.external.java;
+
+import junit.framework.TestCase;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+public class ClassDependenciesTest extends TestCase {
+    private static final String CONSTANT = "constant";
+
+    private ArrayList<StringBuilder> field;
+
+    private ClassDependencies read(Class<?> clazz) throws IOException {
+        String name = clazz.getName();
+        name = name.substring(name.lastIndexOf('.') + 1) + ".class";
+        DataInputStream in = new DataInputStream(clazz.getResourceAsStream(name));
+        try {
+            return ClassDependencies.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testClassName() throws IOException {
+        ClassDependencies dependencies = read(ClassDependenciesTest.class);
+        assertEquals("com/duy/compile/external/java/ClassDependenciesTest", dependencies.getClassName());
+        assertEquals("ClassDependenciesTest.java", dependencies.getSourceFile());
+    }
+
+    public void testReferences() throws IOException {
+        ClassDependencies dependencies = read(ClassDependenciesTest.class);
+        assertTrue(dependencies.getReferences().contains("junit/framework/TestCase"));
+        assertTrue(dependencies.getReferences().contains("com/duy/compile/external/java/ClassDependencies"));
+        //only used in the generic signature of a field
+        assertTrue(dependencies.getReferences().contains("java/lang/StringBuilder"));
+        assertFalse(dependencies.getReferences().contains(dependencies.getClassName()));
+    }
+
+    public void testAbiHash() throws IOException {
+        long abi = read(First.class).getAbiHash();
+        //method bodies, private members and the order of the members are not part of it
+        assertEquals(abi, read(SameAbi.class).getAbiHash());
+        assertFalse(abi == read(OtherReturnType.class).getAbiHash());
+        assertFalse(abi == read(OtherConstant.class).getAbiHash());
+    }
+
+    static class First {
+        public static final int CONSTANT = 1;
+
+        public int value() {
+            return 1;
+        }
+
+        public void other() {
+        }
+    }
+
+    static class SameAbi {
+        public static final int CONSTANT = 1;
+        private String hidden;
+
+        public void other() {
+        }
+
+        public int value() {
+            return 2;
+        }
+    }
+
+    static class OtherReturnType {
+        public static final int CONSTANT = 1;
+
+        public long value() {
+            return 1;
+        }
+
+        public void other() {
+        }
+    }
+
+    static class OtherConstant {
+        public static final int CONSTANT = 2;
+
+        public int value() {
+            return 1;
+        }
+
+        public void other() {
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.duy.compile.external.java;
+
+import com.duy.TestFiles;
+import com.duy.project.file.java.JavaProjectFolder;
+import com.sun.tools.javac.main.Main;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+
+public class IncrementalJavaCompilerTest extends TestCase {
+    private File dir;
+    private File rtJar;
+    private JavaProjectFolder project;
+    private JavaProjectFolder other;
+    private String output;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        rtJar = new File(System.getProperty("java.home"), "lib" + File.separator + "rt.jar");
+        assertTrue("needs the rt.jar of a JDK 8", rtJar.isFile());
+        dir = File.createTempFile("projects", "");
+        dir.delete();
+        project = new JavaProjectFolder(dir, "p.Main", "p", "project", rtJar.getPath());
+        other = new JavaProjectFolder(dir, "q.Other", "q", "other", rtJar.getPath());
+        write(project, "p/Main", "package p;\n" +
+                "public class Main { int x = Helper.value(); }\n");
+        write(project, "p/Helper", "package p;\n" +
+                "public class Helper { static int value() { return 1; } }\n");
+        write(other, "q/Other", "package q;\n" +
+                "public class Other {}\n");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestFiles.delete(dir);
+        super.tearDown();
+    }
+
+    private static void write(JavaProjectFolder project, String name, String text) throws IOException {
+        File file = new File(project.getDirSrcJava(), name.replace('/', File.separatorChar) + ".java");
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(text.getBytes("UTF-8"));
+        out.close();
+    }
+
+    private int compile(JavaProjectFolder project) throws IOException {
+        StringWriter out = new StringWriter();
+        final StringBuilder errors = new StringBuilder();
+        DiagnosticListener<JavaFileObject> listener = new DiagnosticListener<JavaFileObject>() {
+            @Override
+            public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+                //the class files of the jdk 8 are newer than the compiler
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    errors.append(diagnostic.getCode()).append('\n');
+                }
+            }
+        };
+        int status = new IncrementalJavaCompiler(project, new PrintWriter(out), listener).compile();
+        output = errors + out.toString();
+        return status;
+    }
+
+    /**
+     * A new folder of the same project has no classes in memory, like after a restart of the app
+     */
+    private void dropClasses() {
+        project = new JavaProjectFolder(dir, "p.Main", "p", "project", rtJar.getPath());
+        assertNull(IncrementalJavaCompiler.getClasses(project));
+    }
+
+    private String getClassText(String className) throws IOException {
+        return new String(IncrementalJavaCompiler.getClasses(project).get(className), "ISO-8859-1");
+    }
+
+    public void testRestart() throws IOException {
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Compile all 2 java files"));
+        assertTrue(project.getJavacClassesFile().isFile());
+        dropClasses();
+
+        //only the changed source and its dependent are compiled
+        write(project, "p/Helper", "package p;\n" +
+                "public class Helper { static int value() { return 2; } static int changed; }\n");
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Read 2 classes of the last build"));
+        assertTrue(output, output.contains("Incremental compile: 1 changed, 0 deleted, 1 dependent"));
+        assertFalse(output, output.contains("Compile all"));
+        assertEquals(2, IncrementalJavaCompiler.getClasses(project).size());
+        assertTrue(getClassText("p/Helper").contains("changed"));
+
+        //the saved classes are those of the last build
+        dropClasses();
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Java sources are up to date"));
+        assertTrue(getClassText("p/Helper").contains("changed"));
+    }
+
+    public void testLostClasses() throws IOException {
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        dropClasses();
+        //a build which was killed after the state was written
+        assertTrue(project.getJavacClassesFile().delete());
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Compile all"));
+
+        dropClasses();
+        FileOutputStream out = new FileOutputStream(project.getJavacClassesFile());
+        out.write(new byte[]{0, 0, 0, 1, 0, 0, 0, 3});
+        out.close();
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Compile all"));
+        assertEquals(2, IncrementalJavaCompiler.getClasses(project).size());
+    }
+
+    public void testChangedAndDependents() throws IOException {
+        write(project, "p/Other", "package p;\n" +
+                "public class Other {}\n");
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Compile all 3 java files"));
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Java sources are up to date"));
+
+        //Main uses Helper, Other does not
+        write(project, "p/Helper", "package p;\n" +
+                "public class Helper { static int value() { return 3; } }\n");
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Incremental compile: 1 changed, 0 deleted, 1 dependent"));
+
+        //a source without dependents
+        write(project, "p/Other", "package p;\n" +
+                "public class Other { int changed; }\n");
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Incremental compile: 1 changed, 0 deleted, 0 dependent"));
+        assertTrue(getClassText("p/Other").contains("changed"));
+    }
+
+    public void testOtherProject() throws IOException {
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertEquals(output, Main.EXIT_OK, compile(other));
+        //each project keeps its own classes
+        assertEquals(2, IncrementalJavaCompiler.getClasses(project).size());
+        assertEquals(1, IncrementalJavaCompiler.getClasses(other).size());
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Java sources are up to date"));
+    }
+
+    public void testIndirectDependents() throws IOException {
+        write(project, "p/Top", "package p;\n" +
+                "public class Top { Main main = new Main(); }\n");
+        assertEquals(output, Main.EXIT_OK, compile(project));
+
+        //Top uses Main which uses Helper, the ABI of Main does not change
+        write(project, "p/Helper", "package p;\n" +
+                "public class Helper { static int value() { return 3; } }\n");
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Incremental compile: 1 changed, 0 deleted, 1 dependent"));
+        assertFalse(output, output.contains("ABI"));
+
+        //a new method of Main is compiled against by Top
+        write(project, "p/Main", "package p;\n" +
+                "public class Main { int x = Helper.value(); public void added() {} }\n");
+        write(project, "p/Helper", "package p;\n" +
+                "public class Helper { static int value() { return 4; } }\n");
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Incremental compile: 2 changed, 0 deleted, 1 dependent"));
+    }
+
+    /**
+     * javac inlines constants, the class files of their users do not refer to their classes
+     */
+    public void testConstants() throws IOException {
+        write(project, "p/Helper", "package p;\n" +
+                "public class Helper { public static final String NAME = \"first\"; static int value() { return 1; } }\n");
+        write(project, "p/Constant", "package p;\n" +
+                "public class Constant { public static final String TEXT = Helper.NAME + \"!\"; }\n");
+        write(project, "p/Top", "package p;\n" +
+                "public class Top { String text = Constant.TEXT; }\n");
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(getClassText("p/Top").contains("first!"));
+
+        //Constant uses Helper and gets a new value, so Top is compiled in a second round
+        write(project, "p/Helper", "package p;\n" +
+                "public class Helper { public static final String NAME = \"second\"; static int value() { return 1; } }\n");
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Incremental compile: 1 changed, 0 deleted, 2 dependent"));
+        assertTrue(output, output.contains("compile 1 more dependent sources"));
+        assertFalse(output, output.contains("Compile all"));
+        assertTrue(getClassText("p/Constant").contains("second!"));
+        assertTrue(getClassText("p/Top").contains("second!"));
+    }
+
+    /**
+     * The platform jar is replaced at the same path, e.g. by an update of the app
+     */
+    public void testReplacedBootClasspath() throws IOException {
+        File platform = new File(dir, "android.jar");
+        FileInputStream in = new FileInputStream(rtJar);
+        FileOutputStream out = new FileOutputStream(platform);
+        try {
+            byte[] buffer = new byte[65536];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+        JavaProjectFolder project = new JavaProjectFolder(dir, "p.Main", "p", "project", platform.getPath());
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Java sources are up to date"));
+
+        assertTrue(platform.setLastModified(platform.lastModified() - 10000));
+        assertEquals(output, Main.EXIT_OK, compile(project));
+        assertTrue(output, output.contains("Compile all 2 java files"));
+    }
+}
@@ -0,0 +1,212 @@
+package com.duy.compile.external.java;
+
+import android.support.annotation.NonNull;
+
+import com.duy.TestFiles;
+import com.sun.tools.javac.code.Symtab;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.main.Main;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Names;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+public class JavacServiceTest extends TestCase {
+    private File dir;
+    private File dirSrc;
+    private File outputDir;
+    private List<String> options;
+    private Map<String, byte[]> classes;
+
+    private String output;
+    private StringBuilder errors;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        File rtJar = new File(System.getProperty("java.home"), "lib" + File.separator + "rt.jar");
+        assertTrue("needs the rt.jar of a JDK 8", rtJar.isFile());
+        dir = File.createTempFile("javac", "");
+        dir.delete();
+        dirSrc = new File(dir, "src");
+        outputDir = new File(dir, "classes");
+        dirSrc.mkdirs();
+        outputDir.mkdirs();
+        //every class file which is read is printed
+        options = Arrays.asList("-bootclasspath", rtJar.getPath(), "-verbose");
+        classes = new HashMap<>();
+        //each test starts with a new context
+        JavacService.trimMemory();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestFiles.delete(dir);
+        super.tearDown();
+    }
+
+    private File write(String name, String text) throws IOException {
+        File file = new File(dirSrc, name.replace('/', File.separatorChar) + ".java");
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(text.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+
+    /**
+     * Compile in the warm context, the sources which are not given are read from the class map
+     */
+    private int compile(File... sources) {
+        StringWriter out = new StringWriter();
+        errors = new StringBuilder();
+        DiagnosticListener<JavaFileObject> listener = new DiagnosticListener<JavaFileObject>() {
+            @Override
+            public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+                //the class files of the jdk 8 are newer than the compiler
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    errors.append(diagnostic.getCode()).append('\n');
+                }
+            }
+        };
+        int status = JavacService.compile(options, Collections.<File>emptyList(),
+                Collections.<File>emptyList(), outputDir, classes, Arrays.asList(sources),
+                new PrintWriter(out), listener, null);
+        output = out.toString();
+        return status;
+    }
+
+    /**
+     * @return the class files of the boot classpath which were read by the last compilation
+     */
+    private int countPlatformReads() {
+        int count = 0;
+        for (String line : output.split("\n")) {
+            if (line.startsWith("[loading") && line.contains("rt.jar")) count++;
+        }
+        return count;
+    }
+
+    public void testEdit() throws IOException {
+        File a = write("p/A", "package p;\n" +
+                "public class A { public static String name() { return \"a\"; } }\n");
+        File b = write("p/B", "package p;\n" +
+                "public class B { String s = A.name().trim(); }\n");
+        assertEquals(errors + output, Main.EXIT_OK, compile(a, b));
+        assertTrue(classes.containsKey("p/A"));
+        assertTrue(classes.containsKey("p/B"));
+        assertTrue(output, countPlatformReads() > 0);
+
+        //the same sources again, no duplicate class and nothing read from the boot classpath
+        assertEquals(errors + output, Main.EXIT_OK, compile(a, b));
+        assertEquals("", errors.toString());
+        assertEquals(output, 0, countPlatformReads());
+
+        //the symbol of the old A must not be seen by B, the new A is read from the map
+        write("p/A", "package p;\n" +
+                "public class A { public static String title() { return \"a\"; } }\n");
+        assertEquals(errors + output, Main.EXIT_OK, compile(a));
+        assertEquals(Main.EXIT_ERROR, compile(b));
+        assertEquals("compiler.err.cant.resolve.location.args\n", errors.toString());
+        assertEquals(output, 0, countPlatformReads());
+
+        write("p/B", "package p;\n" +
+                "public class B { String s = A.title().trim(); }\n");
+        assertEquals(errors + output, Main.EXIT_OK, compile(b));
+        assertEquals("", errors.toString());
+        assertEquals(output, 0, countPlatformReads());
+    }
+
+    public void testErrorThenClean() throws IOException {
+        File a = write("q/A", "package q;\n" +
+                "public class A { int x = \"s\"; }\n");
+        assertEquals(Main.EXIT_ERROR, compile(a));
+        assertEquals("compiler.err.prob.found.req\n", errors.toString());
+        assertFalse(classes.containsKey("q/A"));
+
+        //neither the error nor the class entered by the failed compilation are left over
+        write("q/A", "package q;\n" +
+                "public class A { int x = \"s\".length(); }\n");
+        assertEquals(errors + output, Main.EXIT_OK, compile(a));
+        assertEquals("", errors.toString());
+        assertTrue(classes.containsKey("q/A"));
+        assertEquals(output, 0, countPlatformReads());
+
+        assertEquals(errors + output, Main.EXIT_OK, compile(a));
+        assertEquals("", errors.toString());
+    }
+
+    /**
+     * Enter a source in the editor context
+     *
+     * @return the context of the task
+     */
+    private Context enterInEditorContext(final String source) {
+        File rtJar = new File(System.getProperty("java.home"), "lib" + File.separator + "rt.jar");
+        final Context[] result = new Context[1];
+        Boolean entered = JavacService.runInEditorContext(rtJar, Collections.<File>emptyList(), dirSrc,
+                new DiagnosticListener<JavaFileObject>() {
+                    @Override
+                    public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+                        if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                            errors.append(diagnostic.getCode()).append('\n');
+                        }
+                    }
+                },
+                new JavacService.EditorTask<Boolean>() {
+                    @Override
+                    public Boolean run(@NonNull Context context, boolean sourcesKept) {
+                        result[0] = context;
+                        JavaCompiler compiler = JavaCompiler.instance(context);
+                        compiler.enterTrees(com.sun.tools.javac.util.List.of(
+                                compiler.parse(new StringSource(source))));
+                        return Symtab.instance(context).classes.containsKey(
+                                Names.instance(context).fromString("e.E"));
+                    }
+                });
+        assertEquals(Boolean.TRUE, entered);
+        return result[0];
+    }
+
+    public void testEditorContext() {
+        errors = new StringBuilder();
+        Context context = enterInEditorContext("package e; class E {}");
+        //the symbols of the source are dropped, the next task can enter it again
+        assertSame(context, enterInEditorContext("package e; class E { int x; }"));
+        assertEquals("", errors.toString());
+
+        JavacService.trimMemory();
+        assertNotSame(context, enterInEditorContext("package e; class E {}"));
+    }
+
+    private static class StringSource extends SimpleJavaFileObject {
+        private final String content;
+
+        StringSource(String content) {
+            super(URI.create("string:///E.java"), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.duy.compile.external.java;
+
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.List;
+import com.sun.tools.javac.util.Log;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardLocation;
+
+public class MemoryJavaFileManagerTest extends TestCase {
+    private File rtJar;
+    private File outputDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        rtJar = new File(System.getProperty("java.home"), "lib" + File.separator + "rt.jar");
+        assertTrue("needs the rt.jar of a JDK 8", rtJar.isFile());
+        outputDir = File.createTempFile("classes", "");
+        outputDir.delete();
+        outputDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        outputDir.delete();
+        super.tearDown();
+    }
+
+    /**
+     * @return the errors, the other sources are not on the source path, their classes are read
+     * from the map
+     */
+    private String compile(HashMap<String, byte[]> classes, JavaFileObject... sources)
+            throws IOException {
+        final StringBuilder errors = new StringBuilder();
+        Context context = new Context();
+        context.put(Log.outKey, new PrintWriter(new StringWriter()));
+        context.put(DiagnosticListener.class, new DiagnosticListener<JavaFileObject>() {
+            @Override
+            public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+                //the class files of the jdk 8 are newer than the compiler
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    errors.append(diagnostic.getCode()).append('\n');
+                }
+            }
+        });
+        MemoryJavaFileManager.preRegister(context, classes);
+        MemoryJavaFileManager fileManager = (MemoryJavaFileManager) context.get(JavaFileManager.class);
+        fileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH, Collections.singletonList(rtJar));
+        fileManager.setLocation(StandardLocation.CLASS_PATH, Collections.<File>emptyList());
+        fileManager.setLocation(StandardLocation.SOURCE_PATH, Collections.<File>emptyList());
+        fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(outputDir));
+        JavaCompiler compiler = JavaCompiler.instance(context);
+        compiler.enterTrees(compiler.parseFiles(List.from(sources)));
+        compiler.generate(compiler.desugar(compiler.flow(compiler.attribute(compiler.todo))));
+        compiler.close();
+        fileManager.close();
+        return errors.toString();
+    }
+
+    public void testClassesInMemory() throws IOException {
+        JavaFileObject helper = new Source("p/Helper",
+                "package p;\npublic class Helper { public static int twice(int x) { return 2 * x; } }\n");
+        JavaFileObject main = new Source("p/Main", "package p;\npublic class Main {\n" +
+                "    Runnable r = new Runnable() { public void run() { Helper.twice(1); } };\n}\n");
+        HashMap<String, byte[]> classes = new HashMap<>();
+        assertEquals("", compile(classes, helper, main));
+        assertEquals(classes.keySet().toString(), 3, classes.size());
+        assertTrue(classes.containsKey("p/Main$1"));
+        byte[] helperClass = classes.get("p/Helper");
+        //0xCAFEBABE
+        assertEquals((byte) 0xCA, helperClass[0]);
+        //nothing is written to the output directory
+        assertEquals(0, outputDir.list().length);
+
+        //Helper is only found in memory
+        classes.remove("p/Main");
+        classes.remove("p/Main$1");
+        main = new Source("p/Main", "package p;\npublic class Main { int x = Helper.twice(1); }\n");
+        assertEquals("", compile(classes, main));
+        assertEquals(2, classes.size());
+        assertSame(helperClass, classes.get("p/Helper"));
+
+        classes.remove("p/Helper");
+        assertTrue(compile(classes, main).contains("compiler.err.cant.resolve"));
+        assertEquals(0, outputDir.list().length);
+    }
+
+    private static class Source extends SimpleJavaFileObject {
+        private final String text;
+
+        Source(String name, String text) {
+            super(URI.create("string:///" + name + ".java"), Kind.SOURCE);
+            this.text = text;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return text;
+        }
+    }
+}
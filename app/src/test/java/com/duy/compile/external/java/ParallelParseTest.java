@@ -0,0 +1,138 @@
+package com.duy.compile.external.java;
+
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.util.ConcurrentNameTable;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.List;
+import com.sun.tools.javac.util.Log;
+import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.util.Names;
+import com.sun.tools.javac.util.Options;
+
+import junit.framework.TestCase;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+public class ParallelParseTest extends TestCase {
+    private static final int FILE_COUNT = 60;
+
+    private static ArrayList<JavaFileObject> createSources() {
+        ArrayList<JavaFileObject> sources = new ArrayList<>();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            StringBuilder text = new StringBuilder("package p" + (i % 5) + ";\n");
+            text.append("import java.util.List;\n");
+            text.append("public class C").append(i).append(" {\n");
+            for (int j = 0; j < 50; j++) {
+                text.append("    /** doc */\n");
+                text.append("    private int field").append(i * j).append(" = ").append(j).append(";\n");
+                text.append("    public String method").append(j).append("(List<String> a").append(i)
+                        .append(") { return \"s").append(i).append("\" + a").append(i).append(".size(); }\n");
+            }
+            if (i % 17 == 3) {
+                //syntax error
+                text.append("    int broken = ;\n");
+            }
+            text.append("}\n");
+            sources.add(new Source("C" + i, text.toString()));
+        }
+        return sources;
+    }
+
+    private static String parse(ArrayList<JavaFileObject> sources, boolean parallel,
+                                final StringBuilder diagnostics) {
+        Context context = new Context();
+        context.put(Log.outKey, new PrintWriter(new StringWriter()));
+        context.put(DiagnosticListener.class, new DiagnosticListener<JavaFileObject>() {
+            @Override
+            public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+                diagnostics.append(diagnostic.getSource().getName()).append(':')
+                        .append(diagnostic.getLineNumber()).append(':')
+                        .append(diagnostic.getStartPosition()).append('-')
+                        .append(diagnostic.getEndPosition()).append(':')
+                        .append(diagnostic.getCode()).append('\n');
+            }
+        });
+        if (parallel) {
+            Options.instance(context).put("parallelParse", "4");
+        }
+        JavacFileManager.preRegister(context);
+        JavaCompiler compiler = JavaCompiler.instance(context);
+        assertEquals(parallel, Names.instance(context).table instanceof ConcurrentNameTable);
+        List<JCCompilationUnit> trees = compiler.parseFiles(sources);
+        assertEquals(sources.size(), trees.size());
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < trees.size(); i++) {
+            assertSame(sources.get(i), trees.get(i).sourcefile);
+            text.append(trees.get(i)).append('\n');
+        }
+        assertEquals(diagnostics.toString().split("\n").length, compiler.errorCount());
+        return text.toString();
+    }
+
+    public void testSameTrees() {
+        ArrayList<JavaFileObject> sources = createSources();
+        StringBuilder sequentialDiagnostics = new StringBuilder();
+        StringBuilder parallelDiagnostics = new StringBuilder();
+        String sequential = parse(sources, false, sequentialDiagnostics);
+        String parallel = parse(sources, true, parallelDiagnostics);
+        assertEquals(sequential, parallel);
+        assertTrue(sequentialDiagnostics.length() > 0);
+        assertEquals(sequentialDiagnostics.toString(), parallelDiagnostics.toString());
+    }
+
+    public void testConcurrentNameTable() throws InterruptedException {
+        Context context = new Context();
+        Options.instance(context).put("parallelParse", "parallelParse");
+        final Names names = Names.instance(context);
+        final Name[][] entered = new Name[4][2000];
+        Thread[] threads = new Thread[entered.length];
+        for (int t = 0; t < threads.length; t++) {
+            final Name[] result = entered[t];
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = names.fromString("name" + i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < 2000; i++) {
+            for (Name[] result : entered) {
+                assertSame(entered[0][i], result[i]);
+            }
+            assertEquals("name" + i, entered[0][i].toString());
+        }
+        //keywords are entered first, they have the lowest indexes
+        assertTrue(names._class.getIndex() < entered[0][0].getIndex());
+        assertSame(names._class, names.fromString("class"));
+    }
+
+    private static class Source extends SimpleJavaFileObject {
+        private final String text;
+
+        Source(String name, String text) {
+            super(URI.create("string:///" + name + ".java"), Kind.SOURCE);
+            this.text = text;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.duy.compile.external.java;
+
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.file.SignatureArchive;
+import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.List;
+import com.sun.tools.javac.util.Log;
+import com.sun.tools.javac.util.Options;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardLocation;
+
+public class SignatureArchiveTest extends TestCase {
+    private static final String SOURCE = "package p;\n" +
+            "import java.util.*;\n" +
+            "import java.lang.annotation.*;\n" +
+            "@Retention(RetentionPolicy.RUNTIME)\n" +
+            "@interface Tag { ElementType value() default ElementType.TYPE; }\n" +
+            "public class Main extends AbstractList<String> implements RandomAccess {\n" +
+            "    public String get(int index) { return null; }\n" +
+            "    public int size() { return 0; }\n" +
+            "    void use(Map<String, List<Integer>> map, java.io.Reader reader) {\n" +
+            "        for (Map.Entry<String, List<Integer>> entry : map.entrySet()) {\n" +
+            "            int first = entry.getValue().get(0);\n" +
+            "        }\n" +
+            "        switch (1) { case Integer.MAX_VALUE: case 2147483647: break; }\n" +
+            "        reader.read();\n" +
+            "        new Date().getYear();\n" +
+            "        String s = Collections.max(Arrays.asList(1, 2));\n" +
+            "        Thread.State state = Thread.State.NEW;\n" +
+            "        Object o = new HashMap<String, String>().table;\n" +
+            "        char[] value = \"\".value;\n" +
+            "    }\n" +
+            "}\n";
+
+    private File rtJar;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        File jdkJar = new File(System.getProperty("java.home"), "lib" + File.separator + "rt.jar");
+        assertTrue("needs the rt.jar of a JDK 8", jdkJar.isFile());
+        File dir = File.createTempFile("platform", "");
+        dir.delete();
+        dir.mkdirs();
+        rtJar = new File(dir, "rt.jar");
+        copy(jdkJar, rtJar);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SignatureArchive.getArchiveFile(rtJar).delete();
+        rtJar.delete();
+        rtJar.getParentFile().delete();
+        super.tearDown();
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        InputStream in = new FileInputStream(from);
+        OutputStream out = new FileOutputStream(to);
+        try {
+            byte[] buf = new byte[65536];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    /**
+     * @return the diagnostics of the source, the platform classes are read from the archive
+     * if it is preferred and up to date
+     */
+    private String compile(boolean preferArchive, StringBuilder platformFiles) throws IOException {
+        final StringBuilder diagnostics = new StringBuilder();
+        Context context = new Context();
+        context.put(Log.outKey, new PrintWriter(new StringWriter()));
+        context.put(DiagnosticListener.class, new DiagnosticListener<JavaFileObject>() {
+            @Override
+            public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+                //the class files of the jdk 8 are newer than the compiler
+                if (!diagnostic.getCode().equals("compiler.warn.big.major.version")) {
+                    diagnostics.append(diagnostic.getLineNumber()).append(':')
+                            .append(diagnostic.getColumnNumber()).append(':')
+                            .append(diagnostic.getCode()).append('\n');
+                }
+            }
+        });
+        Options options = Options.instance(context);
+        options.put("-Xlint:deprecation", "-Xlint:deprecation");
+        //the exceptions are checked by the flow analysis
+        options.put("shouldStopPolicy", "FLOW");
+        if (preferArchive) {
+            options.put("signatureArchive", "signatureArchive");
+        }
+        JavacFileManager.preRegister(context);
+        JavacFileManager fileManager = (JavacFileManager) context.get(JavaFileManager.class);
+        fileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH, Collections.singletonList(rtJar));
+        fileManager.setLocation(StandardLocation.CLASS_PATH, Collections.<File>emptyList());
+        for (JavaFileObject file : fileManager.list(StandardLocation.PLATFORM_CLASS_PATH, "java.lang",
+                EnumSet.of(JavaFileObject.Kind.CLASS), false)) {
+            if (file.getName().contains("Object.class")) {
+                platformFiles.append(file.getName());
+            }
+        }
+
+        JavaCompiler compiler = JavaCompiler.instance(context);
+        JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///p/Main.java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return SOURCE;
+            }
+        };
+        compiler.enterTrees(compiler.parseFiles(List.of(source)));
+        compiler.flow(compiler.attribute(compiler.todo));
+        compiler.close();
+        return diagnostics.toString();
+    }
+
+    public void testSameDiagnostics() throws IOException {
+        StringBuilder jarFiles = new StringBuilder();
+        String expected = compile(false, jarFiles);
+        //the constant of the duplicate case, the deprecated method, the inferred type,
+        //the package private field, the private field and the checked exception
+        assertEquals(expected, 6, expected.split("\n").length);
+
+        File archive = SignatureArchive.update(rtJar);
+        assertTrue(archive.length() < rtJar.length() / 2);
+        StringBuilder archiveFiles = new StringBuilder();
+        String actual = compile(true, archiveFiles);
+        assertTrue(archiveFiles.toString(), archiveFiles.toString().contains(archive.getName()));
+        assertFalse(jarFiles.toString().contains(archive.getName()));
+        //the private field is not in the archive
+        assertEquals(expected.replace("19:26:compiler.err.report.access",
+                "19:26:compiler.err.cant.resolve.location"), actual);
+    }
+
+    public void testOutOfDate() throws IOException {
+        File archive = SignatureArchive.update(rtJar);
+        assertTrue(SignatureArchive.isUpToDate(rtJar, archive));
+        long modified = archive.lastModified();
+        assertEquals(archive, SignatureArchive.update(rtJar));
+        assertEquals(modified, archive.lastModified());
+
+        assertTrue(rtJar.setLastModified(rtJar.lastModified() - 10000));
+        assertFalse(SignatureArchive.isUpToDate(rtJar, archive));
+        StringBuilder platformFiles = new StringBuilder();
+        compile(true, platformFiles);
+        assertFalse(platformFiles.toString(), platformFiles.toString().contains(archive.getName()));
+
+        SignatureArchive.update(rtJar);
+        assertTrue(SignatureArchive.isUpToDate(rtJar, archive));
+    }
+}
@@ -0,0 +1,123 @@
+package com.duy.compile.external.java;
+
+import com.sun.tools.javac.file.RelativePath.RelativeDirectory;
+import com.sun.tools.javac.file.RelativePath.RelativeFile;
+import com.sun.tools.javac.file.ZipFileIndex;
+import com.sun.tools.javac.file.ZipFileIndexCache;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ZipFileIndexTest extends TestCase {
+    private static final int FILE_COUNT = 200;
+    private File zipFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        zipFile = File.createTempFile("index", ".jar");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile));
+        try {
+            for (int i = 0; i < FILE_COUNT; i++) {
+                byte[] data = getData(i);
+                ZipEntry entry = new ZipEntry("p" + (i % 7) + "/q/C" + i + ".class");
+                if (i % 2 == 0) {
+                    //stored
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(data.length);
+                    entry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(entry);
+                out.write(data);
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        zipFile.delete();
+        super.tearDown();
+    }
+
+    private static byte[] getData(int i) {
+        byte[] data = new byte[100 + i * 37];
+        for (int j = 0; j < data.length; j++) {
+            data[j] = (byte) ((j * 31 + i) % (i % 3 == 0 ? 251 : 5));
+        }
+        return data;
+    }
+
+    private ZipFileIndex getIndex(boolean mapped) throws IOException {
+        return new ZipFileIndexCache().getZipFileIndex(zipFile, null, false, null, false, mapped);
+    }
+
+    public void testSameAsUnmapped() throws IOException {
+        ZipFileIndex mapped = getIndex(true);
+        ZipFileIndex unmapped = getIndex(false);
+        assertTrue(mapped.isMapped());
+        assertFalse(unmapped.isMapped());
+
+        assertEquals(unmapped.getAllDirectories(), mapped.getAllDirectories());
+        for (RelativeDirectory directory : unmapped.getAllDirectories()) {
+            assertEquals(unmapped.getFiles(directory), mapped.getFiles(directory));
+            assertEquals(unmapped.getDirectories(directory), mapped.getDirectories(directory));
+            assertTrue(mapped.isDirectory(directory));
+        }
+        for (int i = 0; i < FILE_COUNT; i++) {
+            RelativeFile file = new RelativeFile("p" + (i % 7) + "/q/C" + i + ".class");
+            assertTrue(mapped.contains(file));
+            assertEquals(unmapped.length(file), mapped.length(file));
+            assertEquals(unmapped.getLastModified(file), mapped.getLastModified(file));
+            assertTrue(Arrays.equals(getData(i), mapped.read(file)));
+            assertTrue(Arrays.equals(getData(i), unmapped.read(file)));
+        }
+        assertFalse(mapped.contains(new RelativeFile("p0/q/Missing.class")));
+    }
+
+    public void testConcurrentReads() throws Exception {
+        final ZipFileIndex index = getIndex(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int round = 0; round < 20; round++) {
+                            for (int i = 0; i < FILE_COUNT; i++) {
+                                int n = (i + offset * 13) % FILE_COUNT;
+                                RelativeFile file = new RelativeFile("p" + (n % 7) + "/q/C" + n + ".class");
+                                if (!Arrays.equals(getData(n), index.read(file))) {
+                                    throw new AssertionError("wrong data of " + file);
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.duy.ide.autocomplete.dex;
+
+import com.duy.TestFiles;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ClassFileParserTest extends TestCase {
+    private static byte[] readClass(String internalName) throws IOException {
+        InputStream in = ClassLoader.getSystemResourceAsStream(internalName + ".class");
+        assertNotNull(internalName, in);
+        return TestFiles.readFully(in);
+    }
+
+    private static Map<String, ClassFileParser.MemberInfo> byName(List<ClassFileParser.MemberInfo> members) {
+        Map<String, ClassFileParser.MemberInfo> result = new HashMap<>();
+        for (ClassFileParser.MemberInfo member : members) {
+            result.put(member.name, member);
+        }
+        return result;
+    }
+
+    /**
+     * The class file of {@link Sample} as written by the compiler of the tests, its constant pool
+     * has long and double constants, which take two entries, strings and member references,
+     * the members have code, signature, exception and constant value attributes
+     */
+    public void testClassFile() throws IOException {
+        ClassFileParser.ClassInfo info = ClassFileParser.parse(
+                readClass(Sample.class.getName().replace('.', '/')));
+
+        assertEquals(Sample.class.getName(), info.name);
+        assertEquals(ArrayList.class.getName(), info.superName);
+        assertEquals(Arrays.asList(Serializable.class.getName(), Comparable.class.getName()),
+                info.interfaces);
+        assertEquals(ClassFileParser.ACC_PUBLIC, info.accessFlags & ClassFileParser.ACC_PUBLIC);
+
+        Map<String, ClassFileParser.MemberInfo> fields = byName(info.fields);
+        assertEquals("J", fields.get("LONG").descriptor);
+        assertEquals("D", fields.get("DOUBLE").descriptor);
+        assertEquals("Ljava/lang/String;", fields.get("name").descriptor);
+        assertEquals("[[I", fields.get("matrix").descriptor);
+        assertEquals("int[][]", ClassFileParser.getType(fields.get("matrix").descriptor));
+
+        Map<String, ClassFileParser.MemberInfo> methods = byName(info.methods);
+        assertTrue(methods.containsKey("<init>"));
+        assertTrue(methods.containsKey("<clinit>"));
+        ClassFileParser.MemberInfo sum = methods.get("sum");
+        assertEquals("(J[Ljava/lang/String;D)J", sum.descriptor);
+        assertEquals(Arrays.asList("long", "java.lang.String[]", "double"),
+                ClassFileParser.getParameterTypes(sum.descriptor));
+        assertEquals("long", ClassFileParser.getType(sum.descriptor));
+        assertEquals("java.util.List", ClassFileParser.getType(methods.get("names").descriptor));
+        assertEquals(Collections.<String>emptyList(),
+                ClassFileParser.getParameterTypes(methods.get("names").descriptor));
+        //the bridge method of compareTo(Sample)
+        boolean bridge = false;
+        for (ClassFileParser.MemberInfo method : info.methods) {
+            if (method.name.equals("compareTo")
+                    && (method.accessFlags & ClassFileParser.ACC_BRIDGE) != 0) {
+                assertEquals("(Ljava/lang/Object;)I", method.descriptor);
+                bridge = true;
+            }
+        }
+        assertTrue(bridge);
+    }
+
+    /**
+     * A class of the JDK with lambdas, its constant pool has method handles, method types and
+     * invokedynamic entries
+     */
+    public void testInvokeDynamic() throws IOException {
+        ClassFileParser.ClassInfo info = ClassFileParser.parse(readClass("java/util/stream/Collectors"));
+        assertEquals("java.util.stream.Collectors", info.name);
+        assertEquals("java.lang.Object", info.superName);
+        assertTrue(byName(info.methods).containsKey("toList"));
+        assertEquals("()Ljava/util/stream/Collector;", byName(info.methods).get("toList").descriptor);
+    }
+
+    public void testInterface() throws IOException {
+        ClassFileParser.ClassInfo info = ClassFileParser.parse(readClass("java/util/Map$Entry"));
+        assertEquals("java.util.Map$Entry", info.name);
+        assertEquals("java.lang.Object", info.superName);
+        assertTrue(info.fields.isEmpty());
+        assertEquals("()Ljava/lang/Object;", byName(info.methods).get("getKey").descriptor);
+    }
+
+    public void testNotAClassFile() {
+        try {
+            ClassFileParser.parse(new byte[]{'P', 'K', 3, 4, 0, 0, 0, 0});
+            fail();
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    @SuppressWarnings("unused")
+    public static class Sample extends ArrayList<String> implements Serializable, Comparable<Sample> {
+        public static final long LONG = 1L << 40;
+        public static final double DOUBLE = 0.5;
+        private static final String TEXT = "text";
+        private static long counter = System.currentTimeMillis();
+        public String name = TEXT;
+        protected int[][] matrix;
+
+        public long sum(long start, String[] values, double factor) throws IOException {
+            long result = start + LONG + counter;
+            for (String value : values) {
+                result += (long) (value.length() * factor * DOUBLE);
+            }
+            return result;
+        }
+
+        public List<String> names() {
+            return this;
+        }
+
+        @Override
+        public int compareTo(Sample o) {
+            return name.compareTo(o.name);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.duy.ide.autocomplete.dex;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class SimpleNameIndexTest extends TestCase {
+    private SimpleNameIndex index;
+    private int[] result = new int[10];
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        index = new SimpleNameIndex(Arrays.asList("java.util.ArrayList", "java.util.Arrays",
+                "java.util.ArrayDeque", "java.lang.ArrayIndexOutOfBoundsException",
+                "java.util.Map$Entry", "java.util.LinkedList", "java.lang.String"));
+    }
+
+    private String[] find(String query) {
+        int count = index.find(query, result);
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = index.getClassName(result[i]);
+        }
+        return names;
+    }
+
+    public void testPrefix() {
+        assertEquals(Arrays.asList("java.util.Arrays", "java.util.ArrayList",
+                "java.util.ArrayDeque", "java.lang.ArrayIndexOutOfBoundsException"),
+                Arrays.asList(find("Arr")));
+        assertEquals(Arrays.asList("java.util.Map$Entry"), Arrays.asList(find("Ent")));
+        assertEquals(0, find("Foo").length);
+        assertEquals(0, find("").length);
+    }
+
+    public void testCamelCase() {
+        assertEquals(Arrays.asList("java.util.ArrayList"), Arrays.asList(find("ArLi")));
+        assertEquals(Arrays.asList("java.lang.ArrayIndexOutOfBoundsException"),
+                Arrays.asList(find("AIOOBE")));
+        assertEquals(0, find("ArLiX").length);
+    }
+
+    public void testRecentFirst() {
+        index.setLastUsed("java.util.ArrayDeque", 1);
+        index.setLastUsed("java.lang.ArrayIndexOutOfBoundsException", 2);
+        assertEquals(Arrays.asList("java.lang.ArrayIndexOutOfBoundsException",
+                "java.util.ArrayDeque", "java.util.Arrays", "java.util.ArrayList"),
+                Arrays.asList(find("Arr")));
+        assertEquals(2, index.getLastUsed("java.lang.ArrayIndexOutOfBoundsException"));
+    }
+
+    public void testLimit() {
+        result = new int[2];
+        assertEquals(2, find("Arr").length);
+    }
+
+    public void testTables() {
+        index = new SimpleNameIndex(
+                SimpleNameIndex.createTable(Arrays.asList("java.util.List", "android.app.Activity")),
+                SimpleNameIndex.createTable(Arrays.asList("com.lib.ListView", "java.util.List")));
+        assertEquals(Arrays.asList("java.util.List", "java.util.List", "com.lib.ListView"),
+                Arrays.asList(find("Li")));
+        //the first table which has the class wins
+        assertEquals(0, SimpleNameIndex.getTable(index.indexOf("java.util.List")));
+        assertEquals(1, SimpleNameIndex.getTable(index.indexOf("com.lib.ListView")));
+
+        index.setHiddenPrefix("android");
+        assertEquals(0, find("Act").length);
+        assertEquals(-1, index.indexOf("android.app.Activity"));
+    }
+}
@@ -0,0 +1,137 @@
+package com.duy.ide.autocomplete.dex;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class SymbolDatabaseTest extends TestCase {
+    public static final String PUBLIC_FIELD = "";
+    private File dir;
+    private File jar;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = File.createTempFile("symbols", "");
+        dir.delete();
+        dir.mkdirs();
+        jar = new File(dir, "lib.jar");
+        writeJar(jar, "extra");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+
+    private void writeJar(File jar, String extraEntry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InputStream in = getClass().getResourceAsStream("SymbolDatabaseTest.class");
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, count);
+        }
+        in.close();
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        out.putNextEntry(new ZipEntry("com/duy/ide/autocomplete/dex/SymbolDatabaseTest.class"));
+        out.write(bytes.toByteArray());
+        out.putNextEntry(new ZipEntry(extraEntry));
+        out.close();
+    }
+
+    public void testReadClass() throws Exception {
+        SymbolDatabase database = SymbolDatabase.open(jar, dir);
+        assertEquals(1, database.getClassCount());
+        String className = SymbolDatabaseTest.class.getName();
+        assertEquals(className, database.getClassName(0));
+        assertNull(database.readClass("java.lang.Object"));
+
+        ClassFileParser.ClassInfo info = database.readClass(className);
+        assertNotNull(info);
+        assertEquals(TestCase.class.getName(), info.superName);
+        assertEquals(1, info.fields.size());
+        assertEquals("PUBLIC_FIELD", info.fields.get(0).name);
+        assertEquals("Ljava/lang/String;", info.fields.get(0).descriptor);
+        boolean found = false;
+        for (ClassFileParser.MemberInfo method : info.methods) {
+            //private methods are not stored
+            assertFalse(method.name.equals("writeJar"));
+            found |= method.name.equals("testReadClass") && method.descriptor.equals("()V");
+        }
+        assertTrue(found);
+    }
+
+    public void testSimpleNameTable() throws Exception {
+        SimpleNameIndex.Table table = SymbolDatabase.open(jar, dir).getSimpleNameTable();
+        assertEquals(1, table.size());
+        assertEquals("SymbolDatabaseTest", table.getSimpleName(0));
+        assertEquals(SymbolDatabaseTest.class.getName(), table.getClassName(0));
+
+        int[] result = new int[10];
+        SimpleNameIndex index = new SimpleNameIndex(table);
+        assertEquals(1, index.find("SyDa", result));
+        assertEquals(SymbolDatabaseTest.class.getName(), index.getClassName(result[0]));
+        assertEquals(0, index.indexOf(SymbolDatabaseTest.class.getName()));
+        assertEquals(-1, index.indexOf("java.lang.Object"));
+    }
+
+    private File[] listDatabases() {
+        return dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".db");
+            }
+        });
+    }
+
+    public void testInvalidate() throws Exception {
+        SymbolDatabase.open(jar, dir);
+        File[] databases = listDatabases();
+        assertEquals(1, databases.length);
+
+        //a touched jar gets a new database, the old one is deleted
+        assertTrue(jar.setLastModified(jar.lastModified() - 10000));
+        assertEquals(1, SymbolDatabase.open(jar, dir).getClassCount());
+        assertFalse(databases[0].exists());
+        assertEquals(1, listDatabases().length);
+
+        //another jar with the same content has its own database
+        File copy = new File(dir, "copy.jar");
+        writeJar(copy, "extra");
+        SymbolDatabase.open(copy, dir);
+        assertEquals(2, listDatabases().length);
+    }
+
+    public void testReplacedWithSameSizeAndTime() throws Exception {
+        SymbolDatabase.open(jar, dir);
+        File database = listDatabases()[0];
+        assertTrue(database.setLastModified(10000));
+
+        //restored from a copy in the same second, only the content differs
+        long lastModified = jar.lastModified();
+        long length = jar.length();
+        writeJar(jar, "other");
+        assertTrue(jar.setLastModified(lastModified));
+        assertEquals(length, jar.length());
+        SymbolDatabase.open(jar, dir);
+        assertTrue(database.exists());
+        assertTrue(database.lastModified() != 10000);
+
+        //an unchanged jar keeps its database
+        assertTrue(database.setLastModified(10000));
+        SymbolDatabase.open(jar, dir);
+        assertEquals(10000, database.lastModified());
+    }
+}
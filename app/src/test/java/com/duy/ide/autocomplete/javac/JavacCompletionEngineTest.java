@@ -0,0 +1,200 @@
+package com.duy.ide.autocomplete.javac;
+
+import com.duy.TestFiles;
+import com.duy.ide.autocomplete.model.Description;
+import com.duy.ide.autocomplete.model.FieldDescription;
+import com.duy.ide.autocomplete.model.MethodDescription;
+import com.duy.project.file.java.JavaProjectFolder;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+public class JavacCompletionEngineTest extends TestCase {
+    private File dir;
+    private JavacCompletionEngine engine;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        File rtJar = new File(System.getProperty("java.home"), "lib" + File.separator + "rt.jar");
+        assertTrue("needs the rt.jar of a JDK 8", rtJar.isFile());
+        dir = File.createTempFile("completion", "");
+        dir.delete();
+        JavaProjectFolder project = new JavaProjectFolder(dir, "p.Main", "p", "project", rtJar.getPath());
+        //a class of the source path
+        File point = new File(project.getDirSrcJava(), "p" + File.separator + "Point.java");
+        point.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(point);
+        out.write(("package p;\n" +
+                "public class Point {\n" +
+                "    public int x, y;\n" +
+                "    private int hidden;\n" +
+                "    public Point moveX(int dx) { return this; }\n" +
+                "    public String name() { return null; }\n" +
+                "}\n").getBytes("UTF-8"));
+        out.close();
+        engine = new JavacCompletionEngine(project);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        engine.dispose();
+        TestFiles.delete(dir);
+        super.tearDown();
+    }
+
+    /**
+     * @param source the edited file, the caret is after the "|" which is removed
+     * @return the names of the members, sorted
+     */
+    private List<String> complete(String source) {
+        ArrayList<Description> members = completeMembers(source);
+        assertNotNull(source, members);
+        return new ArrayList<>(new TreeSet<>(getNames(members)));
+    }
+
+    private ArrayList<Description> completeMembers(String source) {
+        int caret = source.indexOf('|');
+        String text = source.substring(0, caret) + source.substring(caret + 1);
+        int dot = text.lastIndexOf('.', caret);
+        return engine.complete(text, dot, text.substring(dot + 1, caret));
+    }
+
+    private static List<String> getNames(List<Description> members) {
+        List<String> names = new ArrayList<>();
+        for (Description member : members) {
+            names.add(member.getName());
+        }
+        return names;
+    }
+
+    public void testLocalVariable() {
+        String source = "package p;\n" +
+                "class Main {\n" +
+                "    void f() {\n" +
+                "        java.util.ArrayList<String> list = new java.util.ArrayList<>();\n" +
+                "        list.ad|\n" +
+                "    }\n" +
+                "}\n";
+        assertEquals(Arrays.asList("add", "addAll"), complete(source));
+        //both overloads of each method
+        assertEquals(4, completeMembers(source).size());
+    }
+
+    public void testMethodChain() {
+        String source = "package p;\n" +
+                "class Main {\n" +
+                "    void f(Point point) {\n" +
+                "        point.moveX(1).moveX(2).name().to|\n" +
+                "    }\n" +
+                "}\n";
+        assertEquals(Arrays.asList("toCharArray", "toLowerCase", "toString", "toUpperCase"),
+                complete(source));
+
+        //the generic return type of the chain is resolved
+        ArrayList<Description> members = completeMembers("package p;\n" +
+                "class Main {\n" +
+                "    void f(java.util.Map<String, Point> map) {\n" +
+                "        int x = map.get(\"a\").moveX(1).|\n" +
+                "    }\n" +
+                "}\n");
+        assertNotNull(members);
+        assertTrue(getNames(members).containsAll(Arrays.asList("x", "y", "moveX", "name",
+                "hashCode")));
+        assertFalse(getNames(members).contains("hidden"));
+    }
+
+    public void testField() {
+        String source = "package p;\n" +
+                "class Main {\n" +
+                "    Point point;\n" +
+                "    void f() {\n" +
+                "        this.point.|\n" +
+                "    }\n" +
+                "}\n";
+        List<String> names = complete(source);
+        assertTrue(names.containsAll(Arrays.asList("x", "y", "moveX", "name", "equals")));
+        assertFalse(names.contains("hidden"));
+        for (Description member : completeMembers(source)) {
+            if (member.getName().equals("x")) {
+                assertTrue(member instanceof FieldDescription);
+                assertEquals("int", member.getType());
+            } else if (member.getName().equals("moveX")) {
+                assertTrue(member instanceof MethodDescription);
+                assertEquals(Arrays.asList("int"), ((MethodDescription) member).getParameterTypes());
+            }
+        }
+
+        //a static field of a platform class
+        assertEquals(Arrays.asList("print", "printf", "println"), complete("package p;\n" +
+                "class Main {\n" +
+                "    void f() {\n" +
+                "        System.out.pri|\n" +
+                "    }\n" +
+                "}\n"));
+    }
+
+    public void testReuseEnteredFile() {
+        String header = "package p;\n" +
+                "class Main {\n" +
+                "    Point point;\n" +
+                "    void f() {\n";
+        String footer = "    }\n" +
+                "    void g() {\n" +
+                "        point.x = 1;\n" +
+                "    }\n" +
+                "}\n";
+        assertEquals(Arrays.asList("moveX"), complete(header + "        point.mo|\n" + footer));
+        assertEquals(1, engine.getEnterCount());
+
+        //only the body of the method changed, it is attributed in the entered file
+        assertEquals(Arrays.asList("toUpperCase"), complete(header +
+                "        String text = point.name();\n" +
+                "        text.toU|\n" + footer));
+        assertEquals(Arrays.asList("moveX"), complete(header +
+                "        java.util.List<Point> points = null;\n" +
+                "        points.get(0).mo|\n" + footer));
+        assertEquals(1, engine.getEnterCount());
+
+        //another method
+        assertEquals(Arrays.asList("name"), complete(header + "    }\n" +
+                "    void g() {\n" +
+                "        point.na|\n" +
+                "    }\n" +
+                "}\n"));
+        assertEquals(2, engine.getEnterCount());
+
+        //a change outside of the method
+        assertEquals(Arrays.asList("toUpperCase"), complete("package p;\n" +
+                "class Main {\n" +
+                "    String point;\n" +
+                "    void f() {\n" +
+                "        point.toU|\n" + footer));
+        assertEquals(3, engine.getEnterCount());
+    }
+
+    public void testPatchEndOfLine() {
+        String source = "void f() {\n    list.ad\n}";
+        assertEquals("void f() {\n    list.__completion__();\n}",
+                JavacCompletionEngine.patch(source, source.indexOf('.')));
+    }
+
+    public void testPatchInsideExpression() {
+        String source = "foo(list.si, 1);";
+        assertEquals("foo(list.__completion__, 1);",
+                JavacCompletionEngine.patch(source, source.indexOf('.')));
+    }
+
+    public void testPatchWordAfterCaret() {
+        String source = "list.\nint x;";
+        assertEquals("list.__completion__();\nint x;",
+                JavacCompletionEngine.patch(source, source.indexOf('.')));
+    }
+}
@@ -0,0 +1,52 @@
+package com.duy.ide.editor.findreplace;
+
+import junit.framework.TestCase;
+
+import java.util.regex.Pattern;
+
+public class ReplaceEditsTest extends TestCase {
+    private static final String TEXT = "int a = 1; int bb = 22;\nlong c = 333;";
+
+    /**
+     * @return the text with the edits applied from the last one
+     */
+    private static String apply(String text, ReplaceEdits edits) {
+        StringBuilder result = new StringBuilder(text);
+        for (int i = edits.size() - 1; i >= 0; i--) {
+            result.replace(edits.getStart(i), edits.getEnd(i), edits.getReplacement(i));
+        }
+        return result.toString();
+    }
+
+    private static void assertSameAsReplaceAll(String regex, String replacement) {
+        Pattern pattern = Pattern.compile(regex);
+        ReplaceEdits edits = ReplaceEdits.find(pattern, TEXT, replacement, false);
+        assertEquals(pattern.matcher(TEXT).replaceAll(replacement), apply(TEXT, edits));
+    }
+
+    public void testLiteral() {
+        ReplaceEdits edits = ReplaceEdits.find(Pattern.compile(Pattern.quote("int")), TEXT,
+                "$1 \\", true);
+        assertEquals(2, edits.size());
+        assertEquals(0, edits.getStart(0));
+        assertEquals(3, edits.getEnd(0));
+        assertEquals("$1 \\ a = 1; $1 \\ bb = 22;\nlong c = 333;", apply(TEXT, edits));
+    }
+
+    public void testGroupReferences() {
+        assertSameAsReplaceAll("(\\w+) = (\\d+)", "$2 = $1");
+        assertSameAsReplaceAll("(?<name>\\w+) = (?<value>\\d+)", "${value} -> ${name}");
+        assertSameAsReplaceAll("(\\d)(\\d*)", "[$1|$2|$0|\\$]");
+        //group 12 does not exist, it is group 1 followed by 2
+        assertSameAsReplaceAll("(\\w+) =", "$12");
+        assertSameAsReplaceAll("x", "y");
+    }
+
+    public void testIllegalReference() {
+        try {
+            ReplaceEdits.find(Pattern.compile("(a)"), TEXT, "${missing}", false);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.duy.ide.editor.highlight;
+
+import com.duy.ide.editor.highlight.java.JavaLexer;
+import com.duy.ide.editor.view.LineIndex;
+import com.duy.ide.themefont.themes.database.CodeTheme;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LexerHighlighterTest extends TestCase {
+    private static final int COMMENT = 0xFF000001;
+    private static final int STRING = 0xFF000002;
+    private static final int NUMBER = 0xFF000003;
+    private static final int KEYWORD = 0xFF000004;
+
+    private static LexerHighlighter createHighlighter(LineIndex lines) {
+        CodeTheme theme = new CodeTheme(true);
+        theme.setCommentColor(COMMENT);
+        theme.setStringColor(STRING);
+        theme.setNumberColor(NUMBER);
+        theme.setKeyWordColor(KEYWORD);
+        LexerHighlighter highlighter = new LexerHighlighter(new JavaLexer(), lines) {
+        };
+        highlighter.setCodeTheme(theme);
+        return highlighter;
+    }
+
+    private static void highlight(LexerHighlighter highlighter, SpanText text, int start, int end) {
+        highlighter.highlight(text, text.subSequence(start, end), start);
+    }
+
+    /**
+     * Edit the text, the line index is updated before the highlighter like in the editor
+     */
+    private static void replace(LexerHighlighter highlighter, LineIndex lines, SpanText text,
+                                int start, int end, String replacement) {
+        text.replace(start, end, replacement);
+        lines.onTextChanged(text, start, end - start, replacement.length());
+        highlighter.onTextChanged(text, start, end - start, replacement.length());
+    }
+
+    /**
+     * @return the syntax spans as "token:color" or "token:bold", sorted
+     */
+    private static List<String> describe(SpanText text) {
+        List<String> result = new ArrayList<>();
+        for (SyntaxSpans.ColorSpan span : text.getSpans(0, text.length(), SyntaxSpans.ColorSpan.class)) {
+            result.add(text.subSequence(text.getSpanStart(span), text.getSpanEnd(span)) + ":"
+                    + (span.getForegroundColor() & 0xFF));
+        }
+        for (SyntaxSpans.BoldSpan span : text.getSpans(0, text.length(), SyntaxSpans.BoldSpan.class)) {
+            result.add(text.subSequence(text.getSpanStart(span), text.getSpanEnd(span)) + ":bold");
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * @return the color span of the first occurrence of the token
+     */
+    private static SyntaxSpans.ColorSpan getSpan(SpanText text, String token) {
+        int start = text.toString().indexOf(token);
+        for (SyntaxSpans.ColorSpan span : text.getSpans(start, start, SyntaxSpans.ColorSpan.class)) {
+            if (text.getSpanStart(span) == start && text.getSpanEnd(span) == start + token.length()) {
+                return span;
+            }
+        }
+        throw new AssertionError("no span of " + token);
+    }
+
+    /**
+     * @return the spans of the text as highlighted from scratch
+     */
+    private static List<String> describeFresh(CharSequence content) {
+        SpanText text = new SpanText(content);
+        highlight(createHighlighter(new LineIndex()), text, 0, text.length());
+        return describe(text);
+    }
+
+    public void testEditKeepsUnchangedTokens() {
+        LineIndex lines = new LineIndex();
+        LexerHighlighter highlighter = createHighlighter(lines);
+        SpanText text = new SpanText("int a = 1; // c\nString s = \"x\";\n");
+        highlight(highlighter, text, 0, text.length());
+        assertEquals("[\"x\":2, // c:1, 1:3, int:4, int:bold]", describe(text).toString());
+        SyntaxSpans.ColorSpan keyword = getSpan(text, "int");
+        SyntaxSpans.ColorSpan number = getSpan(text, "1");
+        SyntaxSpans.ColorSpan comment = getSpan(text, "// c");
+        SyntaxSpans.ColorSpan string = getSpan(text, "\"x\"");
+        int setCount = text.setCount;
+
+        //the number becomes a string, the tokens after it only moved
+        int position = text.toString().indexOf('1');
+        replace(highlighter, lines, text, position, position + 1, "\"1\"");
+        highlight(highlighter, text, 0, text.length());
+        assertEquals(describeFresh(text), describe(text));
+        assertSame(keyword, getSpan(text, "int"));
+        assertSame(comment, getSpan(text, "// c"));
+        assertSame(string, getSpan(text, "\"x\""));
+        SyntaxSpans.ColorSpan newString = getSpan(text, "\"1\"");
+        assertNotSame(number, newString);
+        assertEquals(setCount + 1, text.setCount);
+
+        //back to a number, the removed number span is reused
+        replace(highlighter, lines, text, position, position + 3, "2");
+        highlight(highlighter, text, 0, text.length());
+        assertEquals(describeFresh(text), describe(text));
+        assertSame(number, getSpan(text, "2"));
+        assertSame(comment, getSpan(text, "// c"));
+    }
+
+    public void testScroll() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append("int x").append(i).append(" = ").append(i).append("; // line\n");
+        }
+        LexerHighlighter highlighter = createHighlighter(new LineIndex());
+        SpanText text = new SpanText(content);
+        int lineLength = content.indexOf("\n") + 1;
+        highlight(highlighter, text, 0, 10 * lineLength);
+        Map<Object, Boolean> instances = new IdentityHashMap<>();
+        for (Object span : text.getSpans(0, text.length(), Object.class)) {
+            instances.put(span, true);
+        }
+        assertFalse(instances.isEmpty());
+
+        //only the spans of the shown window are in the text, they come from the removed spans
+        int start = content.indexOf("int x50 ");
+        int end = content.indexOf("int x55 ");
+        highlight(highlighter, text, start, end);
+        assertEquals(0, text.getSpans(0, start, Object.class).length);
+        assertEquals(0, text.getSpans(end, text.length(), Object.class).length);
+        assertEquals(describeFresh(content.substring(start, end)).size(), describe(text).size());
+        for (Object span : text.getSpans(start, end, Object.class)) {
+            assertTrue(instances.containsKey(span));
+        }
+    }
+}
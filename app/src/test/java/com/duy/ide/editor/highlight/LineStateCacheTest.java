@@ -0,0 +1,88 @@
+package com.duy.ide.editor.highlight;
+
+import com.duy.ide.editor.highlight.java.JavaLexer;
+import com.duy.ide.editor.highlight.xml.XmlLexer;
+import com.duy.ide.editor.view.LineIndex;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class LineStateCacheTest extends TestCase {
+
+    private static List<String> lex(LineStateCache cache, CharSequence text, int start, int end) {
+        final List<String> tokens = new ArrayList<>();
+        final CharSequence source = text;
+        cache.lex(text, start, end, new Lexer.TokenCallback() {
+            @Override
+            public void onToken(int type, int start, int end) {
+                tokens.add(type + ":" + source.subSequence(start, end));
+            }
+        });
+        return tokens;
+    }
+
+    public void testJavaTokens() {
+        String text = "int a = 0x1F + 2.5e3; // comment\nString s = \"a\\\"b\" + 'c'; /* x */ return;";
+        LineStateCache cache = new LineStateCache(new JavaLexer(), new LineIndex());
+        List<String> tokens = lex(cache, text, 0, text.length());
+        assertEquals("[4:int, 3:0x1F, 3:2.5e3, 1:// comment, 2:\"a\\\"b\", 2:'c', 1:/* x */]",
+                tokens.toString());
+    }
+
+    public void testBlockCommentAboveWindow() {
+        String text = "/*\nint a;\n*/ int b;";
+        LineStateCache cache = new LineStateCache(new JavaLexer(), new LineIndex());
+        int start = text.indexOf("int a");
+        assertEquals("[1:int a;, 1:*/, 4:int]", lex(cache, text, start, text.length()).toString());
+        assertEquals(JavaLexer.STATE_BLOCK_COMMENT, cache.getState(text, 1));
+    }
+
+    public void testXmlTokens() {
+        String text = "<!-- a -->\n<View android:id=\"@+id/a\"\n    text='b\nc' />";
+        LineStateCache cache = new LineStateCache(new XmlLexer(), new LineIndex());
+        List<String> tokens = lex(cache, text, 0, text.length());
+        assertEquals("[1:<!-- a -->, 5:<View, 6:android:id, 2:\"@+id/a\", 6:text, 2:'b, 2:c', 5:/>]",
+                tokens.toString());
+    }
+
+    /**
+     * The states after random edits are the same as the states of the text lexed from scratch
+     */
+    public void testIncrementalEdits() {
+        String[] pieces = {"/*", "*/", "\n", "\"", "int ", "a", " ", "//", "\n\n", "12"};
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder("class A {\n/* a\n b */\nint x = 1;\n}\n");
+        //the index is shared with the editor, which updates it first
+        LineIndex lines = new LineIndex();
+        LineStateCache cache = new LineStateCache(new JavaLexer(), lines);
+        cache.reset(text);
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(text.length() + 1);
+            int before = random.nextInt(Math.min(6, text.length() - start) + 1);
+            String insert = random.nextInt(3) == 0 ? "" : pieces[random.nextInt(pieces.length)];
+            text.replace(start, start + before, insert);
+            lines.onTextChanged(text, start, before, insert.length());
+            cache.onTextChanged(text, start, before, insert.length());
+
+            //highlight a random window, like a scroll
+            int windowStart = random.nextInt(text.length() + 1);
+            lex(cache, text, windowStart, Math.min(text.length(), windowStart + 20));
+
+            LineStateCache expected = new LineStateCache(new JavaLexer(), new LineIndex());
+            expected.reset(text);
+            assertEquals(expected.getLineCount(), cache.getLineCount());
+            //checking every line validates all states, do it sometimes only
+            int line = random.nextInt(expected.getLineCount());
+            assertEquals("edit " + i, expected.getState(text, line), cache.getState(text, line));
+            if (i % 50 == 0) {
+                for (line = expected.getLineCount() - 1; line >= 0; line--) {
+                    assertEquals("edit " + i + " line " + line,
+                            expected.getState(text, line), cache.getState(text, line));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.duy.ide.editor.highlight;
+
+import android.text.Editable;
+import android.text.InputFilter;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Editable text with the span rules of the android text which matter for the highlight: spans
+ * are returned in the order they were set, an edit moves the spans after it and removes the
+ * spans which became empty.
+ */
+class SpanText implements Editable {
+    private final StringBuilder text;
+    /**
+     * Span -> start, end, flags
+     */
+    private final LinkedHashMap<Object, int[]> spans = new LinkedHashMap<>();
+    private InputFilter[] filters = new InputFilter[0];
+    /**
+     * Number of calls of {@link #setSpan}
+     */
+    int setCount;
+
+    SpanText(CharSequence text) {
+        this.text = new StringBuilder(text);
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dest, int destoff) {
+        text.getChars(start, end, dest, destoff);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] getSpans(int start, int end, Class<T> type) {
+        List<T> result = new ArrayList<>();
+        for (Map.Entry<Object, int[]> entry : spans.entrySet()) {
+            int spanStart = entry.getValue()[0];
+            int spanEnd = entry.getValue()[1];
+            if (!type.isInstance(entry.getKey()) || spanStart > end || spanEnd < start) continue;
+            //a span which only touches a range is not in it
+            if (start != end && spanStart != spanEnd && (spanStart == end || spanEnd == start)) continue;
+            result.add((T) entry.getKey());
+        }
+        return result.toArray((T[]) Array.newInstance(type, result.size()));
+    }
+
+    @Override
+    public int getSpanStart(Object tag) {
+        int[] range = spans.get(tag);
+        return range == null ? -1 : range[0];
+    }
+
+    @Override
+    public int getSpanEnd(Object tag) {
+        int[] range = spans.get(tag);
+        return range == null ? -1 : range[1];
+    }
+
+    @Override
+    public int getSpanFlags(Object tag) {
+        int[] range = spans.get(tag);
+        return range == null ? 0 : range[2];
+    }
+
+    @Override
+    public int nextSpanTransition(int start, int limit, Class type) {
+        for (Map.Entry<Object, int[]> entry : spans.entrySet()) {
+            if (type != null && !type.isInstance(entry.getKey())) continue;
+            for (int i = 0; i < 2; i++) {
+                int position = entry.getValue()[i];
+                if (position > start && position < limit) limit = position;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Unlike the android text a span is not moved by setting it again, the highlighter must not
+     * set a span which is still in the text
+     */
+    @Override
+    public void setSpan(Object what, int start, int end, int flags) {
+        if (spans.containsKey(what)) throw new IllegalStateException("span is already set: " + what);
+        if (start < 0 || start > end || end > text.length()) throw new IndexOutOfBoundsException();
+        spans.put(what, new int[]{start, end, flags});
+        setCount++;
+    }
+
+    @Override
+    public void removeSpan(Object what) {
+        spans.remove(what);
+    }
+
+    @Override
+    public Editable replace(int st, int en, CharSequence source, int start, int end) {
+        text.replace(st, en, source.subSequence(start, end).toString());
+        int length = end - start;
+        int delta = length - (en - st);
+        Iterator<int[]> iterator = spans.values().iterator();
+        while (iterator.hasNext()) {
+            int[] range = iterator.next();
+            for (int i = 0; i < 2; i++) {
+                if (range[i] >= en) {
+                    range[i] += delta;
+                } else if (range[i] > st) {
+                    range[i] = st;
+                }
+            }
+            if (range[0] == range[1]) iterator.remove();
+        }
+        return this;
+    }
+
+    @Override
+    public Editable replace(int st, int en, CharSequence text) {
+        return replace(st, en, text, 0, text.length());
+    }
+
+    @Override
+    public Editable insert(int where, CharSequence text, int start, int end) {
+        return replace(where, where, text, start, end);
+    }
+
+    @Override
+    public Editable insert(int where, CharSequence text) {
+        return replace(where, where, text);
+    }
+
+    @Override
+    public Editable delete(int st, int en) {
+        return replace(st, en, "");
+    }
+
+    @Override
+    public Editable append(CharSequence text) {
+        return replace(length(), length(), text);
+    }
+
+    @Override
+    public Editable append(CharSequence text, int start, int end) {
+        return replace(length(), length(), text, start, end);
+    }
+
+    @Override
+    public Editable append(char text) {
+        return append(String.valueOf(text));
+    }
+
+    @Override
+    public void clear() {
+        replace(0, length(), "");
+    }
+
+    @Override
+    public void clearSpans() {
+        spans.clear();
+    }
+
+    @Override
+    public void setFilters(InputFilter[] filters) {
+        this.filters = filters;
+    }
+
+    @Override
+    public InputFilter[] getFilters() {
+        return filters;
+    }
+}
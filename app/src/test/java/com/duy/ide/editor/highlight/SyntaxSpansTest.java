@@ -0,0 +1,199 @@
+package com.duy.ide.editor.highlight;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SyntaxSpansTest extends TestCase {
+    private static final int RED = 0xFFFF0000;
+    private static final int BLUE = 0xFF0000FF;
+    private static final String TEXT = "int a = 1; // c\nString s = \"x\";\nreturn;";
+
+    private SyntaxSpans spans;
+    private SpanText text;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        spans = new SyntaxSpans();
+        text = new SpanText(TEXT);
+    }
+
+    /**
+     * @return the syntax spans as "start-end:color" or "start-end:bold", sorted
+     */
+    private static List<String> describe(SpanText text) {
+        List<String> result = new ArrayList<>();
+        for (SyntaxSpans.ColorSpan span : text.getSpans(0, text.length(), SyntaxSpans.ColorSpan.class)) {
+            result.add(text.getSpanStart(span) + "-" + text.getSpanEnd(span) + ":"
+                    + Integer.toHexString(span.getForegroundColor()));
+        }
+        for (SyntaxSpans.BoldSpan span : text.getSpans(0, text.length(), SyntaxSpans.BoldSpan.class)) {
+            result.add(text.getSpanStart(span) + "-" + text.getSpanEnd(span) + ":bold");
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * @return the span of the given type which covers exactly the range
+     */
+    private static <T> T getSpan(SpanText text, int start, int end, Class<T> type) {
+        T found = null;
+        for (T span : text.getSpans(start, end, type)) {
+            if (text.getSpanStart(span) == start && text.getSpanEnd(span) == end) {
+                assertNull("two spans in " + start + "-" + end, found);
+                found = span;
+            }
+        }
+        assertNotNull("no span in " + start + "-" + end, found);
+        return found;
+    }
+
+    /**
+     * @return all syntax spans of the text, by identity
+     */
+    private static Map<Object, Boolean> getInstances(SpanText text) {
+        Map<Object, Boolean> instances = new IdentityHashMap<>();
+        for (Object span : text.getSpans(0, text.length(), SyntaxSpans.ColorSpan.class)) {
+            instances.put(span, true);
+        }
+        for (Object span : text.getSpans(0, text.length(), SyntaxSpans.BoldSpan.class)) {
+            instances.put(span, true);
+        }
+        return instances;
+    }
+
+    private void addLine1() {
+        spans.add(0, 3, RED, true);
+        spans.add(8, 9, BLUE, false);
+        spans.add(11, 15, BLUE, false);
+    }
+
+    private void addLine2() {
+        spans.add(27, 30, RED, false);
+    }
+
+    private void addLine3() {
+        spans.add(32, 38, RED, true);
+    }
+
+    private void applyAll() {
+        spans.begin();
+        addLine1();
+        addLine2();
+        addLine3();
+        spans.apply(text, 0, text.length());
+    }
+
+    public void testApply() {
+        applyAll();
+        assertEquals("[0-3:bold, 0-3:ffff0000, 11-15:ff0000ff, 27-30:ffff0000, 32-38:bold, " +
+                "32-38:ffff0000, 8-9:ff0000ff]", describe(text).toString());
+    }
+
+    public void testUnchangedRangesKeepSpans() {
+        applyAll();
+        Map<Object, Boolean> before = getInstances(text);
+        int setCount = text.setCount;
+
+        applyAll();
+        assertEquals(setCount, text.setCount);
+        assertEquals(before.keySet(), getInstances(text).keySet());
+    }
+
+    public void testChangedRangeIsRecycled() {
+        applyAll();
+        SyntaxSpans.ColorSpan red = getSpan(text, 27, 30, SyntaxSpans.ColorSpan.class);
+        SyntaxSpans.BoldSpan bold = getSpan(text, 32, 38, SyntaxSpans.BoldSpan.class);
+        SyntaxSpans.ColorSpan keyword = getSpan(text, 32, 38, SyntaxSpans.ColorSpan.class);
+        SyntaxSpans.ColorSpan number = getSpan(text, 8, 9, SyntaxSpans.ColorSpan.class);
+
+        //another color needs a new span, the red one goes to the pool of its color
+        spans.begin();
+        addLine1();
+        spans.add(27, 30, BLUE, false);
+        addLine3();
+        spans.apply(text, 0, text.length());
+        SyntaxSpans.ColorSpan blue = getSpan(text, 27, 30, SyntaxSpans.ColorSpan.class);
+        assertNotSame(red, blue);
+        assertEquals(BLUE, blue.getForegroundColor());
+        assertSame(number, getSpan(text, 8, 9, SyntaxSpans.ColorSpan.class));
+
+        //the red spans come back from the pool, the bold span is moved through its pool
+        spans.begin();
+        addLine1();
+        spans.add(27, 30, RED, false);
+        spans.add(32, 37, RED, true);
+        spans.apply(text, 0, text.length());
+        Map<Object, Boolean> reds = new IdentityHashMap<>();
+        reds.put(getSpan(text, 27, 30, SyntaxSpans.ColorSpan.class), true);
+        reds.put(getSpan(text, 32, 37, SyntaxSpans.ColorSpan.class), true);
+        assertEquals(2, reds.size());
+        assertTrue(reds.containsKey(red));
+        assertTrue(reds.containsKey(keyword));
+        assertSame(bold, getSpan(text, 32, 37, SyntaxSpans.BoldSpan.class));
+        assertEquals("[0-3:bold, 0-3:ffff0000, 11-15:ff0000ff, 27-30:ffff0000, 32-37:bold, " +
+                "32-37:ffff0000, 8-9:ff0000ff]", describe(text).toString());
+    }
+
+    public void testSpansOutsideWindowAreRemoved() {
+        applyAll();
+        Map<Object, Boolean> all = getInstances(text);
+        SyntaxSpans.ColorSpan comment = getSpan(text, 11, 15, SyntaxSpans.ColorSpan.class);
+
+        //only the first line is shown
+        int line1End = TEXT.indexOf('\n');
+        spans.begin();
+        addLine1();
+        spans.apply(text, 0, line1End);
+        assertEquals("[0-3:bold, 0-3:ffff0000, 11-15:ff0000ff, 8-9:ff0000ff]", describe(text).toString());
+        assertSame(comment, getSpan(text, 11, 15, SyntaxSpans.ColorSpan.class));
+
+        //scrolled to the last lines, the spans of the first line are removed and all spans come
+        //from the pools
+        int line2Start = line1End + 1;
+        spans.begin();
+        addLine2();
+        addLine3();
+        spans.apply(text, line2Start, text.length());
+        assertEquals("[27-30:ffff0000, 32-38:bold, 32-38:ffff0000]", describe(text).toString());
+        for (Object span : getInstances(text).keySet()) {
+            assertTrue(all.containsKey(span));
+        }
+    }
+
+    public void testOnTopIsLast() {
+        int errorColor = 0xFF00FF00;
+        for (int i = 0; i < 2; i++) {
+            spans.begin();
+            addLine1();
+            spans.addOnTop(4, 9, errorColor);
+            spans.apply(text, 0, text.length());
+            //the spans are drawn in the order they were set
+            SyntaxSpans.ColorSpan[] colors = text.getSpans(0, text.length(), SyntaxSpans.ColorSpan.class);
+            SyntaxSpans.ColorSpan last = colors[colors.length - 1];
+            assertEquals(errorColor, last.getForegroundColor());
+            assertEquals(4, text.getSpanStart(last));
+            assertEquals(9, text.getSpanEnd(last));
+            getSpan(text, 8, 9, SyntaxSpans.ColorSpan.class);
+        }
+    }
+
+    public void testClearPool() {
+        applyAll();
+        SyntaxSpans.ColorSpan red = getSpan(text, 27, 30, SyntaxSpans.ColorSpan.class);
+        spans.begin();
+        addLine1();
+        addLine3();
+        spans.apply(text, 0, text.length());
+        spans.clearPool();
+
+        applyAll();
+        assertNotSame(red, getSpan(text, 27, 30, SyntaxSpans.ColorSpan.class));
+    }
+}
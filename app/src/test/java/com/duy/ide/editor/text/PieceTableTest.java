@@ -0,0 +1,109 @@
+package com.duy.ide.editor.text;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class PieceTableTest extends TestCase {
+
+    public void testEdits() {
+        String[] pieces = {"\n", "a", "bc\nd", "", "efghij"};
+        Random random = new Random(11);
+        StringBuilder text = new StringBuilder("class A {\n}\n");
+        PieceTable table = new PieceTable();
+        table.reset(text);
+        ArrayList<String> expected = new ArrayList<>();
+        ArrayList<PieceTable.Snapshot> snapshots = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            int start = random.nextInt(text.length() + 1);
+            int before = random.nextInt(Math.min(4, text.length() - start) + 1);
+            String insert = pieces[random.nextInt(pieces.length)];
+            text.replace(start, start + before, insert);
+            table.onTextChanged(text, start, before, insert.length());
+            assertEquals(text.length(), table.length());
+            if (i % 100 == 0) {
+                expected.add(text.toString());
+                snapshots.add(table.getSnapshot());
+            }
+        }
+        assertEquals(text.toString(), table.getSnapshot().toString());
+        //the old snapshots are not changed by the next edits
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertEquals(expected.get(i), snapshots.get(i).toString());
+        }
+    }
+
+    public void testTyping() {
+        PieceTable table = new PieceTable();
+        StringBuilder text = new StringBuilder("ab");
+        table.reset(text);
+        PieceTable.Snapshot snapshot = table.getSnapshot();
+        for (char c = 'c'; c <= 'z'; c++) {
+            text.append(c);
+            table.onTextChanged(text, text.length() - 1, 0, 1);
+        }
+        assertEquals("ab", snapshot.toString());
+        assertEquals(text.toString(), table.getSnapshot().toString());
+    }
+
+    public void testMissedEdit() {
+        PieceTable table = new PieceTable();
+        table.reset("abc");
+        table.onTextChanged("abcdef", 3, 0, 1);
+        assertEquals("abcdef", table.getSnapshot().toString());
+    }
+
+    public void testSubSequence() {
+        PieceTable table = new PieceTable();
+        StringBuilder text = new StringBuilder("0123456789");
+        table.reset(text);
+        text.insert(5, "abc");
+        table.onTextChanged(text, 5, 0, 3);
+        text.delete(1, 3);
+        table.onTextChanged(text, 1, 2, 0);
+        String expected = text.toString();
+        PieceTable.Snapshot snapshot = table.getSnapshot();
+        for (int start = 0; start <= expected.length(); start++) {
+            for (int end = start; end <= expected.length(); end++) {
+                assertEquals(expected.substring(start, end),
+                        snapshot.subSequence(start, end).toString());
+                char[] chars = new char[end - start + 1];
+                snapshot.getChars(start, end, chars, 1);
+                assertEquals(expected.substring(start, end), new String(chars, 1, end - start));
+            }
+        }
+        CharSequence sub = snapshot.subSequence(2, 8);
+        assertEquals(expected.substring(4, 6), sub.subSequence(2, 4).toString());
+        assertEquals(expected.charAt(7), sub.charAt(5));
+    }
+
+    public void testCompact() {
+        PieceTable table = new PieceTable();
+        StringBuilder text = new StringBuilder("0123456789");
+        table.reset(text);
+        PieceTable.Snapshot first = table.getSnapshot();
+        //replace all the digits many times, the old replacements are not in the text any more
+        for (int round = 0; round < 100; round++) {
+            PieceTable.Snapshot snapshot = table.getSnapshot();
+            String expected = text.toString();
+            for (int i = text.length() - 1; i >= 0; i--) {
+                String replacement = String.valueOf((char) ((round % 2 == 0 ? 'a' : 'A') + i));
+                text.replace(i, i + 1, replacement);
+                table.onTextChanged(text, i, 1, replacement.length());
+            }
+            table.compact();
+            assertEquals(text.toString(), table.getSnapshot().toString());
+            assertEquals(expected, snapshot.toString());
+            assertTrue(table.getAddedLength() <= 2 * text.length());
+        }
+        assertEquals("0123456789", first.toString());
+
+        //typing after the compaction extends the last piece
+        text.append('x');
+        table.onTextChanged(text, text.length() - 1, 0, 1);
+        text.append('y');
+        table.onTextChanged(text, text.length() - 1, 0, 1);
+        assertEquals(text.toString(), table.getSnapshot().toString());
+    }
+}
@@ -0,0 +1,54 @@
+package com.duy.ide.editor.view;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class LineIndexTest extends TestCase {
+
+    private static void assertLines(String text, LineIndex index) {
+        String[] lines = text.split("\n", -1);
+        assertEquals(lines.length, index.getLineCount());
+        int start = 0;
+        for (int line = 0; line < lines.length; line++) {
+            assertEquals(start, index.getLineStart(line));
+            assertEquals(start + lines[line].length(), index.getLineEnd(line));
+            assertEquals(line, index.getLineOfOffset(start));
+            assertEquals(line, index.getLineOfOffset(start + lines[line].length()));
+            start += lines[line].length() + 1;
+        }
+    }
+
+    public void testReset() {
+        LineIndex index = new LineIndex();
+        index.reset("");
+        assertLines("", index);
+        index.reset("a\n\nbc\n");
+        assertLines("a\n\nbc\n", index);
+    }
+
+    public void testEdits() {
+        String[] pieces = {"\n", "a", "bc\nd", "\n\n", "efg"};
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder("line 1\nline 2\n");
+        LineIndex index = new LineIndex();
+        index.reset(text);
+        for (int i = 0; i < 5000; i++) {
+            int start = random.nextInt(text.length() + 1);
+            int before = random.nextInt(Math.min(8, text.length() - start) + 1);
+            String insert = random.nextInt(3) == 0 ? "" : pieces[random.nextInt(pieces.length)];
+            text.replace(start, start + before, insert);
+            index.onTextChanged(text, start, before, insert.length());
+            assertLines(text.toString(), index);
+        }
+    }
+
+    public void testMissedEdit() {
+        LineIndex index = new LineIndex();
+        index.reset("a\nb");
+        //the text changed without an event
+        String text = "a\nb\nc\n";
+        index.onTextChanged(text, 0, 0, 1);
+        assertLines(text, index);
+    }
+}
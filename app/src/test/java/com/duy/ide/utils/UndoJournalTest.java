@@ -0,0 +1,207 @@
+package com.duy.ide.utils;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class UndoJournalTest extends TestCase {
+
+    /**
+     * Apply the edit to the text and add it to the journal, like the text watcher
+     */
+    private static void edit(StringBuilder text, UndoJournal journal, int start, int before,
+                             String after, boolean coalesce) {
+        String removed = text.substring(start, start + before);
+        text.replace(start, start + before, after);
+        if (coalesce) {
+            if (before == 0 && journal.extendInsert(start, text, start, start + after.length())) {
+                return;
+            }
+            if (after.isEmpty() && journal.extendDelete(start, removed, 0, before)) {
+                return;
+            }
+        }
+        journal.add(start, removed, 0, before, text, start, start + after.length());
+    }
+
+    private static void undo(StringBuilder text, UndoJournal journal) {
+        int edit = journal.undo();
+        int start = journal.getStart(edit);
+        text.replace(start, start + journal.getAfterLength(edit), journal.getBefore(edit));
+    }
+
+    private static void redo(StringBuilder text, UndoJournal journal) {
+        int edit = journal.redo();
+        int start = journal.getStart(edit);
+        text.replace(start, start + journal.getBeforeLength(edit), journal.getAfter(edit));
+    }
+
+    private static void randomEdit(Random random, StringBuilder text, UndoJournal journal) {
+        int start = random.nextInt(text.length() + 1);
+        switch (random.nextInt(4)) {
+            case 0:
+                //typing
+                edit(text, journal, start, 0, "a", true);
+                for (int i = random.nextInt(5); i > 0; i--) {
+                    start++;
+                    edit(text, journal, start, 0, String.valueOf((char) ('b' + i)), true);
+                }
+                break;
+            case 1:
+                //backspace
+                for (int i = random.nextInt(5); i > 0 && start > 0; i--) {
+                    start--;
+                    edit(text, journal, start, 1, "", true);
+                }
+                break;
+            case 2:
+                //delete key
+                for (int i = random.nextInt(5); i > 0 && start < text.length(); i--) {
+                    edit(text, journal, start, 1, "", true);
+                }
+                break;
+            default:
+                int before = random.nextInt(Math.min(6, text.length() - start) + 1);
+                edit(text, journal, start, before, "xy\nz".substring(random.nextInt(4)), false);
+                break;
+        }
+    }
+
+    public void testUndoRedo() {
+        Random random = new Random(3);
+        String original = "public class A {\n    int a;\n}\n";
+        StringBuilder text = new StringBuilder(original);
+        UndoJournal journal = new UndoJournal();
+        for (int i = 0; i < 500; i++) {
+            randomEdit(random, text, journal);
+        }
+        String edited = text.toString();
+        assertTrue(journal.size() < 500 * 3);
+        while (journal.canUndo()) undo(text, journal);
+        assertEquals(original, text.toString());
+        while (journal.canRedo()) redo(text, journal);
+        assertEquals(edited, text.toString());
+    }
+
+    public void testCoalesce() {
+        StringBuilder text = new StringBuilder("ab");
+        UndoJournal journal = new UndoJournal();
+        for (int i = 0; i < 10; i++) {
+            edit(text, journal, 2 + i, 0, "c", true);
+        }
+        assertEquals(1, journal.size());
+        edit(text, journal, 11, 1, "", true);
+        edit(text, journal, 10, 1, "", true);
+        edit(text, journal, 0, 1, "", true);
+        assertEquals(3, journal.size());
+        undo(text, journal);
+        assertEquals("abcccccccc", text.toString());
+        undo(text, journal);
+        undo(text, journal);
+        assertEquals("ab", text.toString());
+    }
+
+    public void testMaxBytes() {
+        Random random = new Random(5);
+        StringBuilder text = new StringBuilder("class A {}");
+        UndoJournal journal = new UndoJournal();
+        journal.setMaxBytes(2000);
+        for (int i = 0; i < 2000; i++) {
+            randomEdit(random, text, journal);
+            assertTrue(journal.getByteSize() <= 2000 || journal.size() == 1);
+        }
+        String edited = text.toString();
+        while (journal.canUndo()) undo(text, journal);
+        while (journal.canRedo()) redo(text, journal);
+        assertEquals(edited, text.toString());
+    }
+
+    /**
+     * The changes of each save are replayed into another journal
+     */
+    public void testChanges() throws Exception {
+        Random random = new Random(9);
+        StringBuilder text = new StringBuilder("class A {}");
+        UndoJournal journal = new UndoJournal();
+        journal.setMaxBytes(3000);
+        UndoJournal replayed = new UndoJournal();
+        for (int save = 0; save < 100; save++) {
+            for (int i = random.nextInt(30); i > 0; i--) {
+                if (random.nextInt(5) == 0 && journal.canUndo()) {
+                    undo(text, journal);
+                } else {
+                    randomEdit(random, text, journal);
+                }
+            }
+            if (save % 25 == 0) journal.clear();
+            byte[] changes = journal.takeChanges();
+            replayed.applyChanges(new DataInputStream(new ByteArrayInputStream(changes)),
+                    changes.length);
+            assertEquals(journal.size(), replayed.size());
+            assertEquals(journal.getPosition(), replayed.getPosition());
+            for (int i = 0; i < journal.size(); i++) {
+                assertEquals(journal.getStart(i), replayed.getStart(i));
+                assertEquals(journal.getBefore(i), replayed.getBefore(i));
+                assertEquals(journal.getAfter(i), replayed.getAfter(i));
+            }
+        }
+    }
+
+    /**
+     * Wait for the journal read in the background
+     */
+    private static UndoJournal read(File file, String key, CharSequence text) throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final UndoJournal[] result = new UndoJournal[1];
+        UndoLog.read(file, key, text, UndoJournal.DEFAULT_MAX_BYTES, new UndoLog.ReadCallback() {
+            @Override
+            public void onRead(UndoJournal journal) {
+                result[0] = journal;
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return result[0];
+    }
+
+    public void testLog() throws Exception {
+        File file = File.createTempFile("undo", ".log");
+        file.delete();
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder("class A {}");
+        UndoJournal journal = new UndoJournal();
+        for (int save = 0; save < 50; save++) {
+            for (int i = 0; i < 20; i++) randomEdit(random, text, journal);
+            UndoLog.append(file, "A.java", journal.takeChanges(), text.toString(),
+                    journal.getByteSize());
+        }
+        UndoJournal restored = read(file, "A.java", text.toString());
+        assertNotNull(restored);
+        String edited = text.toString();
+        while (restored.canUndo()) undo(text, restored);
+        assertEquals("class A {}", text.toString());
+        while (restored.canRedo()) redo(text, restored);
+        assertEquals(edited, text.toString());
+
+        //the file was changed by another editor
+        text.append(' ');
+        assertNull(read(file, "A.java", text.toString()));
+        assertFalse(file.exists());
+        //like the editor, the history of the old text is cleared
+        journal.clear();
+        journal.markUnsaved();
+        String changed = text.toString();
+        for (int i = 0; i < 20; i++) randomEdit(random, text, journal);
+        UndoLog.append(file, "A.java", journal.takeChanges(), text.toString(), 0);
+        journal = read(file, "A.java", text.toString());
+        assertNotNull(journal);
+        while (journal.canUndo()) undo(text, journal);
+        assertEquals(changed, text.toString());
+        file.delete();
+    }
+}
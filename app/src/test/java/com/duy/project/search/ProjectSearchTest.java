@@ -0,0 +1,199 @@
+package com.duy.project.search;
+
+import com.duy.TestFiles;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ProjectSearchTest extends TestCase {
+    private File mRoot;
+
+    private static void write(File file, String text) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(text.getBytes("UTF-8"));
+        out.close();
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        mRoot = File.createTempFile("project", "");
+        mRoot.delete();
+        write(new File(mRoot, "src/main/java/A.java"), "class A {\n    String name = \"Hello\";\n}\n");
+        write(new File(mRoot, "src/main/java/B.java"), "class B extends A {\n    int hello;\n}\n");
+        write(new File(mRoot, "src/main/res/layout/main.xml"), "<LinearLayout />\n");
+        write(new File(mRoot, "build/A.java"), "class A { String name; }\n");
+        write(new File(mRoot, "libs/a.jar"), "class A\n");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestFiles.delete(mRoot);
+    }
+
+    public void testLiterals() {
+        assertEquals(Arrays.asList("a.b*c"), TrigramIndex.getLiterals("a.b*c", false));
+        assertEquals(Arrays.asList("class ", " extends"),
+                TrigramIndex.getLiterals("class \\w+ extends", true));
+        assertEquals(Arrays.asList("ab", "d"), TrigramIndex.getLiterals("abc?d", true));
+        assertEquals(Arrays.asList("a.b", "x"), TrigramIndex.getLiterals("a\\.b[^]x]+x", true));
+        assertEquals(Arrays.asList("foo", "bar"), TrigramIndex.getLiterals("foo(baz)?bar", true));
+        assertEquals(Arrays.asList("na"), TrigramIndex.getLiterals("nam{0,1}", true));
+        assertTrue(TrigramIndex.getLiterals("foo|bar", true).isEmpty());
+        assertTrue(TrigramIndex.getLiterals("(?i)foo", true).isEmpty());
+        assertTrue(TrigramIndex.getLiterals("\\x41BC", true).isEmpty());
+    }
+
+    /**
+     * A file which matches a query always has the trigrams of the literals of the query
+     */
+    public void testLiteralsMatch() {
+        String text = "public class Foo extends Bar { int a1 = 0x1f; String s = \"a.b\"; }";
+        int[] trigrams = TrigramIndex.getTrigrams(text);
+        String[] regexes = {"class \\w+ extends", "int a\\d", "\"a\\.b\"", "Fo+ ex", "x1f?;",
+                "(Foo|Baz) extends", "[A-Z]ar \\{", "STRING s", "0x[0-9a-f]{2}"};
+        for (String regex : regexes) {
+            Matcher matcher = Pattern.compile(regex, Pattern.CASE_INSENSITIVE).matcher(text);
+            assertTrue(regex, matcher.find());
+            int[] required = TrigramIndex.getTrigrams(TrigramIndex.getLiterals(regex, true));
+            if (required == null) continue;
+            for (int trigram : required) {
+                assertTrue(regex, Arrays.binarySearch(trigrams, trigram) >= 0);
+            }
+        }
+    }
+
+    public void testIndex() throws Exception {
+        TrigramIndex index = new TrigramIndex();
+        index.update(mRoot, new AtomicBoolean());
+        assertEquals(3, index.size());
+        int[] hello = TrigramIndex.getTrigrams(TrigramIndex.getLiterals("hello", false));
+        assertEquals(2, index.query(hello).size());
+        int[] name = TrigramIndex.getTrigrams(TrigramIndex.getLiterals("name", false));
+        assertEquals(Arrays.asList(new File(mRoot, "src/main/java/A.java")), index.query(name));
+        assertEquals(3, index.query(null).size());
+
+        File b = new File(mRoot, "src/main/java/B.java");
+        write(b, "class B {\n    String name, value;\n}\n");
+        File a = new File(mRoot, "src/main/java/A.java");
+        a.delete();
+        index.markDirty(b);
+        index.markDirty(a);
+        index.update(mRoot, new AtomicBoolean());
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList(b), index.query(name));
+        assertEquals(0, index.query(hello).size());
+    }
+
+    public void testDirty() throws Exception {
+        TrigramIndex index = new TrigramIndex();
+        index.update(mRoot, new AtomicBoolean());
+        assertEquals(3, index.size());
+        int[] value = TrigramIndex.getTrigrams(TrigramIndex.getLiterals("value", false));
+
+        //only the marked files are read again
+        File c = new File(mRoot, "src/main/java/p/C.java");
+        write(c, "class C { int value; }\n");
+        write(new File(mRoot, "src/main/java/p/D.java"), "class D { int value; }\n");
+        index.update(mRoot, new AtomicBoolean());
+        assertEquals(3, index.size());
+        index.markDirty(c);
+        index.update(mRoot, new AtomicBoolean());
+        assertEquals(Arrays.asList(c), index.query(value));
+
+        //a directory is walked again
+        index.markDirty(c.getParentFile());
+        index.update(mRoot, new AtomicBoolean());
+        assertEquals(2, index.query(value).size());
+
+        //the files of a deleted directory are removed, a skipped directory is not indexed
+        TestFiles.delete(c.getParentFile());
+        index.markDirty(c.getParentFile());
+        write(new File(mRoot, "build/C.java"), "class C { int value; }\n");
+        index.markDirty(new File(mRoot, "build/C.java"));
+        index.markDirty(new File(mRoot, "build"));
+        index.update(mRoot, new AtomicBoolean());
+        assertEquals(3, index.size());
+        assertEquals(0, index.query(value).size());
+
+        //a cancelled update keeps the marks
+        File b = new File(mRoot, "src/main/java/B.java");
+        write(b, "class B { int value; }\n");
+        index.markDirty(b);
+        index.update(mRoot, new AtomicBoolean(true));
+        assertEquals(0, index.query(value).size());
+        index.update(mRoot, new AtomicBoolean());
+        assertEquals(Arrays.asList(b), index.query(value));
+    }
+
+    private static List<ProjectSearch.Match> search(ProjectSearch projectSearch, String query,
+                                                    boolean regex, boolean matchCase)
+            throws InterruptedException {
+        final ArrayList<ProjectSearch.Match> result = new ArrayList<>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        projectSearch.search(query, regex, matchCase, new ProjectSearch.Callback() {
+            @Override
+            public void onMatches(ProjectSearch.Search search, File file,
+                                  List<ProjectSearch.Match> matches) {
+                synchronized (result) {
+                    result.addAll(matches);
+                }
+            }
+
+            @Override
+            public void onFinished(ProjectSearch.Search search, int fileCount) {
+                finished.countDown();
+            }
+        });
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        return result;
+    }
+
+    public void testSearch() throws Exception {
+        ProjectSearch projectSearch = new ProjectSearch(mRoot);
+        List<ProjectSearch.Match> matches = search(projectSearch, "hello", false, false);
+        assertEquals(2, matches.size());
+        matches = search(projectSearch, "Hello", false, true);
+        assertEquals(1, matches.size());
+        ProjectSearch.Match match = matches.get(0);
+        assertEquals("A.java", match.file.getName());
+        assertEquals(2, match.line);
+        assertEquals(19, match.column);
+        assertEquals("    String name = \"Hello\";", match.lineText);
+
+        matches = search(projectSearch, "class \\w+ extends", true, true);
+        assertEquals(1, matches.size());
+        assertEquals("B.java", matches.get(0).file.getName());
+        assertEquals(2, search(projectSearch, "class", false, true).size());
+    }
+
+    public void testCancel() throws Exception {
+        ProjectSearch projectSearch = new ProjectSearch(mRoot);
+        ProjectSearch.Search first = projectSearch.search("class", false, false,
+                new ProjectSearch.Callback() {
+                    @Override
+                    public void onMatches(ProjectSearch.Search search, File file,
+                                          List<ProjectSearch.Match> matches) {
+                    }
+
+                    @Override
+                    public void onFinished(ProjectSearch.Search search, int fileCount) {
+                    }
+                });
+        //a new search cancels the running one
+        assertEquals(2, search(projectSearch, "class", false, false).size());
+        assertTrue(first.isCancelled());
+        projectSearch.cancel();
+    }
+}